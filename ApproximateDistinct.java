@@ -0,0 +1,93 @@
+package NEW.Collection.Stream;
+
+import java.util.Spliterator;
+import java.util.function.ToLongFunction;
+import java.util.stream.*;
+
+/**
+ * Summary: ✔️ distinct().count() and distinct() in bounded memory, for streams with millions of distinct values ✔️
+ * <p>
+ * distinct() and the sets behind it keep every distinct value: gigabytes for a stream of user ids or URLs.
+ * stream.collect( ApproximateDistinct.countDistinct( 0.01 ) )  -> ~ stream.distinct().count(), error ~1%, 16 KB
+ * ApproximateDistinct.countDistinct( intStream, 0.01 )         -> the same for IntStream / LongStream
+ * ApproximateDistinct.distinct( stream, 1_000_000, 0.01 )      -> ~ stream.distinct(), 2 MB
+ * <p>
+ * countDistinct() fills a {@link HyperLogLog}, every thread of a parallel stream its own, merged at the end.
+ * distinct() filters through a {@link BloomFilter}: a duplicate is always dropped, but a new value is dropped too
+ * with the false positive rate (more often once there are more distinct values than expected), and a value that
+ * two threads of a parallel stream meet at the same moment may pass twice. The filter is created when the
+ * terminal operation starts, thread-safe if the pipeline is parallel by then.
+ * <p>
+ * Objects are hashed by hashCode(), mixed to 64 bits: fine while hashCode() itself has few collisions.
+ * For a big number of distinct strings, give a 64-bit hash such as {@link #hash( CharSequence )}.
+ */
+public final class ApproximateDistinct {
+    private ApproximateDistinct() {
+    }
+
+    public static <T> Collector<T, ?, Long> countDistinct(double relativeError) {
+        return countDistinct( relativeError, ApproximateDistinct::hashCode64 );
+    }
+
+    public static <T> Collector<T, ?, Long> countDistinct(double relativeError, ToLongFunction<? super T> hash) {
+        return Collectors.collectingAndThen( sketch( relativeError, hash ), HyperLogLog::estimate );
+    }
+
+    /**
+     * The sketch itself, e.g. to merge the sketches of several days later.
+     */
+    public static <T> Collector<T, ?, HyperLogLog> sketch(double relativeError, ToLongFunction<? super T> hash) {
+        int precision = HyperLogLog.precisionFor( relativeError );
+        return Collector.of(
+                () -> new HyperLogLog( precision ),
+                (sketch, t) -> sketch.addHash( hash.applyAsLong( t ) ),
+                HyperLogLog::merge,
+                Collector.Characteristics.UNORDERED, Collector.Characteristics.IDENTITY_FINISH );
+    }
+
+    public static long countDistinct(IntStream stream, double relativeError) {
+        int precision = HyperLogLog.precisionFor( relativeError );
+        return stream.collect( () -> new HyperLogLog( precision ), HyperLogLog::add, HyperLogLog::merge ).estimate();
+    }
+
+    public static long countDistinct(LongStream stream, double relativeError) {
+        int precision = HyperLogLog.precisionFor( relativeError );
+        return stream.collect( () -> new HyperLogLog( precision ), HyperLogLog::add, HyperLogLog::merge ).estimate();
+    }
+
+    public static <T> Stream<T> distinct(Stream<T> stream, long expectedDistinct, double falsePositiveRate) {
+        return distinct( stream, expectedDistinct, falsePositiveRate, ApproximateDistinct::hashCode64 );
+    }
+
+    public static <T> Stream<T> distinct(Stream<T> stream, long expectedDistinct, double falsePositiveRate,
+                                         ToLongFunction<? super T> hash) {
+        return DeferredStreams.stream( stream, Spliterator.ORDERED, parallel -> {
+            BloomFilter seen = new BloomFilter( expectedDistinct, falsePositiveRate, parallel );
+            return DeferredStreams.mode( stream, parallel ).filter( t -> seen.addHash( hash.applyAsLong( t ) ) ).spliterator();
+        } );
+    }
+
+    public static IntStream distinct(IntStream stream, long expectedDistinct, double falsePositiveRate) {
+        return DeferredStreams.intStream( stream, Spliterator.ORDERED, parallel -> DeferredStreams.mode( stream, parallel )
+                .filter( new BloomFilter( expectedDistinct, falsePositiveRate, parallel )::add ).spliterator() );
+    }
+
+    public static LongStream distinct(LongStream stream, long expectedDistinct, double falsePositiveRate) {
+        return DeferredStreams.longStream( stream, Spliterator.ORDERED, parallel -> DeferredStreams.mode( stream, parallel )
+                .filter( new BloomFilter( expectedDistinct, falsePositiveRate, parallel )::add ).spliterator() );
+    }
+
+    /**
+     * 64-bit FNV-1a over the chars, then mixed: unlike String.hashCode() it does not collide after ~1e5 strings.
+     */
+    public static long hash(CharSequence s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++)
+            h = (h ^ s.charAt( i )) * 0x100000001b3L;
+        return LongHashSet.mix( h );
+    }
+
+    private static long hashCode64(Object t) {
+        return LongHashSet.mix( t == null ? 0 : t.hashCode() );
+    }
+}
@@ -0,0 +1,38 @@
+package NEW.Collection.Stream;
+
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Summary: ✔️ Exact distinct().count() / distinct() against {@link ApproximateDistinct}: speed, memory, error ✔️
+ * <p>
+ * n random ints with about n / 2 distinct values. B/op shows the memory: the exact sets allocate per distinct
+ * value, the HyperLogLog and the Bloom filter a fixed size. After each size the error of the approximate results
+ * is printed: relative error of the count, share of new values dropped by the Bloom filter.
+ */
+public class ApproximateDistinctBenchmark {
+    public static void main(String[] args) {
+        Bench bench = new Bench();
+        for (int n : Bench.sizes( "1e5,1e6,1e7" )) {
+            int[] values = new SplittableRandom( 42 ).ints( n, 0, n ).toArray();
+            long exact = PrimitiveStreams.distinct( IntStream.of( values ) ).count();
+
+            bench.run( "count-distinct", "hashset", n, () -> IntStream.of( values ).boxed().distinct().count() );
+            bench.run( "count-distinct", "int-hashset", n, () -> PrimitiveStreams.distinct( IntStream.of( values ) ).count() );
+            bench.run( "count-distinct", "hll-1%", n, () -> ApproximateDistinct.countDistinct( IntStream.of( values ), 0.01 ) );
+            bench.run( "count-distinct", "hll-1%-par", n, () -> ApproximateDistinct.countDistinct( IntStream.of( values )
+                    .parallel(), 0.01 ) );
+            bench.run( "count-distinct", "hll-boxed-1%", n, () -> IntStream.of( values ).boxed()
+                    .collect( ApproximateDistinct.countDistinct( 0.01 ) ) );
+
+            bench.run( "distinct", "hashset", n, () -> IntStream.of( values ).boxed().distinct().count() );
+            bench.run( "distinct", "bloom-1%", n, () -> ApproximateDistinct.distinct( IntStream.of( values ), exact, 0.01 ).count() );
+
+            long hll = ApproximateDistinct.countDistinct( IntStream.of( values ), 0.01 );
+            long bloom = ApproximateDistinct.distinct( IntStream.of( values ), exact, 0.01 ).count();
+            System.out.format( "n=%d distinct=%d: hll %d (error %+.2f%%, %d B), bloom kept %d (%.3f%% of new values dropped, %d B)%n",
+                    n, exact, hll, 100.0 * (hll - exact) / exact, HyperLogLog.withError( 0.01 ).sizeInBytes(),
+                    bloom, 100.0 * (exact - bloom) / exact, new BloomFilter( exact, 0.01, false ).sizeInBytes() );
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package NEW.Collection.Stream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Summary: ✔️ Work on a stream in fixed-size chunks: chunked(n) and mapBatch(n, fn) ✔️
+ * <p>
+ * map( x -> x + 11 ) calls the lambda once per element. When the lambda is a DB lookup or a JNI call,
+ * the fixed cost of each call dominates, and it is cheaper to send a whole batch at once.
+ * chunked( stream, 3 )         -> (1, 2, 3, 4, 5, 6, 7) -> [1, 2, 3], [4, 5, 6], [7]
+ * mapBatch( stream, 3, fn )    -> fn is called with [1, 2, 3], then [4, 5, 6], then [7] and must return
+ * one result per element, the results are flattened back into a stream in the same order.
+ * <p>
+ * Encounter order is kept, and chunks are the same under parallel(): every chunk except the last has exactly n
+ * elements. For SUBSIZED sources (arrays, ArrayList, ranges) a split takes the few elements that are needed
+ * to complete the last chunk of the left half from the right half. Other sources are split by copying
+ * a multiple of n elements into an array, the way the JDK splits an Iterator.
+ * <p>
+ * chunked() emits a new List per chunk, so the chunks may be kept. mapBatch() reuses one buffer per split:
+ * the list given to fn is only valid during the call.
+ */
+public final class Batches {
+    private Batches() {
+    }
+
+    public static <T> Stream<List<T>> chunked(Stream<T> stream, int size) {
+        return StreamSupport.stream( new ChunkSpliterator<>( stream.spliterator(), checkSize( size ), false, null ),
+                        stream.isParallel() )
+                .onClose( stream::close );
+    }
+
+    public static <T, R> Stream<R> mapBatch(Stream<T> stream, int size, Function<? super List<T>, ? extends List<? extends R>> fn) {
+        return StreamSupport.stream( new ChunkSpliterator<>( stream.spliterator(), checkSize( size ), true, null ),
+                        stream.isParallel() )
+                .onClose( stream::close )
+                .flatMap( batch -> {
+                    int n = batch.size();
+                    List<? extends R> results = fn.apply( batch );
+                    if (results.size() != n)
+                        throw new IllegalStateException( "mapBatch function returned " + results.size()
+                                + " results for " + n + " elements" );
+                    return results.stream();
+                } );
+    }
+
+    private static int checkSize(int size) {
+        if (size < 1)
+            throw new IllegalArgumentException( "chunk size must be positive: " + size );
+        return size;
+    }
+
+    /**
+     * Groups the elements of {@code source} into chunks. {@code carry} holds elements taken from the right
+     * neighbour at split time, they follow the last element of {@code source}.
+     */
+    static final class ChunkSpliterator<T> implements Spliterator<List<T>> {
+        private static final int BATCH_UNIT = 1 << 10;
+        private static final int MAX_BATCH = 1 << 25;
+
+        private final Spliterator<T> source;
+        private final int size;
+        private final boolean reuse;
+        private final Object[] carry;
+        private int carryIndex;
+        private ArrayList<T> chunk;
+        private int batch;  // elements copied by the last trySplit of an unsized source
+        private final Consumer<T> adder = t -> chunk.add( t );
+
+        ChunkSpliterator(Spliterator<T> source, int size, boolean reuse, Object[] carry) {
+            this.source = source;
+            this.size = size;
+            this.reuse = reuse;
+            this.carry = carry;
+        }
+
+        private ArrayList<T> newChunk() {
+            if (!reuse || chunk == null)
+                return chunk = new ArrayList<>( size );
+            chunk.clear();
+            return chunk;
+        }
+
+        @SuppressWarnings("unchecked")
+        private boolean nextElement() {
+            if (source.tryAdvance( adder ))
+                return true;
+            if (carry != null && carryIndex < carry.length) {
+                chunk.add( (T) carry[carryIndex++] );
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super List<T>> action) {
+            ArrayList<T> current = newChunk();
+            while (current.size() < size && nextElement()) ;
+            if (current.isEmpty())
+                return false;
+            action.accept( current );
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super List<T>> action) {
+            newChunk();
+            source.forEachRemaining( t -> {
+                chunk.add( t );
+                if (chunk.size() == size) {
+                    action.accept( chunk );
+                    newChunk();
+                }
+            } );
+            while (nextElement())
+                if (chunk.size() == size) {
+                    action.accept( chunk );
+                    newChunk();
+                }
+            if (!chunk.isEmpty())
+                action.accept( chunk );
+        }
+
+        @Override
+        public Spliterator<List<T>> trySplit() {
+            if (source.hasCharacteristics( Spliterator.SUBSIZED ))
+                return splitSized();
+            return splitUnsized();
+        }
+
+        private Spliterator<List<T>> splitSized() {
+            Spliterator<T> prefix = source.trySplit();
+            if (prefix == null)
+                return null;
+            int missing = (int) ((size - prefix.getExactSizeIfKnown() % size) % size);
+            Object[] prefixCarry = null;
+            if (missing > 0) {
+                ArrayList<T> taken = chunk = new ArrayList<>( missing );
+                while (taken.size() < missing && nextElement()) ;
+                prefixCarry = taken.toArray();
+                chunk = null;
+            }
+            return new ChunkSpliterator<>( prefix, size, reuse, prefixCarry );
+        }
+
+        private Spliterator<List<T>> splitUnsized() {
+            long remaining = source.estimateSize();
+            if (remaining <= size)
+                return null;
+            int n = (int) Math.min( Math.min( remaining, MAX_BATCH ), batch + BATCH_UNIT );
+            n = Math.max( n / size, 1 ) * size;
+            ArrayList<T> taken = chunk = new ArrayList<>( n );
+            while (taken.size() < n && nextElement()) ;
+            chunk = null;
+            if (taken.isEmpty())
+                return null;
+            batch = taken.size();
+            Spliterator<T> prefix = Spliterators.spliterator( taken.toArray(), source.characteristics()
+                    & (Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE) );
+            return new ChunkSpliterator<>( prefix, size, reuse, null );
+        }
+
+        @Override
+        public long estimateSize() {
+            long elements = source.estimateSize();
+            if (elements == Long.MAX_VALUE)
+                return Long.MAX_VALUE;
+            if (carry != null)
+                elements += carry.length - carryIndex;
+            return (elements + size - 1) / size;
+        }
+
+        @Override
+        public int characteristics() {
+            int sized = source.hasCharacteristics( Spliterator.SUBSIZED ) ? Spliterator.SIZED | Spliterator.SUBSIZED : 0;
+            return (source.characteristics() & Spliterator.ORDERED) | sized | Spliterator.NONNULL;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package NEW.Collection.Stream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Summary: ✔️ map() with an expensive call per element against mapBatch() with one call per chunk ✔️
+ * <p>
+ * The "remote" function costs {@code -Dbench.callNanos} (1000 by default) per call plus a little per element,
+ * like a DB lookup or a JNI call. map calls it for every element, mapBatch/16 .. mapBatch/4096 once per chunk.
+ */
+public class BatchesBenchmark {
+    private static final long CALL_NANOS = Long.getLong( "bench.callNanos", 1000 );
+
+    public static void main(String[] args) {
+        Bench bench = new Bench();
+        for (int n : Bench.sizes( "1e4,1e5" )) {
+            bench.run( "map", "map", n, () -> IntStream.range( 0, n ).boxed()
+                    .map( x -> lookup( List.of( x ) ).get( 0 ) ).mapToLong( Long::longValue ).sum() );
+            bench.run( "map", "map-par", n, () -> IntStream.range( 0, n ).boxed().parallel()
+                    .map( x -> lookup( List.of( x ) ).get( 0 ) ).mapToLong( Long::longValue ).sum() );
+            for (int size : new int[]{ 16, 256, 4096 }) {
+                bench.run( "map", "mapBatch/" + size, n, () -> Batches.mapBatch( IntStream.range( 0, n ).boxed(), size,
+                        BatchesBenchmark::lookup ).mapToLong( Long::longValue ).sum() );
+                bench.run( "map", "mapBatch-par/" + size, n, () -> Batches.mapBatch( IntStream.range( 0, n ).boxed()
+                        .parallel(), size, BatchesBenchmark::lookup ).mapToLong( Long::longValue ).sum() );
+            }
+            bench.run( "chunked", "chunked/256", n, () -> Batches.chunked( IntStream.range( 0, n ).boxed(), 256 )
+                    .mapToLong( List::size ).sum() );
+            bench.run( "chunked", "chunked-par/256", n, () -> Batches.chunked( IntStream.range( 0, n ).boxed()
+                    .parallel(), 256 ).mapToLong( List::size ).sum() );
+        }
+    }
+
+    /**
+     * Pretends to be a remote call: a fixed cost per call, then a cheap computation per key.
+     */
+    static List<Long> lookup(List<Integer> keys) {
+        long deadline = System.nanoTime() + CALL_NANOS;
+        while (System.nanoTime() < deadline) ;
+        List<Long> values = new ArrayList<>( keys.size() );
+        for (Integer key : keys)
+            values.add( key * 31L );
+        return values;
+    }
+}
@@ -0,0 +1,142 @@
+package NEW.Collection.Stream;
+
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * Summary: ✔️ A small self-contained micro-benchmark harness for the comparison benchmarks of single classes ✔️
+ * <p>
+ * The Stream_API suite is a JMH benchmark ({@link StreamApiBenchmark}); the *Benchmark classes with a main() use
+ * this harness to compare a class with the JDK way side by side in one table, also from 1 to N cores:
+ * java -cp target/benchmarks.jar NEW.Collection.Stream.ScanBenchmark
+ * <p>
+ * Each benchmark is a {@link LongSupplier}: one call is one operation, and the returned value is
+ * folded into a volatile sink so the JIT cannot throw the work away.
+ * The harness warms the code up, then runs several timed iterations and reports:
+ * throughput (ops/s), nanoseconds per element, bytes allocated per operation by all threads
+ * (the same number the JMH gc profiler reports as gc.alloc.rate.norm), GC count
+ * and the ratio against a plain loop baseline with the same name and size.
+ * <p>
+ * Tuning via system properties:
+ * -Dbench.warmup=1000      -> warmup time in ms.
+ * -Dbench.time=1000        -> time of one measured iteration in ms.
+ * -Dbench.iterations=3     -> number of measured iterations.
+ * -Dbench.sizes=1e3,1e6    -> input sizes (overrides the defaults of the benchmark).
+ * -Dbench.filter=sort|sum  -> regex, only benchmarks whose name matches are run.
+ * -Dbench.cores=1,2,4      -> parallelism levels of the scaling benchmarks.
+ */
+public final class Bench {
+    public static final String LOOP = "loop";
+
+    private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final long warmupNanos = Long.getLong( "bench.warmup", 1000 ) * 1_000_000L;
+    private final long measureNanos = Long.getLong( "bench.time", 1000 ) * 1_000_000L;
+    private final int iterations = Integer.getInteger( "bench.iterations", 3 );
+    private final Pattern filter = Pattern.compile( System.getProperty( "bench.filter", ".*" ) );
+    private final Map<String, Double> baselines = new HashMap<>();
+    private volatile long sink;
+
+    public Bench() {
+        THREADS.setThreadAllocatedMemoryEnabled( true );
+        System.out.format( "%-28s %-18s %12s %16s %12s %14s %6s %9s%n",
+                "benchmark", "mode", "size", "ops/s", "ns/elem", "B/op", "gc", "x loop" );
+    }
+
+    /**
+     * Input sizes from -Dbench.sizes or the given defaults. Accepts plain numbers and 1eN notation.
+     */
+    public static int[] sizes(String defaults) {
+        return numbers( System.getProperty( "bench.sizes", defaults ) );
+    }
+
+    private static int[] numbers(String list) {
+        return Arrays.stream( list.split( "," ) )
+                .map( String::trim )
+                .mapToInt( s -> (int) Double.parseDouble( s ) )
+                .toArray();
+    }
+
+    /**
+     * Parallelism levels for scaling benchmarks: 1, 2, 4 ... up to the number of cores, or -Dbench.cores.
+     */
+    public static int[] parallelism() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return System.getProperty( "bench.cores" ) != null
+                ? numbers( System.getProperty( "bench.cores" ) )
+                : IntStream.iterate( 1, p -> p <= cores, p -> p * 2 ).toArray();
+    }
+
+    /**
+     * A parallel stream started from a ForkJoinPool task runs in that pool instead of the common one.
+     */
+    public static LongSupplier in(ForkJoinPool pool, LongSupplier op) {
+        return () -> pool.submit( op::getAsLong ).join();
+    }
+
+    public boolean accepts(String name) {
+        return filter.matcher( name ).find();
+    }
+
+    /**
+     * Runs one benchmark. Mode {@link #LOOP} is remembered as the baseline of (name, size),
+     * so it must be run before the stream variants to get the "x loop" column filled.
+     */
+    public void run(String name, String mode, long size, LongSupplier op) {
+        if (!accepts( name ))
+            return;
+        long deadline = System.nanoTime() + warmupNanos;
+        do {
+            sink += op.getAsLong();
+        } while (System.nanoTime() < deadline);
+
+        double[] scores = new double[iterations];
+        long allocated = 0, ops = 0, gcCount = gcCount();
+        for (int i = 0; i < iterations; i++) {
+            long bytes = allocatedBytes();
+            long n = 0, start = System.nanoTime(), now;
+            do {
+                sink += op.getAsLong();
+                n++;
+            } while ((now = System.nanoTime()) - start < measureNanos);
+            allocated += allocatedBytes() - bytes;
+            ops += n;
+            scores[i] = n * 1e9 / (now - start);
+        }
+        gcCount = gcCount() - gcCount;
+
+        double score = Arrays.stream( scores ).average().orElse( 0 );
+        String key = name + '/' + size;
+        if (LOOP.equals( mode ))
+            baselines.put( key, score );
+        Double loop = baselines.get( key );
+        System.out.format( "%-28s %-18s %12d %16.1f %12.2f %14d %6d %9s%n",
+                name, mode, size, score, 1e9 / score / Math.max( size, 1 ), allocated / Math.max( ops, 1 ), gcCount,
+                loop == null ? "-" : String.format( "%.2f", score / loop ) );
+    }
+
+    /**
+     * Bytes allocated so far by all live threads, ForkJoinPool workers included.
+     */
+    private static long allocatedBytes() {
+        long total = 0;
+        for (long bytes : THREADS.getThreadAllocatedBytes( THREADS.getAllThreadIds() ))
+            if (bytes > 0)
+                total += bytes;
+        return total;
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            total += Math.max( gc.getCollectionCount(), 0 );
+        return total;
+    }
+}
@@ -0,0 +1,92 @@
+package NEW.Collection.Stream;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Summary: ✔️ "Seen before?" for the values of a stream in a fixed number of bits ✔️
+ * <p>
+ * A Bloom filter sets k bits per value, picked by the 64-bit hash (index i = h1 + i * h2, Kirsch-Mitzenmacher).
+ * A value whose k bits are all set was probably seen before: false positives happen with the probability chosen
+ * at construction, as long as no more than expectedElements values are added; false negatives never happen.
+ * Memory is -n * ln(p) / ln(2)^2 bits, rounded up to a power of two (which lowers the false positive rate):
+ * 2 MB for 1e6 values at 1%, whatever the values are.
+ * <p>
+ * A concurrent filter sets the bits with atomic getAndBitwiseOr, so it can be shared by the threads of
+ * a parallel stream.
+ */
+public final class BloomFilter {
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle( long[].class );
+
+    private final long[] words;
+    private final long mask;
+    private final int hashes;
+    private final boolean concurrent;
+
+    public BloomFilter(long expectedElements, double falsePositiveRate, boolean concurrent) {
+        if (expectedElements <= 0)
+            throw new IllegalArgumentException( "expectedElements must be positive: " + expectedElements );
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1))
+            throw new IllegalArgumentException( "false positive rate must be in (0, 1): " + falsePositiveRate );
+        double bits = -expectedElements * Math.log( falsePositiveRate ) / (Math.log( 2 ) * Math.log( 2 ));
+        long size = Math.max( Long.SIZE, Long.highestOneBit( (long) Math.ceil( bits ) - 1 ) << 1 );
+        if (size / Long.SIZE > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException( "filter too big: " + size + " bits" );
+        this.words = new long[(int) (size / Long.SIZE)];
+        this.mask = size - 1;
+        this.hashes = (int) Math.max( 1, Math.min( 16, Math.round( bits / expectedElements * Math.log( 2 ) ) ) );
+        this.concurrent = concurrent;
+    }
+
+    public boolean add(long value) {
+        return addHash( LongHashSet.mix( value ) );
+    }
+
+    /**
+     * Sets the bits of the hash. True when at least one of them was clear: the value is certainly new.
+     */
+    public boolean addHash(long hash) {
+        long h2 = (hash >>> 32) | 1;
+        boolean added = false;
+        for (int i = 0; i < hashes; i++) {
+            long bit = (hash + i * h2) & mask;
+            int word = (int) (bit >>> 6);
+            long bitMask = 1L << bit;
+            if (concurrent) {
+                if (((long) WORDS.getAndBitwiseOr( words, word, bitMask ) & bitMask) == 0)
+                    added = true;
+            } else if ((words[word] & bitMask) == 0) {
+                words[word] |= bitMask;
+                added = true;
+            }
+        }
+        return added;
+    }
+
+    public boolean mightContain(long value) {
+        return mightContainHash( LongHashSet.mix( value ) );
+    }
+
+    public boolean mightContainHash(long hash) {
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = (hash + i * h2) & mask;
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    public int hashes() {
+        return hashes;
+    }
+
+    public long sizeInBytes() {
+        return (long) words.length * Long.BYTES;
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "BloomFilter{bits=%d, hashes=%d, bytes=%d}", mask + 1, hashes, sizeInBytes() );
+    }
+}
@@ -0,0 +1,461 @@
+package NEW.Collection.Stream;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Summary: ✔️ forEach( System.out::println ) for millions of elements: encode into direct buffers, write in big batches ✔️
+ * <p>
+ * println takes the lock of the PrintStream, formats into a String, encodes it and (with autoflush) makes a system
+ * call for every element; under parallel() all the threads queue on that lock. Here the elements are encoded
+ * straight into a reused direct ByteBuffer (64 KB by default, from a small shared pool) and handed to a FileChannel
+ * or any WritableByteChannel one full buffer at a time:
+ * ChannelSink.to( path ).lines( stream )                          -> String.valueOf( x ) + '\n' per element
+ * ChannelSink.to( channel ).lines( longStream )                   -> decimal digits without a String
+ * ChannelSink.to( path ).write( stream, (p, out) -> out.put( p.name ).put( ',' ).put( p.age ).newLine() )
+ * Every call returns the number of bytes written.
+ * <p>
+ * A parallel stream is split into chunks that the calling thread and the pool take from left to right, and
+ * every thread encodes into its own buffer:
+ * ordered (default) -> the output is in encounter order. A finished buffer of the leftmost unfinished chunk is
+ * written at once, buffers of the chunks to its right wait in memory until their turn.
+ * unordered()       -> every thread writes its buffer whenever it is full. An element is never cut in two,
+ * so lines of different threads do not mix, but their order is not kept.
+ * <p>
+ * sync( everyBytes ) calls FileChannel.force() at least every everyBytes and once at the end, as a group commit:
+ * one force() covers everything written by all threads until it starts, and the threads that asked for it
+ * meanwhile find their bytes already on disk instead of forcing again.
+ * Channels opened from a path are closed at the end; a channel passed in is left open.
+ */
+public final class ChannelSink {
+    static final int DEFAULT_BUFFER_BYTES = 1 << 16;
+    private static final int MIN_BUFFER_BYTES = 64;
+    private static final int CHUNKS_PER_TASK = 8;
+    private static final long MIN_CHUNK = 1 << 10;
+    private static final Queue<ByteBuffer> POOL = new ArrayBlockingQueue<>( 64 );
+
+    private final WritableByteChannel channel;
+    private final Path path;
+    private int bufferBytes = DEFAULT_BUFFER_BYTES;
+    private boolean ordered = true;
+    private long syncEvery = -1;
+
+    /**
+     * Encodes one element. The output must not be kept after the call.
+     */
+    @FunctionalInterface
+    public interface Encoder<T> {
+        void encode(T value, Output out);
+    }
+
+    private ChannelSink(WritableByteChannel channel, Path path) {
+        this.channel = channel;
+        this.path = path;
+    }
+
+    public static ChannelSink to(WritableByteChannel channel) {
+        return new ChannelSink( Objects.requireNonNull( channel ), null );
+    }
+
+    /**
+     * Every write creates or truncates the file.
+     */
+    public static ChannelSink to(Path file) {
+        return new ChannelSink( null, Objects.requireNonNull( file ) );
+    }
+
+    public ChannelSink bufferBytes(int bytes) {
+        if (bytes < MIN_BUFFER_BYTES)
+            throw new IllegalArgumentException( "bufferBytes < " + MIN_BUFFER_BYTES + ": " + bytes );
+        this.bufferBytes = bytes;
+        return this;
+    }
+
+    public ChannelSink unordered() {
+        this.ordered = false;
+        return this;
+    }
+
+    /**
+     * force() the file at least every everyBytes (0: after every buffer, Long.MAX_VALUE: only at the end).
+     */
+    public ChannelSink sync(long everyBytes) {
+        if (everyBytes < 0)
+            throw new IllegalArgumentException( "everyBytes < 0: " + everyBytes );
+        if (path == null && !(channel instanceof FileChannel))
+            throw new IllegalStateException( "sync() needs a FileChannel" );
+        this.syncEvery = everyBytes;
+        return this;
+    }
+
+    public long lines(Stream<?> stream) {
+        return write( stream, (x, out) -> out.put( x instanceof CharSequence ? (CharSequence) x : String.valueOf( x ) ).newLine() );
+    }
+
+    public long lines(IntStream stream) {
+        return lines( stream.asLongStream() );
+    }
+
+    public long lines(LongStream stream) {
+        return run( stream.spliterator(), stream.isParallel(), (part, out) -> ((Spliterator.OfLong) part).forEachRemaining(
+                (LongConsumer) x -> out.put( x ).newLine().mark() ) );
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> long write(Stream<T> stream, Encoder<? super T> encoder) {
+        Objects.requireNonNull( encoder );
+        return run( stream.spliterator(), stream.isParallel(), (part, out) -> ((Spliterator<T>) part).forEachRemaining( x -> {
+            encoder.encode( x, out );
+            out.mark();
+        } ) );
+    }
+
+    private interface Drain {
+        void drain(Spliterator<?> part, Output out);
+    }
+
+    private long run(Spliterator<?> source, boolean parallel, Drain drain) {
+        if (path == null)
+            return new Run( channel, source, parallel ).run( drain );
+        try (FileChannel file = FileChannel.open( path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE )) {
+            return new Run( file, source, parallel ).run( drain );
+        } catch (IOException e) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    private ByteBuffer acquire() {
+        ByteBuffer buffer = POOL.poll();
+        return buffer != null && buffer.capacity() == bufferBytes ? buffer : ByteBuffer.allocateDirect( bufferBytes );
+    }
+
+    private static void release(ByteBuffer buffer) {
+        POOL.offer( buffer.clear() );
+    }
+
+    /**
+     * Where an encoder puts the bytes of an element: text goes in as UTF-8, numbers as decimal digits.
+     */
+    public static final class Output {
+        private final Run run;
+        private ByteBuffer buffer;
+        private int mark;
+        private int chunk;
+
+        private Output(Run run) {
+            this.run = run;
+        }
+
+        public Output put(CharSequence s) {
+            for (int i = 0, length = s.length(); i < length; i++) {
+                ensure( 4 );
+                char c = s.charAt( i );
+                if (c < 0x80) {
+                    buffer.put( (byte) c );
+                } else if (c < 0x800) {
+                    buffer.put( (byte) (0xC0 | c >> 6) ).put( (byte) (0x80 | c & 0x3F) );
+                } else if (Character.isHighSurrogate( c ) && i + 1 < length && Character.isLowSurrogate( s.charAt( i + 1 ) )) {
+                    int cp = Character.toCodePoint( c, s.charAt( ++i ) );
+                    buffer.put( (byte) (0xF0 | cp >> 18) ).put( (byte) (0x80 | cp >> 12 & 0x3F) )
+                            .put( (byte) (0x80 | cp >> 6 & 0x3F) ).put( (byte) (0x80 | cp & 0x3F) );
+                } else if (Character.isSurrogate( c )) {
+                    buffer.put( (byte) '?' );
+                } else {
+                    buffer.put( (byte) (0xE0 | c >> 12) ).put( (byte) (0x80 | c >> 6 & 0x3F) ).put( (byte) (0x80 | c & 0x3F) );
+                }
+            }
+            return this;
+        }
+
+        public Output put(char c) {
+            if (c < 0x80) {
+                ensure( 1 );
+                buffer.put( (byte) c );
+                return this;
+            }
+            return put( String.valueOf( c ) );
+        }
+
+        public Output put(long value) {
+            ensure( 20 );
+            if (value < 0) {
+                if (value == Long.MIN_VALUE)
+                    return put( "-9223372036854775808" );
+                buffer.put( (byte) '-' );
+                value = -value;
+            }
+            int digits = 1;
+            for (long power = 10; digits < 19 && value >= power; power *= 10)
+                digits++;
+            int start = buffer.position();
+            for (int i = start + digits - 1; i >= start; i--) {
+                buffer.put( i, (byte) ('0' + value % 10) );
+                value /= 10;
+            }
+            buffer.position( start + digits );
+            return this;
+        }
+
+        public Output put(int value) {
+            return put( (long) value );
+        }
+
+        public Output put(double value) {
+            return put( Double.toString( value ) );
+        }
+
+        public Output put(byte[] bytes) {
+            for (int from = 0; from < bytes.length; ) {
+                ensure( 1 );
+                int n = Math.min( buffer.remaining(), bytes.length - from );
+                buffer.put( bytes, from, n );
+                from += n;
+            }
+            return this;
+        }
+
+        public Output newLine() {
+            ensure( 1 );
+            buffer.put( (byte) '\n' );
+            return this;
+        }
+
+        /**
+         * The end of an element: unordered writes never cut the buffer before this point.
+         */
+        void mark() {
+            mark = buffer.position();
+        }
+
+        private void ensure(int bytes) {
+            while (buffer.remaining() < bytes)
+                run.full( this, bytes );
+        }
+    }
+
+    /**
+     * One write of one stream: the chunks, the order in which they are written and the bytes written so far.
+     */
+    private final class Run {
+        private final WritableByteChannel out;
+        private final List<Spliterator<?>> parts = new ArrayList<>();
+        private final List<Queue<ByteBuffer>> waiting = new ArrayList<>();
+        private final boolean[] finished;
+        private final AtomicInteger next = new AtomicInteger();
+        private final ReentrantLock writeLock = new ReentrantLock();
+        private final Object syncLock = new Object();
+        private final ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+        private volatile int turn;          // ordered: the leftmost unfinished chunk
+        private volatile long written;
+        private volatile long nextSync = syncEvery;
+        private long synced;                // guarded by syncLock
+        private volatile boolean failed;
+
+        Run(WritableByteChannel out, Spliterator<?> source, boolean parallel) {
+            this.out = out;
+            int chunks = (pool.getParallelism() + 1) * CHUNKS_PER_TASK;
+            split( source, parallel ? 32 - Integer.numberOfLeadingZeros( chunks - 1 ) : 0 );
+            for (int i = 0; i < parts.size(); i++)
+                waiting.add( new ConcurrentLinkedQueue<>() );
+            finished = new boolean[parts.size()];
+        }
+
+        /**
+         * Splits in encounter order, at most depth times in a row, and not below MIN_CHUNK elements.
+         */
+        private void split(Spliterator<?> part, int depth) {
+            Spliterator<?> prefix;
+            if (depth > 0 && part.estimateSize() > MIN_CHUNK && (prefix = part.trySplit()) != null) {
+                split( prefix, depth - 1 );
+                split( part, depth - 1 );
+            } else {
+                parts.add( part );
+            }
+        }
+
+        long run(Drain drain) {
+            Runnable worker = () -> {
+                Output output = new Output( this );
+                try {
+                    for (int chunk; !failed && (chunk = next.getAndIncrement()) < parts.size(); ) {
+                        if (output.buffer == null)
+                            output.buffer = acquire();
+                        output.chunk = chunk;
+                        output.mark = output.buffer.position();     // unordered: complete elements of the last chunk
+                        drain.drain( parts.get( chunk ), output );
+                        if (ordered)
+                            finish( output );
+                    }
+                    if (!ordered && output.buffer != null) {
+                        write( output.buffer.flip() );
+                        sync( false );
+                    }
+                } catch (RuntimeException | Error e) {
+                    failed = true;
+                    throw e;
+                } finally {
+                    if (output.buffer != null)
+                        release( output.buffer );
+                }
+            };
+            int helpers = Math.min( parts.size(), pool.getParallelism() + 1 ) - 1;
+            List<ForkJoinTask<?>> tasks = new ArrayList<>( helpers );
+            for (int i = 0; i < helpers; i++)
+                tasks.add( pool.submit( worker ) );
+            Throwable failure = null;
+            try {
+                worker.run();
+            } catch (RuntimeException | Error e) {
+                failure = e;
+            }
+            for (ForkJoinTask<?> t : tasks) {
+                try {
+                    t.join();
+                } catch (RuntimeException | Error e) {
+                    if (failure == null)
+                        failure = e;
+                }
+            }
+            if (failure instanceof RuntimeException)
+                throw (RuntimeException) failure;
+            if (failure != null)
+                throw (Error) failure;
+            sync( true );
+            return written;
+        }
+
+        /**
+         * The buffer of the output has no room for the given number of bytes.
+         */
+        void full(Output output, int bytes) {
+            ByteBuffer buffer = output.buffer;
+            if (ordered) {
+                output.buffer = acquire();
+                output.mark = 0;
+                hand( output.chunk, buffer.flip() );
+                return;
+            }
+            if (output.mark > 0) {
+                int end = buffer.position();
+                write( buffer.flip().limit( output.mark ) );
+                buffer.limit( end ).position( output.mark );
+                buffer.compact();
+                output.mark = 0;
+                sync( false );
+            }
+            if (buffer.remaining() < bytes) {
+                // one element bigger than the buffer: it has to stay in one piece
+                output.buffer = ByteBuffer.allocateDirect( buffer.capacity() * 2 ).put( buffer.flip() );
+                release( buffer );
+            }
+        }
+
+        /**
+         * Ordered: a full buffer of the chunk is written at once if the chunk is the leftmost unfinished one,
+         * after the buffers of the chunk that were waiting; otherwise it waits.
+         */
+        private void hand(int chunk, ByteBuffer buffer) {
+            if (turn != chunk) {
+                waiting.get( chunk ).add( buffer );
+                return;
+            }
+            writeLock.lock();
+            try {
+                writeWaiting( chunk );
+                write( buffer );
+            } finally {
+                writeLock.unlock();
+            }
+            release( buffer );
+            sync( false );
+        }
+
+        private void finish(Output output) {
+            int chunk = output.chunk;
+            if (output.buffer.position() > 0) {
+                waiting.get( chunk ).add( output.buffer.flip() );
+                output.buffer = null;
+            }
+            writeLock.lock();
+            try {
+                finished[chunk] = true;
+                while (turn < parts.size() && finished[turn]) {
+                    writeWaiting( turn );
+                    turn++;
+                }
+                if (turn < parts.size())
+                    writeWaiting( turn );
+            } finally {
+                writeLock.unlock();
+            }
+            sync( false );
+        }
+
+        /**
+         * Under the write lock.
+         */
+        private void writeWaiting(int chunk) {
+            for (ByteBuffer buffer; (buffer = waiting.get( chunk ).poll()) != null; ) {
+                write( buffer );
+                release( buffer );
+            }
+        }
+
+        private void write(ByteBuffer buffer) {
+            writeLock.lock();
+            try {
+                int bytes = buffer.remaining();
+                while (buffer.hasRemaining())
+                    out.write( buffer );
+                written += bytes;
+            } catch (IOException e) {
+                throw new UncheckedIOException( e );
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        /**
+         * Group commit: one force() at a time, and it covers everything written before it started.
+         * A thread that waited for it returns without forcing again if its bytes are covered.
+         */
+        private void sync(boolean last) {
+            long target = written;
+            if (syncEvery < 0 || !last && target < nextSync)
+                return;
+            synchronized (syncLock) {
+                if (synced >= target)
+                    return;
+                long covered = written;
+                nextSync = covered > Long.MAX_VALUE - syncEvery ? Long.MAX_VALUE : covered + syncEvery;
+                try {
+                    ((FileChannel) out).force( false );
+                } catch (IOException e) {
+                    throw new UncheckedIOException( e );
+                }
+                synced = covered;
+            }
+        }
+    }
+}
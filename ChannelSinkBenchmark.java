@@ -0,0 +1,90 @@
+package NEW.Collection.Stream;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * Summary: ✔️ Writing a stream to a file line by line: forEach( println ) vs {@link ChannelSink} ✔️
+ * <p>
+ * n lines "record-i,i*31" into one file of the temp directory (-Dbench.dir to change), rewritten by every call.
+ * loop             -> a for loop into a BufferedWriter, the baseline.
+ * println          -> list.stream().forEach( out::println ) with a PrintStream that flushes on println, as System.out.
+ * println-par      -> the same with parallelStream(): every thread takes the lock of the PrintStream.
+ * sink / sink-par  -> ChannelSink.to( file ).lines( ... ), sequential and parallel (ordered).
+ * sink-unordered   -> parallel, every thread writes its own buffers.
+ * sink-long        -> lines( LongStream ): the numbers go to the buffer as digits, no String at all.
+ * sink-sync-par    -> parallel with a group-commit force() every 4 MB (depends a lot on the disk).
+ */
+public class ChannelSinkBenchmark {
+    public static void main(String[] args) throws IOException {
+        Bench bench = new Bench();
+        Path dir = Path.of( System.getProperty( "bench.dir", System.getProperty( "java.io.tmpdir" ) ) );
+        Path file = Files.createTempFile( dir, "lines", ".txt" );
+        file.toFile().deleteOnExit();
+        for (int n : Bench.sizes( "1e5,1e6" )) {
+            List<String> lines = LongStream.range( 0, n ).mapToObj( i -> "record-" + i + "," + i * 31 ).collect( Collectors.toList() );
+
+            bench.run( "lines", Bench.LOOP, n, () -> {
+                try (BufferedWriter writer = Files.newBufferedWriter( file )) {
+                    for (String line : lines) {
+                        writer.write( line );
+                        writer.newLine();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException( e );
+                }
+                return lines.size();
+            } );
+            bench.run( "lines", "println", n, () -> {
+                try (PrintStream out = new PrintStream( new FileOutputStream( file.toFile() ), true )) {
+                    lines.stream().forEach( out::println );
+                } catch (IOException e) {
+                    throw new UncheckedIOException( e );
+                }
+                return lines.size();
+            } );
+            bench.run( "lines", "println-par", n, () -> {
+                try (PrintStream out = new PrintStream( new FileOutputStream( file.toFile() ), true )) {
+                    lines.parallelStream().forEach( out::println );
+                } catch (IOException e) {
+                    throw new UncheckedIOException( e );
+                }
+                return lines.size();
+            } );
+            bench.run( "lines", "sink", n, () -> ChannelSink.to( file ).lines( lines.stream() ) );
+            bench.run( "lines", "sink-par", n, () -> ChannelSink.to( file ).lines( lines.parallelStream() ) );
+            bench.run( "lines", "sink-unordered", n, () -> ChannelSink.to( file ).unordered().lines( lines.parallelStream() ) );
+            bench.run( "lines", "sink-sync-par", n, () -> ChannelSink.to( file ).sync( 1 << 22 ).lines( lines.parallelStream() ) );
+
+            bench.run( "numbers", Bench.LOOP, n, () -> {
+                try (BufferedWriter writer = Files.newBufferedWriter( file )) {
+                    for (long i = 0; i < n; i++) {
+                        writer.write( Long.toString( i * 31 ) );
+                        writer.newLine();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException( e );
+                }
+                return n;
+            } );
+            bench.run( "numbers", "println", n, () -> {
+                try (PrintStream out = new PrintStream( new FileOutputStream( file.toFile() ), true )) {
+                    LongStream.range( 0, n ).map( i -> i * 31 ).forEach( out::println );
+                } catch (IOException e) {
+                    throw new UncheckedIOException( e );
+                }
+                return n;
+            } );
+            bench.run( "numbers", "sink-long", n, () -> ChannelSink.to( file ).lines( LongStream.range( 0, n ).map( i -> i * 31 ) ) );
+            bench.run( "numbers", "sink-long-par", n, () -> ChannelSink.to( file ).lines( LongStream.range( 0, n ).parallel().map( i -> i * 31 ) ) );
+        }
+    }
+}
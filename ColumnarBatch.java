@@ -0,0 +1,519 @@
+package NEW.Collection.Stream;
+
+import java.util.*;
+import java.util.function.*;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Summary: ✔️ Records as columns (one primitive array per field) queried column at a time ✔️
+ * <p>
+ * A Stream<Employee> reads every field through a pointer to an object somewhere in the heap; a filter on one
+ * field still drags whole objects through the cache. Here every field is an int[] / long[] / double[]
+ * (Object[] for anything else), and a query is a list of steps over a selection vector, the indices of the rows
+ * still selected:
+ * ColumnarBatch batch = ColumnarBatch.from( employees ).ints( "age", Employee::getAge )
+ * .doubles( "salary", Employee::getSalary ).doubles( "tax", Employee::getTax ).build();
+ * double net = batch.query()
+ * .whereInt( "age", age -> age >= 30 )                          // reads only the age column
+ * .computeDouble( "net", "salary", "tax", (s, t) -> s * (1 - t) ) // only for the selected rows
+ * .sumDouble( "net" );
+ * <p>
+ * The steps run when the terminal operation (count, sum, statistics, rows, toStream) starts, over chunks of
+ * {@link #CHUNK} rows: the selection vector of a chunk stays in L1, and every step is a tight loop over one or
+ * two arrays. parallel() gives the chunks to the common ForkJoinPool and merges the partial aggregates.
+ * Computed columns exist per chunk only, for the later steps and the aggregates. Rows go back to objects only
+ * in toStream( row -> ... ), for the selected rows.
+ */
+public final class ColumnarBatch {
+    static final int CHUNK = 1024;
+
+    private final int size;
+    private final Map<String, Object> columns;
+
+    private ColumnarBatch(int size, Map<String, Object> columns) {
+        this.size = size;
+        this.columns = columns;
+    }
+
+    public static Builder builder(int size) {
+        return new Builder( size );
+    }
+
+    /**
+     * Copies the fields of the rows into columns, one extractor per field.
+     */
+    public static <T> RowBuilder<T> from(List<? extends T> rows) {
+        return new RowBuilder<>( rows );
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Set<String> columnNames() {
+        return Collections.unmodifiableSet( columns.keySet() );
+    }
+
+    public int[] ints(String name) {
+        return column( columns, name, int[].class );
+    }
+
+    public long[] longs(String name) {
+        return column( columns, name, long[].class );
+    }
+
+    public double[] doubles(String name) {
+        return column( columns, name, double[].class );
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T[] objects(String name) {
+        return (T[]) column( columns, name, Object[].class );
+    }
+
+    public Query query() {
+        return new Query( this );
+    }
+
+    private static <A> A column(Map<String, Object> columns, String name, Class<A> type) {
+        Object column = columns.get( name );
+        if (column == null)
+            throw new IllegalArgumentException( "no column " + name + ", columns: " + columns.keySet() );
+        if (!type.isInstance( column ))
+            throw new IllegalArgumentException( "column " + name + " is " + column.getClass().getSimpleName()
+                    + ", not " + type.getSimpleName() );
+        return type.cast( column );
+    }
+
+    public static final class Builder {
+        private final int size;
+        private final Map<String, Object> columns = new LinkedHashMap<>();
+
+        private Builder(int size) {
+            if (size < 0)
+                throw new IllegalArgumentException( "size < 0: " + size );
+            this.size = size;
+        }
+
+        public Builder ints(String name, int[] values) {
+            return add( name, values, values.length );
+        }
+
+        public Builder longs(String name, long[] values) {
+            return add( name, values, values.length );
+        }
+
+        public Builder doubles(String name, double[] values) {
+            return add( name, values, values.length );
+        }
+
+        public Builder objects(String name, Object[] values) {
+            return add( name, values, values.length );
+        }
+
+        private Builder add(String name, Object values, int length) {
+            if (length != size)
+                throw new IllegalArgumentException( "column " + name + " has " + length + " rows, the batch " + size );
+            if (columns.putIfAbsent( Objects.requireNonNull( name ), values ) != null)
+                throw new IllegalArgumentException( "duplicate column " + name );
+            return this;
+        }
+
+        public ColumnarBatch build() {
+            return new ColumnarBatch( size, new LinkedHashMap<>( columns ) );
+        }
+    }
+
+    public static final class RowBuilder<T> {
+        private final List<? extends T> rows;
+        private final Builder builder;
+
+        private RowBuilder(List<? extends T> rows) {
+            this.rows = rows;
+            this.builder = new Builder( rows.size() );
+        }
+
+        public RowBuilder<T> ints(String name, ToIntFunction<? super T> field) {
+            int[] values = new int[rows.size()];
+            int i = 0;
+            for (T row : rows)
+                values[i++] = field.applyAsInt( row );
+            builder.ints( name, values );
+            return this;
+        }
+
+        public RowBuilder<T> longs(String name, ToLongFunction<? super T> field) {
+            long[] values = new long[rows.size()];
+            int i = 0;
+            for (T row : rows)
+                values[i++] = field.applyAsLong( row );
+            builder.longs( name, values );
+            return this;
+        }
+
+        public RowBuilder<T> doubles(String name, ToDoubleFunction<? super T> field) {
+            double[] values = new double[rows.size()];
+            int i = 0;
+            for (T row : rows)
+                values[i++] = field.applyAsDouble( row );
+            builder.doubles( name, values );
+            return this;
+        }
+
+        public RowBuilder<T> objects(String name, Function<? super T, ?> field) {
+            Object[] values = new Object[rows.size()];
+            int i = 0;
+            for (T row : rows)
+                values[i++] = field.apply( row );
+            builder.objects( name, values );
+            return this;
+        }
+
+        public ColumnarBatch build() {
+            return builder.build();
+        }
+    }
+
+    /**
+     * The state of one chunk of rows: the selection vector, selection[0 .. count) are row indices in ascending
+     * order, and the computed columns, indexed by row - from. Every thread of a parallel query has its own.
+     */
+    private static final class Chunk {
+        final int[] selection = new int[CHUNK];
+        final double[][] computed;
+        int from;
+
+        Chunk(int computedColumns) {
+            this.computed = new double[computedColumns][CHUNK];
+        }
+    }
+
+    /**
+     * One step over the selected rows of a chunk. Returns the new count; a filter compacts the selection in place.
+     */
+    private interface Step {
+        int apply(Chunk chunk, int count);
+    }
+
+    /**
+     * The steps of one query. Like a stream it is built once and used by one terminal operation.
+     * Computed columns live only while their chunk is processed: later steps and the aggregates can read them,
+     * but they are not kept for toStream().
+     */
+    public static final class Query {
+        private final ColumnarBatch batch;
+        private final Map<String, Integer> computed = new HashMap<>();
+        private final List<Step> steps = new ArrayList<>();
+        private boolean parallel;
+        private boolean used;
+
+        private Query(ColumnarBatch batch) {
+            this.batch = batch;
+        }
+
+        public Query parallel() {
+            parallel = true;
+            return this;
+        }
+
+        public Query whereInt(String column, IntPredicate predicate) {
+            int[] values = column( batch.columns, column, int[].class );
+            steps.add( (chunk, count) -> {
+                int[] selection = chunk.selection;
+                int kept = 0;
+                for (int i = 0; i < count; i++) {
+                    int row = selection[i];
+                    if (predicate.test( values[row] ))
+                        selection[kept++] = row;
+                }
+                return kept;
+            } );
+            return this;
+        }
+
+        public Query whereLong(String column, LongPredicate predicate) {
+            long[] values = column( batch.columns, column, long[].class );
+            steps.add( (chunk, count) -> {
+                int[] selection = chunk.selection;
+                int kept = 0;
+                for (int i = 0; i < count; i++) {
+                    int row = selection[i];
+                    if (predicate.test( values[row] ))
+                        selection[kept++] = row;
+                }
+                return kept;
+            } );
+            return this;
+        }
+
+        /**
+         * On a double column of the batch or a computed one.
+         */
+        public Query whereDouble(String column, DoublePredicate predicate) {
+            int slot = input( column );
+            double[] base = slot < 0 ? column( batch.columns, column, double[].class ) : null;
+            steps.add( (chunk, count) -> {
+                double[] values = slot < 0 ? base : chunk.computed[slot];
+                int offset = slot < 0 ? 0 : chunk.from;
+                int[] selection = chunk.selection;
+                int kept = 0;
+                for (int i = 0; i < count; i++) {
+                    int row = selection[i];
+                    if (predicate.test( values[row - offset] ))
+                        selection[kept++] = row;
+                }
+                return kept;
+            } );
+            return this;
+        }
+
+        @SuppressWarnings("unchecked")
+        public <T> Query where(String column, Predicate<? super T> predicate) {
+            T[] values = (T[]) column( batch.columns, column, Object[].class );
+            steps.add( (chunk, count) -> {
+                int[] selection = chunk.selection;
+                int kept = 0;
+                for (int i = 0; i < count; i++) {
+                    int row = selection[i];
+                    if (predicate.test( values[row] ))
+                        selection[kept++] = row;
+                }
+                return kept;
+            } );
+            return this;
+        }
+
+        /**
+         * A new double column from a numeric column, computed only for the rows selected at this step.
+         */
+        public Query computeDouble(String name, String column, DoubleUnaryOperator function) {
+            checkName( name );
+            int in = input( column );
+            double[] base = in < 0 ? column( batch.columns, column, double[].class ) : null;
+            int out = newSlot( name );
+            steps.add( (chunk, count) -> {
+                double[] values = in < 0 ? base : chunk.computed[in];
+                int offset = in < 0 ? 0 : chunk.from;
+                double[] result = chunk.computed[out];
+                int from = chunk.from;
+                int[] selection = chunk.selection;
+                for (int i = 0; i < count; i++) {
+                    int row = selection[i];
+                    result[row - from] = function.applyAsDouble( values[row - offset] );
+                }
+                return count;
+            } );
+            return this;
+        }
+
+        public Query computeDouble(String name, String left, String right, DoubleBinaryOperator function) {
+            checkName( name );
+            checkInput( right );
+            int inA = input( left ), inB = input( right );
+            double[] baseA = inA < 0 ? column( batch.columns, left, double[].class ) : null;
+            double[] baseB = inB < 0 ? column( batch.columns, right, double[].class ) : null;
+            int out = newSlot( name );
+            steps.add( (chunk, count) -> {
+                double[] a = inA < 0 ? baseA : chunk.computed[inA];
+                double[] b = inB < 0 ? baseB : chunk.computed[inB];
+                int offsetA = inA < 0 ? 0 : chunk.from, offsetB = inB < 0 ? 0 : chunk.from;
+                double[] result = chunk.computed[out];
+                int from = chunk.from;
+                int[] selection = chunk.selection;
+                for (int i = 0; i < count; i++) {
+                    int row = selection[i];
+                    result[row - from] = function.applyAsDouble( a[row - offsetA], b[row - offsetB] );
+                }
+                return count;
+            } );
+            return this;
+        }
+
+        public long count() {
+            return run( () -> new long[1], (sum, chunk, count) -> sum[0] += count, (a, b) -> a[0] += b[0] )[0];
+        }
+
+        /**
+         * Sum of an int or long column of the batch, as a long.
+         */
+        public long sumLong(String column) {
+            if (batch.columns.get( column ) instanceof int[]) {
+                int[] ints = (int[]) batch.columns.get( column );
+                return run( () -> new long[1], (sum, chunk, count) -> {
+                    long s = 0;
+                    for (int i = 0; i < count; i++)
+                        s += ints[chunk.selection[i]];
+                    sum[0] += s;
+                }, (a, b) -> a[0] += b[0] )[0];
+            }
+            long[] longs = column( batch.columns, column, long[].class );
+            return run( () -> new long[1], (sum, chunk, count) -> {
+                long s = 0;
+                for (int i = 0; i < count; i++)
+                    s += longs[chunk.selection[i]];
+                sum[0] += s;
+            }, (a, b) -> a[0] += b[0] )[0];
+        }
+
+        public double sumDouble(String column) {
+            return statistics( column ).getSum();
+        }
+
+        /**
+         * Count, sum, min, max and average of any numeric column, computed ones included.
+         */
+        public DoubleSummaryStatistics statistics(String column) {
+            int slot = input( column );
+            double[] base = slot < 0 ? column( batch.columns, column, double[].class ) : null;
+            return run( DoubleSummaryStatistics::new, (statistics, chunk, count) -> {
+                double[] values = slot < 0 ? base : chunk.computed[slot];
+                int offset = slot < 0 ? 0 : chunk.from;
+                for (int i = 0; i < count; i++)
+                    statistics.accept( values[chunk.selection[i] - offset] );
+            }, DoubleSummaryStatistics::combine );
+        }
+
+        /**
+         * The indices of the selected rows, in ascending order.
+         */
+        public IntStream rows() {
+            return run( RowList::new, RowList::add, RowList::addAll ).stream();
+        }
+
+        /**
+         * The selected rows as objects: the only place where a row is built.
+         */
+        public <T> Stream<T> toStream(IntFunction<? extends T> row) {
+            return rows().mapToObj( row );
+        }
+
+        /**
+         * The slot of a computed column, or -1 for a double column of the batch. An int or long column is read
+         * as double through a hidden computed column, converted once, for the rows selected at that point.
+         */
+        private int input(String column) {
+            checkInput( column );
+            Integer slot = computed.get( column );
+            if (slot != null)
+                return slot;
+            Object values = batch.columns.get( column );
+            if (values instanceof double[])
+                return -1;
+            String hidden = "#double " + column;
+            slot = computed.get( hidden );
+            if (slot != null)
+                return slot;
+            int out = newSlot( hidden );
+            if (values instanceof int[]) {
+                int[] ints = (int[]) values;
+                steps.add( (chunk, count) -> {
+                    for (int i = 0; i < count; i++)
+                        chunk.computed[out][chunk.selection[i] - chunk.from] = ints[chunk.selection[i]];
+                    return count;
+                } );
+            } else {
+                long[] longs = (long[]) values;
+                steps.add( (chunk, count) -> {
+                    for (int i = 0; i < count; i++)
+                        chunk.computed[out][chunk.selection[i] - chunk.from] = longs[chunk.selection[i]];
+                    return count;
+                } );
+            }
+            return out;
+        }
+
+        /**
+         * Throws for a column input() cannot read, before the query is changed.
+         */
+        private void checkInput(String column) {
+            if (computed.containsKey( column ))
+                return;
+            Object values = batch.columns.get( column );
+            if (!(values instanceof int[]) && !(values instanceof long[]))
+                column( batch.columns, column, double[].class );
+        }
+
+        private void checkName(String name) {
+            if (batch.columns.containsKey( name ) || computed.containsKey( name ))
+                throw new IllegalArgumentException( "duplicate column " + name );
+        }
+
+        private int newSlot(String name) {
+            checkName( name );
+            int slot = computed.size();
+            computed.put( name, slot );
+            return slot;
+        }
+
+        private interface ChunkConsumer<A> {
+            void accept(A accumulator, Chunk chunk, int count);
+        }
+
+        /**
+         * Runs the steps chunk by chunk and hands every selection to the aggregate.
+         */
+        private <A> A run(Supplier<A> supplier, ChunkConsumer<A> aggregate, BiConsumer<A, A> merge) {
+            if (used)
+                throw new IllegalStateException( "query has already been run" );
+            used = true;
+            int chunks = (batch.size + CHUNK - 1) / CHUNK;
+            Step[] plan = steps.toArray( new Step[0] );
+            int slots = computed.size();
+            IntStream range = IntStream.range( 0, chunks );
+            Worker<A> result = (parallel ? range.parallel() : range).collect(
+                    () -> new Worker<>( supplier.get(), slots ),
+                    (worker, index) -> worker.run( index, batch.size, plan, aggregate ),
+                    (a, b) -> merge.accept( a.accumulator, b.accumulator ) );
+            return result.accumulator;
+        }
+
+        private static final class Worker<A> {
+            final A accumulator;
+            final Chunk chunk;
+
+            Worker(A accumulator, int slots) {
+                this.accumulator = accumulator;
+                this.chunk = new Chunk( slots );
+            }
+
+            void run(int index, int size, Step[] plan, ChunkConsumer<A> aggregate) {
+                int from = index * CHUNK;
+                int count = Math.min( CHUNK, size - from );
+                chunk.from = from;
+                for (int i = 0; i < count; i++)
+                    chunk.selection[i] = from + i;
+                for (Step step : plan) {
+                    if (count == 0)
+                        return;
+                    count = step.apply( chunk, count );
+                }
+                aggregate.accept( accumulator, chunk, count );
+            }
+        }
+
+        private static final class RowList {
+            private int[] rows = new int[CHUNK];
+            private int size;
+
+            void add(Chunk chunk, int count) {
+                add( chunk.selection, count );
+            }
+
+            void addAll(RowList other) {
+                add( other.rows, other.size );
+            }
+
+            private void add(int[] selection, int count) {
+                if (size + count > rows.length)
+                    rows = Arrays.copyOf( rows, Math.max( size + count, rows.length * 2 ) );
+                System.arraycopy( selection, 0, rows, size, count );
+                size += count;
+            }
+
+            IntStream stream() {
+                return Arrays.stream( rows, 0, size );
+            }
+        }
+    }
+}
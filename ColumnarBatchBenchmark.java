@@ -0,0 +1,102 @@
+package NEW.Collection.Stream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Summary: ✔️ filter -> compute -> sum over records with 12 fields: Stream of objects vs {@link ColumnarBatch} ✔️
+ * <p>
+ * The query: net salary of employees of one department aged 30 or more, about 7% of the rows.
+ * pojo / pojo-par -> Stream<Employee> over an ArrayList, the objects allocated in random order
+ * (as after a while of a real application), so neighbours in the list are not neighbours in memory;
+ * columnar / columnar-par -> the same query over the columns; loop -> a hand-written loop over the columns.
+ * 1e7 rows need about 2 GB of heap (-Xmx3g).
+ */
+public class ColumnarBatchBenchmark {
+    static final class Employee {
+        final long id;
+        final String name;
+        final int age;
+        final int department;
+        final int level;
+        final int office;
+        final long hiredAt;
+        final double salary;
+        final double tax;
+        final double bonus;
+        final double rating;
+        final boolean active;
+
+        Employee(long id, SplittableRandom random) {
+            this.id = id;
+            this.name = "employee-" + id;
+            this.age = random.nextInt( 20, 65 );
+            this.department = random.nextInt( 10 );
+            this.level = random.nextInt( 1, 8 );
+            this.office = random.nextInt( 40 );
+            this.hiredAt = random.nextLong( 1_000_000_000_000L, 1_700_000_000_000L );
+            this.salary = random.nextDouble( 1000, 9000 );
+            this.tax = random.nextDouble( 0.1, 0.4 );
+            this.bonus = random.nextDouble( 0, 500 );
+            this.rating = random.nextDouble( 1, 5 );
+            this.active = random.nextBoolean();
+        }
+    }
+
+    public static void main(String[] args) {
+        Bench bench = new Bench();
+        for (int n : Bench.sizes( "1e5,1e6" )) {
+            List<Employee> employees = employees( n );
+            ColumnarBatch batch = ColumnarBatch.from( employees )
+                    .longs( "id", e -> e.id ).objects( "name", e -> e.name )
+                    .ints( "age", e -> e.age ).ints( "department", e -> e.department )
+                    .ints( "level", e -> e.level ).ints( "office", e -> e.office )
+                    .longs( "hiredAt", e -> e.hiredAt ).doubles( "salary", e -> e.salary )
+                    .doubles( "tax", e -> e.tax ).doubles( "bonus", e -> e.bonus )
+                    .doubles( "rating", e -> e.rating ).ints( "active", e -> e.active ? 1 : 0 )
+                    .build();
+            int[] age = batch.ints( "age" ), department = batch.ints( "department" );
+            double[] salary = batch.doubles( "salary" ), tax = batch.doubles( "tax" );
+
+            bench.run( "net-salary", Bench.LOOP, n, () -> {
+                double sum = 0;
+                for (int i = 0; i < n; i++)
+                    if (age[i] >= 30 && department[i] == 3)
+                        sum += salary[i] * (1 - tax[i]);
+                return (long) sum;
+            } );
+            bench.run( "net-salary", "pojo", n, () -> (long) employees.stream()
+                    .filter( e -> e.age >= 30 && e.department == 3 )
+                    .mapToDouble( e -> e.salary * (1 - e.tax) )
+                    .sum() );
+            bench.run( "net-salary", "pojo-par", n, () -> (long) employees.parallelStream()
+                    .filter( e -> e.age >= 30 && e.department == 3 )
+                    .mapToDouble( e -> e.salary * (1 - e.tax) )
+                    .sum() );
+            bench.run( "net-salary", "columnar", n, () -> (long) batch.query()
+                    .whereInt( "age", a -> a >= 30 )
+                    .whereInt( "department", d -> d == 3 )
+                    .computeDouble( "net", "salary", "tax", (s, t) -> s * (1 - t) )
+                    .sumDouble( "net" ) );
+            bench.run( "net-salary", "columnar-par", n, () -> (long) batch.query()
+                    .whereInt( "age", a -> a >= 30 )
+                    .whereInt( "department", d -> d == 3 )
+                    .computeDouble( "net", "salary", "tax", (s, t) -> s * (1 - t) )
+                    .parallel()
+                    .sumDouble( "net" ) );
+        }
+    }
+
+    /**
+     * Allocated in random order, then listed by id: the list walks the heap in random jumps.
+     */
+    private static List<Employee> employees(int n) {
+        SplittableRandom random = new SplittableRandom( 42 );
+        int[] order = random.ints( 0, n ).distinct().limit( n ).toArray();
+        Employee[] byId = new Employee[n];
+        for (int id : order)
+            byId[id] = new Employee( id, random );
+        return new ArrayList<>( List.of( byId ) );
+    }
+}
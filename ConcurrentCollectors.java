@@ -0,0 +1,186 @@
+package NEW.Collection.Stream;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collector;
+
+/**
+ * Summary: ✔️ partitioningBy / groupingBy for parallel streams that never merge maps ✔️
+ * <p>
+ * Collectors.partitioningBy( ... ) under parallel() builds a map of lists in every fork and concatenates
+ * the lists at every join. These collectors are CONCURRENT and UNORDERED: all threads add to one shared container,
+ * so the fork/join framework has nothing to merge.
+ * <p>
+ * The elements of a group go to a {@link StripedBag}: one append-only chunk list per stripe, a thread picks its stripe
+ * by its id, and a slot in a chunk is claimed with one atomic increment (no locks).
+ * Groups live in a ConcurrentHashMap, which only locks a bin the first time a key is seen.
+ * <p>
+ * The lists in the result are in no particular order (that is the price of UNORDERED).
+ * Like Collectors.groupingBy, a null key is not allowed.
+ * <p>
+ * Map<Boolean, List<String>> map = strings.parallel().collect( ConcurrentCollectors.partitioningBy( s -> s.length() <= 2 ) );
+ */
+public final class ConcurrentCollectors {
+    private static final Collector.Characteristics[] CONCURRENT_UNORDERED =
+            { Collector.Characteristics.CONCURRENT, Collector.Characteristics.UNORDERED };
+
+    private ConcurrentCollectors() {
+    }
+
+    public static <T> Collector<T, ?, Map<Boolean, List<T>>> partitioningBy(Predicate<? super T> predicate) {
+        return Collector.<T, StripedBag<T>[], Map<Boolean, List<T>>>of(
+                () -> newBags( 2 ),
+                (bags, t) -> bags[predicate.test( t ) ? 1 : 0].add( t ),
+                (left, right) -> {
+                    left[0].addAll( right[0] );
+                    left[1].addAll( right[1] );
+                    return left;
+                },
+                bags -> Map.of( false, bags[0].toList(), true, bags[1].toList() ),
+                CONCURRENT_UNORDERED );
+    }
+
+    public static <T> Collector<T, ?, Map<Boolean, Long>> partitioningByCounting(Predicate<? super T> predicate) {
+        return Collector.<T, LongAdder[], Map<Boolean, Long>>of(
+                () -> new LongAdder[]{ new LongAdder(), new LongAdder() },
+                (counts, t) -> counts[predicate.test( t ) ? 1 : 0].increment(),
+                (left, right) -> {
+                    left[0].add( right[0].sum() );
+                    left[1].add( right[1].sum() );
+                    return left;
+                },
+                counts -> Map.of( false, counts[0].sum(), true, counts[1].sum() ),
+                CONCURRENT_UNORDERED );
+    }
+
+    public static <T, K> Collector<T, ?, Map<K, List<T>>> groupingBy(Function<? super T, ? extends K> classifier) {
+        return Collector.<T, ConcurrentHashMap<K, StripedBag<T>>, Map<K, List<T>>>of(
+                ConcurrentHashMap::new,
+                (groups, t) -> bag( groups, key( classifier, t ) ).add( t ),
+                (left, right) -> {
+                    right.forEach( (k, bag) -> bag( left, k ).addAll( bag ) );
+                    return left;
+                },
+                groups -> {
+                    Map<K, List<T>> result = new HashMap<>( groups.size() * 4 / 3 + 1 );
+                    groups.forEach( (k, bag) -> result.put( k, bag.toList() ) );
+                    return result;
+                },
+                CONCURRENT_UNORDERED );
+    }
+
+    public static <T, K> Collector<T, ?, Map<K, Long>> groupingByCounting(Function<? super T, ? extends K> classifier) {
+        return Collector.<T, ConcurrentHashMap<K, LongAdder>, Map<K, Long>>of(
+                ConcurrentHashMap::new,
+                (groups, t) -> counter( groups, key( classifier, t ) ).increment(),
+                (left, right) -> {
+                    right.forEach( (k, count) -> counter( left, k ).add( count.sum() ) );
+                    return left;
+                },
+                groups -> {
+                    Map<K, Long> result = new HashMap<>( groups.size() * 4 / 3 + 1 );
+                    groups.forEach( (k, count) -> result.put( k, count.sum() ) );
+                    return result;
+                },
+                CONCURRENT_UNORDERED );
+    }
+
+    private static <T, K> K key(Function<? super T, ? extends K> classifier, T t) {
+        return Objects.requireNonNull( classifier.apply( t ), "element cannot be mapped to a null key" );
+    }
+
+    private static <K, T> StripedBag<T> bag(ConcurrentHashMap<K, StripedBag<T>> groups, K key) {
+        StripedBag<T> bag = groups.get( key );
+        return bag != null ? bag : groups.computeIfAbsent( key, k -> new StripedBag<>() );
+    }
+
+    private static <K> LongAdder counter(ConcurrentHashMap<K, LongAdder> groups, K key) {
+        LongAdder count = groups.get( key );
+        return count != null ? count : groups.computeIfAbsent( key, k -> new LongAdder() );
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static <T> StripedBag<T>[] newBags(int n) {
+        StripedBag<T>[] bags = new StripedBag[n];
+        for (int i = 0; i < n; i++)
+            bags[i] = new StripedBag<>();
+        return bags;
+    }
+
+    /**
+     * A lock-free multiset for many writers followed by one reader.
+     * Every stripe is a linked list of chunks (newest first), chunk sizes double from 16 up to 8192,
+     * so a small group does not pay for big arrays.
+     * The elements must be read after all writers finished (the end of a stream's terminal operation).
+     */
+    static final class StripedBag<T> {
+        static final int STRIPES = Integer.highestOneBit( Runtime.getRuntime().availableProcessors() * 2 - 1 ) << 1;
+        private static final int FIRST_CHUNK = 16;
+        private static final int MAX_CHUNK = 8192;
+
+        private final AtomicReferenceArray<Chunk> stripes = new AtomicReferenceArray<>( STRIPES );
+
+        void add(T t) {
+            int stripe = IntHashSet.mix( (int) Thread.currentThread().getId() ) & (STRIPES - 1);
+            Chunk chunk = stripes.get( stripe );
+            for (;;) {
+                if (chunk != null) {
+                    int i = chunk.next.getAndIncrement();
+                    if (i < chunk.items.length) {
+                        chunk.items[i] = t;
+                        return;
+                    }
+                }
+                Chunk fresh = new Chunk( chunk == null ? FIRST_CHUNK : Math.min( chunk.items.length * 2, MAX_CHUNK ), chunk );
+                chunk = stripes.compareAndSet( stripe, chunk, fresh ) ? fresh : stripes.get( stripe );
+            }
+        }
+
+        void addAll(StripedBag<T> other) {
+            other.forEach( this::add );
+        }
+
+        int size() {
+            int size = 0;
+            for (int s = 0; s < STRIPES; s++)
+                for (Chunk c = stripes.get( s ); c != null; c = c.previous)
+                    size += c.size();
+            return size;
+        }
+
+        @SuppressWarnings("unchecked")
+        void forEach(Consumer<? super T> action) {
+            for (int s = 0; s < STRIPES; s++)
+                for (Chunk c = stripes.get( s ); c != null; c = c.previous)
+                    for (int i = 0, n = c.size(); i < n; i++)
+                        action.accept( (T) c.items[i] );
+        }
+
+        List<T> toList() {
+            List<T> list = new ArrayList<>( size() );
+            forEach( list::add );
+            return list;
+        }
+
+        private static final class Chunk {
+            final Object[] items;
+            final AtomicInteger next = new AtomicInteger();
+            final Chunk previous;
+
+            Chunk(int capacity, Chunk previous) {
+                this.items = new Object[capacity];
+                this.previous = previous;
+            }
+
+            int size() {
+                return Math.min( next.get(), items.length );
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package NEW.Collection.Stream;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Summary: ✔️ Scaling of partitioningBy / groupingBy from 1 to N cores: JDK collectors vs {@link ConcurrentCollectors} ✔️
+ * <p>
+ * Every parallel stream runs inside a ForkJoinPool with the given parallelism (1, 2, 4 ... cores),
+ * the mode column shows the collector and the parallelism, e.g. "jdk@4".
+ * Group cardinalities: 2 (partitioningBy), 1e3 and 1e5 keys (groupingBy).
+ * -Dbench.cores=1,2,4,8 overrides the list of parallelism levels.
+ */
+public class ConcurrentCollectorsBenchmark {
+    public static void main(String[] args) {
+        Bench bench = new Bench();
+        for (int n : Bench.sizes( "1e5,1e6,1e7" )) {
+            Integer[] values = new SplittableRandom( 11 ).ints( n ).boxed().toArray( Integer[]::new );
+            for (int p : Bench.parallelism()) {
+                ForkJoinPool pool = new ForkJoinPool( p );
+                bench.run( "partitioningBy", "jdk@" + p, n, Bench.in( pool, () -> IntStream.range( 0, n ).parallel()
+                        .mapToObj( i -> values[i] )
+                        .collect( Collectors.partitioningBy( x -> (x & 1) == 0 ) ).get( true ).size() ) );
+                bench.run( "partitioningBy", "concurrent@" + p, n, Bench.in( pool, () -> IntStream.range( 0, n ).parallel()
+                        .mapToObj( i -> values[i] )
+                        .collect( ConcurrentCollectors.partitioningBy( x -> (x & 1) == 0 ) ).get( true ).size() ) );
+
+                for (int keys : new int[]{ 1000, 100_000 }) {
+                    String name = "groupingBy/" + keys;
+                    bench.run( name, "jdk@" + p, n, Bench.in( pool, () -> IntStream.range( 0, n ).parallel()
+                            .mapToObj( i -> values[i] )
+                            .collect( Collectors.groupingBy( x -> Math.floorMod( x, keys ) ) ).size() ) );
+                    bench.run( name, "jdk-concurrent@" + p, n, Bench.in( pool, () -> IntStream.range( 0, n ).parallel()
+                            .mapToObj( i -> values[i] )
+                            .collect( Collectors.groupingByConcurrent( x -> Math.floorMod( x, keys ) ) ).size() ) );
+                    bench.run( name, "concurrent@" + p, n, Bench.in( pool, () -> IntStream.range( 0, n ).parallel()
+                            .mapToObj( i -> values[i] )
+                            .collect( ConcurrentCollectors.groupingBy( x -> Math.floorMod( x, keys ) ) ).size() ) );
+                    bench.run( name + "/counting", "jdk@" + p, n, Bench.in( pool, () -> IntStream.range( 0, n ).parallel()
+                            .mapToObj( i -> values[i] )
+                            .collect( Collectors.groupingBy( x -> Math.floorMod( x, keys ), Collectors.counting() ) ).size() ) );
+                    bench.run( name + "/counting", "concurrent@" + p, n, Bench.in( pool, () -> IntStream.range( 0, n ).parallel()
+                            .mapToObj( i -> values[i] )
+                            .collect( ConcurrentCollectors.groupingByCounting( x -> Math.floorMod( x, keys ) ) ).size() ) );
+                }
+                pool.shutdown();
+            }
+        }
+    }
+}
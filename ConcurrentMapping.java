@@ -0,0 +1,224 @@
+package NEW.Collection.Stream;
+
+import java.lang.ref.Cleaner;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Summary: ✔️ map() for blocking I/O: up to N calls in flight at once, on virtual threads where available ✔️
+ * <p>
+ * map( fn ) runs fn on the calling thread, or on the common ForkJoinPool under parallel(),
+ * where a blocking call (HTTP, JDBC, file) keeps a pool thread busy doing nothing.
+ * mapConcurrent( stream, 64, fn ) starts fn for the next elements as soon as they are pulled, so up to 64 calls
+ * wait in parallel, and hands the results downstream:
+ * mapConcurrent          -> in encounter order (a slow element holds back the ones after it),
+ * mapConcurrentUnordered -> in completion order (whatever finishes first goes first).
+ * <p>
+ * The calls run on a new virtual thread each on JDK 21+, and on a cached pool of daemon threads on older JDKs.
+ * Another Executor can be passed explicitly.
+ * <p>
+ * Cancellation: if fn throws, the calls still in flight are cancelled (interrupted) and the exception is rethrown.
+ * An exception thrown downstream cancels them too. A short-circuiting operation (limit, findFirst, anyMatch)
+ * stops pulling and never closes the stream: up to maxConcurrency - 1 calls it no longer needs are then cancelled
+ * when the dropped pipeline is garbage collected. Closing the stream (try-with-resources) cancels them right away.
+ */
+public final class ConcurrentMapping {
+    static final Executor DEFAULT_EXECUTOR = defaultExecutor();
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private ConcurrentMapping() {
+    }
+
+    public static <T, R> Stream<R> mapConcurrent(Stream<T> stream, int maxConcurrency, Function<? super T, ? extends R> fn) {
+        return mapConcurrent( stream, maxConcurrency, true, DEFAULT_EXECUTOR, fn );
+    }
+
+    public static <T, R> Stream<R> mapConcurrentUnordered(Stream<T> stream, int maxConcurrency, Function<? super T, ? extends R> fn) {
+        return mapConcurrent( stream, maxConcurrency, false, DEFAULT_EXECUTOR, fn );
+    }
+
+    public static <T, R> Stream<R> mapConcurrent(Stream<T> stream, int maxConcurrency, boolean ordered,
+                                                 Executor executor, Function<? super T, ? extends R> fn) {
+        if (maxConcurrency < 1)
+            throw new IllegalArgumentException( "maxConcurrency must be positive: " + maxConcurrency );
+        Window<T, R> window = new Window<>( stream.spliterator(), maxConcurrency, ordered, executor, fn );
+        return StreamSupport.stream( window, stream.isParallel() )
+                .onClose( window::cancel )
+                .onClose( stream::close );
+    }
+
+    private static Executor defaultExecutor() {
+        try {
+            return (Executor) Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" ).invoke( null );
+        } catch (ReflectiveOperationException e) {
+            // before JDK 21: daemon threads created on demand, dropped after a minute without work
+            return new ThreadPoolExecutor( 0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+                Thread thread = new Thread( r, "mapConcurrent" );
+                thread.setDaemon( true );
+                return thread;
+            } );
+        }
+    }
+
+    /**
+     * Pulls source elements only to keep maxConcurrency calls in flight, emits one result per tryAdvance.
+     * Nothing the calls reference points back to the window, so it becomes unreachable as soon as the pipeline
+     * is dropped, and the cleaner then cancels whatever is still in flight.
+     */
+    private static final class Window<T, R> implements Spliterator<R> {
+        private final Spliterator<T> source;
+        private final int maxConcurrency;
+        private final boolean ordered;
+        private final Executor executor;
+        private final Function<? super T, ? extends R> fn;
+        private final InFlight<R> inFlight = new InFlight<>();
+        private final BlockingQueue<Call<R>> completed = new LinkedBlockingQueue<>();
+        private final Consumer<T> submit = this::submit;
+        private final Cleaner.Cleanable cleanable;
+        private boolean sourceDone;
+
+        Window(Spliterator<T> source, int maxConcurrency, boolean ordered, Executor executor,
+               Function<? super T, ? extends R> fn) {
+            this.source = source;
+            this.maxConcurrency = maxConcurrency;
+            this.ordered = ordered;
+            this.executor = executor;
+            this.fn = fn;
+            this.cleanable = CLEANER.register( this, inFlight::cancel );
+        }
+
+        private void submit(T element) {
+            Function<? super T, ? extends R> fn = this.fn;
+            Call<R> call = new Call<>( () -> fn.apply( element ), ordered ? null : completed );
+            inFlight.add( call );
+            executor.execute( call );
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super R> action) {
+            while (!sourceDone && inFlight.size() < maxConcurrency)
+                if (!source.tryAdvance( submit ))
+                    sourceDone = true;
+            if (inFlight.isEmpty()) {
+                cleanable.clean();
+                return false;
+            }
+            R result = await( ordered ? inFlight.poll() : nextCompleted() );
+            try {
+                action.accept( result );
+            } catch (RuntimeException | Error e) {
+                cancel();
+                throw e;
+            }
+            return true;
+        }
+
+        private Call<R> nextCompleted() {
+            try {
+                Call<R> call = completed.take();
+                inFlight.remove( call );
+                return call;
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new CancellationException( "interrupted while waiting for mapConcurrent" );
+            }
+        }
+
+        private R await(Call<R> call) {
+            try {
+                return call.get();
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new CancellationException( "interrupted while waiting for mapConcurrent" );
+            } catch (ExecutionException e) {
+                cancel();
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new CompletionException( cause );
+            }
+        }
+
+        void cancel() {
+            sourceDone = true;
+            cleanable.clean();
+        }
+
+        @Override
+        public Spliterator<R> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            long remaining = source.estimateSize();
+            return remaining == Long.MAX_VALUE ? remaining : remaining + inFlight.size();
+        }
+
+        @Override
+        public int characteristics() {
+            int keep = ordered ? Spliterator.ORDERED | Spliterator.SIZED : Spliterator.SIZED;
+            return source.characteristics() & keep;
+        }
+    }
+
+    /**
+     * Reports to the completion queue when the results are taken in completion order.
+     */
+    private static final class Call<R> extends FutureTask<R> {
+        private final Queue<Call<R>> completed;
+
+        Call(Callable<R> task, Queue<Call<R>> completed) {
+            super( task );
+            this.completed = completed;
+        }
+
+        @Override
+        protected void done() {
+            if (completed != null)
+                completed.offer( this );
+        }
+    }
+
+    /**
+     * The calls started and not yet taken, in start order. Shared with the cleaner thread.
+     */
+    private static final class InFlight<R> {
+        private final ArrayDeque<Call<R>> calls = new ArrayDeque<>();
+
+        synchronized void add(Call<R> call) {
+            calls.addLast( call );
+        }
+
+        synchronized Call<R> poll() {
+            return calls.pollFirst();
+        }
+
+        synchronized void remove(Call<R> call) {
+            calls.remove( call );
+        }
+
+        synchronized int size() {
+            return calls.size();
+        }
+
+        synchronized boolean isEmpty() {
+            return calls.isEmpty();
+        }
+
+        synchronized void cancel() {
+            for (Call<R> call; (call = calls.pollFirst()) != null; )
+                call.cancel( true );
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package NEW.Collection.Stream;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+/**
+ * Summary: ✔️ I/O-bound map(): plain, parallel() and {@link ConcurrentMapping} with a sleeping stub ✔️
+ * <p>
+ * The stub sleeps {@code -Dbench.latencyMicros} (1000 by default) per element, like a remote call,
+ * so the work is all waiting. map is bounded by 1 call at a time, map-par by the size of the common pool,
+ * mapConcurrent by its maxConcurrency.
+ */
+public class ConcurrentMappingBenchmark {
+    private static final long LATENCY_NANOS = Long.getLong( "bench.latencyMicros", 1000 ) * 1000;
+
+    public static void main(String[] args) {
+        Bench bench = new Bench();
+        for (int n : Bench.sizes( "1e2,1e3" )) {
+            bench.run( "io-map", "map", n, () -> IntStream.range( 0, n ).boxed()
+                    .map( ConcurrentMappingBenchmark::call ).mapToLong( Long::longValue ).sum() );
+            bench.run( "io-map", "map-par", n, () -> IntStream.range( 0, n ).boxed().parallel()
+                    .map( ConcurrentMappingBenchmark::call ).mapToLong( Long::longValue ).sum() );
+            for (int concurrency : new int[]{ 16, 64, 256 }) {
+                bench.run( "io-map", "concurrent/" + concurrency, n, () -> ConcurrentMapping
+                        .mapConcurrent( IntStream.range( 0, n ).boxed(), concurrency, ConcurrentMappingBenchmark::call )
+                        .mapToLong( Long::longValue ).sum() );
+                bench.run( "io-map", "unordered/" + concurrency, n, () -> ConcurrentMapping
+                        .mapConcurrentUnordered( IntStream.range( 0, n ).boxed(), concurrency, ConcurrentMappingBenchmark::call )
+                        .mapToLong( Long::longValue ).sum() );
+            }
+            bench.run( "io-findFirst", "concurrent/64", n, () -> ConcurrentMapping
+                    .mapConcurrent( IntStream.range( 0, n ).boxed(), 64, ConcurrentMappingBenchmark::call )
+                    .filter( x -> x >= 10 * 31 ).findFirst().orElse( -1L ) );
+        }
+    }
+
+    static Long call(Integer x) {
+        LockSupport.parkNanos( LATENCY_NANOS );
+        return x * 31L;
+    }
+}
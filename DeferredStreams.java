@@ -0,0 +1,71 @@
+package NEW.Collection.Stream;
+
+import java.util.Spliterator;
+import java.util.stream.BaseStream;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streams whose source is chosen when the terminal operation starts, from the parallel flag the pipeline has then.
+ * An operator that wraps a stream cannot decide at wrap time: the caller may still call parallel() or
+ * sequential() on the result, as on any stream, and a sequential path with shared state (a set, a running total)
+ * would then be run by several threads. The upstream stream is switched to the same mode and closed with the result.
+ */
+final class DeferredStreams {
+    private DeferredStreams() {
+    }
+
+    interface IntSource {
+        Spliterator.OfInt spliterator(boolean parallel);
+    }
+
+    interface LongSource {
+        Spliterator.OfLong spliterator(boolean parallel);
+    }
+
+    interface DoubleSource {
+        Spliterator.OfDouble spliterator(boolean parallel);
+    }
+
+    interface Source<T> {
+        Spliterator<T> spliterator(boolean parallel);
+    }
+
+    /**
+     * @param characteristics must hold for the spliterators of both modes.
+     */
+    static IntStream intStream(IntStream upstream, int characteristics, IntSource source) {
+        IntStream[] self = new IntStream[1];
+        self[0] = StreamSupport.intStream( () -> source.spliterator( self[0].isParallel() ), characteristics, upstream.isParallel() );
+        return self[0].onClose( upstream::close );
+    }
+
+    static LongStream longStream(LongStream upstream, int characteristics, LongSource source) {
+        LongStream[] self = new LongStream[1];
+        self[0] = StreamSupport.longStream( () -> source.spliterator( self[0].isParallel() ), characteristics, upstream.isParallel() );
+        return self[0].onClose( upstream::close );
+    }
+
+    static DoubleStream doubleStream(DoubleStream upstream, int characteristics, DoubleSource source) {
+        DoubleStream[] self = new DoubleStream[1];
+        self[0] = StreamSupport.doubleStream( () -> source.spliterator( self[0].isParallel() ), characteristics, upstream.isParallel() );
+        return self[0].onClose( upstream::close );
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> Stream<T> stream(Stream<?> upstream, int characteristics, Source<T> source) {
+        Stream<T>[] self = (Stream<T>[]) new Stream<?>[1];
+        self[0] = StreamSupport.stream( () -> source.spliterator( self[0].isParallel() ), characteristics, upstream.isParallel() );
+        return self[0].onClose( upstream::close );
+    }
+
+    /**
+     * The upstream stream in the given mode.
+     */
+    static <S extends BaseStream<?, S>> S mode(S upstream, boolean parallel) {
+        return parallel ? upstream.parallel() : upstream.sequential();
+    }
+}
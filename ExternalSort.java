@@ -0,0 +1,677 @@
+package NEW.Collection.Stream;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.stream.*;
+
+/**
+ * Summary: ✔️ sorted() for more data than the heap: sorted runs on disk, merged lazily ✔️
+ * <p>
+ * sorted() keeps every element in memory before it emits the first one. Here at most budgetBytes of elements
+ * are held: the input is cut into chunks of that size, each chunk is sorted in memory and written to a temp file
+ * (a run), and the runs are merged with a heap of their current heads while the result stream is read.
+ * ExternalSort.sorted( longStream, 64 << 20 )                        -> longStream.sorted() in 64 MB of heap
+ * ExternalSort.sorted( lines, Comparator.naturalOrder(), Serializer.strings(), 64 << 20 )
+ * <p>
+ * Input that fits into the budget is sorted in memory and never touches the disk.
+ * Runs are raw numbers (4 bytes per int, 8 per long/double) or what the Serializer writes for objects.
+ * Every run gets a read buffer of at least {@link #BLOCK_BYTES} during the merge; when there are more runs than
+ * the budget has buffers for, groups of runs are merged into longer runs first.
+ * The files go to -Dstream.sort.dir (java.io.tmpdir by default) and are deleted when the result has been read
+ * to the end or the stream is closed: use try-with-resources when the result may not be read to the end.
+ * Objects are sorted stably, like sorted().
+ */
+public final class ExternalSort {
+    static final int BLOCK_BYTES = 64 << 10;
+    private static final Path DIR = Paths.get( System.getProperty( "stream.sort.dir", System.getProperty( "java.io.tmpdir" ) ) );
+    private static final int SORTED = Spliterator.ORDERED | Spliterator.SORTED;
+
+    private ExternalSort() {
+    }
+
+    /**
+     * Writes and reads one element of a run. heapSize() is the estimated size of an element while it waits
+     * in memory, counted against the budget.
+     */
+    public interface Serializer<T> {
+        void write(T value, DataOutput out) throws IOException;
+
+        T read(DataInput in) throws IOException;
+
+        default long heapSize(T value) {
+            return 64;
+        }
+
+        /**
+         * UTF-8 bytes with their length, no 64 KB limit as writeUTF has.
+         */
+        static Serializer<String> strings() {
+            return new Serializer<>() {
+                @Override
+                public void write(String value, DataOutput out) throws IOException {
+                    byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+                    out.writeInt( bytes.length );
+                    out.write( bytes );
+                }
+
+                @Override
+                public String read(DataInput in) throws IOException {
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully( bytes );
+                    return new String( bytes, StandardCharsets.UTF_8 );
+                }
+
+                @Override
+                public long heapSize(String value) {
+                    return 40 + value.length();
+                }
+            };
+        }
+    }
+
+    public static IntStream sorted(IntStream stream, long budgetBytes) {
+        checkBudget( budgetBytes );
+        Runs runs = new Runs();
+        return StreamSupport.intStream( () -> {
+            Spliterator.OfInt source = stream.spliterator();
+            LongSorter sorter = sort( runs, Integer.BYTES, budgetBytes, sink -> source.forEachRemaining( (int x) -> sink.accept( x ) ) );
+            PrimitiveIterator.OfLong keys = sorter.keys;
+            return Spliterators.spliterator( new PrimitiveIterator.OfInt() {
+                @Override
+                public boolean hasNext() {
+                    return keys.hasNext();
+                }
+
+                @Override
+                public int nextInt() {
+                    return (int) keys.nextLong();
+                }
+            }, sorter.count, SORTED );
+        }, SORTED, false ).onClose( runs::close ).onClose( stream::close );
+    }
+
+    public static LongStream sorted(LongStream stream, long budgetBytes) {
+        checkBudget( budgetBytes );
+        Runs runs = new Runs();
+        return StreamSupport.longStream( () -> {
+            Spliterator.OfLong source = stream.spliterator();
+            LongSorter sorter = sort( runs, Long.BYTES, budgetBytes, sink -> source.forEachRemaining( sink ) );
+            return Spliterators.spliterator( sorter.keys, sorter.count, SORTED );
+        }, SORTED, false ).onClose( runs::close ).onClose( stream::close );
+    }
+
+    /**
+     * Ordered like DoubleStream.sorted(): -0.0 before 0.0, NaN last. The doubles are sorted as longs whose order
+     * is the order of Double.compare.
+     */
+    public static DoubleStream sorted(DoubleStream stream, long budgetBytes) {
+        checkBudget( budgetBytes );
+        Runs runs = new Runs();
+        return StreamSupport.doubleStream( () -> {
+            Spliterator.OfDouble source = stream.spliterator();
+            LongSorter sorter = sort( runs, Double.BYTES, budgetBytes,
+                    sink -> source.forEachRemaining( (double x) -> sink.accept( toSortable( x ) ) ) );
+            PrimitiveIterator.OfLong keys = sorter.keys;
+            return Spliterators.spliterator( new PrimitiveIterator.OfDouble() {
+                @Override
+                public boolean hasNext() {
+                    return keys.hasNext();
+                }
+
+                @Override
+                public double nextDouble() {
+                    return fromSortable( keys.nextLong() );
+                }
+            }, sorter.count, SORTED );
+        }, SORTED, false ).onClose( runs::close ).onClose( stream::close );
+    }
+
+    public static <T> Stream<T> sorted(Stream<T> stream, Comparator<? super T> comparator, Serializer<T> serializer,
+                                       long budgetBytes) {
+        checkBudget( budgetBytes );
+        Objects.requireNonNull( comparator );
+        Objects.requireNonNull( serializer );
+        Runs runs = new Runs();
+        return StreamSupport.stream( () -> {
+            ObjectSorter<T> sorter = new ObjectSorter<>( runs, comparator, serializer, budgetBytes );
+            try {
+                stream.spliterator().forEachRemaining( sorter );
+                return Spliterators.spliterator( sorter.merge(), sorter.count, Spliterator.ORDERED );
+            } catch (RuntimeException | Error e) {
+                runs.close();
+                throw e;
+            }
+        }, Spliterator.ORDERED, false ).onClose( runs::close ).onClose( stream::close );
+    }
+
+    private static void checkBudget(long budgetBytes) {
+        if (budgetBytes < BLOCK_BYTES)
+            throw new IllegalArgumentException( "budgetBytes < " + BLOCK_BYTES + ": " + budgetBytes );
+    }
+
+    private static LongSorter sort(Runs runs, int width, long budgetBytes, Consumer<LongConsumer> source) {
+        LongSorter sorter = new LongSorter( runs, width, budgetBytes );
+        try {
+            source.accept( sorter );
+            sorter.keys = sorter.merge();
+            return sorter;
+        } catch (RuntimeException | Error e) {
+            runs.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Flips all bits but the sign of negative numbers: the signed order of the result is the order of Double.compare.
+     */
+    static long toSortable(double x) {
+        long bits = Double.doubleToLongBits( x );
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    static double fromSortable(long key) {
+        return Double.longBitsToDouble( key ^ ((key >> 63) & Long.MAX_VALUE) );
+    }
+
+    /**
+     * The temp files of one sort and the readers open on them. close() closes the readers of a result that was
+     * not read to the end, then deletes the files still there, and can be called more than once.
+     */
+    private static final class Runs implements Closeable {
+        private final List<Path> files = new ArrayList<>();
+        private final Set<Closeable> readers = new HashSet<>();
+
+        synchronized Path create() {
+            try {
+                Path file = Files.createTempFile( DIR, "sort-", ".run" );
+                files.add( file );
+                return file;
+            } catch (IOException e) {
+                throw new UncheckedIOException( e );
+            }
+        }
+
+        synchronized void delete(Path file) {
+            try {
+                Files.deleteIfExists( file );
+                files.remove( file );
+            } catch (IOException e) {
+                throw new UncheckedIOException( e );
+            }
+        }
+
+        synchronized <C extends Closeable> C open(C reader) {
+            readers.add( reader );
+            return reader;
+        }
+
+        /**
+         * Closes the reader of a run read to the end and deletes the run.
+         */
+        synchronized void finish(Closeable reader, Path file) {
+            readers.remove( reader );
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException( e );
+            }
+            delete( file );
+        }
+
+        @Override
+        public synchronized void close() {
+            IOException failure = null;
+            for (Closeable reader : readers)
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            readers.clear();
+            for (Path file : new ArrayList<>( files ))
+                delete( file );
+            if (failure != null)
+                throw new UncheckedIOException( failure );
+        }
+    }
+
+    /**
+     * Collects longs into a chunk of budgetBytes / 8 elements (grown on demand), spills every full chunk
+     * as a sorted run of width bytes per element, then merges the runs.
+     */
+    private static final class LongSorter implements LongConsumer {
+        private final Runs runs;
+        private final int width;
+        private final long budgetBytes;
+        private final int capacity;
+        private final List<Path> files = new ArrayList<>();
+        private long[] chunk = new long[1024];
+        private int size;
+        long count;
+        PrimitiveIterator.OfLong keys;
+
+        LongSorter(Runs runs, int width, long budgetBytes) {
+            this.runs = runs;
+            this.width = width;
+            this.budgetBytes = budgetBytes;
+            this.capacity = (int) Math.min( budgetBytes / Long.BYTES, Integer.MAX_VALUE - 8 );
+        }
+
+        @Override
+        public void accept(long key) {
+            if (size == chunk.length) {
+                if (size == capacity)
+                    spill();
+                else
+                    chunk = Arrays.copyOf( chunk, (int) Math.min( capacity, 2L * size ) );
+            }
+            chunk[size++] = key;
+            count++;
+        }
+
+        private void spill() {
+            PrimitiveSort.sort( chunk, 0, size );
+            Path file = runs.create();
+            try (RunWriter out = new RunWriter( file, width )) {
+                for (int i = 0; i < size; i++)
+                    out.write( chunk[i] );
+            }
+            files.add( file );
+            size = 0;
+        }
+
+        PrimitiveIterator.OfLong merge() {
+            if (files.isEmpty()) {
+                PrimitiveSort.sort( chunk, 0, size );
+                return Spliterators.iterator( Spliterators.spliterator( chunk, 0, size, SORTED ) );
+            }
+            if (size > 0)
+                spill();
+            chunk = null;
+            List<Path> level = files;
+            int fanIn = (int) Math.max( 2, budgetBytes / BLOCK_BYTES );
+            while (level.size() > fanIn) {
+                List<Path> next = new ArrayList<>();
+                for (int from = 0; from < level.size(); from += fanIn) {
+                    List<Path> group = level.subList( from, Math.min( level.size(), from + fanIn ) );
+                    Path file = runs.create();
+                    LongMerge merge = new LongMerge( runs, group, width, blockBytes( group.size() ) );
+                    try (RunWriter out = new RunWriter( file, width )) {
+                        while (merge.hasNext())
+                            out.write( merge.nextLong() );
+                    }
+                    next.add( file );
+                }
+                level = next;
+            }
+            return new LongMerge( runs, level, width, blockBytes( level.size() ) );
+        }
+
+        private int blockBytes(int runCount) {
+            return (int) Math.min( 1 << 20, Math.max( BLOCK_BYTES, budgetBytes / runCount ) ) / Long.BYTES * Long.BYTES;
+        }
+    }
+
+    private static final class RunWriter implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate( BLOCK_BYTES ).order( ByteOrder.nativeOrder() );
+        private final int width;
+
+        RunWriter(Path file, int width) {
+            try {
+                this.channel = FileChannel.open( file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+            } catch (IOException e) {
+                throw new UncheckedIOException( e );
+            }
+            this.width = width;
+        }
+
+        void write(long key) {
+            if (!buffer.hasRemaining())
+                flush();
+            if (width == Integer.BYTES)
+                buffer.putInt( (int) key );
+            else
+                buffer.putLong( key );
+        }
+
+        private void flush() {
+            try {
+                buffer.flip();
+                while (buffer.hasRemaining())
+                    channel.write( buffer );
+                buffer.clear();
+            } catch (IOException e) {
+                throw new UncheckedIOException( e );
+            }
+        }
+
+        @Override
+        public void close() {
+            flush();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException( e );
+            }
+        }
+    }
+
+    /**
+     * Reads one run block by block. head is the current element, valid while advance() returned true.
+     */
+    private static final class RunReader implements Closeable {
+        private final Path file;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final int width;
+        long head;
+
+        RunReader(Path file, int width, int blockBytes) {
+            this.file = file;
+            this.width = width;
+            this.buffer = ByteBuffer.allocate( blockBytes ).order( ByteOrder.nativeOrder() );
+            buffer.flip();
+            try {
+                this.channel = FileChannel.open( file, StandardOpenOption.READ );
+            } catch (IOException e) {
+                throw new UncheckedIOException( e );
+            }
+        }
+
+        boolean advance() {
+            if (buffer.remaining() < width && !fill())
+                return false;
+            head = width == Integer.BYTES ? buffer.getInt() : buffer.getLong();
+            return true;
+        }
+
+        private boolean fill() {
+            try {
+                buffer.compact();
+                while (buffer.position() < width && channel.read( buffer ) >= 0) ;
+                buffer.flip();
+                return buffer.remaining() >= width;
+            } catch (IOException e) {
+                throw new UncheckedIOException( e );
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * k-way merge: a binary heap of the readers ordered by their head, the smallest on top.
+     * A run is deleted as soon as it has been read to the end.
+     */
+    private static final class LongMerge implements PrimitiveIterator.OfLong {
+        private final Runs runs;
+        private final RunReader[] heap;
+        private int size;
+
+        LongMerge(Runs runs, List<Path> files, int width, int blockBytes) {
+            this.runs = runs;
+            this.heap = new RunReader[files.size()];
+            for (Path file : files) {
+                RunReader reader = runs.open( new RunReader( file, width, blockBytes ) );
+                if (reader.advance()) {
+                    heap[size] = reader;
+                    siftUp( size++ );
+                } else {
+                    finish( reader );
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return size > 0;
+        }
+
+        @Override
+        public long nextLong() {
+            if (size == 0)
+                throw new NoSuchElementException();
+            RunReader top = heap[0];
+            long key = top.head;
+            if (!top.advance()) {
+                finish( top );
+                heap[0] = heap[--size];
+                heap[size] = null;
+            }
+            if (size > 0)
+                siftDown( 0 );
+            return key;
+        }
+
+        private void finish(RunReader reader) {
+            runs.finish( reader, reader.file );
+        }
+
+        private void siftUp(int i) {
+            RunReader x = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent].head <= x.head)
+                    break;
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = x;
+        }
+
+        private void siftDown(int i) {
+            RunReader x = heap[i];
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && heap[child + 1].head < heap[child].head)
+                    child++;
+                if (heap[child].head >= x.head)
+                    break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = x;
+        }
+    }
+
+    /**
+     * The same for objects: chunks are ArrayLists sorted with List.sort (stable), runs are written by the
+     * Serializer through buffered Data streams. Equal heads are taken from the earlier run, which keeps the sort stable.
+     */
+    private static final class ObjectSorter<T> implements Consumer<T> {
+        private final Runs runs;
+        private final Comparator<? super T> comparator;
+        private final Serializer<T> serializer;
+        private final long budgetBytes;
+        private final List<Path> files = new ArrayList<>();
+        private final Map<Path, Long> sizes = new HashMap<>();
+        private List<T> chunk = new ArrayList<>();
+        private long chunkBytes;
+        long count;
+
+        ObjectSorter(Runs runs, Comparator<? super T> comparator, Serializer<T> serializer, long budgetBytes) {
+            this.runs = runs;
+            this.comparator = comparator;
+            this.serializer = serializer;
+            this.budgetBytes = budgetBytes;
+        }
+
+        @Override
+        public void accept(T t) {
+            chunk.add( t );
+            count++;
+            chunkBytes += serializer.heapSize( t ) + 8;
+            if (chunkBytes >= budgetBytes)
+                spill();
+        }
+
+        private void spill() {
+            chunk.sort( comparator );
+            Path file = runs.create();
+            try (DataOutputStream out = output( file )) {
+                for (T t : chunk)
+                    serializer.write( t, out );
+            } catch (IOException e) {
+                throw new UncheckedIOException( e );
+            }
+            files.add( file );
+            sizes.put( file, (long) chunk.size() );
+            chunk = new ArrayList<>();
+            chunkBytes = 0;
+        }
+
+        Iterator<T> merge() {
+            if (files.isEmpty()) {
+                chunk.sort( comparator );
+                return chunk.iterator();
+            }
+            if (!chunk.isEmpty())
+                spill();
+            chunk = null;
+            List<Path> level = files;
+            int fanIn = (int) Math.max( 2, budgetBytes / BLOCK_BYTES );
+            while (level.size() > fanIn) {
+                List<Path> next = new ArrayList<>();
+                for (int from = 0; from < level.size(); from += fanIn) {
+                    List<Path> group = level.subList( from, Math.min( level.size(), from + fanIn ) );
+                    long elements = 0;
+                    for (Path run : group)
+                        elements += sizes.get( run );
+                    ObjectMerge<T> merge = new ObjectMerge<>( this, group );
+                    Path file = runs.create();
+                    try (DataOutputStream out = output( file )) {
+                        while (merge.hasNext())
+                            serializer.write( merge.next(), out );
+                    } catch (IOException e) {
+                        throw new UncheckedIOException( e );
+                    }
+                    next.add( file );
+                    sizes.put( file, elements );
+                }
+                level = next;
+            }
+            return new ObjectMerge<>( this, level );
+        }
+
+        private static DataOutputStream output(Path file) throws IOException {
+            return new DataOutputStream( new BufferedOutputStream( Files.newOutputStream( file ), BLOCK_BYTES ) );
+        }
+    }
+
+    private static final class ObjectMerge<T> implements Iterator<T> {
+        private final ObjectSorter<T> sorter;
+        private final Path[] files;
+        private final DataInputStream[] inputs;
+        private final long[] remaining;
+        private final List<T> heads;
+        private final int[] heap;
+        private int size;
+
+        ObjectMerge(ObjectSorter<T> sorter, List<Path> runs) {
+            this.sorter = sorter;
+            this.files = runs.toArray( new Path[0] );
+            this.inputs = new DataInputStream[files.length];
+            this.remaining = new long[files.length];
+            this.heads = new ArrayList<>( Collections.nCopies( files.length, null ) );
+            this.heap = new int[files.length];
+            try {
+                for (int run = 0; run < files.length; run++) {
+                    remaining[run] = sorter.sizes.get( files[run] );
+                    inputs[run] = sorter.runs.open( new DataInputStream( new BufferedInputStream( Files.newInputStream( files[run] ),
+                            (int) Math.max( BLOCK_BYTES, Math.min( 1 << 20, sorter.budgetBytes / files.length ) ) ) ) );
+                    if (advance( run )) {
+                        heap[size] = run;
+                        siftUp( size++ );
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException( e );
+            }
+        }
+
+        /**
+         * Reads the next head of the run, or closes and deletes the run after its last element.
+         */
+        private boolean advance(int run) throws IOException {
+            if (remaining[run]-- == 0) {
+                sorter.runs.finish( inputs[run], files[run] );
+                heads.set( run, null );
+                return false;
+            }
+            heads.set( run, sorter.serializer.read( inputs[run] ) );
+            return true;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return size > 0;
+        }
+
+        @Override
+        public T next() {
+            if (size == 0)
+                throw new NoSuchElementException();
+            int run = heap[0];
+            T t = heads.get( run );
+            try {
+                if (!advance( run ))
+                    heap[0] = heap[--size];
+            } catch (IOException e) {
+                throw new UncheckedIOException( e );
+            }
+            if (size > 0)
+                siftDown( 0 );
+            return t;
+        }
+
+        /**
+         * Run a before run b: smaller head, or the same head and an earlier run.
+         */
+        private boolean before(int a, int b) {
+            int cmp = sorter.comparator.compare( heads.get( a ), heads.get( b ) );
+            return cmp < 0 || cmp == 0 && a < b;
+        }
+
+        private void siftUp(int i) {
+            int x = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before( x, heap[parent] ))
+                    break;
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = x;
+        }
+
+        private void siftDown(int i) {
+            int x = heap[i];
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && before( heap[child + 1], heap[child] ))
+                    child++;
+                if (!before( heap[child], x ))
+                    break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = x;
+        }
+    }
+}
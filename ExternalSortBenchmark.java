@@ -0,0 +1,44 @@
+package NEW.Collection.Stream;
+
+import java.util.SplittableRandom;
+import java.util.stream.LongStream;
+
+/**
+ * Summary: ✔️ LongStream.sorted() against {@link ExternalSort} up to 10x the heap ✔️
+ * <p>
+ * Run with a small heap, e.g. java -Xmx256m: the default sizes are 1/10 of the heap, the heap and 10x the heap
+ * in longs (8 bytes each). sorted() runs only while the input fits in memory, ExternalSort always runs with
+ * a budget of -Dbench.budget bytes (1/4 of the heap by default). The source is a SplittableRandom stream,
+ * so the input itself never has to fit into the heap; the result is checked to be in order.
+ */
+public class ExternalSortBenchmark {
+    public static void main(String[] args) {
+        long heap = Runtime.getRuntime().maxMemory();
+        long budget = Long.getLong( "bench.budget", heap / 4 );
+        Bench bench = new Bench();
+        String defaults = heap / 80 + "," + heap / 8 + "," + heap * 10 / 8;
+        for (int n : Bench.sizes( defaults )) {
+            if (3L * n * Long.BYTES < heap)
+                bench.run( "sort-long", "sorted", n, () -> ordered( new SplittableRandom( 42 ).longs( n ).sorted() ) );
+            else
+                System.out.format( "sort-long sorted: %d longs do not fit into a heap of %d MB%n", n, heap >> 20 );
+            bench.run( "sort-long", "external", n, () -> ordered( ExternalSort.sorted( new SplittableRandom( 42 ).longs( n ), budget ) ) );
+        }
+    }
+
+    /**
+     * Number of elements, or an exception when the stream is out of order.
+     */
+    private static long ordered(LongStream sorted) {
+        try (sorted) {
+            long[] previousAndCount = { Long.MIN_VALUE, 0 };
+            sorted.forEach( x -> {
+                if (x < previousAndCount[0])
+                    throw new IllegalStateException( "out of order: " + previousAndCount[0] + " > " + x );
+                previousAndCount[0] = x;
+                previousAndCount[1]++;
+            } );
+            return previousAndCount[1];
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package NEW.Collection.Stream;
+
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Summary: ✔️ Stream -> Flow.Publisher and Flow.Publisher -> Stream, both with backpressure ✔️
+ * <p>
+ * A Stream is pulled by its terminal operation, a Flow.Publisher pushes to subscribers as much as they requested.
+ * toPublisher( () -> stream, executor ) -> every subscriber gets its own stream (a stream can be used only once).
+ * Elements are pulled from the stream only while the subscriber has outstanding demand, so an infinite
+ * Stream.generate( ... ) or Stream.iterate( ... ) is fine: a slow subscriber simply asks for less.
+ * toStream( publisher, bufferSize )         -> a Stream that subscribes when its terminal operation starts.
+ * It requests bufferSize elements, keeps them in a bounded ring buffer and requests more only as the
+ * pipeline consumes them, so a fast publisher cannot fill the memory. close() cancels the subscription.
+ * <p>
+ * Errors: an exception thrown by the stream goes to onError, an onError from the publisher is rethrown by
+ * the terminal operation of toStream (checked exceptions wrapped in CompletionException).
+ */
+public final class FlowBridge {
+    private FlowBridge() {
+    }
+
+    public static <T> Flow.Publisher<T> toPublisher(Supplier<? extends Stream<? extends T>> streams) {
+        return toPublisher( streams, ForkJoinPool.commonPool() );
+    }
+
+    /**
+     * @param executor runs the loop that pulls elements from the stream and calls onNext.
+     */
+    public static <T> Flow.Publisher<T> toPublisher(Supplier<? extends Stream<? extends T>> streams, Executor executor) {
+        Objects.requireNonNull( streams );
+        Objects.requireNonNull( executor );
+        return subscriber -> {
+            Objects.requireNonNull( subscriber );
+            subscriber.onSubscribe( new StreamSubscription<T>( subscriber, streams, executor ) );
+        };
+    }
+
+    /**
+     * A publisher for a stream that already exists: only the first subscriber gets the elements,
+     * the next ones get onError( IllegalStateException ).
+     */
+    public static <T> Flow.Publisher<T> toPublisher(Stream<? extends T> stream, Executor executor) {
+        AtomicBoolean used = new AtomicBoolean();
+        return toPublisher( () -> {
+            if (used.getAndSet( true ))
+                throw new IllegalStateException( "the stream of this publisher was already subscribed to" );
+            return stream;
+        }, executor );
+    }
+
+    public static <T> Stream<T> toStream(Flow.Publisher<? extends T> publisher, int bufferSize) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException( "bufferSize must be positive: " + bufferSize );
+        QueueSubscriber<T> subscriber = new QueueSubscriber<>( bufferSize );
+        return StreamSupport.stream( () -> {
+                    publisher.subscribe( subscriber );
+                    return subscriber;
+                }, Spliterator.ORDERED | Spliterator.NONNULL, false )
+                .onClose( subscriber::cancel );
+    }
+
+    /**
+     * Pulls from the stream on the executor. The drain loop runs on one thread at a time (the wip counter),
+     * request() and cancel() from any thread only record the signal and make sure a loop runs.
+     */
+    private static final class StreamSubscription<T> implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final Supplier<? extends Stream<? extends T>> streams;
+        private final Executor executor;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final Consumer<T> emit;
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+        private Stream<? extends T> stream;
+        private Spliterator<? extends T> spliterator;
+        private boolean done;
+
+        StreamSubscription(Flow.Subscriber<? super T> subscriber, Supplier<? extends Stream<? extends T>> streams,
+                           Executor executor) {
+            this.subscriber = subscriber;
+            this.streams = streams;
+            this.executor = executor;
+            this.emit = subscriber::onNext;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0)
+                invalidRequest = new IllegalArgumentException( "request must be positive (rule 3.9): " + n );
+            else
+                demand.getAndAccumulate( n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add );
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute( this );
+                } catch (RejectedExecutionException e) {
+                    cancelled = true;
+                    wip.set( 0 );
+                    subscriber.onError( e );
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                if (!done)
+                    drain();
+            } while ((missed = wip.addAndGet( -missed )) != 0);
+        }
+
+        private void drain() {
+            try {
+                if (cancelled) {
+                    finish();
+                    return;
+                }
+                if (invalidRequest != null) {
+                    finish();
+                    subscriber.onError( invalidRequest );
+                    return;
+                }
+                if (spliterator == null) {
+                    stream = streams.get();
+                    spliterator = stream.spliterator();
+                }
+                long requested = demand.get(), emitted = 0;
+                while (emitted != requested) {
+                    if (cancelled) {
+                        finish();
+                        return;
+                    }
+                    if (!spliterator.tryAdvance( emit )) {
+                        finish();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    emitted++;
+                }
+                if (requested != Long.MAX_VALUE)
+                    demand.addAndGet( -emitted );
+            } catch (Throwable e) {
+                finish();
+                subscriber.onError( e );
+            }
+        }
+
+        private void finish() {
+            done = true;
+            if (stream != null)
+                stream.close();
+        }
+    }
+
+    /**
+     * Bounded single-producer single-consumer ring between the publisher (onNext) and the stream (tryAdvance).
+     * Signals are serial (rule 1.3), so onNext only writes {@code tail} and tryAdvance only writes {@code head}:
+     * no lock per element. At most bufferSize elements are requested and not yet consumed,
+     * so the ring never holds more. The consumer yields a few times (lets the producer run, even on one core)
+     * and then parks until woken.
+     */
+    private static final class QueueSubscriber<T> implements Flow.Subscriber<T>, Spliterator<T> {
+        private static final int YIELDS = 16;
+
+        private final Object[] ring;
+        private final int mask;
+        private final int bufferSize;
+        private final int replenish;
+        private volatile long head;
+        private volatile long tail;
+        private volatile Thread waiter;
+        private volatile Flow.Subscription subscription;
+        private volatile Object terminal;   // this after onComplete, the Throwable after onError
+        private int consumed;
+        private boolean finished;
+
+        QueueSubscriber(int bufferSize) {
+            this.bufferSize = bufferSize;
+            this.replenish = Math.max( bufferSize / 2, 1 );
+            this.ring = new Object[Integer.highestOneBit( Math.max( bufferSize - 1, 1 ) ) << 1];
+            this.mask = ring.length - 1;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (this.subscription != null || finished) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+            subscription.request( bufferSize );
+        }
+
+        @Override
+        public void onNext(T item) {
+            Objects.requireNonNull( item );
+            long t = tail;
+            if (t - head >= bufferSize) {
+                subscription.cancel();
+                onError( new IllegalStateException( "publisher sent more elements than requested" ) );
+                return;
+            }
+            ring[(int) t & mask] = item;
+            tail = t + 1;
+            wakeUp();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            terminal = throwable;
+            wakeUp();
+        }
+
+        @Override
+        public void onComplete() {
+            terminal = this;
+            wakeUp();
+        }
+
+        private void wakeUp() {
+            Thread w = waiter;
+            if (w != null)
+                LockSupport.unpark( w );
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (finished)
+                return false;
+            long h = head;
+            if (h == tail && !await( h )) {
+                finished = true;
+                Object signal = terminal;
+                if (signal instanceof RuntimeException)
+                    throw (RuntimeException) signal;
+                if (signal instanceof Error)
+                    throw (Error) signal;
+                if (signal instanceof Throwable)
+                    throw new CompletionException( (Throwable) signal );
+                return false;
+            }
+            int index = (int) h & mask;
+            T item = (T) ring[index];
+            ring[index] = null;
+            head = h + 1;
+            action.accept( item );
+            if (++consumed == replenish) {
+                consumed = 0;
+                subscription.request( replenish );
+            }
+            return true;
+        }
+
+        /**
+         * Waits until the element at {@code h} arrives (true) or the publisher terminates (false).
+         * terminal is read before tail: every onNext happens before onComplete/onError.
+         */
+        private boolean await(long h) {
+            for (int yields = 0; ; yields++) {
+                Object signal = terminal;
+                if (h != tail)
+                    return true;
+                if (signal != null)
+                    return false;
+                if (yields < YIELDS) {
+                    Thread.yield();
+                    continue;
+                }
+                waiter = Thread.currentThread();
+                if (h == tail && terminal == null)
+                    LockSupport.park( this );
+                waiter = null;
+                if (Thread.interrupted()) {
+                    cancel();
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException( "interrupted while waiting for the publisher" );
+                }
+            }
+        }
+
+        void cancel() {
+            finished = true;
+            Flow.Subscription s = subscription;
+            if (s != null)
+                s.cancel();
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.NONNULL;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package NEW.Collection.Stream;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.*;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Summary: ✔️ Stream -> Publisher -> Stream round trip: {@link FlowBridge} against a naive blocking-queue bridge ✔️
+ * <p>
+ * The naive bridge starts a producer thread that put()s every element into an ArrayBlockingQueue and the stream
+ * take()s them back: one lock round trip per element, and the producer stays blocked in put() once the
+ * consumer stops (here it is interrupted on close, usually it just leaks).
+ * flow-sum   -> throughput: all elements of a range go through the bridge.
+ * flow-first -> latency: subscribe to an infinite Stream.iterate and take the first element.
+ */
+public class FlowBridgeBenchmark {
+    private static final int BUFFER = Integer.getInteger( "bench.buffer", 256 );
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool( r -> {
+        Thread thread = new Thread( r, "flow-bench" );
+        thread.setDaemon( true );
+        return thread;
+    } );
+
+    public static void main(String[] args) {
+        Bench bench = new Bench();
+        for (int n : Bench.sizes( "1e3,1e6" )) {
+            bench.run( "flow-sum", Bench.LOOP, n, () -> {
+                long sum = 0;
+                for (long i = 0; i < n; i++)
+                    sum += i;
+                return sum;
+            } );
+            bench.run( "flow-sum", "blocking-queue", n, () -> {
+                try (Stream<Long> s = blockingQueueBridge( LongStream.range( 0, n ).boxed(), BUFFER )) {
+                    return s.mapToLong( Long::longValue ).sum();
+                }
+            } );
+            bench.run( "flow-sum", "flow", n, () -> {
+                try (Stream<Long> s = FlowBridge.toStream(
+                        FlowBridge.toPublisher( () -> LongStream.range( 0, n ).boxed(), EXECUTOR ), BUFFER )) {
+                    return s.mapToLong( Long::longValue ).sum();
+                }
+            } );
+        }
+        bench.run( "flow-first", "blocking-queue", 1, () -> {
+            try (Stream<Long> s = blockingQueueBridge( Stream.iterate( 1L, x -> x + 6 ), BUFFER )) {
+                return s.findFirst().orElse( 0L );
+            }
+        } );
+        bench.run( "flow-first", "flow", 1, () -> {
+            try (Stream<Long> s = FlowBridge.toStream(
+                    FlowBridge.toPublisher( () -> Stream.iterate( 1L, x -> x + 6 ), EXECUTOR ), BUFFER )) {
+                return s.findFirst().orElse( 0L );
+            }
+        } );
+    }
+
+    static <T> Stream<T> blockingQueueBridge(Stream<T> source, int capacity) {
+        Object end = new Object();
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>( capacity );
+        Future<?> producer = EXECUTOR.submit( () -> {
+            try {
+                Iterator<T> it = source.iterator();
+                while (it.hasNext())
+                    queue.put( it.next() );
+                queue.put( end );
+            } catch (InterruptedException ignored) {
+            }
+        } );
+        Iterator<T> consumer = new Iterator<T>() {
+            private Object next;
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    if (next == null)
+                        next = queue.take();
+                    return next != end;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException();
+                }
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                T t = (T) next;
+                next = null;
+                return t;
+            }
+        };
+        return StreamSupport.stream( Spliterators.spliteratorUnknownSize( consumer, Spliterator.ORDERED ), false )
+                .onClose( () -> producer.cancel( true ) );
+    }
+}
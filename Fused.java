@@ -0,0 +1,343 @@
+package NEW.Collection.Stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.*;
+
+import static NEW.Collection.Stream.FusedLoop.*;
+
+/**
+ * Summary: ✔️ Opt-in fused pipelines: filter / map / limit ... chains compiled into one specialized loop ✔️
+ * <p>
+ * IntStream.of( ... ).filter( x -> x < 300 ).map( x -> x + 11 ).limit( 3 ) pushes every element through a chain
+ * of Sink objects. The Sink classes are shared by all pipelines of the application, so once the JIT has seen
+ * many different lambdas at the same call site it stops inlining them and every stage becomes a virtual call.
+ * Fused.of( ... ).filter( x -> x < 300 ).map( x -> x + 11 ).limit( 3 ).sum() looks the same, but at the terminal
+ * operation every stage gets its own copy of the stage class (a hidden class, see {@link FusedLoop}), made once per
+ * pipeline shape: the kinds of the stages and the classes of their lambdas. Within a copy every call is monomorphic,
+ * so the whole chain inlines into the loop over the source.
+ * <p>
+ * Operators: filter, map, mapToInt / mapToLong / mapToDouble, peek, takeWhile, limit, skip;
+ * terminals: sum, count, forEach. Sequential only, the pipeline objects are immutable and can be run again.
+ * Up to 4096 shapes are cached, then the cache starts over. Every stage is two calls deep, so beyond about
+ * 7 stages the chain reaches the inlining depth of the JIT (-XX:MaxInlineLevel, 15 on JDK 17) and the rest
+ * stays as direct, but still monomorphic, calls.
+ */
+public final class Fused {
+    private static final int MAX_SHAPES = 1 << 12;
+    private static final MethodType STAGE_TYPE = MethodType.methodType( Stage.class, Object.class, long.class, Stage.class );
+    private static final ConcurrentHashMap<List<Object>, MethodHandle[]> SHAPES = new ConcurrentHashMap<>();
+    private static final byte[] TEMPLATE = template();
+
+    private Fused() {
+    }
+
+    public static IntPipeline of(int... values) {
+        return new IntPipeline( new Op( SOURCE_INTS, values, 0, values.length ) );
+    }
+
+    public static LongPipeline of(long... values) {
+        return new LongPipeline( new Op( SOURCE_LONGS, values, 0, values.length ) );
+    }
+
+    public static DoublePipeline of(double... values) {
+        return new DoublePipeline( new Op( SOURCE_DOUBLES, values, 0, values.length ) );
+    }
+
+    public static IntPipeline range(int startInclusive, int endExclusive) {
+        return new IntPipeline( new Op( SOURCE_RANGE, null, startInclusive, endExclusive ) );
+    }
+
+    public static LongPipeline range(long startInclusive, long endExclusive) {
+        return new LongPipeline( new Op( SOURCE_RANGE, null, startInclusive, endExclusive ) );
+    }
+
+    /**
+     * Base of the generated stages. {@code remaining} counts down for limit and skip,
+     * the terminal stage leaves its result in the result fields.
+     */
+    abstract static class Stage {
+        final Object fn;
+        final Stage next;
+        long remaining;
+        long longResult;
+        double doubleResult, compensation, plainSum;
+
+        Stage(Object fn, long n, Stage next) {
+            this.fn = fn;
+            this.remaining = n;
+            this.next = next;
+        }
+
+        abstract void run(long from, long to);
+
+        abstract boolean accept(long v);
+    }
+
+    /**
+     * One operation of a pipeline, linked to the previous one. The source is the first, with its index range.
+     */
+    private static final class Op {
+        final int kind;
+        final Object fn;
+        final long from;
+        final long n;
+        final Op previous;
+        final int depth;
+
+        Op(int kind, Object fn, long from, long to) {
+            this.kind = kind;
+            this.fn = fn;
+            this.from = from;
+            this.n = to;
+            this.previous = null;
+            this.depth = 0;
+        }
+
+        Op(Op previous, int kind, Object fn, long n) {
+            this.kind = kind;
+            this.fn = fn;
+            this.from = 0;
+            this.n = n;
+            this.previous = previous;
+            this.depth = previous.depth + 1;
+        }
+    }
+
+    /**
+     * Creates the stages of the pipeline ending in {@code tail} followed by the terminal, runs the source
+     * and returns the terminal stage.
+     */
+    private static Stage evaluate(Op tail, int terminal, Object terminalFn) {
+        Op[] ops = new Op[tail.depth + 2];
+        ops[ops.length - 1] = new Op( tail, terminal, terminalFn, 0 );
+        for (Op op = tail; op != null; op = op.previous)
+            ops[op.depth] = op;
+
+        Object[] shape = new Object[ops.length * 2];
+        for (int i = 0; i < ops.length; i++) {
+            shape[2 * i] = ops[i].kind;
+            shape[2 * i + 1] = ops[i].fn == null ? Void.class : ops[i].fn.getClass();
+        }
+        MethodHandle[] constructors = constructors( Arrays.asList( shape ), ops );
+
+        try {
+            Stage last = (Stage) constructors[ops.length - 1].invokeExact( ops[ops.length - 1].fn, 0L, (Stage) null );
+            Stage stage = last;
+            for (int i = ops.length - 2; i >= 0; i--)
+                stage = (Stage) constructors[i].invokeExact( ops[i].fn, ops[i].n, stage );
+            stage.run( ops[0].from, ops[0].n );
+            return last;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    private static MethodHandle[] constructors(List<Object> shape, Op[] ops) {
+        MethodHandle[] constructors = SHAPES.get( shape );
+        if (constructors != null)
+            return constructors;
+        if (SHAPES.size() >= MAX_SHAPES)
+            SHAPES.clear();
+        return SHAPES.computeIfAbsent( shape, s -> define( ops ) );
+    }
+
+    private static MethodHandle[] define(Op[] ops) {
+        MethodHandle[] constructors = new MethodHandle[ops.length];
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            for (int i = 0; i < ops.length; i++) {
+                MethodHandles.Lookup stage = lookup.defineHiddenClassWithClassData( TEMPLATE, ops[i].kind, true );
+                constructors[i] = stage.findConstructor( stage.lookupClass(),
+                                MethodType.methodType( void.class, Object.class, long.class, Stage.class ) )
+                        .asType( STAGE_TYPE );
+            }
+            return constructors;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException( "cannot define a fused stage", e );
+        }
+    }
+
+    private static byte[] template() {
+        try (InputStream in = Fused.class.getResourceAsStream( "FusedLoop.class" )) {
+            if (in == null)
+                throw new IllegalStateException( "FusedLoop.class not found next to Fused.class" );
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    private static long checkCount(long n) {
+        if (n < 0)
+            throw new IllegalArgumentException( Long.toString( n ) );
+        return n;
+    }
+
+    public static final class IntPipeline {
+        private final Op tail;
+
+        IntPipeline(Op tail) {
+            this.tail = tail;
+        }
+
+        public IntPipeline filter(IntPredicate predicate) {
+            return new IntPipeline( new Op( tail, FILTER_INT, predicate, 0 ) );
+        }
+
+        public IntPipeline map(IntUnaryOperator mapper) {
+            return new IntPipeline( new Op( tail, MAP_INT, mapper, 0 ) );
+        }
+
+        public LongPipeline mapToLong(IntToLongFunction mapper) {
+            return new LongPipeline( new Op( tail, INT_TO_LONG, mapper, 0 ) );
+        }
+
+        public DoublePipeline mapToDouble(IntToDoubleFunction mapper) {
+            return new DoublePipeline( new Op( tail, INT_TO_DOUBLE, mapper, 0 ) );
+        }
+
+        public IntPipeline peek(IntConsumer action) {
+            return new IntPipeline( new Op( tail, PEEK_INT, action, 0 ) );
+        }
+
+        public IntPipeline takeWhile(IntPredicate predicate) {
+            return new IntPipeline( new Op( tail, TAKE_WHILE_INT, predicate, 0 ) );
+        }
+
+        public IntPipeline limit(long maxSize) {
+            return new IntPipeline( new Op( tail, LIMIT, null, checkCount( maxSize ) ) );
+        }
+
+        public IntPipeline skip(long n) {
+            return new IntPipeline( new Op( tail, SKIP, null, checkCount( n ) ) );
+        }
+
+        public int sum() {
+            return (int) evaluate( tail, SUM, null ).longResult;
+        }
+
+        public long count() {
+            return evaluate( tail, COUNT, null ).longResult;
+        }
+
+        public void forEach(IntConsumer action) {
+            evaluate( tail, FOR_EACH_INT, action );
+        }
+    }
+
+    public static final class LongPipeline {
+        private final Op tail;
+
+        LongPipeline(Op tail) {
+            this.tail = tail;
+        }
+
+        public LongPipeline filter(LongPredicate predicate) {
+            return new LongPipeline( new Op( tail, FILTER_LONG, predicate, 0 ) );
+        }
+
+        public LongPipeline map(LongUnaryOperator mapper) {
+            return new LongPipeline( new Op( tail, MAP_LONG, mapper, 0 ) );
+        }
+
+        public IntPipeline mapToInt(LongToIntFunction mapper) {
+            return new IntPipeline( new Op( tail, LONG_TO_INT, mapper, 0 ) );
+        }
+
+        public DoublePipeline mapToDouble(LongToDoubleFunction mapper) {
+            return new DoublePipeline( new Op( tail, LONG_TO_DOUBLE, mapper, 0 ) );
+        }
+
+        public LongPipeline peek(LongConsumer action) {
+            return new LongPipeline( new Op( tail, PEEK_LONG, action, 0 ) );
+        }
+
+        public LongPipeline takeWhile(LongPredicate predicate) {
+            return new LongPipeline( new Op( tail, TAKE_WHILE_LONG, predicate, 0 ) );
+        }
+
+        public LongPipeline limit(long maxSize) {
+            return new LongPipeline( new Op( tail, LIMIT, null, checkCount( maxSize ) ) );
+        }
+
+        public LongPipeline skip(long n) {
+            return new LongPipeline( new Op( tail, SKIP, null, checkCount( n ) ) );
+        }
+
+        public long sum() {
+            return evaluate( tail, SUM, null ).longResult;
+        }
+
+        public long count() {
+            return evaluate( tail, COUNT, null ).longResult;
+        }
+
+        public void forEach(LongConsumer action) {
+            evaluate( tail, FOR_EACH_LONG, action );
+        }
+    }
+
+    public static final class DoublePipeline {
+        private final Op tail;
+
+        DoublePipeline(Op tail) {
+            this.tail = tail;
+        }
+
+        public DoublePipeline filter(DoublePredicate predicate) {
+            return new DoublePipeline( new Op( tail, FILTER_DOUBLE, predicate, 0 ) );
+        }
+
+        public DoublePipeline map(DoubleUnaryOperator mapper) {
+            return new DoublePipeline( new Op( tail, MAP_DOUBLE, mapper, 0 ) );
+        }
+
+        public IntPipeline mapToInt(DoubleToIntFunction mapper) {
+            return new IntPipeline( new Op( tail, DOUBLE_TO_INT, mapper, 0 ) );
+        }
+
+        public LongPipeline mapToLong(DoubleToLongFunction mapper) {
+            return new LongPipeline( new Op( tail, DOUBLE_TO_LONG, mapper, 0 ) );
+        }
+
+        public DoublePipeline peek(DoubleConsumer action) {
+            return new DoublePipeline( new Op( tail, PEEK_DOUBLE, action, 0 ) );
+        }
+
+        public DoublePipeline takeWhile(DoublePredicate predicate) {
+            return new DoublePipeline( new Op( tail, TAKE_WHILE_DOUBLE, predicate, 0 ) );
+        }
+
+        public DoublePipeline limit(long maxSize) {
+            return new DoublePipeline( new Op( tail, LIMIT, null, checkCount( maxSize ) ) );
+        }
+
+        public DoublePipeline skip(long n) {
+            return new DoublePipeline( new Op( tail, SKIP, null, checkCount( n ) ) );
+        }
+
+        public double sum() {
+            Stage result = evaluate( tail, SUM_DOUBLE, null );
+            double sum = result.doubleResult - result.compensation;
+            return Double.isNaN( sum ) && Double.isInfinite( result.plainSum ) ? result.plainSum : sum;
+        }
+
+        public long count() {
+            return evaluate( tail, COUNT, null ).longResult;
+        }
+
+        public void forEach(DoubleConsumer action) {
+            evaluate( tail, FOR_EACH_DOUBLE, action );
+        }
+    }
+}
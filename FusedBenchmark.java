@@ -0,0 +1,175 @@
+package NEW.Collection.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Summary: ✔️ JMH: 3-, 6- and 10-stage filter / map / limit chains: hand-written loop vs IntStream vs {@link Fused} ✔️
+ * <p>
+ * Every benchmark runs in its own forked JVM, and before measuring the setup runs a few dozen pipelines with other
+ * lambdas through both APIs, as they would in any application that uses streams in more than one place: that makes
+ * the call sites of the JDK Sinks megamorphic. The Fused pipelines get their own stage classes per shape and are
+ * not affected. Without the fork, whatever ran earlier in the same JVM would decide the profiles instead.
+ * <p>
+ * Run (mvn -B package first):
+ * java -jar target/benchmarks.jar FusedBenchmark
+ * java -jar target/benchmarks.jar "FusedBenchmark.chain10" -p n=1000000
+ * or the main() below, which takes the same options.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class FusedBenchmark {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions options = new CommandLineOptions( args );
+        OptionsBuilder builder = new OptionsBuilder();
+        if (options.getIncludes().isEmpty())
+            builder.include( FusedBenchmark.class.getSimpleName() );
+        new Runner( builder.parent( options ).build() ).run();
+    }
+
+    @Param({"1000", "1000000"})
+    int n;
+
+    private int[] values;
+    private int half;
+
+    @Setup
+    public void setUp() {
+        values = new SplittableRandom( 11 ).ints( n, 0, 1000 ).toArray();
+        half = n / 2;
+        pollute( values );
+    }
+
+    /**
+     * Runs pipelines with 8 different lambdas per operation through both APIs.
+     */
+    private static void pollute(int[] values) {
+        IntPredicate[] filters = { x -> x > 1, x -> x < 999, x -> (x & 1) == 0, x -> x % 3 != 0,
+                x -> x != 500, x -> (x & 4) == 0, x -> x > 10, x -> x % 7 != 1 };
+        IntUnaryOperator[] maps = { x -> x + 1, x -> x * 2, x -> x - 3, x -> x ^ 5,
+                x -> x >> 1, x -> x * x, x -> -x, x -> x & 255 };
+        for (int round = 0; round < 100; round++) {
+            for (int k = 0; k < filters.length; k++) {
+                IntStream.of( values ).filter( filters[k] ).map( maps[k] ).limit( values.length - k ).sum();
+                IntStream.of( values ).map( maps[k] ).filter( filters[(k + 3) % 8] ).skip( k ).map( maps[(k + 5) % 8] ).count();
+                Fused.of( values ).filter( filters[k] ).map( maps[k] ).limit( values.length - k ).sum();
+                Fused.of( values ).map( maps[k] ).filter( filters[(k + 3) % 8] ).skip( k ).map( maps[(k + 5) % 8] ).count();
+            }
+        }
+    }
+
+    @Benchmark
+    public long chain3Loop() {
+        long sum = 0;
+        int taken = 0;
+        for (int x : values) {
+            if (x < 900) {
+                sum += x + 11;
+                if (++taken == half)
+                    break;
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long chain3Jdk() {
+        return IntStream.of( values ).filter( x -> x < 900 ).map( x -> x + 11 ).limit( half ).sum();
+    }
+
+    @Benchmark
+    public long chain3Fused() {
+        return Fused.of( values ).filter( x -> x < 900 ).map( x -> x + 11 ).limit( half ).sum();
+    }
+
+    @Benchmark
+    public long chain6Loop() {
+        long sum = 0;
+        for (int x : values) {
+            if (x < 900) {
+                int y = (x + 11) * 3;
+                if ((y & 1) == 0) {
+                    long z = y * 31L;
+                    sum += z ^ (z >>> 7);
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long chain6Jdk() {
+        return IntStream.of( values )
+                .filter( x -> x < 900 ).map( x -> x + 11 ).map( x -> x * 3 ).filter( x -> (x & 1) == 0 )
+                .mapToLong( x -> x * 31L ).map( x -> x ^ (x >>> 7) ).sum();
+    }
+
+    @Benchmark
+    public long chain6Fused() {
+        return Fused.of( values )
+                .filter( x -> x < 900 ).map( x -> x + 11 ).map( x -> x * 3 ).filter( x -> (x & 1) == 0 )
+                .mapToLong( x -> x * 31L ).map( x -> x ^ (x >>> 7) ).sum();
+    }
+
+    @Benchmark
+    public long chain10Loop() {
+        long sum = 0;
+        int skipped = 0;
+        for (int x : values) {
+            if (skipped < 10) {
+                skipped++;
+                continue;
+            }
+            if (x < 900) {
+                int y = (x + 11) * 3;
+                if ((y & 1) == 0 && y % 5 != 0) {
+                    long z = y * 31L;
+                    z ^= z >>> 7;
+                    if (z > 0)
+                        sum += z + 1 - 2;
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long chain10Jdk() {
+        return IntStream.of( values ).skip( 10 )
+                .filter( x -> x < 900 ).map( x -> x + 11 ).map( x -> x * 3 ).filter( x -> (x & 1) == 0 )
+                .filter( x -> x % 5 != 0 ).mapToLong( x -> x * 31L ).map( x -> x ^ (x >>> 7) )
+                .filter( x -> x > 0 ).map( x -> x + 1 ).map( x -> x - 2 ).sum();
+    }
+
+    @Benchmark
+    public long chain10Fused() {
+        return Fused.of( values ).skip( 10 )
+                .filter( x -> x < 900 ).map( x -> x + 11 ).map( x -> x * 3 ).filter( x -> (x & 1) == 0 )
+                .filter( x -> x % 5 != 0 ).mapToLong( x -> x * 31L ).map( x -> x ^ (x >>> 7) )
+                .filter( x -> x > 0 ).map( x -> x + 1 ).map( x -> x - 2 ).sum();
+    }
+}
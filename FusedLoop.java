@@ -0,0 +1,283 @@
+package NEW.Collection.Stream;
+
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandles;
+import java.util.function.*;
+
+/**
+ * Template of one stage of a {@link Fused} pipeline, never used as it is.
+ * <p>
+ * Fused loads a copy of this class file as a hidden class for every stage of every pipeline shape, with the
+ * kind of the stage as class data. KIND is a constant in each copy, so the JIT folds the switch away, and the
+ * call sites of a copy only ever see one lambda class and one downstream copy: they stay monomorphic and inline
+ * into one loop, where the shared Sink classes of the JDK pipeline become megamorphic.
+ * <p>
+ * Values travel as long: int is sign-extended, double is passed as its raw bits.
+ * accept() returns false when no more elements are wanted (limit, takeWhile).
+ */
+final class FusedLoop extends Fused.Stage {
+    static final int SOURCE_INTS = 0, SOURCE_LONGS = 1, SOURCE_DOUBLES = 2, SOURCE_RANGE = 3;
+    static final int FILTER_INT = 4, MAP_INT = 5, PEEK_INT = 6, TAKE_WHILE_INT = 7, INT_TO_LONG = 8, INT_TO_DOUBLE = 9;
+    static final int FILTER_LONG = 10, MAP_LONG = 11, PEEK_LONG = 12, TAKE_WHILE_LONG = 13, LONG_TO_INT = 14, LONG_TO_DOUBLE = 15;
+    static final int FILTER_DOUBLE = 16, MAP_DOUBLE = 17, PEEK_DOUBLE = 18, TAKE_WHILE_DOUBLE = 19, DOUBLE_TO_INT = 20,
+            DOUBLE_TO_LONG = 21;
+    static final int LIMIT = 22, SKIP = 23;
+    static final int COUNT = 24, SUM = 25, SUM_DOUBLE = 26, FOR_EACH_INT = 27, FOR_EACH_LONG = 28, FOR_EACH_DOUBLE = 29;
+
+    private static final int KIND = kind();
+
+    FusedLoop(Object fn, long n, Fused.Stage next) {
+        super( fn, n, next );
+    }
+
+    private static int kind() {
+        try {
+            Integer kind = MethodHandles.classData( MethodHandles.lookup(), ConstantDescs.DEFAULT_NAME, Integer.class );
+            return kind == null ? -1 : kind;
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    @Override
+    void run(long from, long to) {
+        switch (KIND) {
+            case SOURCE_INTS:
+                ints( (int) from, (int) to );
+                return;
+            case SOURCE_LONGS:
+                longs( (int) from, (int) to );
+                return;
+            case SOURCE_DOUBLES:
+                doubles( (int) from, (int) to );
+                return;
+            case SOURCE_RANGE:
+                range( from, to );
+                return;
+            default:
+                throw new IllegalStateException( "not a source: " + KIND );
+        }
+    }
+
+    private void ints(int from, int to) {
+        int[] values = (int[]) fn;
+        for (int i = from; i < to; i++)
+            if (!next.accept( values[i] ))
+                return;
+    }
+
+    private void longs(int from, int to) {
+        long[] values = (long[]) fn;
+        for (int i = from; i < to; i++)
+            if (!next.accept( values[i] ))
+                return;
+    }
+
+    private void doubles(int from, int to) {
+        double[] values = (double[]) fn;
+        for (int i = from; i < to; i++)
+            if (!next.accept( Double.doubleToRawLongBits( values[i] ) ))
+                return;
+    }
+
+    private void range(long from, long to) {
+        for (long i = from; i < to; i++)
+            if (!next.accept( i ))
+                return;
+    }
+
+    /**
+     * Every case is a call of a small method, so this method stays under the inlining limit of the JIT.
+     */
+    @Override
+    boolean accept(long v) {
+        switch (KIND) {
+            case FILTER_INT:
+                return filterInt( v );
+            case MAP_INT:
+                return mapInt( v );
+            case PEEK_INT:
+                return peekInt( v );
+            case TAKE_WHILE_INT:
+                return takeWhileInt( v );
+            case INT_TO_LONG:
+                return intToLong( v );
+            case INT_TO_DOUBLE:
+                return intToDouble( v );
+            case FILTER_LONG:
+                return filterLong( v );
+            case MAP_LONG:
+                return mapLong( v );
+            case PEEK_LONG:
+                return peekLong( v );
+            case TAKE_WHILE_LONG:
+                return takeWhileLong( v );
+            case LONG_TO_INT:
+                return longToInt( v );
+            case LONG_TO_DOUBLE:
+                return longToDouble( v );
+            case FILTER_DOUBLE:
+                return filterDouble( v );
+            case MAP_DOUBLE:
+                return mapDouble( v );
+            case PEEK_DOUBLE:
+                return peekDouble( v );
+            case TAKE_WHILE_DOUBLE:
+                return takeWhileDouble( v );
+            case DOUBLE_TO_INT:
+                return doubleToInt( v );
+            case DOUBLE_TO_LONG:
+                return doubleToLong( v );
+            case LIMIT:
+                return limit( v );
+            case SKIP:
+                return skip( v );
+            case COUNT:
+                return count();
+            case SUM:
+                return sum( v );
+            case SUM_DOUBLE:
+                return sumDouble( v );
+            case FOR_EACH_INT:
+                return forEachInt( v );
+            case FOR_EACH_LONG:
+                return forEachLong( v );
+            case FOR_EACH_DOUBLE:
+                return forEachDouble( v );
+            default:
+                return notAnOperation();
+        }
+    }
+
+    private static boolean notAnOperation() {
+        throw new IllegalStateException( "not an operation: " + KIND );
+    }
+
+    private boolean filterInt(long v) {
+        return !((IntPredicate) fn).test( (int) v ) || next.accept( v );
+    }
+
+    private boolean mapInt(long v) {
+        return next.accept( ((IntUnaryOperator) fn).applyAsInt( (int) v ) );
+    }
+
+    private boolean peekInt(long v) {
+        ((IntConsumer) fn).accept( (int) v );
+        return next.accept( v );
+    }
+
+    private boolean takeWhileInt(long v) {
+        return ((IntPredicate) fn).test( (int) v ) && next.accept( v );
+    }
+
+    private boolean intToLong(long v) {
+        return next.accept( ((IntToLongFunction) fn).applyAsLong( (int) v ) );
+    }
+
+    private boolean intToDouble(long v) {
+        return next.accept( Double.doubleToRawLongBits( ((IntToDoubleFunction) fn).applyAsDouble( (int) v ) ) );
+    }
+
+    private boolean filterLong(long v) {
+        return !((LongPredicate) fn).test( v ) || next.accept( v );
+    }
+
+    private boolean mapLong(long v) {
+        return next.accept( ((LongUnaryOperator) fn).applyAsLong( v ) );
+    }
+
+    private boolean peekLong(long v) {
+        ((LongConsumer) fn).accept( v );
+        return next.accept( v );
+    }
+
+    private boolean takeWhileLong(long v) {
+        return ((LongPredicate) fn).test( v ) && next.accept( v );
+    }
+
+    private boolean longToInt(long v) {
+        return next.accept( ((LongToIntFunction) fn).applyAsInt( v ) );
+    }
+
+    private boolean longToDouble(long v) {
+        return next.accept( Double.doubleToRawLongBits( ((LongToDoubleFunction) fn).applyAsDouble( v ) ) );
+    }
+
+    private boolean filterDouble(long v) {
+        return !((DoublePredicate) fn).test( Double.longBitsToDouble( v ) ) || next.accept( v );
+    }
+
+    private boolean mapDouble(long v) {
+        double d = ((DoubleUnaryOperator) fn).applyAsDouble( Double.longBitsToDouble( v ) );
+        return next.accept( Double.doubleToRawLongBits( d ) );
+    }
+
+    private boolean peekDouble(long v) {
+        ((DoubleConsumer) fn).accept( Double.longBitsToDouble( v ) );
+        return next.accept( v );
+    }
+
+    private boolean takeWhileDouble(long v) {
+        return ((DoublePredicate) fn).test( Double.longBitsToDouble( v ) ) && next.accept( v );
+    }
+
+    private boolean doubleToInt(long v) {
+        return next.accept( ((DoubleToIntFunction) fn).applyAsInt( Double.longBitsToDouble( v ) ) );
+    }
+
+    private boolean doubleToLong(long v) {
+        return next.accept( ((DoubleToLongFunction) fn).applyAsLong( Double.longBitsToDouble( v ) ) );
+    }
+
+    private boolean limit(long v) {
+        if (remaining == 0)
+            return false;
+        remaining--;
+        return next.accept( v ) && remaining != 0;
+    }
+
+    private boolean skip(long v) {
+        if (remaining == 0)
+            return next.accept( v );
+        remaining--;
+        return true;
+    }
+
+    private boolean count() {
+        longResult++;
+        return true;
+    }
+
+    private boolean sum(long v) {
+        longResult += v;
+        return true;
+    }
+
+    /**
+     * Kahan summation like DoubleStream.sum, plus the plain sum for infinities.
+     */
+    private boolean sumDouble(long v) {
+        double d = Double.longBitsToDouble( v );
+        plainSum += d;
+        double y = d - compensation;
+        double t = doubleResult + y;
+        compensation = (t - doubleResult) - y;
+        doubleResult = t;
+        return true;
+    }
+
+    private boolean forEachInt(long v) {
+        ((IntConsumer) fn).accept( (int) v );
+        return true;
+    }
+
+    private boolean forEachLong(long v) {
+        ((LongConsumer) fn).accept( v );
+        return true;
+    }
+
+    private boolean forEachDouble(long v) {
+        ((DoubleConsumer) fn).accept( Double.longBitsToDouble( v ) );
+        return true;
+    }
+}
@@ -0,0 +1,652 @@
+package NEW.Collection.Stream;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Summary: ✔️ Joining two streams by key: a partitioned hash table on long keys, built and probed in parallel ✔️
+ * <p>
+ * The usual way is right.collect( groupingBy( key ) ) into a HashMap<Long, List<R>> and a lookup from left.map( ... ):
+ * the map is built on one thread, and every element costs a boxed key, a list and a HashMap.Node. Here the keys
+ * are longs (an int key widens), and the right stream, the build side, is hashed into 64 partitions by the top
+ * bits of the hash. Every partition is a table of its own: the rows in an array, the distinct keys in an
+ * open-addressing long[] (linear probing) pointing at the first row of the key, and an int[] chaining the rows
+ * with the same key, so a key with a million rows is one slot and a million ints.
+ * HashJoin<Order, Customer> join = HashJoin.on( Order::getCustomerId, Customer::getId );
+ * join.inner( orders, customers, (o, c) -> ... )   -> one result per matching pair
+ * join.left( orders, customers, (o, c) -> ... )    -> also the orders without a customer, with c == null
+ * join.semi( orders, customers )                   -> the orders that have a customer, each once
+ * Put the smaller stream on the right. Rows of the same key come in no particular order if the right stream is parallel.
+ * <p>
+ * Both sides run when the terminal operation starts. A parallel right stream is split into chunks that the
+ * calling thread and the pool take from left to right, each thread fills its own partitioned buffers, and the
+ * 64 partition tables are then built in parallel; the left stream probes the finished table in parallel
+ * if it is parallel, in its encounter order.
+ * <p>
+ * spill( budgetBytes, leftSerializer, rightSerializer ) bounds the memory of the build side (estimated with
+ * Serializer.heapSize plus the table). Once the right stream goes over it, every partition is written to a temp
+ * file, the left stream is partitioned into files the same way, and the partitions are joined one pair at a time.
+ * If the left stream is parallel, several pairs are joined at once, but only as many right partitions are loaded
+ * as fit in the budget together (a partition bigger than the whole budget is loaded alone), so the budget holds
+ * for the join as well, not only for the build. The results then come partition by partition, not in the
+ * encounter order of the left stream. A single key with more rows than the budget cannot be split and is loaded
+ * anyway. The files go to -Dstream.join.dir
+ * (java.io.tmpdir by default) and are deleted as soon as a partition is done, or when the stream is closed.
+ */
+public final class HashJoin<L, R> {
+    static final int PARTITION_BITS = 6;
+    static final int PARTITIONS = 1 << PARTITION_BITS;
+    private static final int SPILL_BLOCK_BYTES = 16 << 10;
+    private static final int CHUNKS_PER_TASK = 8;
+    private static final long MIN_CHUNK = 1 << 10;
+    private static final long ROW_BYTES = 40;           // key, reference, chain link and table slots of a row
+    private static final Path DIR = Paths.get( System.getProperty( "stream.join.dir", System.getProperty( "java.io.tmpdir" ) ) );
+
+    private final ToLongFunction<? super L> leftKey;
+    private final ToLongFunction<? super R> rightKey;
+    private long budgetBytes = Long.MAX_VALUE;
+    private ExternalSort.Serializer<L> leftSerializer;
+    private ExternalSort.Serializer<R> rightSerializer;
+
+    private HashJoin(ToLongFunction<? super L> leftKey, ToLongFunction<? super R> rightKey) {
+        this.leftKey = Objects.requireNonNull( leftKey );
+        this.rightKey = Objects.requireNonNull( rightKey );
+    }
+
+    public static <L, R> HashJoin<L, R> on(ToLongFunction<? super L> leftKey, ToLongFunction<? super R> rightKey) {
+        return new HashJoin<>( leftKey, rightKey );
+    }
+
+    public HashJoin<L, R> spill(long budgetBytes, ExternalSort.Serializer<L> leftSerializer, ExternalSort.Serializer<R> rightSerializer) {
+        if (budgetBytes < SPILL_BLOCK_BYTES)
+            throw new IllegalArgumentException( "budgetBytes < " + SPILL_BLOCK_BYTES + ": " + budgetBytes );
+        this.budgetBytes = budgetBytes;
+        this.leftSerializer = Objects.requireNonNull( leftSerializer );
+        this.rightSerializer = Objects.requireNonNull( rightSerializer );
+        return this;
+    }
+
+    public <T> Stream<T> inner(Stream<L> left, Stream<R> right, BiFunction<? super L, ? super R, ? extends T> combiner) {
+        Objects.requireNonNull( combiner );
+        return join( left, right, (l, key, partition, sink) -> {
+            for (int row = partition.find( key ); row >= 0; row = partition.next[row])
+                sink.accept( combiner.apply( l, partition.row( row ) ) );
+        } );
+    }
+
+    /**
+     * Every element of the left stream at least once: with null as the right element when nothing matches.
+     */
+    public <T> Stream<T> left(Stream<L> left, Stream<R> right, BiFunction<? super L, ? super R, ? extends T> combiner) {
+        Objects.requireNonNull( combiner );
+        return join( left, right, (l, key, partition, sink) -> {
+            int row = partition.find( key );
+            if (row < 0)
+                sink.accept( combiner.apply( l, null ) );
+            for (; row >= 0; row = partition.next[row])
+                sink.accept( combiner.apply( l, partition.row( row ) ) );
+        } );
+    }
+
+    /**
+     * The elements of the left stream that match at least one element of the right one, each once.
+     */
+    public Stream<L> semi(Stream<L> left, Stream<R> right) {
+        return join( left, right, (l, key, partition, sink) -> {
+            if (partition.find( key ) >= 0)
+                sink.accept( l );
+        } );
+    }
+
+    private interface Probe<L, R, T> {
+        void probe(L left, long key, Partition<R> partition, Consumer<? super T> sink);
+    }
+
+    private <T> Stream<T> join(Stream<L> left, Stream<R> right, Probe<L, R, T> probe) {
+        TempFiles files = new TempFiles();
+        boolean parallel = left.isParallel();
+        return StreamSupport.stream( () -> {
+                    try {
+                        Build build = new Build( right.spliterator(), right.isParallel(), files );
+                        if (build.partitions != null) {
+                            Partition<R>[] partitions = build.partitions;
+                            return left.<T>mapMulti( (l, sink) -> {
+                                long key = leftKey.applyAsLong( l );
+                                probe.probe( l, key, partitions[partitionOf( key )], sink );
+                            } ).spliterator();
+                        }
+                        Spilled<L> spilledLeft = new Spilled<>( files, "left", leftSerializer );
+                        new Partitioner<>( left.spliterator(), parallel, leftKey, leftSerializer, spilledLeft ).run();
+                        Semaphore memory = new Semaphore( kilobytes( budgetBytes ) );
+                        IntStream indexes = IntStream.range( 0, PARTITIONS );
+                        return (parallel ? indexes.parallel() : indexes).boxed()
+                                .<T>flatMap( p -> joinSpilled( p, build.spilled, spilledLeft, probe, memory ) )
+                                .spliterator();
+                    } catch (RuntimeException | Error e) {
+                        files.close();
+                        throw e;
+                    }
+                }, Spliterator.ORDERED, parallel )
+                .onClose( files::close ).onClose( left::close ).onClose( right::close );
+    }
+
+    /**
+     * Loads partition p of the right side into a table and streams partition p of the left side through it.
+     * The table takes its size from the budget (memory, in KB) until the stream is closed, which flatMap does
+     * as soon as the stream is consumed.
+     */
+    private <T> Stream<T> joinSpilled(int p, Spilled<R> right, Spilled<L> left, Probe<L, R, T> probe, Semaphore memory) {
+        int permits = Math.min( kilobytes( right.bytes( p ) ), kilobytes( budgetBytes ) );
+        memory.acquireUninterruptibly( permits );
+        try {
+            Partition<R> partition = new Partition<>( right.read( p ), rightKey );
+            right.delete( p );
+            return left.stream( p ).<T>mapMulti( (l, sink) -> probe.probe( l, leftKey.applyAsLong( l ), partition, sink ) )
+                    .onClose( () -> left.delete( p ) )
+                    .onClose( () -> memory.release( permits ) );
+        } catch (RuntimeException | Error e) {
+            memory.release( permits );
+            throw e;
+        }
+    }
+
+    private static int kilobytes(long bytes) {
+        return (int) Math.min( Integer.MAX_VALUE, (bytes + 1023) >> 10 );
+    }
+
+    static int partitionOf(long key) {
+        return (int) (LongHashSet.mix( key ) >>> (64 - PARTITION_BITS));
+    }
+
+    /**
+     * The build side: partitioned buffers per worker, then either the partition tables or the spilled files.
+     */
+    private final class Build {
+        final Queue<Buffers<R>> filled = new ConcurrentLinkedQueue<>();
+        final AtomicLong used = new AtomicLong();
+        final TempFiles files;
+        volatile Spilled<R> spilled;
+        Partition<R>[] partitions;
+
+        Build(Spliterator<R> source, boolean parallel, TempFiles files) {
+            this.files = files;
+            new Chunks( source, parallel ).run( chunks -> {
+                Buffers<R> buffers = new Buffers<>();
+                SpillWriter<R> writer = null;
+                long pending = 0;
+                for (Spliterator<?> chunk; (chunk = chunks.next()) != null; ) {
+                    @SuppressWarnings("unchecked")
+                    Iterator<R> rows = Spliterators.iterator( (Spliterator<R>) chunk );
+                    while (rows.hasNext()) {
+                        R row = rows.next();
+                        long key = rightKey.applyAsLong( row );
+                        if (writer != null) {
+                            writer.write( partitionOf( key ), row );
+                            continue;
+                        }
+                        buffers.add( partitionOf( key ), key, row );
+                        if (rightSerializer != null && (pending += ROW_BYTES + rightSerializer.heapSize( row )) >= SPILL_BLOCK_BYTES) {
+                            if (used.addAndGet( pending ) > budgetBytes && spilled == null)
+                                spill();
+                            pending = 0;
+                        }
+                        if (spilled != null) {
+                            writer = new SpillWriter<>( spilled, rightSerializer );
+                            buffers.writeTo( writer );
+                        }
+                    }
+                }
+                if (writer != null)
+                    writer.flush();
+                else
+                    filled.add( buffers );
+            } );
+            if (spilled != null) {
+                SpillWriter<R> writer = new SpillWriter<>( spilled, rightSerializer );
+                for (Buffers<R> buffers; (buffers = filled.poll()) != null; )
+                    buffers.writeTo( writer );
+                writer.flush();
+                spilled.finish();
+            } else {
+                List<Buffers<R>> all = new ArrayList<>( filled );
+                @SuppressWarnings("unchecked")
+                Partition<R>[] tables = (Partition<R>[]) new Partition<?>[PARTITIONS];
+                IntStream indexes = IntStream.range( 0, PARTITIONS );
+                (parallel ? indexes.parallel() : indexes).forEach( p -> tables[p] = new Partition<>( all, p ) );
+                partitions = tables;
+            }
+        }
+
+        private synchronized void spill() {
+            if (spilled == null)
+                spilled = new Spilled<>( files, "right", rightSerializer );
+        }
+    }
+
+    /**
+     * Writes the elements of one side into the partition files of that side.
+     */
+    private static final class Partitioner<T> {
+        private final Chunks chunks;
+        private final ToLongFunction<? super T> key;
+        private final ExternalSort.Serializer<T> serializer;
+        private final Spilled<T> spilled;
+
+        Partitioner(Spliterator<T> source, boolean parallel, ToLongFunction<? super T> key,
+                    ExternalSort.Serializer<T> serializer, Spilled<T> spilled) {
+            this.chunks = new Chunks( source, parallel );
+            this.key = key;
+            this.serializer = serializer;
+            this.spilled = spilled;
+        }
+
+        void run() {
+            chunks.run( next -> {
+                SpillWriter<T> writer = new SpillWriter<>( spilled, serializer );
+                for (Spliterator<?> chunk; (chunk = next.next()) != null; ) {
+                    @SuppressWarnings("unchecked")
+                    Spliterator<T> elements = (Spliterator<T>) chunk;
+                    elements.forEachRemaining( t -> writer.write( partitionOf( key.applyAsLong( t ) ), t ) );
+                }
+                writer.flush();
+            } );
+            spilled.finish();
+        }
+    }
+
+    /**
+     * A source split in encounter order into chunks, taken from left to right by the calling thread and the pool.
+     */
+    private static final class Chunks {
+        private final List<Spliterator<?>> parts = new ArrayList<>();
+        private final AtomicInteger next = new AtomicInteger();
+        private final ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+        private volatile boolean failed;
+
+        interface Next {
+            /**
+             * The next chunk, or null when there are no more.
+             */
+            Spliterator<?> next();
+        }
+
+        interface Worker {
+            void run(Next chunks);
+        }
+
+        Chunks(Spliterator<?> source, boolean parallel) {
+            int chunks = (pool.getParallelism() + 1) * CHUNKS_PER_TASK;
+            split( source, parallel ? 32 - Integer.numberOfLeadingZeros( chunks - 1 ) : 0 );
+        }
+
+        private void split(Spliterator<?> part, int depth) {
+            Spliterator<?> prefix;
+            if (depth > 0 && part.estimateSize() > MIN_CHUNK && (prefix = part.trySplit()) != null) {
+                split( prefix, depth - 1 );
+                split( part, depth - 1 );
+            } else {
+                parts.add( part );
+            }
+        }
+
+        void run(Worker worker) {
+            Next chunks = () -> {
+                int chunk;
+                return !failed && (chunk = next.getAndIncrement()) < parts.size() ? parts.get( chunk ) : null;
+            };
+            Runnable task = () -> {
+                try {
+                    worker.run( chunks );
+                } catch (RuntimeException | Error e) {
+                    failed = true;
+                    throw e;
+                }
+            };
+            int helpers = Math.min( parts.size(), pool.getParallelism() + 1 ) - 1;
+            List<ForkJoinTask<?>> tasks = new ArrayList<>( helpers );
+            for (int i = 0; i < helpers; i++)
+                tasks.add( pool.submit( task ) );
+            Throwable failure = null;
+            try {
+                task.run();
+            } catch (RuntimeException | Error e) {
+                failure = e;
+            }
+            for (ForkJoinTask<?> t : tasks) {
+                try {
+                    t.join();
+                } catch (RuntimeException | Error e) {
+                    if (failure == null)
+                        failure = e;
+                }
+            }
+            if (failure instanceof RuntimeException)
+                throw (RuntimeException) failure;
+            if (failure != null)
+                throw (Error) failure;
+        }
+    }
+
+    /**
+     * The rows of one worker, per partition: keys and elements in growing arrays.
+     */
+    private static final class Buffers<R> {
+        final long[][] keys = new long[PARTITIONS][];
+        final Object[][] rows = new Object[PARTITIONS][];
+        final int[] sizes = new int[PARTITIONS];
+
+        void add(int p, long key, R row) {
+            int size = sizes[p];
+            if (keys[p] == null) {
+                keys[p] = new long[16];
+                rows[p] = new Object[16];
+            } else if (size == keys[p].length) {
+                keys[p] = Arrays.copyOf( keys[p], size * 2 );
+                rows[p] = Arrays.copyOf( rows[p], size * 2 );
+            }
+            keys[p][size] = key;
+            rows[p][size] = row;
+            sizes[p] = size + 1;
+        }
+
+        @SuppressWarnings("unchecked")
+        void writeTo(SpillWriter<R> writer) {
+            for (int p = 0; p < PARTITIONS; p++) {
+                for (int i = 0; i < sizes[p]; i++)
+                    writer.write( p, (R) rows[p][i] );
+                keys[p] = null;
+                rows[p] = null;
+                sizes[p] = 0;
+            }
+        }
+    }
+
+    /**
+     * The hash table of one partition. Row r is rows[r]; heads[slot] - 1 is the first row of the key in
+     * keys[slot] (0: free slot), next[r] the next row with the same key (-1: the last one).
+     */
+    static final class Partition<R> {
+        private final Object[] rows;
+        final int[] next;
+        private final long[] keys;
+        private final int[] heads;
+        private final int mask;
+
+        Partition(List<? extends Buffers<R>> buffers, int p) {
+            int total = 0;
+            for (Buffers<R> b : buffers)
+                total += b.sizes[p];
+            long[] rowKeys = new long[total];
+            rows = new Object[total];
+            int at = 0;
+            for (Buffers<R> b : buffers) {
+                if (b.sizes[p] > 0) {
+                    System.arraycopy( b.keys[p], 0, rowKeys, at, b.sizes[p] );
+                    System.arraycopy( b.rows[p], 0, rows, at, b.sizes[p] );
+                    at += b.sizes[p];
+                }
+                b.keys[p] = null;           // only this partition's task touches partition p of the buffers
+                b.rows[p] = null;
+            }
+            next = new int[total];
+            int capacity = capacityFor( total );
+            keys = new long[capacity];
+            heads = new int[capacity];
+            mask = capacity - 1;
+            index( rowKeys );
+        }
+
+        Partition(List<R> rows, ToLongFunction<? super R> key) {
+            this.rows = rows.toArray();
+            long[] rowKeys = new long[this.rows.length];
+            for (int r = 0; r < rowKeys.length; r++)
+                rowKeys[r] = key.applyAsLong( rows.get( r ) );
+            next = new int[rowKeys.length];
+            int capacity = capacityFor( rowKeys.length );
+            keys = new long[capacity];
+            heads = new int[capacity];
+            mask = capacity - 1;
+            index( rowKeys );
+        }
+
+        /**
+         * From the last row to the first, every row becomes the head of its key: the chains keep the order of the rows.
+         */
+        private void index(long[] rowKeys) {
+            for (int r = rowKeys.length - 1; r >= 0; r--) {
+                long key = rowKeys[r];
+                int i = (int) LongHashSet.mix( key ) & mask;
+                while (heads[i] != 0 && keys[i] != key)
+                    i = (i + 1) & mask;
+                next[r] = heads[i] - 1;
+                keys[i] = key;
+                heads[i] = r + 1;
+            }
+        }
+
+        /**
+         * The first row with the key, or -1.
+         */
+        int find(long key) {
+            for (int i = (int) LongHashSet.mix( key ) & mask, head; (head = heads[i]) != 0; i = (i + 1) & mask)
+                if (keys[i] == key)
+                    return head - 1;
+            return -1;
+        }
+
+        @SuppressWarnings("unchecked")
+        R row(int r) {
+            return (R) rows[r];
+        }
+
+        private static int capacityFor(int rows) {
+            long needed = Math.max( 4, (long) rows * 4 / 3 + 1 );
+            if (needed > 1 << 30)
+                throw new IllegalArgumentException( "too many rows in a partition: " + rows );
+            return Integer.highestOneBit( (int) needed - 1 ) << 1;
+        }
+    }
+
+    /**
+     * The temp files of one join. close() deletes the ones still there, and can be called more than once.
+     */
+    private static final class TempFiles implements Closeable {
+        private final List<Path> paths = new ArrayList<>();
+
+        synchronized Path create(String side) {
+            try {
+                Path file = Files.createTempFile( DIR, "join-" + side + "-", ".part" );
+                paths.add( file );
+                return file;
+            } catch (IOException e) {
+                throw new UncheckedIOException( e );
+            }
+        }
+
+        synchronized void delete(Path file) {
+            try {
+                Files.deleteIfExists( file );
+                paths.remove( file );
+            } catch (IOException e) {
+                throw new UncheckedIOException( e );
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            for (Path file : new ArrayList<>( paths ))
+                delete( file );
+        }
+    }
+
+    /**
+     * One side written to a file per partition. Workers append whole blocks under the lock of the partition.
+     */
+    private static final class Spilled<T> {
+        private final TempFiles files;
+        private final ExternalSort.Serializer<T> serializer;
+        private final Path[] paths = new Path[PARTITIONS];
+        private final OutputStream[] outs = new OutputStream[PARTITIONS];
+        private final FileChannel[] channels = new FileChannel[PARTITIONS];
+        private final AtomicLongArray counts = new AtomicLongArray( PARTITIONS );
+        private final AtomicLongArray bytes = new AtomicLongArray( PARTITIONS );   // estimated heap size once loaded
+
+        Spilled(TempFiles files, String side, ExternalSort.Serializer<T> serializer) {
+            this.files = files;
+            this.serializer = serializer;
+            try {
+                for (int p = 0; p < PARTITIONS; p++) {
+                    paths[p] = files.create( side );
+                    channels[p] = FileChannel.open( paths[p], StandardOpenOption.WRITE );
+                    outs[p] = Channels.newOutputStream( channels[p] );
+                }
+            } catch (IOException e) {
+                finish();
+                throw new UncheckedIOException( e );
+            }
+        }
+
+        void append(int p, ByteArrayOutputStream block, long count, long heapBytes) {
+            synchronized (outs[p]) {
+                try {
+                    block.writeTo( outs[p] );
+                } catch (IOException e) {
+                    throw new UncheckedIOException( e );
+                }
+            }
+            counts.addAndGet( p, count );
+            bytes.addAndGet( p, heapBytes );
+        }
+
+        long bytes(int p) {
+            return bytes.get( p );
+        }
+
+        void finish() {
+            for (FileChannel channel : channels) {
+                try {
+                    if (channel != null)
+                        channel.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException( e );
+                }
+            }
+        }
+
+        List<T> read(int p) {
+            long count = counts.get( p );
+            List<T> values = new ArrayList<>( (int) Math.min( count, 1 << 20 ) );
+            try (DataInputStream in = open( p )) {
+                for (long i = 0; i < count; i++)
+                    values.add( serializer.read( in ) );
+            } catch (IOException e) {
+                throw new UncheckedIOException( e );
+            }
+            return values;
+        }
+
+        Stream<T> stream(int p) {
+            DataInputStream in = open( p );
+            long count = counts.get( p );
+            return StreamSupport.stream( new Spliterators.AbstractSpliterator<T>( count, Spliterator.SIZED ) {
+                long read;
+
+                @Override
+                public boolean tryAdvance(Consumer<? super T> action) {
+                    if (read == count)
+                        return false;
+                    try {
+                        action.accept( serializer.read( in ) );
+                    } catch (IOException e) {
+                        throw new UncheckedIOException( e );
+                    }
+                    read++;
+                    return true;
+                }
+            }, false ).onClose( () -> {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException( e );
+                }
+            } );
+        }
+
+        private DataInputStream open(int p) {
+            try {
+                return new DataInputStream( new BufferedInputStream( Files.newInputStream( paths[p] ), ExternalSort.BLOCK_BYTES ) );
+            } catch (IOException e) {
+                throw new UncheckedIOException( e );
+            }
+        }
+
+        void delete(int p) {
+            files.delete( paths[p] );
+        }
+    }
+
+    /**
+     * Serializes the elements of one worker into a block per partition, appended to the file when full.
+     */
+    private static final class SpillWriter<T> {
+        private final Spilled<T> spilled;
+        private final ExternalSort.Serializer<T> serializer;
+        private final ByteArrayOutputStream[] blocks = new ByteArrayOutputStream[PARTITIONS];
+        private final DataOutputStream[] outs = new DataOutputStream[PARTITIONS];
+        private final long[] counts = new long[PARTITIONS];
+        private final long[] heapBytes = new long[PARTITIONS];
+
+        SpillWriter(Spilled<T> spilled, ExternalSort.Serializer<T> serializer) {
+            this.spilled = spilled;
+            this.serializer = serializer;
+        }
+
+        void write(int p, T value) {
+            if (blocks[p] == null) {
+                blocks[p] = new ByteArrayOutputStream( SPILL_BLOCK_BYTES + 256 );
+                outs[p] = new DataOutputStream( blocks[p] );
+            }
+            try {
+                serializer.write( value, outs[p] );
+            } catch (IOException e) {
+                throw new UncheckedIOException( e );
+            }
+            counts[p]++;
+            heapBytes[p] += ROW_BYTES + serializer.heapSize( value );
+            if (blocks[p].size() >= SPILL_BLOCK_BYTES)
+                flush( p );
+        }
+
+        private void flush(int p) {
+            spilled.append( p, blocks[p], counts[p], heapBytes[p] );
+            blocks[p].reset();
+            counts[p] = 0;
+            heapBytes[p] = 0;
+        }
+
+        void flush() {
+            for (int p = 0; p < PARTITIONS; p++)
+                if (counts[p] > 0)
+                    flush( p );
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package NEW.Collection.Stream;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Summary: ✔️ Joining n orders with n / 10 customers by key: a HashMap lookup vs {@link HashJoin}, uniform and skewed keys ✔️
+ * <p>
+ * uniform      -> every order has a random customer, every customer appears once on the build side.
+ * skewed-probe -> the customer of an order is log-uniform (customer 1 gets as many orders as 2..9 together ...),
+ * so a few hot keys get most of the probes.
+ * skewed-build -> the build side has duplicates with a log-uniform key, the probe side every key once:
+ * a few keys have long chains of rows, and most rows fall into a few partitions.
+ * loop          -> HashMap<Long, List<Row>> filled and probed with for loops, the baseline.
+ * map / map-par -> right.collect( groupingBy ) then left.flatMap( map lookup ).count(), sequential and
+ * parallel (groupingByConcurrent).
+ * join / join-par -> HashJoin.inner( left, right, ... ).count(), sequential and parallel.
+ * join-spill    -> join-par with a budget of a tenth of the build side: everything goes through temp files.
+ * Every mode counts the joined pairs; ns/elem is per order.
+ */
+public class HashJoinBenchmark {
+    static final class Row {
+        final long key;
+        final long value;
+
+        Row(long key, long value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    static final ExternalSort.Serializer<Row> ROWS = new ExternalSort.Serializer<>() {
+        @Override
+        public void write(Row row, DataOutput out) throws IOException {
+            out.writeLong( row.key );
+            out.writeLong( row.value );
+        }
+
+        @Override
+        public Row read(DataInput in) throws IOException {
+            return new Row( in.readLong(), in.readLong() );
+        }
+
+        @Override
+        public long heapSize(Row row) {
+            return 32;
+        }
+    };
+
+    public static void main(String[] args) {
+        Bench bench = new Bench();
+        for (int n : Bench.sizes( "1e5,1e6" )) {
+            int customers = Math.max( 1, n / 10 );
+            SplittableRandom random = new SplittableRandom( 42 );
+            List<Row> uniformOrders = new ArrayList<>( n );
+            List<Row> skewedOrders = new ArrayList<>( n );
+            List<Row> uniqueOrders = new ArrayList<>( customers );
+            List<Row> uniqueCustomers = new ArrayList<>( customers );
+            List<Row> skewedCustomers = new ArrayList<>( customers );
+            for (int i = 0; i < n; i++) {
+                uniformOrders.add( new Row( random.nextInt( customers ), i ) );
+                skewedOrders.add( new Row( logUniform( random, customers ), i ) );
+            }
+            for (int i = 0; i < customers; i++) {
+                uniqueOrders.add( new Row( i, i ) );
+                uniqueCustomers.add( new Row( i, i ) );
+                skewedCustomers.add( new Row( logUniform( random, customers ), i ) );
+            }
+            run( bench, "uniform", n, uniformOrders, uniqueCustomers );
+            run( bench, "skewed-probe", n, skewedOrders, uniqueCustomers );
+            run( bench, "skewed-build", customers, uniqueOrders, skewedCustomers );
+        }
+    }
+
+    private static void run(Bench bench, String name, int n, List<Row> left, List<Row> right) {
+        bench.run( name, Bench.LOOP, n, () -> {
+            Map<Long, List<Row>> map = new HashMap<>();
+            for (Row row : right)
+                map.computeIfAbsent( row.key, k -> new ArrayList<>() ).add( row );
+            long pairs = 0;
+            for (Row row : left) {
+                List<Row> matches = map.get( row.key );
+                if (matches != null)
+                    pairs += matches.size();
+            }
+            return pairs;
+        } );
+        bench.run( name, "map", n, () -> {
+            Map<Long, List<Row>> map = right.stream().collect( Collectors.groupingBy( row -> row.key ) );
+            return left.stream().flatMap( row -> map.getOrDefault( row.key, List.of() ).stream() ).count();
+        } );
+        bench.run( name, "map-par", n, () -> {
+            ConcurrentMap<Long, List<Row>> map = right.parallelStream().collect( Collectors.groupingByConcurrent( row -> row.key ) );
+            return left.parallelStream().flatMap( row -> map.getOrDefault( row.key, List.of() ).stream() ).count();
+        } );
+        HashJoin<Row, Row> join = HashJoin.on( (Row row) -> row.key, (Row row) -> row.key );
+        bench.run( name, "join", n, () -> join.inner( left.stream(), right.stream(), (l, r) -> r ).count() );
+        bench.run( name, "join-par", n, () -> join.inner( left.parallelStream(), right.parallelStream(), (l, r) -> r ).count() );
+        HashJoin<Row, Row> spilling = HashJoin.on( (Row row) -> row.key, (Row row) -> row.key )
+                .spill( Math.max( 1 << 16, right.size() * 72L / 10 ), ROWS, ROWS );
+        bench.run( name, "join-spill", n, () -> {
+            try (Stream<Row> joined = spilling.inner( left.parallelStream(), right.parallelStream(), (l, r) -> r )) {
+                return joined.count();
+            }
+        } );
+    }
+
+    /**
+     * 0 .. bound - 1, where every key is about as likely as all the keys up to twice as far together.
+     */
+    static long logUniform(SplittableRandom random, int bound) {
+        return (long) Math.exp( random.nextDouble() * Math.log( bound ) ) - 1;
+    }
+}
@@ -0,0 +1,110 @@
+package NEW.Collection.Stream;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Summary: ✔️ A List<Integer> without the Integers: a growable int[] ✔️
+ * <p>
+ * An ArrayList<Integer> holds a reference per element to an Integer object (16 bytes + 4-8 for the reference),
+ * this list holds the ints themselves, 4 bytes each, and reading it never unboxes.
+ * <p>
+ * Works as a mutable container for IntStream.collect():
+ * IntArrayList list = IntStream.range( 0, 10 ).collect( IntArrayList::new, IntArrayList::add, IntArrayList::addAll );
+ * For a SIZED stream, {@link SizedCollectors#toIntArrayList( IntStream )} allocates the exact size up front.
+ */
+public final class IntArrayList {
+    private int[] elements;
+    private int size;
+
+    public IntArrayList() {
+        this( 10 );
+    }
+
+    public IntArrayList(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException( "capacity < 0: " + capacity );
+        this.elements = new int[capacity];
+    }
+
+    private IntArrayList(int[] elements) {
+        this.elements = elements;
+        this.size = elements.length;
+    }
+
+    /**
+     * A list over the array itself, not a copy: for arrays that nobody else keeps.
+     */
+    static IntArrayList wrap(int[] elements) {
+        return new IntArrayList( elements );
+    }
+
+    public void add(int value) {
+        if (size == elements.length)
+            grow( size + 1 );
+        elements[size++] = value;
+    }
+
+    public void addAll(IntArrayList other) {
+        if (size + other.size > elements.length)
+            grow( size + other.size );
+        System.arraycopy( other.elements, 0, elements, size, other.size );
+        size += other.size;
+    }
+
+    public int get(int index) {
+        checkIndex( index );
+        return elements[index];
+    }
+
+    public int set(int index, int value) {
+        checkIndex( index );
+        int old = elements[index];
+        elements[index] = value;
+        return old;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf( elements, size );
+    }
+
+    public Spliterator.OfInt spliterator() {
+        return Spliterators.spliterator( elements, 0, size, Spliterator.ORDERED );
+    }
+
+    public IntStream stream() {
+        return StreamSupport.intStream( spliterator(), false );
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException( "index " + index + ", size " + size );
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max( minCapacity, elements.length + (elements.length >> 1) + 1 );
+        if (capacity < 0)
+            throw new OutOfMemoryError( "list too big: " + minCapacity );
+        elements = Arrays.copyOf( elements, capacity );
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString( toArray() );
+    }
+}
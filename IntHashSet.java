@@ -0,0 +1,147 @@
+package NEW.Collection.Stream;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Summary: ✔️ A set of int values that never boxes: open addressing with linear probing over a plain int[] ✔️
+ * <p>
+ * A HashSet<Integer> costs an Integer object plus a HashMap.Node per element (~48 bytes),
+ * this set costs 4-8 bytes per element and no objects at all.
+ * 0 is used as the "free slot" marker, so the value 0 itself is tracked by a separate flag.
+ * <p>
+ * Works as a mutable container for IntStream.collect():
+ * IntHashSet set = IntStream.of( 2, 1, 8, 1, 3, 2 ).collect( IntHashSet::new, IntHashSet::add, IntHashSet::addAll );
+ */
+public final class IntHashSet {
+    private static final int FREE = 0;
+
+    private int[] keys;
+    private int mask;
+    private int resizeAt;
+    private int size;
+    private boolean hasFree;
+
+    public IntHashSet() {
+        this( 16 );
+    }
+
+    public IntHashSet(int expectedSize) {
+        allocate( capacityFor( expectedSize ) );
+    }
+
+    /**
+     * @return true if the value was not in the set yet.
+     */
+    public boolean add(int value) {
+        if (value == FREE) {
+            if (hasFree)
+                return false;
+            hasFree = true;
+            size++;
+            return true;
+        }
+        int i = mix( value ) & mask;
+        for (int key; (key = keys[i]) != FREE; i = (i + 1) & mask)
+            if (key == value)
+                return false;
+        keys[i] = value;
+        if (++size >= resizeAt)
+            rehash( keys.length << 1 );
+        return true;
+    }
+
+    public boolean contains(int value) {
+        if (value == FREE)
+            return hasFree;
+        int i = mix( value ) & mask;
+        for (int key; (key = keys[i]) != FREE; i = (i + 1) & mask)
+            if (key == value)
+                return true;
+        return false;
+    }
+
+    public void addAll(IntHashSet other) {
+        if (other.hasFree)
+            add( FREE );
+        for (int key : other.keys)
+            if (key != FREE)
+                add( key );
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill( keys, FREE );
+        hasFree = false;
+        size = 0;
+    }
+
+    /**
+     * The values in no particular order.
+     */
+    public int[] toArray() {
+        int[] result = new int[size];
+        int j = 0;
+        if (hasFree)
+            result[j++] = FREE;
+        for (int key : keys)
+            if (key != FREE)
+                result[j++] = key;
+        return result;
+    }
+
+    public Spliterator.OfInt spliterator() {
+        return Spliterators.spliterator( toArray(), Spliterator.DISTINCT | Spliterator.IMMUTABLE );
+    }
+
+    public IntStream stream() {
+        return StreamSupport.intStream( spliterator(), false );
+    }
+
+    private void rehash(int capacity) {
+        int[] old = keys;
+        allocate( capacity );
+        for (int key : old) {
+            if (key == FREE)
+                continue;
+            int i = mix( key ) & mask;
+            while (keys[i] != FREE)
+                i = (i + 1) & mask;
+            keys[i] = key;
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity / 4 * 3;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long needed = Math.max( 4, (long) expectedSize * 4 / 3 + 1 );
+        if (needed > 1 << 30)
+            throw new IllegalArgumentException( "too many elements: " + expectedSize );
+        return Integer.highestOneBit( (int) needed - 1 ) << 1;
+    }
+
+    /**
+     * Spreads sequential keys over the table (murmur3 finalizer), otherwise 1, 2, 3 ... would cluster.
+     */
+    static int mix(int x) {
+        x ^= x >>> 16;
+        x *= 0x85ebca6b;
+        x ^= x >>> 13;
+        x *= 0xc2b2ae35;
+        return x ^ (x >>> 16);
+    }
+}
@@ -0,0 +1,124 @@
+package NEW.Collection.Stream;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Summary: ✔️ A LinkedHashSet<Integer> without boxing: distinct ints in insertion order ✔️
+ * <p>
+ * A LinkedHashSet<Integer> costs an Integer and a LinkedHashMap.Entry per element (~56 bytes). Here the values
+ * are kept in an int[] in insertion order, and an open-addressing table (linear probing, as {@link IntHashSet})
+ * holds position + 1 of each value in that array, 0 for a free slot: about 12 bytes per element,
+ * and iteration is a plain walk over the array.
+ * <p>
+ * Works as a mutable container for IntStream.collect():
+ * IntLinkedHashSet set = IntStream.of( 3, 1, 3, 2 ).collect( IntLinkedHashSet::new, IntLinkedHashSet::add, IntLinkedHashSet::addAll );
+ * -> 3, 1, 2
+ */
+public final class IntLinkedHashSet {
+    private int[] values;
+    private int size;
+    private int[] table;
+    private int mask;
+    private int resizeAt;
+
+    public IntLinkedHashSet() {
+        this( 16 );
+    }
+
+    public IntLinkedHashSet(int expectedSize) {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException( "expectedSize < 0: " + expectedSize );
+        values = new int[Math.max( 4, expectedSize )];
+        allocate( capacityFor( expectedSize ) );
+    }
+
+    /**
+     * @return true if the value was not in the set yet.
+     */
+    public boolean add(int value) {
+        int i = IntHashSet.mix( value ) & mask;
+        for (int slot; (slot = table[i]) != 0; i = (i + 1) & mask)
+            if (values[slot - 1] == value)
+                return false;
+        if (size == values.length)
+            values = Arrays.copyOf( values, values.length + (values.length >> 1) + 1 );
+        values[size++] = value;
+        table[i] = size;
+        if (size >= resizeAt)
+            rehash( table.length << 1 );
+        return true;
+    }
+
+    public boolean contains(int value) {
+        int i = IntHashSet.mix( value ) & mask;
+        for (int slot; (slot = table[i]) != 0; i = (i + 1) & mask)
+            if (values[slot - 1] == value)
+                return true;
+        return false;
+    }
+
+    public void addAll(IntLinkedHashSet other) {
+        for (int i = 0; i < other.size; i++)
+            add( other.values[i] );
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill( table, 0 );
+        size = 0;
+    }
+
+    /**
+     * The values in insertion order.
+     */
+    public int[] toArray() {
+        return Arrays.copyOf( values, size );
+    }
+
+    public Spliterator.OfInt spliterator() {
+        return Spliterators.spliterator( values, 0, size, Spliterator.ORDERED | Spliterator.DISTINCT );
+    }
+
+    public IntStream stream() {
+        return StreamSupport.intStream( spliterator(), false );
+    }
+
+    private void rehash(int capacity) {
+        allocate( capacity );
+        for (int position = 0; position < size; position++) {
+            int i = IntHashSet.mix( values[position] ) & mask;
+            while (table[i] != 0)
+                i = (i + 1) & mask;
+            table[i] = position + 1;
+        }
+    }
+
+    private void allocate(int capacity) {
+        table = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity / 4 * 3;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long needed = Math.max( 4, (long) expectedSize * 4 / 3 + 1 );
+        if (needed > 1 << 30)
+            throw new IllegalArgumentException( "too many elements: " + expectedSize );
+        return Integer.highestOneBit( (int) needed - 1 ) << 1;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString( toArray() );
+    }
+}
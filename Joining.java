@@ -0,0 +1,257 @@
+package NEW.Collection.Stream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+/**
+ * Summary: ✔️ Collectors.joining without the garbage: reused buffers, direct output to an Appendable or as UTF-8 bytes ✔️
+ * <p>
+ * Collectors.joining( " -> ", "[ ", " ]" ) creates a StringJoiner per call, grows its buffer again and again
+ * and copies everything into the final String. Here:
+ * joining( ... ) -> Collector like Collectors.joining, but the StringBuilder comes from a small per-thread pool
+ * (it keeps its capacity between calls) and is pre-sized from the previous result of the same collector: its length,
+ * shared out among the containers that built it (one per fork under parallel()), so the only allocation left is
+ * the resulting String.
+ * joinTo( ... )  -> writes the elements straight into any Appendable (StringBuilder, CharBuffer, Writer ...),
+ * no String is created at all.
+ * joinUtf8( ... ) -> encodes the elements straight into UTF-8 bytes in a reused per-thread buffer and writes them to
+ * an OutputStream in big blocks (use Channels.newOutputStream for a channel).
+ * <p>
+ * Sequential streams are written element by element. A parallel stream is first joined into pooled builders
+ * (one per fork, kept in encounter order) and then written in one go.
+ */
+public final class Joining {
+    private static final int POOL_SIZE = 4;
+    private static final int MAX_POOLED_CHARS = 1 << 20;
+    private static final int UTF8_BUFFER_BYTES = 1 << 16;
+
+    private static final ThreadLocal<ArrayDeque<StringBuilder>> BUILDERS = ThreadLocal.withInitial( ArrayDeque::new );
+    private static final ThreadLocal<byte[]> UTF8_BUFFERS = new ThreadLocal<>();    // null while in use
+
+    private Joining() {
+    }
+
+    public static Collector<CharSequence, ?, String> joining() {
+        return joining( "", "", "" );
+    }
+
+    public static Collector<CharSequence, ?, String> joining(CharSequence delimiter) {
+        return joining( delimiter, "", "" );
+    }
+
+    public static Collector<CharSequence, ?, String> joining(CharSequence delimiter, CharSequence prefix, CharSequence suffix) {
+        AtomicInteger expectedLength = new AtomicInteger( 16 );     // per container, from the previous result
+        AtomicInteger containers = new AtomicInteger();
+        return Collector.of(
+                () -> {
+                    containers.incrementAndGet();
+                    return new Part( acquire( expectedLength.get() ), prefix );
+                },
+                (part, s) -> part.add( s, delimiter ),
+                (left, right) -> left.merge( right, delimiter ),
+                part -> {
+                    String result = part.finish( suffix );
+                    expectedLength.lazySet( result.length() / Math.max( 1, containers.getAndSet( 0 ) ) + 16 );
+                    return result;
+                } );
+    }
+
+    /**
+     * Appends prefix, the elements separated by the delimiter, and suffix to {@code out}.
+     *
+     * @return out
+     */
+    public static <A extends Appendable> A joinTo(Stream<? extends CharSequence> stream, A out,
+                                                 CharSequence delimiter, CharSequence prefix, CharSequence suffix) {
+        try {
+            out.append( prefix );
+            if (stream.isParallel()) {
+                Part part = collect( stream, delimiter );
+                out.append( part.sb, part.start, part.sb.length() );
+                release( part.sb );
+            } else {
+                boolean[] first = { true };
+                stream.forEachOrdered( s -> {
+                    try {
+                        if (!first[0])
+                            out.append( delimiter );
+                        out.append( s );
+                        first[0] = false;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException( e );
+                    }
+                } );
+            }
+            out.append( suffix );
+            return out;
+        } catch (IOException e) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    /**
+     * Writes prefix, the elements separated by the delimiter, and suffix to {@code out} as UTF-8.
+     * Unpaired surrogates are written as '?', as String.getBytes does.
+     *
+     * @return the number of bytes written.
+     */
+    public static long joinUtf8(Stream<? extends CharSequence> stream, OutputStream out,
+                                CharSequence delimiter, CharSequence prefix, CharSequence suffix) {
+        Utf8Writer writer = new Utf8Writer( out );
+        try {
+            writer.write( prefix );
+            if (stream.isParallel()) {
+                Part part = collect( stream, delimiter );
+                writer.write( part.sb, part.start, part.sb.length() );
+                release( part.sb );
+            } else {
+                boolean[] first = { true };
+                stream.forEachOrdered( s -> {
+                    if (!first[0])
+                        writer.write( delimiter );
+                    writer.write( s );
+                    first[0] = false;
+                } );
+            }
+            writer.write( suffix );
+            writer.flush();
+            return writer.written;
+        } finally {
+            UTF8_BUFFERS.set( writer.buffer );
+        }
+    }
+
+    private static Part collect(Stream<? extends CharSequence> stream, CharSequence delimiter) {
+        return stream.collect( () -> new Part( acquire( 16 ), "" ),
+                (part, s) -> part.add( s, delimiter ),
+                (left, right) -> left.merge( right, delimiter ) );
+    }
+
+    private static StringBuilder acquire(int capacity) {
+        StringBuilder sb = BUILDERS.get().pollLast();
+        if (sb == null)
+            return new StringBuilder( capacity );
+        sb.ensureCapacity( capacity );
+        return sb;
+    }
+
+    /**
+     * Gives the builder back to the pool of the current thread. Builders that grew too big are dropped,
+     * so one huge join does not pin its memory forever.
+     */
+    private static void release(StringBuilder sb) {
+        ArrayDeque<StringBuilder> pool = BUILDERS.get();
+        if (pool.size() < POOL_SIZE && sb.capacity() <= MAX_POOLED_CHARS) {
+            sb.setLength( 0 );
+            pool.addLast( sb );
+        }
+    }
+
+    /**
+     * A joined part of the stream: the builder holds an optional prefix followed by the elements from {@code start}.
+     */
+    private static final class Part {
+        final StringBuilder sb;
+        final int start;
+        boolean empty = true;
+
+        Part(StringBuilder sb, CharSequence prefix) {
+            this.sb = sb.append( prefix );
+            this.start = sb.length();
+        }
+
+        void add(CharSequence s, CharSequence delimiter) {
+            if (!empty)
+                sb.append( delimiter );
+            sb.append( s );
+            empty = false;
+        }
+
+        Part merge(Part other, CharSequence delimiter) {
+            if (!other.empty) {
+                if (!empty)
+                    sb.append( delimiter );
+                sb.append( other.sb, other.start, other.sb.length() );
+                empty = false;
+            }
+            release( other.sb );
+            return this;
+        }
+
+        String finish(CharSequence suffix) {
+            String result = sb.append( suffix ).toString();
+            release( sb );
+            return result;
+        }
+    }
+
+    /**
+     * Encodes chars to UTF-8 into the per-thread byte buffer, flushes it to the stream when full.
+     * The buffer is taken out of the thread local while the writer uses it, so a join nested in another one
+     * (an element whose charAt joins) gets a buffer of its own.
+     */
+    private static final class Utf8Writer {
+        private final OutputStream out;
+        private final byte[] buffer = takeBuffer();
+        private int position;
+        long written;
+
+        Utf8Writer(OutputStream out) {
+            this.out = out;
+        }
+
+        private static byte[] takeBuffer() {
+            byte[] buffer = UTF8_BUFFERS.get();
+            if (buffer == null)
+                return new byte[UTF8_BUFFER_BYTES];
+            UTF8_BUFFERS.set( null );
+            return buffer;
+        }
+
+        void write(CharSequence s) {
+            write( s, 0, s.length() );
+        }
+
+        void write(CharSequence s, int from, int to) {
+            byte[] b = buffer;
+            for (int i = from; i < to; i++) {
+                if (position > b.length - 4)
+                    flush();
+                char c = s.charAt( i );
+                if (c < 0x80) {
+                    b[position++] = (byte) c;
+                } else if (c < 0x800) {
+                    b[position++] = (byte) (0xC0 | c >> 6);
+                    b[position++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isHighSurrogate( c ) && i + 1 < to && Character.isLowSurrogate( s.charAt( i + 1 ) )) {
+                    int cp = Character.toCodePoint( c, s.charAt( ++i ) );
+                    b[position++] = (byte) (0xF0 | cp >> 18);
+                    b[position++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                    b[position++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                    b[position++] = (byte) (0x80 | cp & 0x3F);
+                } else if (Character.isSurrogate( c )) {
+                    b[position++] = '?';
+                } else {
+                    b[position++] = (byte) (0xE0 | c >> 12);
+                    b[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    b[position++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+        }
+
+        void flush() {
+            try {
+                out.write( buffer, 0, position );
+                written += position;
+                position = 0;
+            } catch (IOException e) {
+                throw new UncheckedIOException( e );
+            }
+        }
+    }
+}
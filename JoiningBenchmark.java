@@ -0,0 +1,89 @@
+package NEW.Collection.Stream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+/**
+ * Summary: ✔️ Building CSV lines: Collectors.joining / String.join against {@link Joining} ✔️
+ * <p>
+ * A "line" is {@code fields} short strings joined with ",". Each op builds n / fields lines, so ns/elem is per field.
+ * jdk          -> Collectors.joining( ",", "[ ", " ]" ).
+ * string-join  -> String.join( ",", fields ).
+ * pooled       -> Joining.joining( ",", "[ ", " ]" ).
+ * append       -> Joining.joinTo into one reused StringBuilder (no String per line).
+ * jdk-utf8     -> Collectors.joining, then getBytes( UTF_8 ) and write to an OutputStream.
+ * utf8         -> Joining.joinUtf8 into the same OutputStream.
+ */
+public class JoiningBenchmark {
+    public static void main(String[] args) {
+        Bench bench = new Bench();
+        OutputStream sink = OutputStream.nullOutputStream();
+        for (int fields : new int[]{ 4, 16, 256 }) {
+            for (int n : Bench.sizes( "1e4,1e6" )) {
+                SplittableRandom random = new SplittableRandom( 1 );
+                String[][] lines = new String[Math.max( n / fields, 1 )][fields];
+                for (String[] line : lines)
+                    for (int i = 0; i < fields; i++)
+                        line[i] = Long.toString( random.nextLong( 1_000_000_000L ), 36 );
+                String name = "joining/" + fields;
+                // collectors are reusable, a real application keeps them in constants
+                Collector<CharSequence, ?, String> jdk = Collectors.joining( ",", "[ ", " ]" );
+                Collector<CharSequence, ?, String> pooled = Joining.joining( ",", "[ ", " ]" );
+
+                bench.run( name, "jdk", n, () -> {
+                    long length = 0;
+                    for (String[] line : lines)
+                        length += Arrays.stream( line ).collect( jdk ).length();
+                    return length;
+                } );
+                bench.run( name, "string-join", n, () -> {
+                    long length = 0;
+                    for (String[] line : lines)
+                        length += String.join( ",", line ).length();
+                    return length;
+                } );
+                bench.run( name, "pooled", n, () -> {
+                    long length = 0;
+                    for (String[] line : lines)
+                        length += Arrays.stream( line ).collect( pooled ).length();
+                    return length;
+                } );
+                StringBuilder reused = new StringBuilder();
+                bench.run( name, "append", n, () -> {
+                    long length = 0;
+                    for (String[] line : lines) {
+                        reused.setLength( 0 );
+                        length += Joining.joinTo( Arrays.stream( line ), reused, ",", "[ ", " ]" ).length();
+                    }
+                    return length;
+                } );
+                bench.run( name, "jdk-utf8", n, () -> {
+                    long length = 0;
+                    for (String[] line : lines) {
+                        byte[] bytes = Arrays.stream( line ).collect( Collectors.joining( ",", "", "\n" ) )
+                                .getBytes( StandardCharsets.UTF_8 );
+                        try {
+                            sink.write( bytes, 0, bytes.length );
+                        } catch (IOException e) {
+                            throw new UncheckedIOException( e );
+                        }
+                        length += bytes.length;
+                    }
+                    return length;
+                } );
+                bench.run( name, "utf8", n, () -> {
+                    long length = 0;
+                    for (String[] line : lines)
+                        length += Joining.joinUtf8( Arrays.stream( line ), sink, ",", "", "\n" );
+                    return length;
+                } );
+            }
+        }
+    }
+}
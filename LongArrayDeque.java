@@ -0,0 +1,148 @@
+package NEW.Collection.Stream;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Summary: ✔️ An ArrayDeque<Long> without the Longs: a ring buffer over a long[] ✔️
+ * <p>
+ * Adding and removing at both ends is O(1), as in ArrayDeque, but every element is 8 bytes in the array instead
+ * of a reference to a 24-byte Long. The head moves around the array, so the array is read as two ranges:
+ * [head, length) and [0, tail).
+ * <p>
+ * Works as a mutable container for LongStream.collect():
+ * LongArrayDeque deque = LongStream.range( 0, 10 ).collect( LongArrayDeque::new, LongArrayDeque::addLast, LongArrayDeque::addAll );
+ * For a SIZED stream, {@link SizedCollectors#toLongArrayDeque( LongStream )} allocates the exact size up front.
+ */
+public final class LongArrayDeque {
+    private long[] elements;
+    private int head;
+    private int size;
+
+    public LongArrayDeque() {
+        this( 16 );
+    }
+
+    public LongArrayDeque(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException( "capacity < 0: " + capacity );
+        this.elements = new long[Math.max( 1, capacity )];
+    }
+
+    private LongArrayDeque(long[] elements) {
+        this.elements = elements.length == 0 ? new long[1] : elements;
+        this.size = elements.length;
+    }
+
+    /**
+     * A deque over the array itself, first element at index 0, not a copy: for arrays that nobody else keeps.
+     */
+    static LongArrayDeque wrap(long[] elements) {
+        return new LongArrayDeque( elements );
+    }
+
+    public void addFirst(long value) {
+        if (size == elements.length)
+            grow( size + 1 );
+        head = head == 0 ? elements.length - 1 : head - 1;
+        elements[head] = value;
+        size++;
+    }
+
+    public void addLast(long value) {
+        if (size == elements.length)
+            grow( size + 1 );
+        elements[index( size )] = value;
+        size++;
+    }
+
+    public void addAll(LongArrayDeque other) {
+        if (size + other.size > elements.length)
+            grow( size + other.size );
+        for (int i = 0; i < other.size; i++)
+            elements[index( size + i )] = other.elements[other.index( i )];
+        size += other.size;
+    }
+
+    public long removeFirst() {
+        long value = getFirst();
+        head = index( 1 );
+        size--;
+        return value;
+    }
+
+    public long removeLast() {
+        long value = getLast();
+        size--;
+        return value;
+    }
+
+    public long getFirst() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return elements[head];
+    }
+
+    public long getLast() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return elements[index( size - 1 )];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * From first to last.
+     */
+    public long[] toArray() {
+        long[] result = new long[size];
+        int first = Math.min( size, elements.length - head );
+        System.arraycopy( elements, head, result, 0, first );
+        System.arraycopy( elements, 0, result, first, size - first );
+        return result;
+    }
+
+    public Spliterator.OfLong spliterator() {
+        return Spliterators.spliterator( toArray(), Spliterator.ORDERED );
+    }
+
+    public LongStream stream() {
+        return StreamSupport.longStream( spliterator(), false );
+    }
+
+    /**
+     * The array index of the i-th element from the head.
+     */
+    private int index(int i) {
+        int index = head + i;
+        return index >= elements.length ? index - elements.length : index;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max( minCapacity, elements.length + (elements.length >> 1) + 1 );
+        if (capacity < 0)
+            throw new OutOfMemoryError( "deque too big: " + minCapacity );
+        elements = Arrays.copyOf( toArray(), capacity );
+        head = 0;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString( toArray() );
+    }
+}
@@ -0,0 +1,147 @@
+package NEW.Collection.Stream;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Summary: ✔️ A set of long values that never boxes: open addressing with linear probing over a plain long[] ✔️
+ * <p>
+ * A HashSet<Long> costs a Long object plus a HashMap.Node per element (~48 bytes),
+ * this set costs 8-16 bytes per element and no objects at all.
+ * 0 is used as the "free slot" marker, so the value 0 itself is tracked by a separate flag.
+ * <p>
+ * Works as a mutable container for LongStream.collect():
+ * LongHashSet set = LongStream.of( 2, 1, 8, 1, 3, 2 ).collect( LongHashSet::new, LongHashSet::add, LongHashSet::addAll );
+ */
+public final class LongHashSet {
+    private static final long FREE = 0;
+
+    private long[] keys;
+    private int mask;
+    private int resizeAt;
+    private int size;
+    private boolean hasFree;
+
+    public LongHashSet() {
+        this( 16 );
+    }
+
+    public LongHashSet(int expectedSize) {
+        allocate( capacityFor( expectedSize ) );
+    }
+
+    /**
+     * @return true if the value was not in the set yet.
+     */
+    public boolean add(long value) {
+        if (value == FREE) {
+            if (hasFree)
+                return false;
+            hasFree = true;
+            size++;
+            return true;
+        }
+        int i = (int) mix( value ) & mask;
+        for (long key; (key = keys[i]) != FREE; i = (i + 1) & mask)
+            if (key == value)
+                return false;
+        keys[i] = value;
+        if (++size >= resizeAt)
+            rehash( keys.length << 1 );
+        return true;
+    }
+
+    public boolean contains(long value) {
+        if (value == FREE)
+            return hasFree;
+        int i = (int) mix( value ) & mask;
+        for (long key; (key = keys[i]) != FREE; i = (i + 1) & mask)
+            if (key == value)
+                return true;
+        return false;
+    }
+
+    public void addAll(LongHashSet other) {
+        if (other.hasFree)
+            add( FREE );
+        for (long key : other.keys)
+            if (key != FREE)
+                add( key );
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill( keys, FREE );
+        hasFree = false;
+        size = 0;
+    }
+
+    /**
+     * The values in no particular order.
+     */
+    public long[] toArray() {
+        long[] result = new long[size];
+        int j = 0;
+        if (hasFree)
+            result[j++] = FREE;
+        for (long key : keys)
+            if (key != FREE)
+                result[j++] = key;
+        return result;
+    }
+
+    public Spliterator.OfLong spliterator() {
+        return Spliterators.spliterator( toArray(), Spliterator.DISTINCT | Spliterator.IMMUTABLE );
+    }
+
+    public LongStream stream() {
+        return StreamSupport.longStream( spliterator(), false );
+    }
+
+    private void rehash(int capacity) {
+        long[] old = keys;
+        allocate( capacity );
+        for (long key : old) {
+            if (key == FREE)
+                continue;
+            int i = (int) mix( key ) & mask;
+            while (keys[i] != FREE)
+                i = (i + 1) & mask;
+            keys[i] = key;
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity / 4 * 3;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long needed = Math.max( 4, (long) expectedSize * 4 / 3 + 1 );
+        if (needed > 1 << 30)
+            throw new IllegalArgumentException( "too many elements: " + expectedSize );
+        return Integer.highestOneBit( (int) needed - 1 ) << 1;
+    }
+
+    /**
+     * Spreads sequential keys over the table (murmur3 64-bit finalizer), otherwise 1, 2, 3 ... would cluster.
+     */
+    static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        return x ^ (x >>> 33);
+    }
+}
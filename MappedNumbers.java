@@ -0,0 +1,302 @@
+package NEW.Collection.Stream;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Spliterator;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Summary: ✔️ IntStream / LongStream / DoubleStream straight from a memory-mapped file, nothing is loaded into the heap ✔️
+ * <p>
+ * The file is a plain array of numbers (4 bytes per int, 8 per long/double, no header),
+ * e.g. written by DataOutputStream.writeLong or by a FileChannel.
+ * The stream reads the numbers right from the page cache through MappedByteBuffer windows of {@link #WINDOW_BYTES}:
+ * a 20 GB file never needs 20 GB of heap, and the OS pages data in and out as the pipeline walks the file.
+ * <p>
+ * The spliterator is SIZED and splits in halves on page boundaries ({@link #PAGE_BYTES}),
+ * so parallel() pipelines give every core its own set of pages and each split maps only its own part of the file.
+ * <p>
+ * The stream holds the file open, close it (try-with-resources) when done:
+ * try (LongStream longs = MappedNumbers.longs( path )) {
+ * LongSummaryStatistics stats = longs.parallel().summaryStatistics();
+ * }
+ */
+public final class MappedNumbers {
+    static final int PAGE_BYTES = 4096;
+    static final int WINDOW_BYTES = 64 << 20;
+
+    /**
+     * Splits smaller than this are not worth a separate task.
+     */
+    static final int MIN_SPLIT_BYTES = 16 * PAGE_BYTES;
+
+    private static final int CHARACTERISTICS = Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED
+            | Spliterator.IMMUTABLE | Spliterator.NONNULL;
+
+    private MappedNumbers() {
+    }
+
+    /**
+     * Big-endian longs, the format of DataOutputStream.writeLong.
+     */
+    public static LongStream longs(Path file) {
+        return longs( file, ByteOrder.BIG_ENDIAN );
+    }
+
+    public static LongStream longs(Path file, ByteOrder order) {
+        FileChannel channel = open( file );
+        Longs spliterator = new Longs( channel, order, 0, elements( channel, Long.BYTES ) );
+        return StreamSupport.longStream( spliterator, false ).onClose( () -> close( channel ) );
+    }
+
+    /**
+     * Big-endian ints, the format of DataOutputStream.writeInt.
+     */
+    public static IntStream ints(Path file) {
+        return ints( file, ByteOrder.BIG_ENDIAN );
+    }
+
+    public static IntStream ints(Path file, ByteOrder order) {
+        FileChannel channel = open( file );
+        Ints spliterator = new Ints( channel, order, 0, elements( channel, Integer.BYTES ) );
+        return StreamSupport.intStream( spliterator, false ).onClose( () -> close( channel ) );
+    }
+
+    /**
+     * Big-endian doubles, the format of DataOutputStream.writeDouble.
+     */
+    public static DoubleStream doubles(Path file) {
+        return doubles( file, ByteOrder.BIG_ENDIAN );
+    }
+
+    public static DoubleStream doubles(Path file, ByteOrder order) {
+        FileChannel channel = open( file );
+        Doubles spliterator = new Doubles( channel, order, 0, elements( channel, Double.BYTES ) );
+        return StreamSupport.doubleStream( spliterator, false ).onClose( () -> close( channel ) );
+    }
+
+    private static FileChannel open(Path file) {
+        try {
+            return FileChannel.open( file, StandardOpenOption.READ );
+        } catch (IOException e) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    private static long elements(FileChannel channel, int elementBytes) {
+        try {
+            return channel.size() / elementBytes;
+        } catch (IOException e) {
+            close( channel );
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    private static void close(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    /**
+     * Walks the elements [index, end) of the file. Only the window around the current index is mapped.
+     */
+    private abstract static class MappedSpliterator {
+        final FileChannel channel;
+        final ByteOrder order;
+        final int elementBytes;
+        long index;
+        final long end;
+        long windowStart;   // element index of the first element in the current window
+        int windowLength;   // 0 -> nothing mapped yet
+
+        MappedSpliterator(FileChannel channel, ByteOrder order, int elementBytes, long index, long end) {
+            this.channel = channel;
+            this.order = order;
+            this.elementBytes = elementBytes;
+            this.index = index;
+            this.end = end;
+        }
+
+        /**
+         * Maps the window that starts at the current index. Windows normally start on a page boundary:
+         * the root starts at 0, splits happen at page boundaries and a full window is a whole number of pages.
+         */
+        final MappedByteBuffer map() {
+            long length = Math.min( end - index, WINDOW_BYTES / elementBytes );
+            try {
+                MappedByteBuffer window = channel.map( FileChannel.MapMode.READ_ONLY, index * elementBytes,
+                        length * elementBytes );
+                window.order( order );
+                windowStart = index;
+                windowLength = (int) length;
+                return window;
+            } catch (IOException e) {
+                throw new UncheckedIOException( e );
+            }
+        }
+
+        /**
+         * Page-aligned middle of the remaining range, or -1 if it is too small to split.
+         */
+        final long splitPoint() {
+            long elementsPerPage = PAGE_BYTES / elementBytes;
+            long remaining = end - index;
+            if (remaining * elementBytes < MIN_SPLIT_BYTES)
+                return -1;
+            long mid = (index + remaining / 2) / elementsPerPage * elementsPerPage;
+            return mid > index && mid < end ? mid : -1;
+        }
+
+        final boolean windowCovers(long i) {
+            return i >= windowStart && i < windowStart + windowLength;
+        }
+
+        public final long estimateSize() {
+            return end - index;
+        }
+
+        public final int characteristics() {
+            return CHARACTERISTICS;
+        }
+    }
+
+    static final class Longs extends MappedSpliterator implements Spliterator.OfLong {
+        private LongBuffer window;
+
+        Longs(FileChannel channel, ByteOrder order, long index, long end) {
+            super( channel, order, Long.BYTES, index, end );
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (index >= end)
+                return false;
+            if (window == null || !windowCovers( index ))
+                window = map().asLongBuffer();
+            action.accept( window.get( (int) (index++ - windowStart) ) );
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            while (index < end) {
+                if (window == null || !windowCovers( index ))
+                    window = map().asLongBuffer();
+                LongBuffer w = window;
+                int from = (int) (index - windowStart), to = (int) (Math.min( end, windowStart + windowLength ) - windowStart);
+                index = windowStart + to;
+                for (int i = from; i < to; i++)
+                    action.accept( w.get( i ) );
+            }
+        }
+
+        @Override
+        public Spliterator.OfLong trySplit() {
+            long mid = splitPoint();
+            if (mid < 0)
+                return null;
+            Longs prefix = new Longs( channel, order, index, mid );
+            index = mid;
+            return prefix;
+        }
+    }
+
+    static final class Ints extends MappedSpliterator implements Spliterator.OfInt {
+        private IntBuffer window;
+
+        Ints(FileChannel channel, ByteOrder order, long index, long end) {
+            super( channel, order, Integer.BYTES, index, end );
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (index >= end)
+                return false;
+            if (window == null || !windowCovers( index ))
+                window = map().asIntBuffer();
+            action.accept( window.get( (int) (index++ - windowStart) ) );
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            while (index < end) {
+                if (window == null || !windowCovers( index ))
+                    window = map().asIntBuffer();
+                IntBuffer w = window;
+                int from = (int) (index - windowStart), to = (int) (Math.min( end, windowStart + windowLength ) - windowStart);
+                index = windowStart + to;
+                for (int i = from; i < to; i++)
+                    action.accept( w.get( i ) );
+            }
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            long mid = splitPoint();
+            if (mid < 0)
+                return null;
+            Ints prefix = new Ints( channel, order, index, mid );
+            index = mid;
+            return prefix;
+        }
+    }
+
+    static final class Doubles extends MappedSpliterator implements Spliterator.OfDouble {
+        private DoubleBuffer window;
+
+        Doubles(FileChannel channel, ByteOrder order, long index, long end) {
+            super( channel, order, Double.BYTES, index, end );
+        }
+
+        @Override
+        public boolean tryAdvance(DoubleConsumer action) {
+            if (index >= end)
+                return false;
+            if (window == null || !windowCovers( index ))
+                window = map().asDoubleBuffer();
+            action.accept( window.get( (int) (index++ - windowStart) ) );
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(DoubleConsumer action) {
+            while (index < end) {
+                if (window == null || !windowCovers( index ))
+                    window = map().asDoubleBuffer();
+                DoubleBuffer w = window;
+                int from = (int) (index - windowStart), to = (int) (Math.min( end, windowStart + windowLength ) - windowStart);
+                index = windowStart + to;
+                for (int i = from; i < to; i++)
+                    action.accept( w.get( i ) );
+            }
+        }
+
+        @Override
+        public Spliterator.OfDouble trySplit() {
+            long mid = splitPoint();
+            if (mid < 0)
+                return null;
+            Doubles prefix = new Doubles( channel, order, index, mid );
+            index = mid;
+            return prefix;
+        }
+    }
+}
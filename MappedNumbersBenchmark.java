@@ -0,0 +1,86 @@
+package NEW.Collection.Stream;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LongSummaryStatistics;
+import java.util.stream.LongStream;
+
+/**
+ * Summary: ✔️ sum() / summaryStatistics() over a file of longs: loaded into the heap vs memory-mapped ✔️
+ * <p>
+ * heap       -> the file is read into a long[] first, then Arrays.stream( array ) as in createStream().
+ * mapped     -> {@link MappedNumbers#longs(Path)}, sequential.
+ * mapped-par -> the same with .parallel().
+ * The file is written once per size into the temp directory (-Dbench.dir to change) and deleted at exit.
+ */
+public class MappedNumbersBenchmark {
+    public static void main(String[] args) throws IOException {
+        Bench bench = new Bench();
+        Path dir = Path.of( System.getProperty( "bench.dir", System.getProperty( "java.io.tmpdir" ) ) );
+        for (int n : Bench.sizes( "1e3,1e6,1e7,1e8" )) {
+            Path file = Files.createTempFile( dir, "longs", ".bin" );
+            file.toFile().deleteOnExit();
+            write( file, LongStream.range( 0, n ) );
+
+            bench.run( "sum", "heap", n, () -> LongStream.of( load( file ) ).sum() );
+            bench.run( "sum", "mapped", n, () -> {
+                try (LongStream longs = MappedNumbers.longs( file )) {
+                    return longs.sum();
+                }
+            } );
+            bench.run( "sum", "mapped-par", n, () -> {
+                try (LongStream longs = MappedNumbers.longs( file )) {
+                    return longs.parallel().sum();
+                }
+            } );
+            bench.run( "Statistics", "heap", n, () -> LongStream.of( load( file ) ).summaryStatistics().getMax() );
+            bench.run( "Statistics", "mapped-par", n, () -> {
+                try (LongStream longs = MappedNumbers.longs( file )) {
+                    LongSummaryStatistics stats = longs.parallel().summaryStatistics();
+                    return stats.getMax();
+                }
+            } );
+            Files.delete( file );
+        }
+    }
+
+    static void write(Path file, LongStream values) throws IOException {
+        try (FileChannel channel = FileChannel.open( file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING )) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect( 1 << 16 );
+            values.forEachOrdered( x -> {
+                if (buffer.remaining() < Long.BYTES)
+                    drain( channel, buffer );
+                buffer.putLong( x );
+            } );
+            drain( channel, buffer );
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) {
+        try {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write( buffer );
+            buffer.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    private static long[] load(Path file) {
+        try (FileChannel channel = FileChannel.open( file )) {
+            ByteBuffer buffer = ByteBuffer.allocate( (int) channel.size() );
+            while (buffer.hasRemaining() && channel.read( buffer ) >= 0) ;
+            long[] values = new long[buffer.capacity() / Long.BYTES];
+            buffer.flip().asLongBuffer().get( values );
+            return values;
+        } catch (IOException e) {
+            throw new UncheckedIOException( e );
+        }
+    }
+}
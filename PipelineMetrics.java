@@ -0,0 +1,352 @@
+package NEW.Collection.Stream;
+
+import jdk.jfr.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.*;
+
+/**
+ * Summary: ✔️ Per-stage metrics of a pipeline instead of peek( System.out::println ) ✔️
+ * <p>
+ * peek( x -> System.out.format( ... ) ) takes a lock and formats a String per element. Here every stage lambda
+ * is wrapped once, when the pipeline is built:
+ * PipelineMetrics m = PipelineMetrics.create( "orders" );
+ * stream.filter( m.filter( "cheap", x -> x < 300 ) ).map( m.map( "tax", x -> x + 11 ) ).peek( m.probe( "out" ) )
+ * and records for each stage: elements in, elements out (the selectivity of a filter),
+ * time spent in the lambda and bytes it allocated. Stages with the same name share their counters.
+ * <p>
+ * Counting uses LongAdder (no contention under parallel()). Time and allocation are measured only for one call
+ * out of -Dstream.metrics.sample=64 (picked at random) and scaled up.
+ * The results: snapshot(), report( registry ) for any metrics library, emitEvents() as JFR events
+ * (NEW.Collection.Stream.PipelineStage, visible in JDK Mission Control).
+ * <p>
+ * Disabled (the default, -Dstream.metrics=true turns it on, or create( name, true )) the wrap methods return
+ * the lambda itself: the pipeline is exactly the one without metrics.
+ */
+public final class PipelineMetrics {
+    public static final boolean ENABLED = Boolean.getBoolean( "stream.metrics" );
+
+    private static final int SAMPLE_RATE = Integer.getInteger( "stream.metrics.sample", 64 );
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final String pipeline;
+    private final boolean enabled;
+    private final ConcurrentHashMap<String, Stage> byName = new ConcurrentHashMap<>();
+    private final List<Stage> stages = new CopyOnWriteArrayList<>();
+
+    private PipelineMetrics(String pipeline, boolean enabled) {
+        this.pipeline = pipeline;
+        this.enabled = enabled;
+    }
+
+    public static PipelineMetrics create(String pipeline) {
+        return new PipelineMetrics( pipeline, ENABLED );
+    }
+
+    public static PipelineMetrics create(String pipeline, boolean enabled) {
+        return new PipelineMetrics( pipeline, enabled );
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Receives the statistics of every stage, e.g. to register them as gauges of a metrics library.
+     */
+    @FunctionalInterface
+    public interface Registry {
+        void record(String pipeline, StageStats stats);
+    }
+
+    public <T> Predicate<T> filter(String stage, Predicate<T> predicate) {
+        if (!enabled)
+            return predicate;
+        Stage s = stage( stage, "filter" );
+        return t -> {
+            long start = s.begin();
+            boolean pass = predicate.test( t );
+            s.end( start, pass );
+            return pass;
+        };
+    }
+
+    public IntPredicate filterInt(String stage, IntPredicate predicate) {
+        if (!enabled)
+            return predicate;
+        Stage s = stage( stage, "filter" );
+        return x -> {
+            long start = s.begin();
+            boolean pass = predicate.test( x );
+            s.end( start, pass );
+            return pass;
+        };
+    }
+
+    public LongPredicate filterLong(String stage, LongPredicate predicate) {
+        if (!enabled)
+            return predicate;
+        Stage s = stage( stage, "filter" );
+        return x -> {
+            long start = s.begin();
+            boolean pass = predicate.test( x );
+            s.end( start, pass );
+            return pass;
+        };
+    }
+
+    public <T, R> Function<T, R> map(String stage, Function<T, R> mapper) {
+        if (!enabled)
+            return mapper;
+        Stage s = stage( stage, "map" );
+        return t -> {
+            long start = s.begin();
+            R r = mapper.apply( t );
+            s.end( start, true );
+            return r;
+        };
+    }
+
+    public IntUnaryOperator mapInt(String stage, IntUnaryOperator mapper) {
+        if (!enabled)
+            return mapper;
+        Stage s = stage( stage, "map" );
+        return x -> {
+            long start = s.begin();
+            int r = mapper.applyAsInt( x );
+            s.end( start, true );
+            return r;
+        };
+    }
+
+    public LongUnaryOperator mapLong(String stage, LongUnaryOperator mapper) {
+        if (!enabled)
+            return mapper;
+        Stage s = stage( stage, "map" );
+        return x -> {
+            long start = s.begin();
+            long r = mapper.applyAsLong( x );
+            s.end( start, true );
+            return r;
+        };
+    }
+
+    /**
+     * For peek(): only counts the elements that pass this point. Disabled, it does nothing, but the peek() stage
+     * stays in the pipeline: leave it out where that matters.
+     */
+    public <T> Consumer<T> probe(String stage) {
+        if (!enabled)
+            return t -> {
+            };
+        Stage s = stage( stage, "probe" );
+        return t -> s.count();
+    }
+
+    public IntConsumer probeInt(String stage) {
+        if (!enabled)
+            return x -> {
+            };
+        Stage s = stage( stage, "probe" );
+        return x -> s.count();
+    }
+
+    public List<StageStats> snapshot() {
+        List<StageStats> result = new ArrayList<>( stages.size() );
+        for (Stage stage : stages)
+            result.add( stage.snapshot() );
+        return result;
+    }
+
+    public void report(Registry registry) {
+        for (StageStats stats : snapshot())
+            registry.record( pipeline, stats );
+    }
+
+    /**
+     * Commits one JFR event per stage, if a recording with the event enabled is running.
+     */
+    public void emitEvents() {
+        for (StageStats stats : snapshot()) {
+            PipelineStageEvent event = new PipelineStageEvent();
+            if (!event.shouldCommit())
+                return;
+            event.pipeline = pipeline;
+            event.stage = stats.name;
+            event.kind = stats.kind;
+            event.elementsIn = stats.elementsIn;
+            event.elementsOut = stats.elementsOut;
+            event.selectivity = stats.getSelectivity();
+            event.nanos = stats.nanos;
+            event.bytes = stats.bytes;
+            event.commit();
+        }
+    }
+
+    public void reset() {
+        for (Stage stage : stages)
+            stage.reset();
+    }
+
+    /**
+     * A stage is found by its name: a pipeline built again (e.g. per request) keeps adding to the same counters.
+     */
+    private Stage stage(String name, String kind) {
+        return byName.computeIfAbsent( name, key -> {
+            Stage stage = new Stage( key, kind );
+            stages.add( stage );
+            return stage;
+        } );
+    }
+
+    /**
+     * Counters of one stage: one LongAdder per element, a second one only for the elements a filter drops.
+     * begin() decides whether this call is sampled: it returns the start time,
+     * or -1 for a call that is only counted.
+     */
+    private static final class Stage {
+        final String name;
+        final String kind;
+        final LongAdder in = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder sampled = new LongAdder();
+        final LongAdder sampledNanos = new LongAdder();
+        final LongAdder sampledBytes = new LongAdder();
+        private final ThreadLocal<long[]> allocatedAtStart = ThreadLocal.withInitial( () -> new long[1] );
+
+        Stage(String name, String kind) {
+            this.name = name;
+            this.kind = kind;
+        }
+
+        long begin() {
+            if (ThreadLocalRandom.current().nextInt( SAMPLE_RATE ) != 0)
+                return -1;
+            allocatedAtStart.get()[0] = THREADS.getCurrentThreadAllocatedBytes();
+            return System.nanoTime();
+        }
+
+        void end(long start, boolean pass) {
+            if (start != -1) {
+                sampledNanos.add( System.nanoTime() - start );
+                sampledBytes.add( THREADS.getCurrentThreadAllocatedBytes() - allocatedAtStart.get()[0] );
+                sampled.increment();
+            }
+            in.increment();
+            if (!pass)
+                rejected.increment();
+        }
+
+        void count() {
+            in.increment();
+        }
+
+        StageStats snapshot() {
+            long n = in.sum(), samples = sampled.sum();
+            double scale = samples == 0 ? 0 : (double) n / samples;
+            return new StageStats( name, kind, n, n - rejected.sum(),
+                    (long) (sampledNanos.sum() * scale), (long) (sampledBytes.sum() * scale) );
+        }
+
+        void reset() {
+            in.reset();
+            rejected.reset();
+            sampled.reset();
+            sampledNanos.reset();
+            sampledBytes.reset();
+        }
+    }
+
+    /**
+     * The numbers of one stage. Time and bytes are estimates for all elements, scaled up from the sampled calls,
+     * and cover only the stage lambda itself, not the stages after it. For a lambda of a few nanoseconds the time
+     * is mostly the cost of reading the clock.
+     */
+    public static final class StageStats {
+        private final String name;
+        private final String kind;
+        private final long elementsIn;
+        private final long elementsOut;
+        private final long nanos;
+        private final long bytes;
+
+        StageStats(String name, String kind, long elementsIn, long elementsOut, long nanos, long bytes) {
+            this.name = name;
+            this.kind = kind;
+            this.elementsIn = elementsIn;
+            this.elementsOut = elementsOut;
+            this.nanos = nanos;
+            this.bytes = bytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getKind() {
+            return kind;
+        }
+
+        public long getElementsIn() {
+            return elementsIn;
+        }
+
+        public long getElementsOut() {
+            return elementsOut;
+        }
+
+        /**
+         * Share of the elements that passed, 1 for map and probe stages.
+         */
+        public double getSelectivity() {
+            return elementsIn == 0 ? 1 : (double) elementsOut / elementsIn;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format( "%s %s: in=%d out=%d selectivity=%.3f time=%.3fms alloc=%dB",
+                    kind, name, elementsIn, elementsOut, getSelectivity(), nanos / 1e6, bytes );
+        }
+    }
+
+    @Name("NEW.Collection.Stream.PipelineStage")
+    @Label("Pipeline Stage")
+    @Category({ "Stream API" })
+    @Description("Elements, selectivity, estimated time and allocation of one stage of an instrumented pipeline")
+    @StackTrace(false)
+    static final class PipelineStageEvent extends Event {
+        @Label("Pipeline")
+        String pipeline;
+        @Label("Stage")
+        String stage;
+        @Label("Kind")
+        String kind;
+        @Label("Elements In")
+        long elementsIn;
+        @Label("Elements Out")
+        long elementsOut;
+        @Label("Selectivity")
+        double selectivity;
+        @Label("Time")
+        @Timespan
+        long nanos;
+        @Label("Allocated")
+        @DataAmount
+        long bytes;
+    }
+}
@@ -0,0 +1,62 @@
+package NEW.Collection.Stream;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Summary: ✔️ Cost of watching a pipeline: nothing, {@link PipelineMetrics} off / on, peek( format ) ✔️
+ * <p>
+ * The same filter -> map -> sum pipeline: metrics-off must be as fast as plain (the lambdas are not wrapped),
+ * metrics-on pays a LongAdder per stage plus one sampled call in -Dstream.metrics.sample,
+ * peek-format is the debugging style of the demo, printing into a stream that discards the bytes.
+ */
+public class PipelineMetricsBenchmark {
+    /**
+     * The same lambda objects in every mode: new lambdas would differ only by the JIT profile of the JDK sinks.
+     */
+    private static final IntPredicate NOT_DIV_3 = x -> x % 3 != 0;
+    private static final IntUnaryOperator TIMES_7 = x -> x * 7 + 1;
+
+    public static void main(String[] args) {
+        Bench bench = new Bench();
+        PrintStream nowhere = new PrintStream( OutputStream.nullOutputStream() );
+        PipelineMetrics off = PipelineMetrics.create( "off", false );
+        PipelineMetrics on = PipelineMetrics.create( "on", true );
+        for (int n : Bench.sizes( "1e3,1e5,1e7" )) {
+            bench.run( "filter-map-sum", Bench.LOOP, n, () -> {
+                long sum = 0;
+                for (int x = 0; x < n; x++)
+                    if (x % 3 != 0)
+                        sum += x * 7 + 1;
+                return sum;
+            } );
+            bench.run( "filter-map-sum", "plain", n, () -> IntStream.range( 0, n )
+                    .filter( NOT_DIV_3 )
+                    .map( TIMES_7 )
+                    .asLongStream().sum() );
+            bench.run( "filter-map-sum", "metrics-off", n, () -> IntStream.range( 0, n )
+                    .filter( off.filterInt( "not-div-3", NOT_DIV_3 ) )
+                    .map( off.mapInt( "times-7", TIMES_7 ) )
+                    .asLongStream().sum() );
+            bench.run( "filter-map-sum", "metrics-on", n, () -> IntStream.range( 0, n )
+                    .filter( on.filterInt( "not-div-3", NOT_DIV_3 ) )
+                    .map( on.mapInt( "times-7", TIMES_7 ) )
+                    .asLongStream().sum() );
+            bench.run( "filter-map-sum", "metrics-on-par", n, () -> IntStream.range( 0, n ).parallel()
+                    .filter( on.filterInt( "not-div-3", NOT_DIV_3 ) )
+                    .map( on.mapInt( "times-7", TIMES_7 ) )
+                    .asLongStream().sum() );
+            if (n <= 100_000)
+                bench.run( "filter-map-sum", "peek-format", n, () -> IntStream.range( 0, n )
+                        .peek( x -> nowhere.format( "num: %d%n", x ) )
+                        .filter( NOT_DIV_3 )
+                        .map( TIMES_7 )
+                        .peek( x -> nowhere.format( "after map: %d%n", x ) )
+                        .asLongStream().sum() );
+        }
+        on.snapshot().forEach( System.out::println );
+    }
+}
@@ -0,0 +1,61 @@
+package NEW.Collection.Stream;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * Summary: ✔️ Boxed distinct()/sorted() against the primitive ones from {@link PrimitiveStreams} ✔️
+ * <p>
+ * boxed       -> Stream<Integer>.distinct() / .sorted() as in Stream_API.distinct() and sort().
+ * jdk-int     -> IntStream.distinct() (boxes inside) / IntStream.sorted() (Arrays.sort).
+ * primitive   -> PrimitiveStreams.distinct() / sorted() / sortedDistinct().
+ * Values are random in [0, n / 2), so about 43% of them are duplicates.
+ */
+public class PrimitiveDistinctSortBenchmark {
+    public static void main(String[] args) {
+        Bench bench = new Bench();
+        for (int n : Bench.sizes( "1e3,1e5,1e6,1e7,1e8" )) {
+            int[] ints = new SplittableRandom( 7 ).ints( n, 0, Math.max( n / 2, 1 ) ).toArray();
+            long[] longs = Arrays.stream( ints ).asLongStream().map( x -> x * 0x9E3779B97F4A7C15L ).toArray();
+            Integer[] boxed = Arrays.stream( ints ).boxed().toArray( Integer[]::new );
+
+            bench.run( "distinct", Bench.LOOP, n, () -> {
+                IntHashSet set = new IntHashSet();
+                for (int x : ints)
+                    set.add( x );
+                return set.size();
+            } );
+            bench.run( "distinct", "boxed", n, () -> Arrays.stream( boxed ).distinct().count() );
+            bench.run( "distinct", "jdk-int", n, () -> Arrays.stream( ints ).distinct().count() );
+            bench.run( "distinct", "jdk-int-par", n, () -> Arrays.stream( ints ).parallel().distinct().count() );
+            bench.run( "distinct", "primitive", n, () -> PrimitiveStreams.distinct( Arrays.stream( ints ) ).count() );
+            bench.run( "distinct", "primitive-par", n,
+                    () -> PrimitiveStreams.distinct( Arrays.stream( ints ).parallel() ).count() );
+            bench.run( "distinct-long", "jdk-long", n, () -> Arrays.stream( longs ).distinct().count() );
+            bench.run( "distinct-long", "primitive", n,
+                    () -> PrimitiveStreams.distinct( Arrays.stream( longs ) ).count() );
+
+            bench.run( "sort", Bench.LOOP, n, () -> {
+                int[] copy = ints.clone();
+                Arrays.sort( copy );
+                return copy[n - 1];
+            } );
+            bench.run( "sort", "boxed", n, () -> Arrays.stream( boxed ).sorted().reduce( 0, (a, b) -> b ) );
+            bench.run( "sort", "jdk-int", n, () -> Arrays.stream( ints ).sorted().reduce( 0, (a, b) -> b ) );
+            bench.run( "sort", "primitive", n,
+                    () -> PrimitiveStreams.sorted( Arrays.stream( ints ) ).reduce( 0, (a, b) -> b ) );
+            bench.run( "sort", "primitive-par", n,
+                    () -> PrimitiveStreams.sorted( Arrays.stream( ints ).parallel() ).reduce( 0, (a, b) -> b ) );
+            bench.run( "sort-long", "jdk-long", n, () -> Arrays.stream( longs ).sorted().reduce( 0, (a, b) -> b ) );
+            bench.run( "sort-long", "primitive", n,
+                    () -> PrimitiveStreams.sorted( Arrays.stream( longs ) ).reduce( 0, (a, b) -> b ) );
+
+            bench.run( "distinct+sort", "boxed", n, () -> Arrays.stream( boxed ).distinct().sorted().count() );
+            bench.run( "distinct+sort", "jdk-int", n, () -> Arrays.stream( ints ).distinct().sorted().count() );
+            bench.run( "distinct+sort", "primitive", n,
+                    () -> PrimitiveStreams.sortedDistinct( Arrays.stream( ints ) ).count() );
+        }
+    }
+}
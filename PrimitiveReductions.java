@@ -0,0 +1,217 @@
+package NEW.Collection.Stream;
+
+import java.util.*;
+
+/**
+ * Summary: ✔️ sum / min / max / summaryStatistics / filter-then-count over primitive arrays with SIMD ✔️
+ * <p>
+ * IntStream.of( array ).sum() adds one element at a time through a lambda. Here the same reductions run on
+ * the whole array with the Vector API (jdk.incubator.vector): 4 to 16 elements per instruction.
+ * sum( int[] )                         -> like IntStream.of( a ).sum() (int, overflows the same way)
+ * min / max                            -> OptionalInt / OptionalLong / OptionalDouble, empty for an empty array
+ * summaryStatistics( a )               -> Int/Long/DoubleSummaryStatistics with count, sum, min, max
+ * count( a, Compare.GT, 300 )          -> IntStream.of( a ).filter( x -> x > 300 ).count()
+ * <p>
+ * The predicate of count() is a comparison with a constant, because a lambda cannot be vectorized.
+ * double sums use Kahan summation like DoubleStream.sum, in every lane, so the result can differ from
+ * the stream in the last bits. Without the module (run with --add-modules jdk.incubator.vector)
+ * or with -Dstream.vector=false the same methods run as plain loops.
+ */
+public final class PrimitiveReductions {
+    /**
+     * True when the vector module is there: then the JIT folds the checks below away.
+     */
+    public static final boolean VECTORIZED = Boolean.parseBoolean( System.getProperty( "stream.vector", "true" ) )
+            && ModuleLayer.boot().findModule( "jdk.incubator.vector" ).isPresent();
+
+    private PrimitiveReductions() {
+    }
+
+    public enum Compare {
+        LT, LE, GT, GE, EQ, NE;
+
+        /**
+         * @param cmp the result of Integer.compare / Long.compare of the element with the operand.
+         */
+        boolean test(int cmp) {
+            switch (this) {
+                case LT:
+                    return cmp < 0;
+                case LE:
+                    return cmp <= 0;
+                case GT:
+                    return cmp > 0;
+                case GE:
+                    return cmp >= 0;
+                case EQ:
+                    return cmp == 0;
+                default:
+                    return cmp != 0;
+            }
+        }
+
+        /**
+         * With the Java operators: every comparison with NaN is false, except NE.
+         */
+        boolean test(double x, double value) {
+            switch (this) {
+                case LT:
+                    return x < value;
+                case LE:
+                    return x <= value;
+                case GT:
+                    return x > value;
+                case GE:
+                    return x >= value;
+                case EQ:
+                    return x == value;
+                default:
+                    return x != value;
+            }
+        }
+    }
+
+    public static int sum(int[] a) {
+        return VECTORIZED ? VectorReductions.sum( a ) : scalarSum( a );
+    }
+
+    public static long sum(long[] a) {
+        return VECTORIZED ? VectorReductions.sum( a ) : scalarSum( a );
+    }
+
+    public static double sum(double[] a) {
+        return VECTORIZED ? VectorReductions.sum( a ) : scalarStatistics( a ).getSum();
+    }
+
+    public static OptionalInt min(int[] a) {
+        if (a.length == 0)
+            return OptionalInt.empty();
+        return OptionalInt.of( VECTORIZED ? VectorReductions.min( a ) : scalarStatistics( a ).getMin() );
+    }
+
+    public static OptionalInt max(int[] a) {
+        if (a.length == 0)
+            return OptionalInt.empty();
+        return OptionalInt.of( VECTORIZED ? VectorReductions.max( a ) : scalarStatistics( a ).getMax() );
+    }
+
+    public static OptionalLong min(long[] a) {
+        if (a.length == 0)
+            return OptionalLong.empty();
+        return OptionalLong.of( VECTORIZED ? VectorReductions.min( a ) : scalarStatistics( a ).getMin() );
+    }
+
+    public static OptionalLong max(long[] a) {
+        if (a.length == 0)
+            return OptionalLong.empty();
+        return OptionalLong.of( VECTORIZED ? VectorReductions.max( a ) : scalarStatistics( a ).getMax() );
+    }
+
+    public static OptionalDouble min(double[] a) {
+        if (a.length == 0)
+            return OptionalDouble.empty();
+        return OptionalDouble.of( VECTORIZED ? VectorReductions.min( a ) : scalarStatistics( a ).getMin() );
+    }
+
+    public static OptionalDouble max(double[] a) {
+        if (a.length == 0)
+            return OptionalDouble.empty();
+        return OptionalDouble.of( VECTORIZED ? VectorReductions.max( a ) : scalarStatistics( a ).getMax() );
+    }
+
+    public static IntSummaryStatistics summaryStatistics(int[] a) {
+        return VECTORIZED ? VectorReductions.summaryStatistics( a ) : scalarStatistics( a );
+    }
+
+    public static LongSummaryStatistics summaryStatistics(long[] a) {
+        return VECTORIZED ? VectorReductions.summaryStatistics( a ) : scalarStatistics( a );
+    }
+
+    public static DoubleSummaryStatistics summaryStatistics(double[] a) {
+        return VECTORIZED ? VectorReductions.summaryStatistics( a ) : scalarStatistics( a );
+    }
+
+    public static long count(int[] a, Compare op, int value) {
+        return VECTORIZED ? VectorReductions.count( a, op, value ) : scalarCount( a, op, value );
+    }
+
+    public static long count(long[] a, Compare op, long value) {
+        return VECTORIZED ? VectorReductions.count( a, op, value ) : scalarCount( a, op, value );
+    }
+
+    public static long count(double[] a, Compare op, double value) {
+        return VECTORIZED ? VectorReductions.count( a, op, value ) : scalarCount( a, op, value );
+    }
+
+    // Scalar fallback, also the baseline of the benchmark.
+
+    static int scalarSum(int[] a) {
+        int sum = 0;
+        for (int x : a)
+            sum += x;
+        return sum;
+    }
+
+    static long scalarSum(long[] a) {
+        long sum = 0;
+        for (long x : a)
+            sum += x;
+        return sum;
+    }
+
+    static IntSummaryStatistics scalarStatistics(int[] a) {
+        if (a.length == 0)
+            return new IntSummaryStatistics();
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        long sum = 0;
+        for (int x : a) {
+            min = Math.min( min, x );
+            max = Math.max( max, x );
+            sum += x;
+        }
+        return new IntSummaryStatistics( a.length, min, max, sum );
+    }
+
+    static LongSummaryStatistics scalarStatistics(long[] a) {
+        if (a.length == 0)
+            return new LongSummaryStatistics();
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE, sum = 0;
+        for (long x : a) {
+            min = Math.min( min, x );
+            max = Math.max( max, x );
+            sum += x;
+        }
+        return new LongSummaryStatistics( a.length, min, max, sum );
+    }
+
+    static DoubleSummaryStatistics scalarStatistics(double[] a) {
+        DoubleSummaryStatistics statistics = new DoubleSummaryStatistics();
+        for (double x : a)
+            statistics.accept( x );
+        return statistics;
+    }
+
+    static long scalarCount(int[] a, Compare op, int value) {
+        long count = 0;
+        for (int x : a)
+            if (op.test( Integer.compare( x, value ) ))
+                count++;
+        return count;
+    }
+
+    static long scalarCount(long[] a, Compare op, long value) {
+        long count = 0;
+        for (long x : a)
+            if (op.test( Long.compare( x, value ) ))
+                count++;
+        return count;
+    }
+
+    static long scalarCount(double[] a, Compare op, double value) {
+        long count = 0;
+        for (double x : a)
+            if (op.test( x, value ))
+                count++;
+        return count;
+    }
+}
@@ -0,0 +1,90 @@
+package NEW.Collection.Stream;
+
+import java.util.Arrays;
+import java.util.DoubleSummaryStatistics;
+import java.util.IntSummaryStatistics;
+import java.util.SplittableRandom;
+import java.util.function.LongSupplier;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static NEW.Collection.Stream.PrimitiveReductions.Compare.GT;
+
+/**
+ * Summary: ✔️ sum / min / max / summaryStatistics / filter-count: stream vs scalar loop vs {@link PrimitiveReductions} (SIMD) ✔️
+ * <p>
+ * Run with --add-modules jdk.incubator.vector, otherwise the simd mode is skipped.
+ * Sizes from 1e3 (in L1) to 1e7 (memory bound, SIMD helps less there).
+ */
+public class PrimitiveReductionsBenchmark {
+    public static void main(String[] args) {
+        Bench bench = new Bench();
+        if (!PrimitiveReductions.VECTORIZED)
+            System.out.println( "jdk.incubator.vector is not available: only the scalar modes run" );
+        for (int n : Bench.sizes( "1e3,1e5,1e7" )) {
+            SplittableRandom random = new SplittableRandom( 7 );
+            int[] ints = random.ints( n, -1000, 1000 ).toArray();
+            long[] longs = random.longs( n, -1_000_000, 1_000_000 ).toArray();
+            double[] doubles = random.doubles( n ).toArray();
+
+            bench.run( "sum-int", Bench.LOOP, n, () -> PrimitiveReductions.scalarSum( ints ) );
+            bench.run( "sum-int", "stream", n, () -> IntStream.of( ints ).sum() );
+            simd( bench, "sum-int", n, () -> PrimitiveReductions.sum( ints ) );
+
+            bench.run( "sum-long", Bench.LOOP, n, () -> PrimitiveReductions.scalarSum( longs ) );
+            bench.run( "sum-long", "stream", n, () -> LongStream.of( longs ).sum() );
+            simd( bench, "sum-long", n, () -> PrimitiveReductions.sum( longs ) );
+
+            bench.run( "sum-double", Bench.LOOP, n, () -> (long) PrimitiveReductions.scalarStatistics( doubles ).getSum() );
+            bench.run( "sum-double", "stream", n, () -> (long) Arrays.stream( doubles ).sum() );
+            simd( bench, "sum-double", n, () -> (long) PrimitiveReductions.sum( doubles ) );
+
+            bench.run( "max-int", Bench.LOOP, n, () -> {
+                int max = Integer.MIN_VALUE;
+                for (int x : ints)
+                    max = Math.max( max, x );
+                return max;
+            } );
+            bench.run( "max-int", "stream", n, () -> IntStream.of( ints ).max().orElse( 0 ) );
+            simd( bench, "max-int", n, () -> PrimitiveReductions.max( ints ).orElse( 0 ) );
+
+            bench.run( "statistics-int", Bench.LOOP, n, () -> use( PrimitiveReductions.scalarStatistics( ints ) ) );
+            bench.run( "statistics-int", "stream", n, () -> use( IntStream.of( ints ).summaryStatistics() ) );
+            simd( bench, "statistics-int", n, () -> use( PrimitiveReductions.summaryStatistics( ints ) ) );
+
+            bench.run( "statistics-double", Bench.LOOP, n, () -> use( PrimitiveReductions.scalarStatistics( doubles ) ) );
+            bench.run( "statistics-double", "stream", n, () -> use( Arrays.stream( doubles ).summaryStatistics() ) );
+            simd( bench, "statistics-double", n, () -> use( PrimitiveReductions.summaryStatistics( doubles ) ) );
+
+            bench.run( "filter-count-int", Bench.LOOP, n, () -> {
+                long count = 0;
+                for (int x : ints)
+                    if (x > 300)
+                        count++;
+                return count;
+            } );
+            bench.run( "filter-count-int", "stream", n, () -> IntStream.of( ints ).filter( x -> x > 300 ).count() );
+            simd( bench, "filter-count-int", n, () -> PrimitiveReductions.count( ints, GT, 300 ) );
+
+            bench.run( "filter-count-long", Bench.LOOP, n, () -> PrimitiveReductions.scalarCount( longs, GT, 0 ) );
+            bench.run( "filter-count-long", "stream", n, () -> LongStream.of( longs ).filter( x -> x > 0 ).count() );
+            simd( bench, "filter-count-long", n, () -> PrimitiveReductions.count( longs, GT, 0 ) );
+        }
+    }
+
+    /**
+     * Every field of the statistics goes into the result, so the JIT cannot drop the parts that are not read.
+     */
+    private static long use(IntSummaryStatistics s) {
+        return s.getSum() + s.getMin() + s.getMax();
+    }
+
+    private static long use(DoubleSummaryStatistics s) {
+        return (long) (s.getSum() + s.getMin() + s.getMax());
+    }
+
+    private static void simd(Bench bench, String name, int n, LongSupplier op) {
+        if (PrimitiveReductions.VECTORIZED)
+            bench.run( name, "simd", n, op );
+    }
+}
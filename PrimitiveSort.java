@@ -0,0 +1,119 @@
+package NEW.Collection.Stream;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Summary: ✔️ In-place sorting of int[] / long[] without a comparator and without boxing ✔️
+ * <p>
+ * Stream.of( 120, 410, 85 ).sorted() copies Integer objects into an Object[] and compares them through
+ * Comparable.compareTo. Here the values stay primitive:
+ * - small ranges go to Arrays.sort (dual-pivot quicksort, in place),
+ * - big ranges use American flag sort: an in-place MSD radix sort that distributes the values
+ * by one byte at a time (the highest byte first) into 256 buckets, then sorts each bucket by the next byte.
+ * No extra array of size n is needed, only 2 * 256 counters per level of recursion.
+ * <p>
+ * The sign bit is flipped when the top byte is read, so negative numbers come before positive ones.
+ */
+public final class PrimitiveSort {
+    /**
+     * Below this size a radix pass costs more than it saves.
+     */
+    static final int RADIX_THRESHOLD = 1 << 12;
+
+    private PrimitiveSort() {
+    }
+
+    public static void sort(int[] a) {
+        sort( a, 0, a.length );
+    }
+
+    public static void sort(int[] a, int from, int to) {
+        Objects.checkFromToIndex( from, to, a.length );
+        sort( a, from, to, Integer.SIZE - 8 );
+    }
+
+    public static void sort(long[] a) {
+        sort( a, 0, a.length );
+    }
+
+    public static void sort(long[] a, int from, int to) {
+        Objects.checkFromToIndex( from, to, a.length );
+        sort( a, from, to, Long.SIZE - 8 );
+    }
+
+    private static void sort(int[] a, int from, int to, int shift) {
+        if (to - from < RADIX_THRESHOLD) {
+            Arrays.sort( a, from, to );
+            return;
+        }
+        int[] start = new int[257], next = new int[256];
+        for (int i = from; i < to; i++)
+            start[digit( a[i], shift ) + 1]++;
+        start[0] = from;
+        for (int b = 0; b < 256; b++)
+            start[b + 1] += start[b];
+
+        // start[b + 1] is the end of bucket b, next[b] the first slot of bucket b not yet filled
+        System.arraycopy( start, 0, next, 0, 256 );
+        for (int b = 0; b < 256; b++) {
+            int end = start[b + 1];
+            while (next[b] < end) {
+                int v = a[next[b]];
+                int d = digit( v, shift );
+                while (d != b) {
+                    int t = a[next[d]];
+                    a[next[d]++] = v;
+                    v = t;
+                    d = digit( v, shift );
+                }
+                a[next[b]++] = v;
+            }
+        }
+        if (shift > 0)
+            for (int b = 0; b < 256; b++)
+                if (start[b + 1] - start[b] > 1)
+                    sort( a, start[b], start[b + 1], shift - 8 );
+    }
+
+    private static void sort(long[] a, int from, int to, int shift) {
+        if (to - from < RADIX_THRESHOLD) {
+            Arrays.sort( a, from, to );
+            return;
+        }
+        int[] start = new int[257], next = new int[256];
+        for (int i = from; i < to; i++)
+            start[digit( a[i], shift ) + 1]++;
+        start[0] = from;
+        for (int b = 0; b < 256; b++)
+            start[b + 1] += start[b];
+
+        System.arraycopy( start, 0, next, 0, 256 );
+        for (int b = 0; b < 256; b++) {
+            int end = start[b + 1];
+            while (next[b] < end) {
+                long v = a[next[b]];
+                int d = digit( v, shift );
+                while (d != b) {
+                    long t = a[next[d]];
+                    a[next[d]++] = v;
+                    v = t;
+                    d = digit( v, shift );
+                }
+                a[next[b]++] = v;
+            }
+        }
+        if (shift > 0)
+            for (int b = 0; b < 256; b++)
+                if (start[b + 1] - start[b] > 1)
+                    sort( a, start[b], start[b + 1], shift - 8 );
+    }
+
+    private static int digit(int v, int shift) {
+        return ((v ^ Integer.MIN_VALUE) >>> shift) & 0xFF;
+    }
+
+    private static int digit(long v, int shift) {
+        return (int) ((v ^ Long.MIN_VALUE) >>> shift) & 0xFF;
+    }
+}
@@ -0,0 +1,86 @@
+package NEW.Collection.Stream;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * Summary: ✔️ distinct() and sorted() for IntStream / LongStream that never box the elements ✔️
+ * <p>
+ * IntStream.distinct() in the JDK is boxed().distinct().mapToInt(...) -> a HashSet<Integer> inside,
+ * Stream<Integer>.sorted() sorts an Object[] through compareTo.
+ * These operators keep the values primitive:
+ * distinct()       -> dedup through an {@link IntHashSet} / {@link LongHashSet}.
+ * sorted()         -> {@link PrimitiveSort} (radix for big inputs, dual-pivot quicksort for small ones).
+ * sortedDistinct() -> distinct() + sorted() in one step, sorts only the unique values.
+ * <p>
+ * Usage (wraps the stream the same way Stream.concat does):
+ * PrimitiveStreams.sorted( PrimitiveStreams.distinct( IntStream.of( 2, 1, 8, 1, 3, 2 ) ) ) -> 1 2 3 8
+ * <p>
+ * Like the JDK operators, sorted() is a barrier that runs only when the terminal operation starts.
+ * distinct() of a sequential stream is lazy and keeps the first occurrence of each value in encounter order.
+ * distinct() of a parallel stream dedups every fork into its own set and merges the sets,
+ * the encounter order is then lost (as with unordered().distinct()).
+ * Sequential or parallel is what the stream is when the terminal operation starts, so parallel() may still be
+ * called on the result.
+ */
+public final class PrimitiveStreams {
+    private static final int ARRAY_CHARACTERISTICS =
+            Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE;
+
+    private PrimitiveStreams() {
+    }
+
+    public static IntStream distinct(IntStream stream) {
+        return DeferredStreams.intStream( stream, Spliterator.DISTINCT, parallel -> parallel
+                ? stream.parallel().collect( IntHashSet::new, IntHashSet::add, IntHashSet::addAll ).spliterator()
+                : stream.sequential().filter( new IntHashSet()::add ).spliterator() );
+    }
+
+    public static LongStream distinct(LongStream stream) {
+        return DeferredStreams.longStream( stream, Spliterator.DISTINCT, parallel -> parallel
+                ? stream.parallel().collect( LongHashSet::new, LongHashSet::add, LongHashSet::addAll ).spliterator()
+                : stream.sequential().filter( new LongHashSet()::add ).spliterator() );
+    }
+
+    public static IntStream sorted(IntStream stream) {
+        return DeferredStreams.intStream( stream, ARRAY_CHARACTERISTICS, parallel -> {
+            int[] values = DeferredStreams.mode( stream, parallel ).toArray();
+            if (parallel)
+                Arrays.parallelSort( values );
+            else
+                PrimitiveSort.sort( values );
+            return Arrays.spliterator( values );
+        } );
+    }
+
+    public static LongStream sorted(LongStream stream) {
+        return DeferredStreams.longStream( stream, ARRAY_CHARACTERISTICS, parallel -> {
+            long[] values = DeferredStreams.mode( stream, parallel ).toArray();
+            if (parallel)
+                Arrays.parallelSort( values );
+            else
+                PrimitiveSort.sort( values );
+            return Arrays.spliterator( values );
+        } );
+    }
+
+    public static IntStream sortedDistinct(IntStream stream) {
+        return DeferredStreams.intStream( stream, ARRAY_CHARACTERISTICS | Spliterator.DISTINCT, parallel -> {
+            int[] values = DeferredStreams.mode( stream, parallel )
+                    .collect( IntHashSet::new, IntHashSet::add, IntHashSet::addAll ).toArray();
+            PrimitiveSort.sort( values );
+            return Arrays.spliterator( values );
+        } );
+    }
+
+    public static LongStream sortedDistinct(LongStream stream) {
+        return DeferredStreams.longStream( stream, ARRAY_CHARACTERISTICS | Spliterator.DISTINCT, parallel -> {
+            long[] values = DeferredStreams.mode( stream, parallel )
+                    .collect( LongHashSet::new, LongHashSet::add, LongHashSet::addAll ).toArray();
+            PrimitiveSort.sort( values );
+            return Arrays.spliterator( values );
+        } );
+    }
+}
@@ -0,0 +1,177 @@
+package NEW.Collection.Stream;
+
+/**
+ * Summary: ✔️ Approximate quantiles (median, p99 ...) of a stream in bounded memory, mergeable between threads ✔️
+ * <p>
+ * Logarithmic histogram in the style of HDR histogram / DDSketch: a value x goes to bucket ceil(log(x) / log(gamma)),
+ * gamma = (1 + accuracy) / (1 - accuracy). Every value in a bucket is within the relative accuracy of the bucket middle,
+ * so any quantile is returned with a relative error of at most {@link #relativeAccuracy()} (1% by default).
+ * <p>
+ * Negative values have their own buckets, zeros (and values too small to have a logarithm) a counter.
+ * Each side keeps at most maxBuckets counters: if the values span a wider range,
+ * the lowest buckets are collapsed into one, which only hurts the accuracy of the smallest magnitudes.
+ * NaN and infinite values are ignored.
+ * <p>
+ * Two sketches with the same accuracy are merged by adding the counters, which is what a parallel collect() needs.
+ */
+public final class QuantileSketch {
+    public static final double DEFAULT_ACCURACY = 0.01;
+    public static final int DEFAULT_MAX_BUCKETS = 2048;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final Buckets positive;
+    private final Buckets negative;
+    private long zeroCount;
+
+    public QuantileSketch() {
+        this( DEFAULT_ACCURACY, DEFAULT_MAX_BUCKETS );
+    }
+
+    public QuantileSketch(double relativeAccuracy, int maxBuckets) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1))
+            throw new IllegalArgumentException( "relative accuracy must be in (0, 1): " + relativeAccuracy );
+        if (maxBuckets < 2)
+            throw new IllegalArgumentException( "maxBuckets must be at least 2: " + maxBuckets );
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log( gamma );
+        this.positive = new Buckets( maxBuckets );
+        this.negative = new Buckets( maxBuckets );
+    }
+
+    public void add(double value) {
+        if (!Double.isFinite( value ))
+            return;
+        if (value >= Double.MIN_NORMAL)
+            positive.add( index( value ), 1 );
+        else if (value <= -Double.MIN_NORMAL)
+            negative.add( index( -value ), 1 );
+        else
+            zeroCount++;
+    }
+
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy)
+            throw new IllegalArgumentException( "cannot merge sketches with different accuracy: "
+                    + relativeAccuracy + " and " + other.relativeAccuracy );
+        positive.addAll( other.positive );
+        negative.addAll( other.negative );
+        zeroCount += other.zeroCount;
+    }
+
+    public long count() {
+        return positive.total + negative.total + zeroCount;
+    }
+
+    public double relativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    /**
+     * @param q 0.0 -> minimum, 0.5 -> median, 0.99 -> p99, 1.0 -> maximum.
+     * @return NaN for an empty sketch.
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1)
+            throw new IllegalArgumentException( "quantile must be in [0, 1]: " + q );
+        long count = count();
+        if (count == 0)
+            return Double.NaN;
+        long rank = (long) (q * (count - 1));
+
+        // negative values first, the biggest magnitude is the smallest value
+        Buckets b = negative;
+        long seen = 0;
+        for (int i = b.maxIndex; b.total > 0 && i >= b.minIndex; i--)
+            if ((seen += b.counts[i - b.offset]) > rank)
+                return -value( i );
+        if ((seen += zeroCount) > rank)
+            return 0;
+        b = positive;
+        for (int i = b.minIndex; i <= b.maxIndex; i++)
+            if ((seen += b.counts[i - b.offset]) > rank)
+                return value( i );
+        return value( b.maxIndex );
+    }
+
+    private int index(double magnitude) {
+        return (int) Math.ceil( Math.log( magnitude ) / logGamma );
+    }
+
+    /**
+     * The point of bucket (gamma^(i-1), gamma^i] that is within the relative accuracy of both ends.
+     */
+    private double value(int index) {
+        return 2 * Math.pow( gamma, index ) / (gamma + 1);
+    }
+
+    /**
+     * Dense counters for the bucket indexes [minIndex, maxIndex], counts[0] is the bucket {@code offset}.
+     */
+    private static final class Buckets {
+        private final int maxBuckets;
+        long[] counts = new long[32];
+        int offset;
+        int minIndex;
+        int maxIndex = -1;
+        long total;
+
+        Buckets(int maxBuckets) {
+            this.maxBuckets = maxBuckets;
+        }
+
+        void add(int index, long n) {
+            if (total == 0) {
+                minIndex = maxIndex = index;
+                offset = index - counts.length / 2;
+            } else if (index < minIndex || index > maxIndex) {
+                index = extend( Math.min( index, minIndex ), Math.max( index, maxIndex ), index );
+            }
+            counts[index - offset] += n;
+            total += n;
+        }
+
+        void addAll(Buckets other) {
+            if (other.total == 0)
+                return;
+            for (int i = other.maxIndex; i >= other.minIndex; i--) {
+                long n = other.counts[i - other.offset];
+                if (n != 0)
+                    add( i, n );
+            }
+        }
+
+        /**
+         * Makes the counters cover [lo, hi]. If that is more than maxBuckets, the lowest buckets are collapsed
+         * into the lowest one kept. Returns the index to use for the value that caused the extension.
+         */
+        private int extend(int lo, int hi, int index) {
+            if ((long) hi - lo + 1 > maxBuckets)
+                lo = hi - maxBuckets + 1;
+            int span = hi - lo + 1;
+            if (lo < offset || hi >= offset + counts.length) {
+                int length = counts.length;
+                while (length < span)
+                    length <<= 1;
+                long[] resized = new long[length];
+                int newOffset = lo - (length - span) / 2;
+                for (int i = minIndex; i <= maxIndex; i++)
+                    resized[Math.max( i, lo ) - newOffset] += counts[i - offset];
+                counts = resized;
+                offset = newOffset;
+            } else if (lo > minIndex) {
+                long collapsed = 0;
+                for (int i = minIndex; i < lo; i++) {
+                    collapsed += counts[i - offset];
+                    counts[i - offset] = 0;
+                }
+                counts[lo - offset] += collapsed;
+            }
+            minIndex = lo;
+            maxIndex = hi;
+            return Math.max( index, lo );
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package NEW.Collection.Stream;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BinaryOperator;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Summary: ✔️ scan(): running totals and other running aggregates, computed in parallel ✔️
+ * <p>
+ * Element i of scan( stream, op ) is x0 op x1 op ... op xi (an inclusive prefix scan), in encounter order:
+ * Scan.prefixSum( IntStream.of( 3, 1, 4, 1, 5 ) )                  -> 3, 4, 8, 9, 14
+ * Scan.scan( LongStream.rangeClosed( 1, 5 ), (a, b) -> a * b )     -> 1, 2, 6, 24, 120
+ * Scan.scan( Stream.of( "a", "b", "c" ), String::concat )          -> a, ab, abc
+ * Scan.scan( array, op )                                           -> the same in place, like Arrays.parallelPrefix
+ * <p>
+ * Each element depends on all the earlier ones, as in Stream.iterate, but when op is associative the work can
+ * still be shared: the array is cut into blocks, pass 1 reduces every block (but the last) in parallel,
+ * a short sequential loop turns the block totals into the prefix before each block, and pass 2 scans every
+ * block in parallel starting from its prefix. That is about 2n applications of op instead of n, spread over
+ * all cores. For a non-associative op (or double rounding) the result depends on the block boundaries.
+ * <p>
+ * A sequential stream is scanned lazily, one element at a time (infinite streams work).
+ * A parallel stream is a barrier, like sorted(): it is collected into an array when the terminal operation
+ * starts, scanned in the current fork/join pool, and streamed from the array.
+ * Which of the two is decided when the terminal operation starts, so parallel() may still be called on the result.
+ */
+public final class Scan {
+    /**
+     * Below this many elements per block the second pass costs more than it shares.
+     */
+    static final int MIN_BLOCK = 1 << 13;
+
+    private Scan() {
+    }
+
+    public static IntStream prefixSum(IntStream stream) {
+        return scan( stream, Integer::sum );
+    }
+
+    public static LongStream prefixSum(LongStream stream) {
+        return scan( stream, Long::sum );
+    }
+
+    public static DoubleStream prefixSum(DoubleStream stream) {
+        return scan( stream, Double::sum );
+    }
+
+    public static IntStream scan(IntStream stream, IntBinaryOperator op) {
+        Objects.requireNonNull( op );
+        return DeferredStreams.intStream( stream, Spliterator.ORDERED, parallel -> {
+            if (!parallel)
+                return stream.sequential().map( new IntUnaryOperator() {
+                    boolean started;
+                    int total;
+
+                    @Override
+                    public int applyAsInt(int value) {
+                        total = started ? op.applyAsInt( total, value ) : value;
+                        started = true;
+                        return total;
+                    }
+                } ).spliterator();
+            int[] values = stream.parallel().toArray();
+            scan( values, op );
+            return Arrays.spliterator( values );
+        } );
+    }
+
+    public static LongStream scan(LongStream stream, LongBinaryOperator op) {
+        Objects.requireNonNull( op );
+        return DeferredStreams.longStream( stream, Spliterator.ORDERED, parallel -> {
+            if (!parallel)
+                return stream.sequential().map( new LongUnaryOperator() {
+                    boolean started;
+                    long total;
+
+                    @Override
+                    public long applyAsLong(long value) {
+                        total = started ? op.applyAsLong( total, value ) : value;
+                        started = true;
+                        return total;
+                    }
+                } ).spliterator();
+            long[] values = stream.parallel().toArray();
+            scan( values, op );
+            return Arrays.spliterator( values );
+        } );
+    }
+
+    public static DoubleStream scan(DoubleStream stream, DoubleBinaryOperator op) {
+        Objects.requireNonNull( op );
+        return DeferredStreams.doubleStream( stream, Spliterator.ORDERED, parallel -> {
+            if (!parallel)
+                return stream.sequential().map( new DoubleUnaryOperator() {
+                    boolean started;
+                    double total;
+
+                    @Override
+                    public double applyAsDouble(double value) {
+                        total = started ? op.applyAsDouble( total, value ) : value;
+                        started = true;
+                        return total;
+                    }
+                } ).spliterator();
+            double[] values = stream.parallel().toArray();
+            scan( values, op );
+            return Arrays.spliterator( values );
+        } );
+    }
+
+    public static <T> Stream<T> scan(Stream<T> stream, BinaryOperator<T> op) {
+        Objects.requireNonNull( op );
+        return DeferredStreams.stream( stream, Spliterator.ORDERED, parallel -> {
+            if (!parallel)
+                return stream.sequential().map( new Function<T, T>() {
+                    boolean started;
+                    T total;
+
+                    @Override
+                    public T apply(T value) {
+                        total = started ? op.apply( total, value ) : value;
+                        started = true;
+                        return total;
+                    }
+                } ).spliterator();
+            @SuppressWarnings("unchecked")
+            T[] values = (T[]) stream.parallel().toArray();
+            scan( values, op );
+            return Arrays.spliterator( values );
+        } );
+    }
+
+    /**
+     * Replaces every element with op applied to all elements up to it, in place.
+     */
+    public static void scan(int[] array, IntBinaryOperator op) {
+        int blocks = blocks( array.length );
+        int[] prefix = new int[blocks];
+        forEachBlock( array.length, blocks, blocks - 1, (block, from, to) -> {
+            int total = array[from];
+            for (int i = from + 1; i < to; i++)
+                total = op.applyAsInt( total, array[i] );
+            prefix[block] = total;
+        } );
+        for (int block = 1; block < blocks - 1; block++)
+            prefix[block] = op.applyAsInt( prefix[block - 1], prefix[block] );
+        forEachBlock( array.length, blocks, blocks, (block, from, to) -> {
+            if (from == to)
+                return;
+            int total = block == 0 ? array[from] : op.applyAsInt( prefix[block - 1], array[from] );
+            array[from] = total;
+            for (int i = from + 1; i < to; i++)
+                array[i] = total = op.applyAsInt( total, array[i] );
+        } );
+    }
+
+    public static void scan(long[] array, LongBinaryOperator op) {
+        int blocks = blocks( array.length );
+        long[] prefix = new long[blocks];
+        forEachBlock( array.length, blocks, blocks - 1, (block, from, to) -> {
+            long total = array[from];
+            for (int i = from + 1; i < to; i++)
+                total = op.applyAsLong( total, array[i] );
+            prefix[block] = total;
+        } );
+        for (int block = 1; block < blocks - 1; block++)
+            prefix[block] = op.applyAsLong( prefix[block - 1], prefix[block] );
+        forEachBlock( array.length, blocks, blocks, (block, from, to) -> {
+            if (from == to)
+                return;
+            long total = block == 0 ? array[from] : op.applyAsLong( prefix[block - 1], array[from] );
+            array[from] = total;
+            for (int i = from + 1; i < to; i++)
+                array[i] = total = op.applyAsLong( total, array[i] );
+        } );
+    }
+
+    public static void scan(double[] array, DoubleBinaryOperator op) {
+        int blocks = blocks( array.length );
+        double[] prefix = new double[blocks];
+        forEachBlock( array.length, blocks, blocks - 1, (block, from, to) -> {
+            double total = array[from];
+            for (int i = from + 1; i < to; i++)
+                total = op.applyAsDouble( total, array[i] );
+            prefix[block] = total;
+        } );
+        for (int block = 1; block < blocks - 1; block++)
+            prefix[block] = op.applyAsDouble( prefix[block - 1], prefix[block] );
+        forEachBlock( array.length, blocks, blocks, (block, from, to) -> {
+            if (from == to)
+                return;
+            double total = block == 0 ? array[from] : op.applyAsDouble( prefix[block - 1], array[from] );
+            array[from] = total;
+            for (int i = from + 1; i < to; i++)
+                array[i] = total = op.applyAsDouble( total, array[i] );
+        } );
+    }
+
+    public static <T> void scan(T[] array, BinaryOperator<T> op) {
+        int blocks = blocks( array.length );
+        @SuppressWarnings("unchecked")
+        T[] prefix = (T[]) new Object[blocks];
+        forEachBlock( array.length, blocks, blocks - 1, (block, from, to) -> {
+            T total = array[from];
+            for (int i = from + 1; i < to; i++)
+                total = op.apply( total, array[i] );
+            prefix[block] = total;
+        } );
+        for (int block = 1; block < blocks - 1; block++)
+            prefix[block] = op.apply( prefix[block - 1], prefix[block] );
+        forEachBlock( array.length, blocks, blocks, (block, from, to) -> {
+            if (from == to)
+                return;
+            T total = block == 0 ? array[from] : op.apply( prefix[block - 1], array[from] );
+            array[from] = total;
+            for (int i = from + 1; i < to; i++)
+                array[i] = total = op.apply( total, array[i] );
+        } );
+    }
+
+    /**
+     * About 4 blocks per thread of the current pool (the common pool outside of one), each at least MIN_BLOCK long.
+     * One block means a plain sequential scan: pass 1 is then empty.
+     */
+    static int blocks(int length) {
+        ForkJoinPool pool = ForkJoinTask.getPool();
+        int parallelism = pool != null ? pool.getParallelism() : ForkJoinPool.getCommonPoolParallelism();
+        if (parallelism <= 1)
+            return 1;
+        return Math.max( 1, Math.min( length / MIN_BLOCK, parallelism * 4 ) );
+    }
+
+    private interface Block {
+        void run(int block, int from, int to);
+    }
+
+    /**
+     * Runs blocks [0, count) of an array cut into the given number of blocks, block b being
+     * [length * b / blocks, length * (b + 1) / blocks).
+     */
+    private static void forEachBlock(int length, int blocks, int count, Block action) {
+        if (count == 1)
+            action.run( 0, 0, bound( length, blocks, 1 ) );
+        else if (count > 1)
+            new Blocks( length, blocks, 0, count, action ).invoke();
+    }
+
+    private static int bound(int length, int blocks, int block) {
+        return (int) ((long) length * block / blocks);
+    }
+
+    private static final class Blocks extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int length;
+        private final int blocks;
+        private final int from;
+        private final int to;
+        private final Block action;
+
+        Blocks(int length, int blocks, int from, int to, Block action) {
+            this.length = length;
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll( new Blocks( length, blocks, from, middle, action ),
+                        new Blocks( length, blocks, middle, to, action ) );
+            } else {
+                action.run( from, bound( length, blocks, from ), bound( length, blocks, from + 1 ) );
+            }
+        }
+    }
+}
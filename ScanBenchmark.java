@@ -0,0 +1,57 @@
+package NEW.Collection.Stream;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.LongStream;
+
+/**
+ * Summary: ✔️ Running totals over a long[] from 1 to N cores: a loop vs Arrays.parallelPrefix vs {@link Scan} ✔️
+ * <p>
+ * prefixSum-array rewrites the same array in place on every call (the totals wrap around, the work does not change).
+ * loop              -> for (i = 1; i < n; i++) a[i] += a[i - 1], the baseline.
+ * parallelPrefix@p  -> Arrays.parallelPrefix( a, Long::sum ) in a pool of p threads.
+ * scan@p            -> Scan.scan( a, Long::sum ) in a pool of p threads.
+ * prefixSum-stream goes from the source to a long[] of running totals: a loop, Scan.prefixSum of a sequential
+ * stream (scan-seq) and of a parallel one (scan@p). -Dbench.cores=1,2,4,8 overrides the list of parallelism levels.
+ */
+public class ScanBenchmark {
+    public static void main(String[] args) {
+        Bench bench = new Bench();
+        for (int n : Bench.sizes( "1e6,1e7" )) {
+            long[] array = LongStream.range( 0, n ).map( x -> x % 1000 ).toArray();
+            bench.run( "prefixSum-array", Bench.LOOP, n, () -> {
+                for (int i = 1; i < array.length; i++)
+                    array[i] += array[i - 1];
+                return array[array.length - 1];
+            } );
+            bench.run( "prefixSum-stream", Bench.LOOP, n, () -> {
+                long[] result = new long[n];
+                long total = 0;
+                for (int i = 0; i < n; i++)
+                    result[i] = total += i % 1000;
+                return result[n - 1];
+            } );
+            bench.run( "prefixSum-stream", "scan-seq", n, () -> {
+                long[] result = Scan.prefixSum( LongStream.range( 0, n ).map( x -> x % 1000 ) ).toArray();
+                return result[n - 1];
+            } );
+
+            for (int p : Bench.parallelism()) {
+                ForkJoinPool pool = new ForkJoinPool( p );
+                bench.run( "prefixSum-array", "parallelPrefix@" + p, n, Bench.in( pool, () -> {
+                    Arrays.parallelPrefix( array, Long::sum );
+                    return array[array.length - 1];
+                } ) );
+                bench.run( "prefixSum-array", "scan@" + p, n, Bench.in( pool, () -> {
+                    Scan.scan( array, Long::sum );
+                    return array[array.length - 1];
+                } ) );
+                bench.run( "prefixSum-stream", "scan@" + p, n, Bench.in( pool, () -> {
+                    long[] result = Scan.prefixSum( LongStream.range( 0, n ).parallel().map( x -> x % 1000 ) ).toArray();
+                    return result[n - 1];
+                } ) );
+                pool.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package NEW.Collection.Stream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Summary: ✔️ findFirst / findAny / anyMatch / takeWhile / limit under parallel() that stop as soon as the answer is known ✔️
+ * <p>
+ * list.parallelStream().filter( costly ).findFirst() splits the list into tasks that run in any order. A task
+ * to the right of the first match may start before the task that holds it and keep testing, and the first match
+ * may be found late because the leftmost task ran last. Here the source is cut into chunks up front, and the
+ * chunks are taken strictly from left to right (so the left ones, which decide the answer, go first).
+ * All tasks share one cancellation index, the position of the leftmost match known so far. A task checks it
+ * before every element and stops as soon as its position is at or right of it:
+ * ShortCircuit.findFirst( list.parallelStream(), costly )         -> ~ filter( costly ).findFirst()
+ * ShortCircuit.findFirst( IntStream.range( 4, 65536 ).parallel(), costly )
+ * ShortCircuit.findAny / anyMatch( stream, costly )               -> the first match anywhere stops all tasks
+ * ShortCircuit.takeWhile( stream, costly )                        -> ~ takeWhile( costly ), in order
+ * ShortCircuit.limit( stream, costly, n )                         -> ~ filter( costly ).limit( n ), in order
+ * <p>
+ * The chunks need the position of every element, so the source must be parallel and SUBSIZED (a collection,
+ * an array, a range, without intermediate operations). Other streams run the JDK operation unchanged.
+ * The tasks are the calling thread and up to the parallelism of the common ForkJoinPool. If the predicate
+ * throws, the other tasks stop and the exception is rethrown.
+ */
+public final class ShortCircuit {
+    /**
+     * Chunks per task: enough for the left-to-right order to matter, few enough that splitting is cheap.
+     */
+    static final int CHUNKS_PER_TASK = 64;
+
+    private ShortCircuit() {
+    }
+
+    public static <T> Optional<T> findFirst(Stream<T> stream, Predicate<? super T> predicate) {
+        Spliterator<T> source = stream.spliterator();
+        if (!splittable( stream.isParallel(), source ))
+            return StreamSupport.stream( source, stream.isParallel() ).filter( predicate ).findFirst();
+        Search<T> search = new Search<>( source, false );
+        search.run( (chunk, part) -> search.findIn( chunk, part, predicate ) );
+        return search.found();
+    }
+
+    public static <T> Optional<T> findAny(Stream<T> stream, Predicate<? super T> predicate) {
+        Spliterator<T> source = stream.spliterator();
+        if (!splittable( stream.isParallel(), source ))
+            return StreamSupport.stream( source, stream.isParallel() ).filter( predicate ).findAny();
+        Search<T> search = new Search<>( source, true );
+        search.run( (chunk, part) -> search.findIn( chunk, part, predicate ) );
+        return search.found();
+    }
+
+    public static <T> boolean anyMatch(Stream<T> stream, Predicate<? super T> predicate) {
+        Spliterator<T> source = stream.spliterator();
+        if (!splittable( stream.isParallel(), source ))
+            return StreamSupport.stream( source, stream.isParallel() ).anyMatch( predicate );
+        Search<T> search = new Search<>( source, true );
+        search.run( (chunk, part) -> search.findIn( chunk, part, predicate ) );
+        return search.matched();
+    }
+
+    public static OptionalInt findFirst(IntStream stream, IntPredicate predicate) {
+        Spliterator.OfInt source = stream.spliterator();
+        if (!splittable( stream.isParallel(), source ))
+            return StreamSupport.intStream( source, stream.isParallel() ).filter( predicate ).findFirst();
+        Search<Integer> search = new Search<>( source, false );
+        search.run( (chunk, part) -> search.findIntIn( chunk, (Spliterator.OfInt) part, predicate ) );
+        return search.foundInt();
+    }
+
+    public static OptionalInt findAny(IntStream stream, IntPredicate predicate) {
+        Spliterator.OfInt source = stream.spliterator();
+        if (!splittable( stream.isParallel(), source ))
+            return StreamSupport.intStream( source, stream.isParallel() ).filter( predicate ).findAny();
+        Search<Integer> search = new Search<>( source, true );
+        search.run( (chunk, part) -> search.findIntIn( chunk, (Spliterator.OfInt) part, predicate ) );
+        return search.foundInt();
+    }
+
+    public static boolean anyMatch(IntStream stream, IntPredicate predicate) {
+        return findAny( stream, predicate ).isPresent();
+    }
+
+    /**
+     * The elements before the first one that fails the predicate, in encounter order.
+     * The cancellation index is the leftmost failure: the elements right of it are never tested.
+     */
+    public static <T> Stream<T> takeWhile(Stream<T> stream, Predicate<? super T> predicate) {
+        boolean parallel = stream.isParallel();
+        return StreamSupport.stream( () -> {
+            Spliterator<T> source = stream.spliterator();
+            if (!splittable( parallel, source ))
+                return StreamSupport.stream( source, parallel ).takeWhile( predicate ).spliterator();
+            Search<T> search = new Search<>( source, false );
+            List<List<T>> passed = search.perChunk();
+            search.run( (chunk, part) -> {
+                List<T> kept = passed.get( chunk );
+                search.findIn( chunk, part, t -> {
+                    if (!predicate.test( t ))
+                        return true;
+                    kept.add( t );
+                    return false;
+                } );
+            } );
+            return search.concat( passed, Long.MAX_VALUE ).spliterator();
+        }, Spliterator.ORDERED, parallel ).onClose( stream::close );
+    }
+
+    /**
+     * The first n elements that pass the filter, in encounter order. Once the chunks from the left, all done,
+     * hold n matches, the cancellation index moves to the end of them.
+     */
+    public static <T> Stream<T> limit(Stream<T> stream, Predicate<? super T> filter, long n) {
+        if (n < 0)
+            throw new IllegalArgumentException( "n < 0: " + n );
+        boolean parallel = stream.isParallel();
+        return StreamSupport.stream( () -> {
+            Spliterator<T> source = stream.spliterator();
+            if (!splittable( parallel, source ))
+                return StreamSupport.stream( source, parallel ).filter( filter ).limit( n ).spliterator();
+            Search<T> search = new Search<>( source, false );
+            List<List<T>> matches = search.perChunk();
+            search.run( (chunk, part) -> {
+                List<T> kept = matches.get( chunk );
+                search.scan( chunk, part, t -> {
+                    if (filter.test( t ))
+                        kept.add( t );
+                    return kept.size() >= n;
+                }, new Holder<>() );
+                search.done( chunk, kept.size(), n );
+            } );
+            return search.concat( matches, n ).spliterator();
+        }, Spliterator.ORDERED, parallel ).onClose( stream::close );
+    }
+
+    private static boolean splittable(boolean parallel, Spliterator<?> source) {
+        return parallel && source.hasCharacteristics( Spliterator.SUBSIZED );
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object t) {
+        return (T) t;
+    }
+
+    private interface ChunkTask {
+        void run(int chunk, Spliterator<?> part);
+    }
+
+    /**
+     * The chunks of one source and the cancellation index shared by the tasks that work on them.
+     */
+    private static final class Search<T> {
+        private final List<Spliterator<?>> parts = new ArrayList<>();
+        private final List<Long> offsets = new ArrayList<>();
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicLong bound = new AtomicLong( Long.MAX_VALUE );
+        private final boolean any;
+        private long foundIndex = Long.MAX_VALUE;
+        private Object foundValue;
+        private long[] counts;      // limit(): elements kept per finished chunk, -1 while running
+        private int settled;        // limit(): the chunks [0, settled) are finished
+        private long settledCount;
+
+        Search(Spliterator<?> source, boolean any) {
+            this.any = any;
+            long size = source.getExactSizeIfKnown();
+            int tasks = ForkJoinPool.getCommonPoolParallelism() + 1;
+            split( source, 0, Math.max( 1, size / ((long) tasks * CHUNKS_PER_TASK) ) );
+        }
+
+        private void split(Spliterator<?> part, long offset, long chunkSize) {
+            while (part.estimateSize() > chunkSize) {
+                Spliterator<?> prefix = part.trySplit();
+                if (prefix == null)
+                    break;
+                long prefixSize = prefix.getExactSizeIfKnown();
+                split( prefix, offset, chunkSize );
+                offset += prefixSize;
+            }
+            parts.add( part );
+            offsets.add( offset );
+        }
+
+        <E> List<List<E>> perChunk() {
+            List<List<E>> lists = new ArrayList<>( parts.size() );
+            for (int i = 0; i < parts.size(); i++)
+                lists.add( new ArrayList<>() );
+            counts = new long[parts.size()];
+            Arrays.fill( counts, -1 );
+            return lists;
+        }
+
+        /**
+         * Runs the task over the chunks on the calling thread and the common pool. A chunk is skipped when it
+         * starts at or right of the cancellation index: the chunks are taken in order, so all the next ones are too.
+         */
+        void run(ChunkTask task) {
+            Runnable worker = () -> {
+                try {
+                    for (int chunk; (chunk = next.getAndIncrement()) < parts.size(); ) {
+                        if (offsets.get( chunk ) >= bound.get())
+                            return;
+                        task.run( chunk, parts.get( chunk ) );
+                    }
+                } catch (RuntimeException | Error e) {
+                    bound.set( Long.MIN_VALUE );
+                    throw e;
+                }
+            };
+            int helpers = Math.min( parts.size(), ForkJoinPool.getCommonPoolParallelism() + 1 ) - 1;
+            List<ForkJoinTask<?>> tasks = new ArrayList<>( helpers );
+            for (int i = 0; i < helpers; i++)
+                tasks.add( ForkJoinPool.commonPool().submit( worker ) );
+            Throwable failure = null;
+            try {
+                worker.run();
+            } catch (RuntimeException | Error e) {
+                failure = e;
+            }
+            for (ForkJoinTask<?> t : tasks) {
+                try {
+                    t.join();
+                } catch (RuntimeException | Error e) {
+                    if (failure == null)
+                        failure = e;
+                }
+            }
+            if (failure instanceof RuntimeException)
+                throw (RuntimeException) failure;
+            if (failure != null)
+                throw (Error) failure;
+        }
+
+        /**
+         * Tests the elements of a chunk until the predicate holds or the cancellation index is reached.
+         */
+        void findIn(int chunk, Spliterator<?> part, Predicate<? super T> predicate) {
+            Holder<T> holder = new Holder<>();
+            long index = scan( chunk, part, predicate, holder );
+            if (index >= 0)
+                found( index, holder.value );
+        }
+
+        /**
+         * The index of the element that stopped the scan, which is left in the holder, or -1.
+         */
+        @SuppressWarnings("unchecked")
+        long scan(int chunk, Spliterator<?> part, Predicate<? super T> stop, Holder<T> holder) {
+            Spliterator<T> elements = (Spliterator<T>) part;
+            for (long index = offsets.get( chunk ); index < bound.get() && elements.tryAdvance( holder ); index++)
+                if (stop.test( holder.value ))
+                    return index;
+            return -1;
+        }
+
+        void findIntIn(int chunk, Spliterator.OfInt part, IntPredicate predicate) {
+            IntHolder holder = new IntHolder();
+            for (long index = offsets.get( chunk ); index < bound.get() && part.tryAdvance( holder ); index++) {
+                if (predicate.test( holder.value )) {
+                    found( index, holder.value );
+                    return;
+                }
+            }
+        }
+
+        private synchronized void found(long index, Object value) {
+            if (index < foundIndex && (!any || foundIndex == Long.MAX_VALUE)) {
+                foundIndex = index;
+                foundValue = value;
+                bound.accumulateAndGet( any ? Long.MIN_VALUE : index, Math::min );
+            }
+        }
+
+        /**
+         * limit(): a chunk is finished. When the finished chunks from the left hold n elements,
+         * everything right of them is not needed.
+         */
+        synchronized void done(int chunk, long count, long n) {
+            counts[chunk] = count;
+            while (settled < counts.length && counts[settled] >= 0 && settledCount < n)
+                settledCount += counts[settled++];
+            if (settledCount >= n && settled < counts.length)
+                bound.accumulateAndGet( offsets.get( settled ), Math::min );
+        }
+
+        /**
+         * The lists of the chunks left of the cancellation index, in order, up to n elements.
+         */
+        synchronized <E> List<E> concat(List<List<E>> lists, long n) {
+            List<E> result = new ArrayList<>();
+            for (int chunk = 0; chunk < lists.size() && offsets.get( chunk ) < bound.get() && result.size() < n; chunk++)
+                for (E e : lists.get( chunk ))
+                    if (result.size() < n)
+                        result.add( e );
+            return result;
+        }
+
+        synchronized boolean matched() {
+            return foundIndex != Long.MAX_VALUE;
+        }
+
+        synchronized Optional<T> found() {
+            return foundIndex == Long.MAX_VALUE ? Optional.empty() : Optional.of( cast( foundValue ) );
+        }
+
+        synchronized OptionalInt foundInt() {
+            return foundIndex == Long.MAX_VALUE ? OptionalInt.empty() : OptionalInt.of( (Integer) foundValue );
+        }
+    }
+
+    private static final class Holder<T> implements Consumer<T> {
+        T value;
+
+        @Override
+        public void accept(T t) {
+            value = t;
+        }
+    }
+
+    private static final class IntHolder implements IntConsumer {
+        int value;
+
+        @Override
+        public void accept(int value) {
+            this.value = value;
+        }
+    }
+}
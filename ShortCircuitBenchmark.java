@@ -0,0 +1,54 @@
+package NEW.Collection.Stream;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Summary: ✔️ filter( costly ).findFirst() / limit( n ) under parallel(): JDK vs {@link ShortCircuit} ✔️
+ * <p>
+ * The predicate costs about a microsecond (a few hundred rounds of a hash), and the only match is early (1% of
+ * the list), in the middle (50%) or late (99%); limit takes the first 10 elements of a filter that lets one in 1000 pass.
+ * loop     -> sequential stream, the baseline.
+ * jdk-par  -> list.parallelStream().filter( costly ).findFirst() / .limit( 10 ).
+ * short    -> ShortCircuit.findFirst( list.parallelStream(), costly ) / ShortCircuit.limit( ..., 10 ).
+ * ns/elem is per element of the list, not per element tested: the less work after the answer is known, the better.
+ * Set -Djava.util.concurrent.ForkJoinPool.common.parallelism to vary the number of tasks.
+ */
+public class ShortCircuitBenchmark {
+    static final int ROUNDS = 300;
+
+    public static void main(String[] args) {
+        Bench bench = new Bench();
+        for (int n : Bench.sizes( "1e4,1e5" )) {
+            List<Integer> list = IntStream.range( 0, n ).boxed().collect( Collectors.toList() );
+            for (String position : new String[]{ "early", "middle", "late" }) {
+                int match = position.equals( "early" ) ? n / 100 : position.equals( "middle" ) ? n / 2 : n - n / 100;
+                long target = costly( match );
+                String name = "findFirst-" + position;
+                bench.run( name, Bench.LOOP, n, () -> list.stream()
+                        .filter( x -> costly( x ) == target ).findFirst().orElse( -1 ) );
+                bench.run( name, "jdk-par", n, () -> list.parallelStream()
+                        .filter( x -> costly( x ) == target ).findFirst().orElse( -1 ) );
+                bench.run( name, "short", n, () -> ShortCircuit.findFirst( list.parallelStream(),
+                        x -> costly( x ) == target ).orElse( -1 ) );
+            }
+            bench.run( "limit-10", Bench.LOOP, n, () -> list.stream()
+                    .filter( x -> costly( x ) % 1000 == 0 ).limit( 10 ).count() );
+            bench.run( "limit-10", "jdk-par", n, () -> list.parallelStream()
+                    .filter( x -> costly( x ) % 1000 == 0 ).limit( 10 ).count() );
+            bench.run( "limit-10", "short", n, () -> ShortCircuit.limit( list.parallelStream(),
+                    x -> costly( x ) % 1000 == 0, 10 ).count() );
+        }
+    }
+
+    /**
+     * A predicate that cannot be optimized away: ROUNDS rounds of a 64-bit mix.
+     */
+    static long costly(int x) {
+        long h = x;
+        for (int i = 0; i < ROUNDS; i++)
+            h = LongHashSet.mix( h + i );
+        return h & Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,209 @@
+package NEW.Collection.Stream;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Summary: ✔️ toList() / toCollection() that allocate the exact size once, and fill one array in parallel ✔️
+ * <p>
+ * collect( Collectors.toList() ) starts with an empty ArrayList and grows it (1.5x and a copy each time), and under
+ * parallel() every fork fills its own list and the lists are merged, copying again at every level. A Collector
+ * never sees the stream, so it cannot know the size; these methods take the stream and read the exact size
+ * of its spliterator (SIZED: a collection, an array, a range, through map / sorted / peek, not filter):
+ * SizedCollectors.toList( stream )                              -> an ArrayList of the exact capacity
+ * SizedCollectors.toCollection( stream, n -> new ArrayDeque<>( n ) ) -> the factory gets the size
+ * SizedCollectors.toLinkedHashSet( stream )                     -> sized so that it never rehashes
+ * SizedCollectors.toIntArrayList / toIntLinkedHashSet( intStream ), toLongArrayDeque( longStream )
+ * <p>
+ * A parallel SUBSIZED stream is split into tasks that know the index of their first element, and every task writes
+ * its elements straight into one pre-allocated array at their final position: no per-fork buffer, nothing to merge.
+ * The primitive containers take that array as it is; an ArrayList or a collection is filled from it in order
+ * (one more copy). Streams of unknown size, and parallel streams that are SIZED but not SUBSIZED (their splits
+ * do not know their offset), are collected as usual, in parallel if the stream is.
+ */
+public final class SizedCollectors {
+    private SizedCollectors() {
+    }
+
+    public static <T> ArrayList<T> toList(Stream<T> stream) {
+        return toCollection( stream, ArrayList::new );
+    }
+
+    public static <T> LinkedHashSet<T> toLinkedHashSet(Stream<T> stream) {
+        return toCollection( stream, n -> new LinkedHashSet<>( (int) Math.min( Integer.MAX_VALUE, n * 4L / 3 + 1 ) ) );
+    }
+
+    /**
+     * @param factory gets the exact number of elements, or 16 if the stream is collected as usual.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T, C extends Collection<T>> C toCollection(Stream<T> stream, IntFunction<? extends C> factory) {
+        Spliterator<T> spliterator = stream.spliterator();
+        if (!presized( spliterator, stream.isParallel() ))
+            return StreamSupport.stream( spliterator, stream.isParallel() )
+                    .collect( () -> factory.apply( 16 ), Collection::add, Collection::addAll );
+        long size = spliterator.getExactSizeIfKnown();
+        C collection = factory.apply( checkSize( size ) );
+        if (stream.isParallel()) {
+            T[] array = (T[]) new Object[(int) size];
+            fill( spliterator, size, (part, offset) -> ((Spliterator<T>) part).forEachRemaining( new Consumer<T>() {
+                int i = (int) offset;
+
+                @Override
+                public void accept(T t) {
+                    array[i++] = t;
+                }
+            } ) );
+            for (T t : array)
+                collection.add( t );
+        } else {
+            spliterator.forEachRemaining( collection::add );
+        }
+        return collection;
+    }
+
+    public static IntArrayList toIntArrayList(IntStream stream) {
+        Spliterator.OfInt spliterator = stream.spliterator();
+        if (!presized( spliterator, stream.isParallel() ))
+            return StreamSupport.intStream( spliterator, stream.isParallel() )
+                    .collect( IntArrayList::new, IntArrayList::add, IntArrayList::addAll );
+        long size = spliterator.getExactSizeIfKnown();
+        return IntArrayList.wrap( toIntArray( spliterator, size, stream.isParallel() ) );
+    }
+
+    public static IntLinkedHashSet toIntLinkedHashSet(IntStream stream) {
+        Spliterator.OfInt spliterator = stream.spliterator();
+        if (!presized( spliterator, stream.isParallel() ))
+            return StreamSupport.intStream( spliterator, stream.isParallel() )
+                    .collect( IntLinkedHashSet::new, IntLinkedHashSet::add, IntLinkedHashSet::addAll );
+        long size = spliterator.getExactSizeIfKnown();
+        IntLinkedHashSet set = new IntLinkedHashSet( checkSize( size ) );
+        if (stream.isParallel()) {
+            for (int value : toIntArray( spliterator, size, true ))
+                set.add( value );
+        } else {
+            spliterator.forEachRemaining( (IntConsumer) set::add );
+        }
+        return set;
+    }
+
+    public static LongArrayDeque toLongArrayDeque(LongStream stream) {
+        Spliterator.OfLong spliterator = stream.spliterator();
+        if (!presized( spliterator, stream.isParallel() ))
+            return StreamSupport.longStream( spliterator, stream.isParallel() )
+                    .collect( LongArrayDeque::new, LongArrayDeque::addLast, LongArrayDeque::addAll );
+        long size = spliterator.getExactSizeIfKnown();
+        long[] array = new long[checkSize( size )];
+        if (stream.isParallel()) {
+            fill( spliterator, size, (part, offset) -> ((Spliterator.OfLong) part).forEachRemaining( new LongConsumer() {
+                int i = (int) offset;
+
+                @Override
+                public void accept(long value) {
+                    array[i++] = value;
+                }
+            } ) );
+        } else {
+            spliterator.forEachRemaining( new LongConsumer() {
+                int i;
+
+                @Override
+                public void accept(long value) {
+                    array[i++] = value;
+                }
+            } );
+        }
+        return LongArrayDeque.wrap( array );
+    }
+
+    private static int[] toIntArray(Spliterator.OfInt spliterator, long size, boolean parallel) {
+        int[] array = new int[checkSize( size )];
+        if (parallel) {
+            fill( spliterator, size, (part, offset) -> ((Spliterator.OfInt) part).forEachRemaining( new IntConsumer() {
+                int i = (int) offset;
+
+                @Override
+                public void accept(int value) {
+                    array[i++] = value;
+                }
+            } ) );
+        } else {
+            spliterator.forEachRemaining( new IntConsumer() {
+                int i;
+
+                @Override
+                public void accept(int value) {
+                    array[i++] = value;
+                }
+            } );
+        }
+        return array;
+    }
+
+    /**
+     * The size is known, and under parallel() also for every split, which gives it its offset in the array.
+     */
+    private static boolean presized(Spliterator<?> spliterator, boolean parallel) {
+        return spliterator.hasCharacteristics( Spliterator.SIZED )
+                && (!parallel || spliterator.hasCharacteristics( Spliterator.SUBSIZED ));
+    }
+
+    private static int checkSize(long size) {
+        if (size > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException( "stream too big for an array: " + size );
+        return (int) size;
+    }
+
+    private interface Leaf {
+        void write(Spliterator<?> part, long offset);
+    }
+
+    /**
+     * Splits the spliterator in the common pool down to about 4 tasks per thread, as the JDK does,
+     * and writes every part at its offset.
+     */
+    private static void fill(Spliterator<?> spliterator, long size, Leaf leaf) {
+        long threshold = Math.max( 1, size / (ForkJoinPool.getCommonPoolParallelism() * 4L) );
+        ForkJoinPool.commonPool().invoke( new Fill( spliterator, 0, threshold, leaf ) );
+    }
+
+    private static final class Fill extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Spliterator<?> spliterator;
+        private final long offset;
+        private final long threshold;
+        private final Leaf leaf;
+
+        Fill(Spliterator<?> spliterator, long offset, long threshold, Leaf leaf) {
+            this.spliterator = spliterator;
+            this.offset = offset;
+            this.threshold = threshold;
+            this.leaf = leaf;
+        }
+
+        @Override
+        protected void compute() {
+            Spliterator<?> prefix;
+            if (spliterator.estimateSize() > threshold && (prefix = spliterator.trySplit()) != null) {
+                long prefixSize = prefix.getExactSizeIfKnown();
+                invokeAll( new Fill( prefix, offset, threshold, leaf ),
+                        new Fill( spliterator, offset + prefixSize, threshold, leaf ) );
+            } else {
+                leaf.write( spliterator, offset );
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package NEW.Collection.Stream;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * Summary: ✔️ collect( Collectors.toList() / toCollection() ) vs {@link SizedCollectors}, boxed vs primitive ✔️
+ * <p>
+ * The source is an ArrayList mapped by x -> x + 1 (SIZED and SUBSIZED), so that the size is known but the
+ * result is not a copy of the source.
+ * loop          -> new ArrayList<>( n ) and a for loop, the baseline.
+ * jdk / jdk-par -> .collect( Collectors.toList() ), sequential and parallel.
+ * sized / sized-par -> SizedCollectors.toList( ... ), sequential and parallel.
+ * deque-*, set-* -> ArrayDeque<Long> / LinkedHashSet<Integer> through Collectors.toCollection vs LongArrayDeque /
+ * IntLinkedHashSet through SizedCollectors.
+ * Set -Djava.util.concurrent.ForkJoinPool.common.parallelism to vary the number of tasks.
+ */
+public class SizedCollectorsBenchmark {
+    public static void main(String[] args) {
+        Bench bench = new Bench();
+        for (int n : Bench.sizes( "1e5,1e6" )) {
+            List<Integer> list = IntStream.range( 0, n ).boxed().collect( Collectors.toList() );
+            bench.run( "toList", Bench.LOOP, n, () -> {
+                ArrayList<Integer> result = new ArrayList<>( list.size() );
+                for (Integer x : list)
+                    result.add( x + 1 );
+                return result.size();
+            } );
+            bench.run( "toList", "jdk", n, () -> list.stream().map( x -> x + 1 )
+                    .collect( Collectors.toList() ).size() );
+            bench.run( "toList", "jdk-par", n, () -> list.parallelStream().map( x -> x + 1 )
+                    .collect( Collectors.toList() ).size() );
+            bench.run( "toList", "sized", n, () -> SizedCollectors.toList( list.stream().map( x -> x + 1 ) ).size() );
+            bench.run( "toList", "sized-par", n, () -> SizedCollectors.toList( list.parallelStream().map( x -> x + 1 ) ).size() );
+
+            bench.run( "deque", "jdk-boxed", n, () -> LongStream.range( 0, n ).map( x -> x * 3 ).boxed()
+                    .collect( Collectors.toCollection( ArrayDeque::new ) ).size() );
+            bench.run( "deque", "sized-long", n, () -> SizedCollectors.toLongArrayDeque( LongStream.range( 0, n )
+                    .map( x -> x * 3 ) ).size() );
+            bench.run( "deque", "sized-long-par", n, () -> SizedCollectors.toLongArrayDeque( LongStream.range( 0, n )
+                    .parallel().map( x -> x * 3 ) ).size() );
+
+            bench.run( "linkedSet", "jdk-boxed", n, () -> IntStream.range( 0, n ).map( x -> x / 2 ).boxed()
+                    .collect( Collectors.toCollection( LinkedHashSet::new ) ).size() );
+            bench.run( "linkedSet", "sized-boxed", n, () -> SizedCollectors.toLinkedHashSet( IntStream.range( 0, n )
+                    .map( x -> x / 2 ).boxed() ).size() );
+            bench.run( "linkedSet", "sized-int", n, () -> SizedCollectors.toIntLinkedHashSet( IntStream.range( 0, n )
+                    .map( x -> x / 2 ) ).size() );
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package NEW.Collection.Stream;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.*;
+import java.util.stream.*;
+
+/**
+ * Summary: ✔️ Sources for iterate(), generate() and builder() that split well under parallel() ✔️
+ * <p>
+ * Stream.iterate( 0, x -> x + 6 ) can only compute an element from the previous one, so a parallel stream
+ * copies batches of it into arrays, one after another, on a single thread. Stream.generate( supplier ) calls one
+ * shared supplier from all threads. Stream.builder() keeps the elements in chunks of growing size,
+ * so its halves are far from equal. Here:
+ * arithmetic( 0, 6, 10 )            -> 0, 6, 12 ... 54: element i is start + i * step, so any range
+ * of indexes is split off in O(1) (the double version has no accumulated rounding error).
+ * generate( generator, n )          -> every split gets its own generator from generator.split(),
+ * e.g. random( new SplittableRandom( 42 ), r -> r.nextInt( 100 ) ). Without a count it is infinite, like
+ * Stream.generate, and limit() picks any n elements.
+ * builder() / intBuilder()          -> Stream.Builder backed by one growing array, built into a
+ * SIZED / SUBSIZED stream that splits in exact halves.
+ */
+public final class SplittableSources {
+    private static final int PROGRESSION = Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED
+            | Spliterator.IMMUTABLE | Spliterator.NONNULL;
+
+    private SplittableSources() {
+    }
+
+    /**
+     * A generator that can be split into an independent one, like SplittableRandom.
+     */
+    @FunctionalInterface
+    public interface Generator<T> extends Supplier<T> {
+        /**
+         * A new generator for another thread. The default one shares this generator, so it is only
+         * correct for stateless or thread-safe ones.
+         */
+        default Generator<T> split() {
+            return this;
+        }
+    }
+
+    public static <T> Generator<T> random(SplittableRandom random, Function<? super SplittableRandom, ? extends T> next) {
+        Objects.requireNonNull( next );
+        return new Generator<T>() {
+            @Override
+            public T get() {
+                return next.apply( random );
+            }
+
+            @Override
+            public Generator<T> split() {
+                return random( random.split(), next );
+            }
+        };
+    }
+
+    public static IntStream arithmetic(int start, int step, int count) {
+        return StreamSupport.intStream( new IntProgression( start, step, 0, checkCount( count ) ), false );
+    }
+
+    public static LongStream arithmetic(long start, long step, long count) {
+        return StreamSupport.longStream( new LongProgression( start, step, 0, checkCount( count ) ), false );
+    }
+
+    public static DoubleStream arithmetic(double start, double step, long count) {
+        return StreamSupport.doubleStream( new DoubleProgression( start, step, 0, checkCount( count ) ), false );
+    }
+
+    public static <T> Stream<T> generate(Generator<? extends T> generator, long count) {
+        return StreamSupport.stream( new Generated<>( Objects.requireNonNull( generator ), checkCount( count ), true ), false );
+    }
+
+    public static <T> Stream<T> generate(Generator<? extends T> generator) {
+        return StreamSupport.stream( new Generated<>( Objects.requireNonNull( generator ), Long.MAX_VALUE, false ), false );
+    }
+
+    public static <T> ArrayBuilder<T> builder() {
+        return new ArrayBuilder<>();
+    }
+
+    public static IntArrayBuilder intBuilder() {
+        return new IntArrayBuilder();
+    }
+
+    private static long checkCount(long count) {
+        if (count < 0)
+            throw new IllegalArgumentException( "count must not be negative: " + count );
+        return count;
+    }
+
+    /**
+     * Indexes [from, to) of a progression. trySplit gives away the first half.
+     */
+    private abstract static class Progression<S extends Spliterator<?>> {
+        long from;
+        final long to;
+
+        Progression(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        abstract S range(long from, long to);
+
+        public S trySplit() {
+            long mid = (from + to) >>> 1;
+            if (mid <= from)
+                return null;
+            S prefix = range( from, mid );
+            from = mid;
+            return prefix;
+        }
+
+        public long estimateSize() {
+            return to - from;
+        }
+
+        public int characteristics() {
+            return PROGRESSION;
+        }
+    }
+
+    private static final class IntProgression extends Progression<Spliterator.OfInt> implements Spliterator.OfInt {
+        private final int start;
+        private final int step;
+
+        IntProgression(int start, int step, long from, long to) {
+            super( from, to );
+            this.start = start;
+            this.step = step;
+        }
+
+        @Override
+        Spliterator.OfInt range(long from, long to) {
+            return new IntProgression( start, step, from, to );
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (from >= to)
+                return false;
+            action.accept( (int) (start + from++ * step) );
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            int value = (int) (start + from * step);
+            for (long i = from; i < to; i++, value += step)
+                action.accept( value );
+            from = to;
+        }
+    }
+
+    private static final class LongProgression extends Progression<Spliterator.OfLong> implements Spliterator.OfLong {
+        private final long start;
+        private final long step;
+
+        LongProgression(long start, long step, long from, long to) {
+            super( from, to );
+            this.start = start;
+            this.step = step;
+        }
+
+        @Override
+        Spliterator.OfLong range(long from, long to) {
+            return new LongProgression( start, step, from, to );
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (from >= to)
+                return false;
+            action.accept( start + from++ * step );
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            long value = start + from * step;
+            for (long i = from; i < to; i++, value += step)
+                action.accept( value );
+            from = to;
+        }
+    }
+
+    private static final class DoubleProgression extends Progression<Spliterator.OfDouble> implements Spliterator.OfDouble {
+        private final double start;
+        private final double step;
+
+        DoubleProgression(double start, double step, long from, long to) {
+            super( from, to );
+            this.start = start;
+            this.step = step;
+        }
+
+        @Override
+        Spliterator.OfDouble range(long from, long to) {
+            return new DoubleProgression( start, step, from, to );
+        }
+
+        @Override
+        public boolean tryAdvance(DoubleConsumer action) {
+            if (from >= to)
+                return false;
+            action.accept( start + from++ * step );
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(DoubleConsumer action) {
+            for (long i = from; i < to; i++)
+                action.accept( start + i * step );
+            from = to;
+        }
+    }
+
+    /**
+     * {@code remaining} elements of a generator, or an endless supply when not sized.
+     * Like Stream.generate, the elements have no encounter order.
+     */
+    private static final class Generated<T> implements Spliterator<T> {
+        private final Generator<? extends T> generator;
+        private final boolean sized;
+        private long remaining;
+
+        Generated(Generator<? extends T> generator, long remaining, boolean sized) {
+            this.generator = generator;
+            this.remaining = remaining;
+            this.sized = sized;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (remaining == 0)
+                return false;
+            if (sized)
+                remaining--;
+            action.accept( generator.get() );
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            if (sized)
+                for (; remaining > 0; remaining--)
+                    action.accept( generator.get() );
+            else
+                for (; ; )
+                    action.accept( generator.get() );
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            long half = remaining >>> 1;
+            if (half == 0)
+                return null;
+            // an endless source only halves its estimate, as the JDK one does
+            remaining -= half;
+            return new Generated<>( generator.split(), half, sized );
+        }
+
+        @Override
+        public long estimateSize() {
+            return remaining;
+        }
+
+        @Override
+        public int characteristics() {
+            return sized ? Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE : Spliterator.IMMUTABLE;
+        }
+    }
+
+    /**
+     * Stream.Builder over one array that doubles when full.
+     */
+    public static final class ArrayBuilder<T> implements Stream.Builder<T> {
+        private Object[] elements = new Object[16];
+        private int size;
+        private boolean built;
+
+        @Override
+        public void accept(T t) {
+            if (built)
+                throw new IllegalStateException( "the stream was already built" );
+            if (size == elements.length)
+                elements = Arrays.copyOf( elements, size << 1 );
+            elements[size++] = t;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Stream<T> build() {
+            if (built)
+                throw new IllegalStateException( "the stream was already built" );
+            built = true;
+            return StreamSupport.stream( (Spliterator<T>) Spliterators.spliterator( elements, 0, size,
+                    Spliterator.ORDERED | Spliterator.IMMUTABLE ), false );
+        }
+    }
+
+    public static final class IntArrayBuilder implements IntStream.Builder {
+        private int[] elements = new int[16];
+        private int size;
+        private boolean built;
+
+        @Override
+        public void accept(int t) {
+            if (built)
+                throw new IllegalStateException( "the stream was already built" );
+            if (size == elements.length)
+                elements = Arrays.copyOf( elements, size << 1 );
+            elements[size++] = t;
+        }
+
+        @Override
+        public IntStream build() {
+            if (built)
+                throw new IllegalStateException( "the stream was already built" );
+            built = true;
+            return StreamSupport.intStream( Spliterators.spliterator( elements, 0, size,
+                    Spliterator.ORDERED | Spliterator.IMMUTABLE ), false );
+        }
+    }
+}
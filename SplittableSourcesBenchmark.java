@@ -0,0 +1,84 @@
+package NEW.Collection.Stream;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Summary: ✔️ Scaling of iterate(), generate() and builder() sources from 1 to N cores: JDK vs {@link SplittableSources} ✔️
+ * <p>
+ * Every element gets the same small amount of work (a few rounds of a hash mixer), so the difference
+ * is how well the source splits. The mode column shows the source and the parallelism, e.g. "jdk@4",
+ * "seq" is the sequential stream. -Dbench.cores=1,2,4,8 overrides the list of parallelism levels.
+ */
+public class SplittableSourcesBenchmark {
+    public static void main(String[] args) {
+        Bench bench = new Bench();
+        for (int n : Bench.sizes( "1e5,1e7" )) {
+            bench.run( "iterate", "jdk-seq", n, () -> LongStream.iterate( 0, x -> x + 6 ).limit( n )
+                    .map( SplittableSourcesBenchmark::work ).sum() );
+            bench.run( "iterate", "arithmetic-seq", n, () -> SplittableSources.arithmetic( 0L, 6L, n )
+                    .map( SplittableSourcesBenchmark::work ).sum() );
+            bench.run( "generate", "jdk-seq", n, () -> {
+                SplittableRandom random = new SplittableRandom( 42 );
+                return Stream.generate( random::nextLong ).limit( n ).mapToLong( SplittableSourcesBenchmark::work ).sum();
+            } );
+            bench.run( "generate", "splittable-seq", n, () -> SplittableSources
+                    .generate( SplittableSources.random( new SplittableRandom( 42 ), SplittableRandom::nextLong ), n )
+                    .mapToLong( SplittableSourcesBenchmark::work ).sum() );
+            bench.run( "builder", "jdk-seq", n, () -> {
+                Stream.Builder<Integer> builder = Stream.builder();
+                for (int i = 0; i < n; i++)
+                    builder.add( i );
+                return builder.build().mapToLong( SplittableSourcesBenchmark::work ).sum();
+            } );
+            bench.run( "builder", "array-seq", n, () -> {
+                Stream.Builder<Integer> builder = SplittableSources.builder();
+                for (int i = 0; i < n; i++)
+                    builder.add( i );
+                return builder.build().mapToLong( SplittableSourcesBenchmark::work ).sum();
+            } );
+
+            for (int p : Bench.parallelism()) {
+                ForkJoinPool pool = new ForkJoinPool( p );
+                bench.run( "iterate", "jdk@" + p, n, Bench.in( pool, () -> LongStream.iterate( 0, x -> x + 6 ).limit( n )
+                        .parallel().map( SplittableSourcesBenchmark::work ).sum() ) );
+                bench.run( "iterate", "arithmetic@" + p, n, Bench.in( pool, () -> SplittableSources.arithmetic( 0L, 6L, n )
+                        .parallel().map( SplittableSourcesBenchmark::work ).sum() ) );
+                // the JDK generate() shares one supplier, SplittableRandom is not thread-safe: synchronized
+                bench.run( "generate", "jdk@" + p, n, Bench.in( pool, () -> {
+                    SplittableRandom random = new SplittableRandom( 42 );
+                    return Stream.generate( () -> {
+                                synchronized (random) {
+                                    return random.nextLong();
+                                }
+                            } ).limit( n )
+                            .parallel().mapToLong( SplittableSourcesBenchmark::work ).sum();
+                } ) );
+                bench.run( "generate", "splittable@" + p, n, Bench.in( pool, () -> SplittableSources
+                        .generate( SplittableSources.random( new SplittableRandom( 42 ), SplittableRandom::nextLong ), n )
+                        .parallel().mapToLong( SplittableSourcesBenchmark::work ).sum() ) );
+                bench.run( "builder", "jdk@" + p, n, Bench.in( pool, () -> {
+                    Stream.Builder<Integer> builder = Stream.builder();
+                    for (int i = 0; i < n; i++)
+                        builder.add( i );
+                    return builder.build().parallel().mapToLong( SplittableSourcesBenchmark::work ).sum();
+                } ) );
+                bench.run( "builder", "array@" + p, n, Bench.in( pool, () -> {
+                    Stream.Builder<Integer> builder = SplittableSources.builder();
+                    for (int i = 0; i < n; i++)
+                        builder.add( i );
+                    return builder.build().parallel().mapToLong( SplittableSourcesBenchmark::work ).sum();
+                } ) );
+                pool.shutdown();
+            }
+        }
+    }
+
+    static long work(long x) {
+        for (int i = 0; i < 4; i++)
+            x = LongHashSet.mix( x * 0x9E3779B97F4A7C15L );
+        return x;
+    }
+}
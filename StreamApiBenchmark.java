@@ -0,0 +1,455 @@
+package NEW.Collection.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.BaseStream;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Summary: ✔️ JMH suite: every pipeline of {@link Stream_API} on big inputs instead of six hard-coded elements ✔️
+ * <p>
+ * Each demo is one benchmark method, scaled up to an input of n elements (n from 1e3 to 1e8) and run in every mode:
+ * loop          -> the same computation written as a plain for loop (the baseline),
+ * boxed         -> Stream<Integer> / Stream<String> over an array of objects,
+ * boxed-par     -> the same, with .parallel(),
+ * primitive     -> IntStream / LongStream over an int[] (the demos without a primitive stream map from it),
+ * primitive-par -> the same, with .parallel().
+ * Throughput is in ops/s (one op is the whole pipeline over n elements); the gc profiler adds the allocation rate
+ * and gc.alloc.rate.norm, the bytes allocated per op by all threads. The ratio to the loop baseline is the score
+ * of a mode divided by the score of mode=loop for the same benchmark and n.
+ * <p>
+ * Run (mvn -B package first):
+ * java -jar target/benchmarks.jar StreamApiBenchmark -prof gc
+ * java -jar target/benchmarks.jar "StreamApiBenchmark.sort" -prof gc -p n=1000,1000000 -p mode=loop,primitive
+ * or the main() below, which adds the gc profiler and takes the same options.
+ * Sizes of 1e8 need a big heap for the boxed variants, so the forks run with -Xmx16g.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class StreamApiBenchmark {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions options = new CommandLineOptions( args );
+        OptionsBuilder builder = new OptionsBuilder();
+        if (options.getIncludes().isEmpty())
+            builder.include( StreamApiBenchmark.class.getSimpleName() );
+        new Runner( builder.parent( options ).addProfiler( GCProfiler.class ).build() ).run();
+    }
+
+    private enum Source {LOOP, BOXED, PRIMITIVE}
+
+    /**
+     * The demos that read the input as strings, in every mode.
+     */
+    private static final Set<String> STRING_DEMOS = Set.of( "map", "toArray", "joing", "sum_avg_var", "counting", "partitioningBy" );
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000", "100000000"})
+    int n;
+
+    @Param({"loop", "boxed", "boxed-par", "primitive", "primitive-par"})
+    String mode;
+
+    private Source source;
+    private boolean parallel;
+    private int[] ints;       // random values in [0, n)
+    private int[] ascending;  // 0, 1, 2 ... n - 1
+    private Integer[] boxed;      // only for the boxed modes
+    private String[] strings;     // only for STRING_DEMOS
+    private int half, threshold, keep;
+
+    @Setup
+    public void setUp(BenchmarkParams params) {
+        source = Source.valueOf( mode.replace( "-par", "" ).toUpperCase( Locale.ROOT ) );
+        parallel = mode.endsWith( "-par" );
+        ints = new SplittableRandom( 42 ).ints( n, 0, n ).toArray();
+        ascending = IntStream.range( 0, n ).toArray();
+        half = n / 2;
+        threshold = n / 10 * 3;
+        keep = Math.max( n / 10, 1 );
+        String demo = params.getBenchmark().substring( params.getBenchmark().lastIndexOf( '.' ) + 1 );
+        boxed = source == Source.BOXED ? Arrays.stream( ints ).boxed().toArray( Integer[]::new ) : null;
+        strings = STRING_DEMOS.contains( demo ) ? Arrays.stream( ints ).mapToObj( String::valueOf ).toArray( String[]::new ) : null;
+    }
+
+    private Stream<Integer> boxedStream() {
+        return parallel( Arrays.stream( boxed ) );
+    }
+
+    private Stream<String> stringStream() {
+        return parallel( Arrays.stream( strings ) );
+    }
+
+    private IntStream intStream(int[] source) {
+        return parallel( Arrays.stream( source ) );
+    }
+
+    private <S extends BaseStream<?, S>> S parallel(S stream) {
+        return parallel ? stream.parallel() : stream;
+    }
+
+    private long loopSum() {
+        long sum = 0;
+        for (int x : ints)
+            sum += x;
+        return sum;
+    }
+
+    @Benchmark
+    public long base() {
+        int threshold = this.threshold, keep = this.keep;
+        if (source == Source.LOOP) {
+            long sum = 0;
+            int taken = 0;
+            for (int i = 0; i < n && taken < keep; i++)
+                if (ints[i] < threshold) {
+                    sum += ints[i] + 11;
+                    taken++;
+                }
+            return sum;
+        }
+        return source == Source.BOXED
+                ? boxedStream().filter( x -> x < threshold ).map( x -> x + 11 ).limit( keep ).mapToLong( Integer::longValue ).sum()
+                : intStream( ints ).filter( x -> x < threshold ).map( x -> x + 11 ).limit( keep ).asLongStream().sum();
+    }
+
+    @Benchmark
+    public long generate() {
+        if (source == Source.LOOP) {
+            long count = 0;
+            for (int i = 0; i < n; i++)
+                count += "".length() + 1;
+            return count;
+        }
+        return source == Source.BOXED
+                ? parallel( Stream.generate( () -> "" ) ).limit( n ).mapToInt( s -> s.length() + 1 ).sum()
+                : parallel( IntStream.generate( () -> 1 ) ).limit( n ).sum();
+    }
+
+    @Benchmark
+    public long iterate() {
+        if (source == Source.LOOP) {
+            long sum = 0;
+            for (int i = 0, x = 0; i < n; i++, x += 6)
+                sum += x;
+            return sum;
+        }
+        return source == Source.BOXED
+                ? parallel( Stream.iterate( 0, x -> x + 6 ) ).limit( n ).mapToLong( Integer::longValue ).sum()
+                : parallel( LongStream.iterate( 0, x -> x + 6 ) ).limit( n ).sum();
+    }
+
+    @Benchmark
+    public long concat() {
+        if (source == Source.LOOP)
+            return loopSum();
+        return source == Source.BOXED
+                ? parallel( Stream.concat( Arrays.stream( boxed, 0, half ), Arrays.stream( boxed, half, n ) ) )
+                        .mapToLong( Integer::longValue ).sum()
+                : parallel( IntStream.concat( Arrays.stream( ints, 0, half ), Arrays.stream( ints, half, n ) ) )
+                        .asLongStream().sum();
+    }
+
+    @Benchmark
+    public long builder() {
+        if (source == Source.LOOP)
+            return loopSum();
+        if (source == Source.BOXED) {
+            Stream.Builder<Integer> builder = Stream.builder();
+            for (Integer x : boxed)
+                builder.accept( x );
+            return parallel( builder.build() ).mapToLong( Integer::longValue ).sum();
+        }
+        IntStream.Builder builder = IntStream.builder();
+        for (int x : ints)
+            builder.accept( x );
+        return parallel( builder.build() ).asLongStream().sum();
+    }
+
+    @Benchmark
+    public long range() {
+        if (source == Source.LOOP) {
+            long sum = 0;
+            for (int i = 0; i < n; i++)
+                sum += i;
+            return sum;
+        }
+        return source == Source.BOXED
+                ? parallel( IntStream.range( 0, n ).boxed() ).mapToLong( Integer::longValue ).sum()
+                : parallel( LongStream.range( 0, n ) ).sum();
+    }
+
+    @Benchmark
+    public long filter() {
+        if (source == Source.LOOP) {
+            long count = 0;
+            for (int x : ints)
+                if (x % 3 == 0)
+                    count++;
+            return count;
+        }
+        return source == Source.BOXED
+                ? boxedStream().filter( x -> x % 3 == 0 ).count()
+                : intStream( ints ).filter( x -> x % 3 == 0 ).count();
+    }
+
+    @Benchmark
+    public long map() {
+        if (source == Source.LOOP) {
+            long sum = 0;
+            for (String s : strings)
+                sum += Integer.parseInt( s ) + 10;
+            return sum;
+        }
+        return source == Source.BOXED
+                ? stringStream().map( Integer::parseInt ).map( x -> x + 10 ).mapToLong( Integer::longValue ).sum()
+                : stringStream().mapToInt( Integer::parseInt ).map( x -> x + 10 ).asLongStream().sum();
+    }
+
+    @Benchmark
+    public long limit() {
+        if (source == Source.LOOP) {
+            long sum = 0;
+            for (int i = 0; i < half; i++)
+                sum += ints[i];
+            return sum;
+        }
+        return source == Source.BOXED
+                ? boxedStream().limit( half ).mapToLong( Integer::longValue ).sum()
+                : intStream( ints ).limit( half ).asLongStream().sum();
+    }
+
+    @Benchmark
+    public long skip() {
+        if (source == Source.LOOP) {
+            long sum = 0;
+            for (int i = half; i < n; i++)
+                sum += ints[i];
+            return sum;
+        }
+        return source == Source.BOXED
+                ? boxedStream().skip( half ).mapToLong( Integer::longValue ).sum()
+                : intStream( ints ).skip( half ).asLongStream().sum();
+    }
+
+    @Benchmark
+    public long sort() {
+        if (source == Source.LOOP) {
+            int[] copy = ints.clone();
+            Arrays.sort( copy );
+            return copy[n - 1];
+        }
+        return source == Source.BOXED
+                ? boxedStream().sorted().reduce( 0, (a, b) -> b )
+                : intStream( ints ).sorted().reduce( 0, (a, b) -> b );
+    }
+
+    @Benchmark
+    public long distinct() {
+        if (source == Source.LOOP) {
+            BitSet seen = new BitSet( n );
+            for (int x : ints)
+                seen.set( x );
+            return seen.cardinality();
+        }
+        return source == Source.BOXED
+                ? boxedStream().distinct().count()
+                : intStream( ints ).distinct().count();
+    }
+
+    @Benchmark
+    public long peek() {
+        if (source == Source.LOOP) {
+            long seen = 0, sum = 0;
+            for (int x : ints) {
+                seen++;
+                sum += x + 10;
+            }
+            return seen + sum;
+        }
+        LongAdder seen = new LongAdder();
+        return (source == Source.BOXED
+                ? boxedStream().peek( x -> seen.increment() ).map( x -> x + 10 ).mapToLong( Integer::longValue ).sum()
+                : intStream( ints ).peek( x -> seen.increment() ).map( x -> x + 10 ).asLongStream().sum()) + seen.sum();
+    }
+
+    @Benchmark
+    public long takeWhile() {
+        int half = this.half;
+        if (source == Source.LOOP) {
+            long sum = 0;
+            for (int i = 0; i < n && ascending[i] < half; i++)
+                sum += ascending[i];
+            return sum;
+        }
+        return source == Source.BOXED
+                ? parallel( Arrays.stream( ascending ).boxed() ).takeWhile( x -> x < half ).mapToLong( Integer::longValue ).sum()
+                : intStream( ascending ).takeWhile( x -> x < half ).asLongStream().sum();
+    }
+
+    @Benchmark
+    public long forEach() {
+        if (source == Source.LOOP)
+            return loopSum();
+        LongAdder sum = new LongAdder();
+        if (source == Source.BOXED)
+            boxedStream().forEach( sum::add );
+        else
+            intStream( ints ).forEach( sum::add );
+        return sum.sum();
+    }
+
+    @Benchmark
+    public long count() {
+        int keep = this.keep;
+        if (source == Source.LOOP) {
+            long count = 0;
+            for (int x : ints)
+                if (x < keep)
+                    count++;
+            return count;
+        }
+        return source == Source.BOXED
+                ? boxedStream().filter( x -> x < keep ).count()
+                : intStream( ints ).filter( x -> x < keep ).count();
+    }
+
+    @Benchmark
+    public long toArray() {
+        if (source == Source.LOOP)
+            return Arrays.copyOf( strings, n ).length;
+        return source == Source.BOXED
+                ? stringStream().toArray( String[]::new ).length
+                : intStream( ints ).toArray().length;
+    }
+
+    @Benchmark
+    public long findFirst() {
+        int last = n - 1;
+        if (source == Source.LOOP) {
+            for (int x : ints)
+                if (x >= last)
+                    return x;
+            return -1;
+        }
+        return source == Source.BOXED
+                ? boxedStream().filter( x -> x >= last ).findFirst().orElse( -1 )
+                : intStream( ints ).filter( x -> x >= last ).findFirst().orElse( -1 );
+    }
+
+    @Benchmark
+    public long sum() {
+        if (source == Source.LOOP)
+            return loopSum();
+        return source == Source.BOXED
+                ? boxedStream().reduce( 0L, (sum, x) -> sum + x, Long::sum )
+                : intStream( ints ).asLongStream().sum();
+    }
+
+    @Benchmark
+    public long Statistics() {
+        if (source == Source.LOOP) {
+            long sum = 0;
+            int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+            for (int x : ints) {
+                sum += x;
+                min = Math.min( min, x );
+                max = Math.max( max, x );
+            }
+            return sum + min + max;
+        }
+        IntSummaryStatistics stats = source == Source.BOXED
+                ? boxedStream().collect( Collectors.summarizingInt( Integer::intValue ) )
+                : intStream( ints ).summaryStatistics();
+        return stats.getSum() + stats.getMin() + stats.getMax();
+    }
+
+    @Benchmark
+    public long toCollection() {
+        if (source == Source.LOOP) {
+            Deque<Integer> deque = new ArrayDeque<>();
+            Set<Integer> set = new LinkedHashSet<>();
+            for (int x : ints) {
+                deque.add( x );
+                set.add( x );
+            }
+            return deque.size() + set.size();
+        }
+        Stream<Integer> first = source == Source.BOXED ? boxedStream() : intStream( ints ).boxed();
+        Stream<Integer> second = source == Source.BOXED ? boxedStream() : intStream( ints ).boxed();
+        return first.collect( Collectors.toCollection( ArrayDeque::new ) ).size()
+                + second.collect( Collectors.toCollection( LinkedHashSet::new ) ).size();
+    }
+
+    @Benchmark
+    public long joing() {
+        if (source == Source.LOOP) {
+            StringBuilder sb = new StringBuilder( "[ " );
+            for (String s : strings)
+                sb.append( s ).append( " -> " );
+            return sb.length();
+        }
+        return (source == Source.BOXED ? stringStream() : intStream( ints ).mapToObj( Integer::toString ))
+                .collect( Collectors.joining( " -> ", "[ ", " ]" ) ).length();
+    }
+
+    @Benchmark
+    public long sum_avg_var() {
+        if (source == Source.LOOP) {
+            long sum = 0;
+            for (String s : strings)
+                sum += Integer.parseInt( s );
+            return sum + (long) ((double) sum / n);
+        }
+        IntSummaryStatistics stats = source == Source.BOXED
+                ? stringStream().collect( Collectors.summarizingInt( Integer::parseInt ) )
+                : stringStream().mapToInt( Integer::parseInt ).summaryStatistics();
+        return stats.getSum() + (long) stats.getAverage();
+    }
+
+    @Benchmark
+    public long counting() {
+        if (source == Source.LOOP)
+            return strings.length;
+        return source == Source.BOXED
+                ? stringStream().collect( Collectors.counting() )
+                : stringStream().mapToInt( String::length ).count();
+    }
+
+    @Benchmark
+    public long partitioningBy() {
+        if (source == Source.LOOP) {
+            List<String> shorter = new ArrayList<>(), longer = new ArrayList<>();
+            for (String s : strings)
+                (s.length() <= 3 ? shorter : longer).add( s );
+            return shorter.size();
+        }
+        return (source == Source.BOXED ? stringStream() : intStream( ints ).mapToObj( Integer::toString ))
+                .collect( Collectors.partitioningBy( s -> s.length() <= 3 ) ).get( true ).size();
+    }
+}
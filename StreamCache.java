@@ -0,0 +1,205 @@
+package NEW.Collection.Stream;
+
+import java.lang.reflect.Array;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Supplier;
+import java.util.stream.*;
+
+/**
+ * Summary: ✔️ Replayable pipelines: a stream prefix computed once, then served from a cache ✔️
+ * <p>
+ * A Stream can be consumed only once, so the same filter -> map -> sorted prefix is usually rebuilt and
+ * recomputed for every terminal operation. Here the prefix is given once, under a key:
+ * StreamCache cache = new StreamCache( 64 << 20 );
+ * Supplier<IntStream> evens = cache.ints( "evens", () -> IntStream.of( data ).filter( x -> x % 2 == 0 ).sorted() );
+ * evens.get().count();      // miss: runs the prefix into an int[] and counts it
+ * evens.get().findFirst();  // hit: a stream over the int[], the prefix does not run again
+ * <p>
+ * Nothing runs before the first terminal operation. Values are kept column by column in primitive arrays
+ * (int[] / long[] / double[], Object[] for objects) and served by an array spliterator: SIZED, splits evenly
+ * under parallel(). The cache holds at most maxBytes (the arrays only, not the objects an Object[] points to)
+ * and evicts the least recently used prefixes first; a prefix bigger than the whole budget is not kept.
+ * Two threads that miss the same key at once both compute it, the later result replaces the earlier one.
+ * A key holds one prefix: reused for another element type, it is recomputed and replaces the old one.
+ */
+public final class StreamCache {
+    private static final int ARRAY_HEADER = 16;
+
+    private final long maxBytes;
+    private final LinkedHashMap<Object, Column> columns = new LinkedHashMap<>( 16, 0.75f, true );
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public StreamCache(long maxBytes) {
+        if (maxBytes < 0)
+            throw new IllegalArgumentException( "maxBytes < 0: " + maxBytes );
+        this.maxBytes = maxBytes;
+    }
+
+    public Supplier<IntStream> ints(Object key, Supplier<? extends IntStream> pipeline) {
+        return () -> StreamSupport.intStream( () -> {
+            int[] values = (int[]) values( key, int[].class, () -> {
+                try (IntStream stream = pipeline.get()) {
+                    return stream.toArray();
+                }
+            }, 4 );
+            return Spliterators.spliterator( values, Spliterator.ORDERED | Spliterator.IMMUTABLE );
+        }, Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED | Spliterator.IMMUTABLE, false );
+    }
+
+    public Supplier<LongStream> longs(Object key, Supplier<? extends LongStream> pipeline) {
+        return () -> StreamSupport.longStream( () -> {
+            long[] values = (long[]) values( key, long[].class, () -> {
+                try (LongStream stream = pipeline.get()) {
+                    return stream.toArray();
+                }
+            }, 8 );
+            return Spliterators.spliterator( values, Spliterator.ORDERED | Spliterator.IMMUTABLE );
+        }, Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED | Spliterator.IMMUTABLE, false );
+    }
+
+    public Supplier<DoubleStream> doubles(Object key, Supplier<? extends DoubleStream> pipeline) {
+        return () -> StreamSupport.doubleStream( () -> {
+            double[] values = (double[]) values( key, double[].class, () -> {
+                try (DoubleStream stream = pipeline.get()) {
+                    return stream.toArray();
+                }
+            }, 8 );
+            return Spliterators.spliterator( values, Spliterator.ORDERED | Spliterator.IMMUTABLE );
+        }, Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED | Spliterator.IMMUTABLE, false );
+    }
+
+    /**
+     * Objects are kept as an Object[]: the references are counted against maxBytes (4 bytes each with
+     * compressed pointers), the objects themselves are not.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Supplier<Stream<T>> objects(Object key, Supplier<? extends Stream<? extends T>> pipeline) {
+        return () -> StreamSupport.stream( () -> {
+            Object[] values = (Object[]) values( key, Object[].class, () -> {
+                try (Stream<? extends T> stream = pipeline.get()) {
+                    return stream.toArray();
+                }
+            }, 4 );
+            return (Spliterator<T>) Spliterators.spliterator( values, Spliterator.ORDERED | Spliterator.IMMUTABLE );
+        }, Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED | Spliterator.IMMUTABLE, false );
+    }
+
+    public synchronized void invalidate(Object key) {
+        Column column = columns.remove( key );
+        if (column != null)
+            bytes -= column.bytes;
+    }
+
+    public synchronized void clear() {
+        columns.clear();
+        bytes = 0;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats( hits, misses, evictions, columns.size(), bytes, maxBytes );
+    }
+
+    /**
+     * The array of the key, computed by the pipeline on a miss. The pipeline runs outside the lock.
+     * An array of another type under the same key (ints( "k", ... ) after longs( "k", ... )) is a miss
+     * and is replaced.
+     */
+    private Object values(Object key, Class<?> type, Supplier<Object> materialize, int elementBytes) {
+        synchronized (this) {
+            Column column = columns.get( key );
+            if (column != null && column.values.getClass() == type) {
+                hits++;
+                return column.values;
+            }
+            misses++;
+        }
+        Object values = materialize.get();
+        long size = ARRAY_HEADER + (long) Array.getLength( values ) * elementBytes;
+        if (size <= maxBytes)
+            put( key, new Column( values, size ) );
+        return values;
+    }
+
+    private synchronized void put(Object key, Column column) {
+        Column old = columns.put( key, column );
+        if (old != null)
+            bytes -= old.bytes;
+        bytes += column.bytes;
+        Iterator<Map.Entry<Object, Column>> eldest = columns.entrySet().iterator();
+        while (bytes > maxBytes) {
+            Column evicted = eldest.next().getValue();
+            eldest.remove();
+            bytes -= evicted.bytes;
+            evictions++;
+        }
+    }
+
+    private static final class Column {
+        final Object values;
+        final long bytes;
+
+        Column(Object values, long bytes) {
+            this.values = values;
+            this.bytes = bytes;
+        }
+    }
+
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int entries;
+        private final long bytes;
+        private final long maxBytes;
+
+        Stats(long hits, long misses, long evictions, int entries, long bytes, long maxBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.bytes = bytes;
+            this.maxBytes = maxBytes;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public double getHitRate() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format( "hits=%d misses=%d hitRate=%.3f evictions=%d entries=%d bytes=%d/%d",
+                    hits, misses, getHitRate(), evictions, entries, bytes, maxBytes );
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package NEW.Collection.Stream;
+
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Summary: ✔️ The same filter -> map -> sorted prefix with three terminal operations: rebuilt vs {@link StreamCache} ✔️
+ * <p>
+ * One operation is count() + findFirst() + toArray() over the prefix, as in code that asks several questions
+ * of the same data. rebuild runs the prefix three times, cached runs it once per round and then only on misses:
+ * cached-warm keeps its cache between rounds, cached-evicting has room for a single prefix and alternates two keys.
+ */
+public class StreamCacheBenchmark {
+    public static void main(String[] args) {
+        Bench bench = new Bench();
+        for (int n : Bench.sizes( "1e3,1e5,1e6" )) {
+            int[] data = new SplittableRandom( 42 ).ints( n, 0, n ).toArray();
+            Supplier<IntStream> prefix = () -> IntStream.of( data ).filter( x -> x % 3 != 0 ).map( x -> x * 7 ).sorted();
+
+            bench.run( "count-first-toArray", "rebuild", n, () -> questions( prefix ) );
+
+            StreamCache warm = new StreamCache( Long.MAX_VALUE );
+            Supplier<IntStream> cached = warm.ints( "prefix", prefix );
+            bench.run( "count-first-toArray", "cached-warm", n, () -> questions( cached ) );
+
+            StreamCache small = new StreamCache( 4L * n + 64 );
+            Supplier<IntStream> a = small.ints( "a", prefix ), b = small.ints( "b", prefix );
+            long[] round = { 0 };
+            bench.run( "count-first-toArray", "cached-evicting", n, () -> questions( round[0]++ % 2 == 0 ? a : b ) );
+            System.out.println( "warm: " + warm.stats() + ", evicting: " + small.stats() );
+        }
+    }
+
+    private static long questions(Supplier<IntStream> prefix) {
+        return prefix.get().count() + prefix.get().findFirst().orElse( 0 ) + prefix.get().toArray().length;
+    }
+}
@@ -0,0 +1,176 @@
+package NEW.Collection.Stream;
+
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collector;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * Summary: ✔️ summaryStatistics() plus variance, standard deviation and quantiles, in one pass and O(1) memory ✔️
+ * <p>
+ * Long/Int/DoubleSummaryStatistics give count, sum, min, max and average. This class also gives:
+ * getVariance() / getStandardDeviation() -> Welford's online algorithm, no sum of squares that loses precision.
+ * getSum()                               -> Kahan (compensated) summation, as DoubleSummaryStatistics does.
+ * getQuantile(q) / getMedian()           -> approximate, from a {@link QuantileSketch} (1% relative error by default).
+ * <p>
+ * combine() merges two partial results exactly (Chan's formula for the variance), so it works with parallel():
+ * StreamStatistics stats = StreamStatistics.of( LongStream.range( 2, 16 ).parallel() );
+ * StreamStatistics stats = Stream.of( "1", "2", "3" ).collect( StreamStatistics.summarizing( Integer::parseInt ) );
+ * <p>
+ * Not thread safe, like the JDK statistics: every fork of a parallel stream gets its own instance.
+ */
+public class StreamStatistics implements IntConsumer, LongConsumer, DoubleConsumer {
+    private long count;
+    private double mean;
+    private double m2;              // sum of squared differences from the mean
+    private double sum;
+    private double sumCompensation; // low-order bits lost by sum
+    private double simpleSum;       // plain sum, used when the compensated one overflows to NaN
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private final QuantileSketch sketch;
+
+    public StreamStatistics() {
+        this( new QuantileSketch() );
+    }
+
+    public StreamStatistics(QuantileSketch sketch) {
+        this.sketch = sketch;
+    }
+
+    public static StreamStatistics of(IntStream stream) {
+        return stream.collect( StreamStatistics::new, StreamStatistics::accept, StreamStatistics::combine );
+    }
+
+    public static StreamStatistics of(LongStream stream) {
+        return stream.collect( StreamStatistics::new, StreamStatistics::accept, StreamStatistics::combine );
+    }
+
+    public static StreamStatistics of(DoubleStream stream) {
+        return stream.collect( StreamStatistics::new, StreamStatistics::accept, StreamStatistics::combine );
+    }
+
+    /**
+     * The counterpart of Collectors.summarizingDouble for object streams.
+     */
+    public static <T> Collector<T, ?, StreamStatistics> summarizing(ToDoubleFunction<? super T> mapper) {
+        return Collector.of( StreamStatistics::new,
+                (stats, t) -> stats.accept( mapper.applyAsDouble( t ) ),
+                (left, right) -> {
+                    left.combine( right );
+                    return left;
+                },
+                Collector.Characteristics.IDENTITY_FINISH );
+    }
+
+    @Override
+    public void accept(int value) {
+        accept( (double) value );
+    }
+
+    @Override
+    public void accept(long value) {
+        accept( (double) value );
+    }
+
+    @Override
+    public void accept(double value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        addToSum( value );
+        simpleSum += value;
+        min = Math.min( min, value );
+        max = Math.max( max, value );
+        sketch.add( value );
+    }
+
+    public void combine(StreamStatistics other) {
+        if (other.count == 0)
+            return;
+        long n = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / n;
+        m2 += other.m2 + delta * delta * ((double) count * other.count / n);
+        count = n;
+        addToSum( other.sum );
+        addToSum( -other.sumCompensation );
+        simpleSum += other.simpleSum;
+        min = Math.min( min, other.min );
+        max = Math.max( max, other.max );
+        sketch.merge( other.sketch );
+    }
+
+    private void addToSum(double value) {
+        double y = value - sumCompensation;
+        double t = sum + y;
+        sumCompensation = (t - sum) - y;
+        sum = t;
+    }
+
+    public final long getCount() {
+        return count;
+    }
+
+    public final double getSum() {
+        double total = sum - sumCompensation;
+        return Double.isNaN( total ) && Double.isInfinite( simpleSum ) ? simpleSum : total;
+    }
+
+    /**
+     * @return 0 if no values were recorded, as getAverage() of the JDK statistics.
+     */
+    public final double getAverage() {
+        return count > 0 ? mean : 0.0;
+    }
+
+    /**
+     * Population variance (divided by n).
+     */
+    public final double getVariance() {
+        return count > 0 ? m2 / count : 0.0;
+    }
+
+    /**
+     * Sample variance (divided by n - 1).
+     */
+    public final double getSampleVariance() {
+        return count > 1 ? m2 / (count - 1) : 0.0;
+    }
+
+    public final double getStandardDeviation() {
+        return Math.sqrt( getVariance() );
+    }
+
+    public final double getMin() {
+        return min;
+    }
+
+    public final double getMax() {
+        return max;
+    }
+
+    /**
+     * Approximate quantile, never outside [getMin(), getMax()]. NaN if no values were recorded.
+     */
+    public final double getQuantile(double q) {
+        double value = sketch.quantile( q );
+        return Double.isNaN( value ) ? value : Math.max( min, Math.min( max, value ) );
+    }
+
+    public final double getMedian() {
+        return getQuantile( 0.5 );
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "%s{count=%d, sum=%f, min=%f, average=%f, max=%f, stddev=%f, p50=%f, p99=%f}",
+                getClass().getSimpleName(), getCount(), getSum(), getMin(), getAverage(), getMax(),
+                getStandardDeviation(), getMedian(), getQuantile( 0.99 ) );
+    }
+}
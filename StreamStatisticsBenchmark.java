@@ -0,0 +1,52 @@
+package NEW.Collection.Stream;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Summary: ✔️ summaryStatistics() against {@link StreamStatistics}, and how far the approximate quantiles are ✔️
+ * <p>
+ * jdk        -> DoubleStream.summaryStatistics() (count/sum/min/max/average only).
+ * full       -> StreamStatistics with the default 1% quantile sketch.
+ * The values are log-normal, like request latencies. Before the timings the quantiles of the sketch
+ * are printed next to the exact ones (taken from a sorted copy).
+ */
+public class StreamStatisticsBenchmark {
+    public static void main(String[] args) {
+        Bench bench = new Bench();
+        for (int n : Bench.sizes( "1e3,1e5,1e7" )) {
+            SplittableRandom random = new SplittableRandom( 3 );
+            double[] latencies = new double[n];
+            for (int i = 0; i < n; i++)
+                latencies[i] = Math.exp( 3 + random.nextGaussian() );
+            printAccuracy( latencies );
+
+            bench.run( "statistics", Bench.LOOP, n, () -> {
+                double sum = 0, max = Double.NEGATIVE_INFINITY;
+                for (double x : latencies) {
+                    sum += x;
+                    max = Math.max( max, x );
+                }
+                return (long) (sum + max);
+            } );
+            bench.run( "statistics", "jdk", n, () -> (long) Arrays.stream( latencies ).summaryStatistics().getAverage() );
+            bench.run( "statistics", "jdk-par", n,
+                    () -> (long) Arrays.stream( latencies ).parallel().summaryStatistics().getAverage() );
+            bench.run( "statistics", "full", n, () -> (long) StreamStatistics.of( Arrays.stream( latencies ) ).getQuantile( 0.99 ) );
+            bench.run( "statistics", "full-par", n,
+                    () -> (long) StreamStatistics.of( Arrays.stream( latencies ).parallel() ).getQuantile( 0.99 ) );
+        }
+    }
+
+    private static void printAccuracy(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort( sorted );
+        StreamStatistics stats = StreamStatistics.of( Arrays.stream( values ).parallel() );
+        for (double q : new double[]{ 0.5, 0.9, 0.99, 0.999 }) {
+            double exact = sorted[(int) (q * (sorted.length - 1))];
+            double approx = stats.getQuantile( q );
+            System.out.format( "# n=%d q=%.3f exact=%.4f sketch=%.4f error=%.3f%%%n",
+                    values.length, q, exact, approx, 100 * Math.abs( approx - exact ) / exact );
+        }
+    }
+}
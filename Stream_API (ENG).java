@@ -1,8 +1,14 @@
 package NEW.Collection.Stream;
 
 
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.DoubleStream;
 import java.util.stream.IntStream;
 import java.util.stream.LongStream;
 import java.util.stream.Stream;
@@ -24,27 +30,48 @@ import java.util.stream.Stream;
  * Terminal operators process elements and terminate the stream, so there can be only one terminal operator in a chain.
  * <p>
  * Key methods:
+ * base() also shows Fused: the same filter / map / limit chain compiled into one specialized loop.
  * filter() -> Filters the stream, accepting only those elements that meet a given condition.
  * map() -> Applies a function to each element in the stream and returns the modified stream.
+ * map() also shows TextNumbers: ints / longs / doubles parsed straight from the bytes of a CSV file or buffer.
+ * mapBatch() -> Splits the stream into chunks of n elements and maps a whole chunk at once (Batches).
+ * mapConcurrent() -> map() for blocking calls, up to N calls in flight at once (ConcurrentMapping).
  * limit() -> Limits the size of the stream.
+ * limit() also shows TopK: sorted().limit( k ) with a heap of k elements instead of a full sort.
  * sort() -> Counts the number of elements. ("a","b","c","d") -> 4
+ * sort() also shows ExternalSort: sorted() within a heap budget, spilling sorted runs to disk.
+ * sort() also shows StreamCache: a sorted prefix computed once and replayed for count(), findFirst(), toArray().
  * distinct() -> Removes duplicate elements and returns a stream of unique elements.
+ * distinct() also shows ApproximateDistinct: count-distinct with HyperLogLog and distinct() with a Bloom filter.
+ * distinctPrimitive() -> distinct() and sorted() over int values without boxing them (PrimitiveStreams).
  * forEach() -> Performs the specified action for each element in the stream. (Terminal)
+ * forEach() also shows ChannelSink: lines written through reused direct buffers in big batches instead of println.
  * count() -> Returns the number of elements in the stream after filtering.
  * counting() -> Counts the number of elements.
  * generate() -> creates (x -> 0) -> 000000...
+ * generate() also shows FlowBridge: a stream as a Flow.Publisher and back, with backpressure.
+ * generate() also shows Windows: tumbling and sliding windows by count or time over an endless stream.
  * concat() -> Combines two streams, with the elements of stream A followed by those of stream B.
+ * concat() also shows HashJoin: inner / left / semi join of two streams by key, in parallel, spilling to disk.
  * iterate() -> fori for collections
+ * iterate(), generate() and builder() also show SplittableSources: the same sources, but they split well under parallel().
+ * iterate() also shows Scan: running totals and other running aggregates (prefix scan), also under parallel().
  * skip() -> Skips the stream in the range [2-5) -> 2,3,4.
  * peek() -> Allows an element to be passed somewhere without breaking the chain of operators.
  * takeWhile() -> Returns elements as long as they meet a condition.
  * range() -> Creates a stream from a numerical range [start..end).
  * findFirst() -> Guarantees the first element of the stream is returned.
+ * findFirst() also shows ShortCircuit: findFirst / anyMatch / takeWhile / limit under parallel() with a shared cancellation index.
  * sum() -> Returns the sum of elements in a primitive stream.
+ * sum() also shows PrimitiveReductions: sum, min/max, statistics and filter-count over arrays with SIMD.
+ * sum_avg_var() also shows ColumnarBatch: filter, compute and sum over records stored as primitive columns.
  * statistics() -> Collects statistics, such as the number of elements, sum, average, min, and max.
+ * Statistics_variance() -> The same plus variance, standard deviation and quantiles, also under parallel() (StreamStatistics).
+ * toCollection() also shows SizedCollectors: toList / toCollection sized once from the spliterator, and primitive targets.
  * join() -> Collects elements into a single string. (You can specify a separator, prefix, and suffix)
  * sum_avg_var -> A collector that transforms objects and calculates the sum.
  * partitionBy -> Divides the stream by some criteria, with all elements that meet the condition falling into one part.
+ * partitioningBy_concurrent() -> partitioningBy / groupingBy for parallel streams without merging maps (ConcurrentCollectors).
  */
 
 
@@ -63,6 +90,14 @@ public class Stream_API {
         // - filter — selects elements whose value is less than 300,
         // - map — adds 11 to each number,
         // - limit — limits the number of elements to 3.
+
+        // The same chain as a fused pipeline: the three stages get their own copy of the stage code
+        // and are compiled into one loop over the array.
+        Fused.of( 120, 410, 85, 32, 314, 12 )
+                .filter( x -> x < 300 )
+                .map( x -> x + 11 )
+                .limit( 3 )
+                .forEach( System.out::print );
     }
 
     public static void createStream() {
@@ -70,18 +105,50 @@ public class Stream_API {
         // Stream from Map: map.entrySet().stream()
         // Stream from array: Arrays.stream(array)
         // Stream from specified elements: Stream.of("a", "b", "c")
+        // Stream from a memory-mapped file of numbers: MappedNumbers.longs(path) (no copy into the heap)
     }
 
     public static void generate() {
         Stream.generate( () -> "" )
                 .limit( 100 )
                 .forEach( System.out::print );
+
+        // Every parallel split gets its own SplittableRandom instead of sharing one supplier.
+        SplittableSources.generate( SplittableSources.random( new SplittableRandom( 6 ), r -> r.nextInt( 100 ) ), 10 )
+                .parallel()
+                .forEach( x -> print( x + " " ) );
+
+        // An infinite stream as a Flow.Publisher: elements are generated only as the subscriber requests them,
+        // and a Publisher read back as a Stream holds at most 16 elements in its buffer.
+        Flow.Publisher<Integer> publisher = FlowBridge.toPublisher( () -> Stream.iterate( 0, x -> x + 6 ) );
+        try (Stream<Integer> stream = FlowBridge.toStream( publisher, 16 )) {
+            stream.limit( 5 ).forEach( System.out::println );   // 0 6 12 18 24, close() cancels the subscription
+        }
+
+        // An endless feed aggregated per window: the last 100 values every 25 values, O(1) amortized per value
+        SplittableRandom random = new SplittableRandom( 6 );
+        Windows.count( 100 ).every( 25 ).topK( 3 )
+                .over( DoubleStream.generate( () -> random.nextInt( 1000 ) ) )
+                .limit( 3 )
+                .forEach( w -> println( w.getAverage() + " " + Arrays.toString( w.getTop() ) ) );
     }
 
     public static void iterate() {
         Stream.iterate( 0, x -> x + 6 ) // start with 0 and go x ->
                 .limit( 10 )
                 .forEach( System.out::println );
+
+        // The same progression, but element i is computed as 0 + i * 6, so parallel() can split it anywhere.
+        SplittableSources.arithmetic( 0, 6, 10 )
+                .parallel()
+                .forEachOrdered( System.out::println );
+
+        // Running totals: element i depends on all the earlier ones, yet a parallel scan
+        // reduces blocks, then scans every block from its prefix, in encounter order.
+        long[] totals = Scan.prefixSum( SplittableSources.arithmetic( 0L, 6L, 10 ).parallel() ).toArray();
+        println( Arrays.toString( totals ) );                      // [0, 6, 18, 36, 60, 90, 126, 168, 216, 270]
+        Scan.scan( Stream.of( "a", "b", "c" ), String::concat )
+                .forEach( System.out::println );                   // a ab abc
     }
 
     public static void concat() {
@@ -92,6 +159,15 @@ public class Stream_API {
 
         // Concatenates two streams so that the elements of
         // Stream A come first, followed by the elements of Stream B.
+
+        // Combining two streams by key instead: the right one is hashed into a table on long keys,
+        // the left one is streamed through it (in parallel, if it is parallel).
+        HashJoin<String, String> join = HashJoin.on( order -> order.charAt( 0 ) - '0', customer -> customer.charAt( 0 ) - '0' );
+        join.inner( Stream.of( "1 apples", "2 pears", "1 plums", "3 figs" ), Stream.of( "1 Ann", "2 Bob" ),
+                        (order, customer) -> customer.substring( 2 ) + ": " + order.substring( 2 ) )
+                .forEach( System.out::println );                   // Ann: apples, Bob: pears, Ann: plums
+        println( join.semi( Stream.of( "1 apples", "2 pears", "1 plums", "3 figs" ), Stream.of( "2 Bob" ) )
+                .collect( Collectors.toList() ) );                  // [2 pears]
     }
 
     public static void builder() {
@@ -106,6 +182,12 @@ public class Stream_API {
                 .add( 10 )
                 .build()
                 .forEach( x -> print( x + " " ) );
+
+        // SplittableSources.builder() keeps the elements in one array: the built stream splits in exact halves.
+        Stream.Builder<Integer> arrayBuilder = SplittableSources.builder();
+        for (int i = 0; i <= 10; i += 2)
+            arrayBuilder.accept( i );
+        println( arrayBuilder.build().parallel().mapToInt( x -> x ).sum() );
     }
 
     public static void range() {
@@ -134,6 +216,45 @@ public class Stream_API {
                 .map( Integer::parseInt )
                 .map( x -> x + 10 )
                 .forEach( x -> print( x + " " ) );
+
+        // the same numbers in a CSV file or buffer: TextNumbers parses them from the bytes,
+        // without a String per line or per field
+        ByteBuffer csv = ByteBuffer.wrap( "id,value\n1,3\n2,4\n3,5\n".getBytes( StandardCharsets.US_ASCII ) );
+        TextNumbers.of( csv ).skipLines( 1 ).ints( 1 )
+                .map( x -> x + 10 )
+                .forEach( x -> print( x + " " ) ); // 13 14 15
+    }
+
+    public static void mapBatch() {
+        // map() calls its function once per element. When that call is expensive by itself
+        // (a DB query, a remote or JNI call), it pays to send the elements in batches:
+        // chunked(n) groups the stream into lists of n elements, mapBatch(n, fn) calls fn once per list.
+        // The order is kept, also under parallel().
+        Batches.chunked( Stream.of( 1, 2, 3, 4, 5, 6, 7 ), 3 )
+                .forEach( x -> print( x + " " ) ); // [1, 2, 3] [4, 5, 6] [7]
+
+        Batches.mapBatch( Stream.of( "3", "4", "5" ), 2, batch -> {
+                    List<Integer> result = new ArrayList<>( batch.size() ); // one "lookup" per batch
+                    for (String s : batch)
+                        result.add( Integer.parseInt( s ) + 10 );
+                    return result;
+                } )
+                .forEach( x -> print( x + " " ) ); // 13 14 15
+    }
+
+    public static void mapConcurrent() {
+        // For blocking calls (HTTP, JDBC ...) map() waits for one call at a time,
+        // mapConcurrent keeps up to N calls in flight (on virtual threads on JDK 21+).
+        // The results come out in encounter order, mapConcurrentUnordered gives them as they complete.
+        ConcurrentMapping.mapConcurrent( Stream.of( "3", "4", "5" ), 2, s -> {
+                    try {
+                        Thread.sleep( 100 ); // a slow remote call
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return Integer.parseInt( s ) + 10;
+                } )
+                .forEach( x -> print( x + " " ) ); // 13 14 15
     }
 
     public static void mapTO() {
@@ -158,6 +279,13 @@ Copy code
         Stream.of( 120, 410, 85, 32, 314, 12 )
                 .limit( 5 )
                 .forEach( System.out::println );
+
+        // sorted().limit( 3 ) sorts all elements to keep three of them; TopK keeps a heap of three instead
+        Stream.of( 120, 410, 85, 32, 314, 12 )
+                .collect( TopK.collector( 3, Comparator.<Integer>naturalOrder() ) )
+                .forEach( System.out::println ); // 12 32 85
+        TopK.largest( IntStream.of( 120, 410, 85, 32, 314, 12 ), 2 )
+                .forEach( System.out::println ); // 410 314
     }
 
     public static void skip() {
@@ -171,6 +299,20 @@ Copy code
         Stream.of( 120, 410, 85, 32, 314, 12 )
                 .sorted()
                 .forEach( x -> print( x + " " ) );
+
+        // a stream is consumed once: to ask several questions of the same sorted prefix, StreamCache
+        // runs it on the first terminal operation and replays the result for the next ones
+        StreamCache cache = new StreamCache( 1 << 20 );
+        Supplier<IntStream> sorted = cache.ints( "sorted", () -> IntStream.of( 120, 410, 85, 32, 314, 12 ).sorted() );
+        println( "\ncount: " + sorted.get().count() );            // miss: sorts
+        println( "first: " + sorted.get().findFirst().getAsInt() ); // hit: 12
+        println( Arrays.toString( sorted.get().toArray() ) );     // hit
+        println( cache.stats() );                                 // hits=2 misses=1 ...
+        // sorted() needs all elements in the heap; ExternalSort holds at most the budget (here 1 MB)
+        // and spills sorted runs to temp files when the input is bigger
+        try (LongStream sortedOnDisk = ExternalSort.sorted( LongStream.of( 120, 410, 85, 32, 314, 12 ), 1 << 20 )) {
+            sortedOnDisk.forEach( x -> print( x + " " ) );
+        }
     }
 
     public static void distinct() {
@@ -183,6 +325,26 @@ Copy code
                 .distinct() // 2 1 8 3
                 .sorted()   // 1 2 3 8
                 .forEach( x -> print( x + " " ) );
+
+        // distinct().count() keeps every distinct value in a set; for millions of them a HyperLogLog
+        // of 16 KB counts them with ~1% error, and a Bloom filter drops duplicates in a fixed number of bits
+        long users = IntStream.range( 0, 1_000_000 ).map( x -> x % 250_000 ).boxed()
+                .collect( ApproximateDistinct.countDistinct( 0.01 ) );
+        println( "\n~" + users + " distinct of 250000" );
+        ApproximateDistinct.distinct( Stream.of( 2, 1, 8, 1, 3, 2 ), 100, 0.01 )
+                .forEach( x -> print( x + " " ) ); // 2 1 8 3
+    }
+
+    public static void distinctPrimitive() {
+        // Stream.of( ... ).distinct() keeps an Integer in a HashSet for every unique element,
+        // sorted() compares Integer objects. For big int inputs both can work on primitives instead:
+        // an open-addressing int set removes the duplicates, a radix sort orders what is left.
+        PrimitiveStreams.sorted( PrimitiveStreams.distinct( IntStream.of( 2, 1, 8, 1, 3, 2 ) ) )
+                .forEach( x -> print( x + " " ) ); // 1 2 3 8
+
+        // when both are needed, sortedDistinct() sorts only the unique values
+        PrimitiveStreams.sortedDistinct( LongStream.of( 2, 1, 8, 1, 3, 2 ) )
+                .forEach( x -> print( x + " " ) ); // 1 2 3 8
     }
 
     public static void peek() {
@@ -196,6 +358,16 @@ Copy code
                 .map( x -> x + 10 )
                 .forEach( x -> System.out.format( "after +10: %d%n", x ) );
 
+        // format() per element is fine for 4 elements, not in production: PipelineMetrics counts every stage
+        // instead (in, out, selectivity, sampled time and allocation) and costs nothing while disabled
+        PipelineMetrics metrics = PipelineMetrics.create( "peek-demo", true );
+        long sum = IntStream.range( 0, 1000 )
+                .filter( metrics.filterInt( "even", x -> x % 2 == 0 ) )
+                .map( metrics.mapInt( "+10", x -> x + 10 ) )
+                .peek( metrics.probeInt( "out" ) )
+                .sum();
+        println( "sum: " + sum );
+        metrics.snapshot().forEach( System.out::println ); // filter even: in=1000 out=500 selectivity=0.500 ...
     }
 
     public static void takeWhile() {
@@ -209,6 +381,12 @@ Copy code
         // Performs the specified action for each element of the stream.
         Stream.of( 120, 410, 85, 32, 314, 12 )
                 .forEach( x -> System.out.format( "%s, ", x ) );
+        println( "" );
+
+        // For millions of lines: the elements are encoded into one reused buffer and written in big blocks
+        // instead of a locked println per element. Here to System.out, usually to ChannelSink.to( path ).
+        ChannelSink.to( Channels.newChannel( System.out ) )
+                .lines( Stream.of( 120, 410, 85, 32, 314, 12 ).parallel() );   // in encounter order
     }
 
     public static void count() {
@@ -233,6 +411,12 @@ Copy code
         int firstSeq = IntStream.range( 4, 65536 )
                 .findFirst()
                 .getAsInt(); // 4
+
+        // Under parallel() with a costly predicate: chunks are taken from the left, and a match cancels
+        // every chunk to the right of it at once
+        int firstPar = ShortCircuit.findFirst( IntStream.range( 4, 65536 ).parallel(), x -> x % 1000 == 999 )
+                .getAsInt(); // 999
+        println( firstSeq + " " + firstPar );
     }
 
     public static void sum() {
@@ -242,6 +426,11 @@ Copy code
         long result = LongStream.range( 1, 10 )
                 .sum(); // count 1+..+9
         println( result );
+
+        // Over an array, PrimitiveReductions adds 4-16 elements per instruction (Vector API, scalar without it).
+        long[] values = LongStream.range( 1, 10 ).toArray();
+        println( PrimitiveReductions.sum( values ) );
+        println( PrimitiveReductions.count( values, PrimitiveReductions.Compare.GT, 4 ) ); // filter( x -> x > 4 ).count()
     }
 
     public static void Statistics() {
@@ -257,6 +446,19 @@ Copy code
         System.out.format( "    max: %d%n", stats.getMax() );
     }
 
+    public static void Statistics_variance() {
+        // summaryStatistics() stops at count/sum/min/max/average.
+        // StreamStatistics collects the same in one pass plus the variance (Welford), a compensated sum
+        // and approximate quantiles, and it can be merged, so it works with parallel() too.
+        StreamStatistics stats = StreamStatistics.of( LongStream.range( 2, 16 ).parallel() );
+        System.out.format( "  count: %d%n", stats.getCount() );
+        System.out.format( "average: %.1f%n", stats.getAverage() );
+        System.out.format( "    var: %.2f%n", stats.getVariance() );
+        System.out.format( " stddev: %.2f%n", stats.getStandardDeviation() );
+        System.out.format( " median: %.1f%n", stats.getMedian() );
+        System.out.format( "    p90: %.1f%n", stats.getQuantile( 0.9 ) );
+    }
+
     public static void toCollection() {
         // Собирает элементы в заданную коллекцию
         // Если нужно конкретно указать какой List, Set
@@ -266,6 +468,19 @@ Copy code
 
         Set<Integer> set = Stream.of( 1, 2, 3, 4, 5 )
                 .collect( Collectors.toCollection( LinkedHashSet::new ) );
+
+        // Коллектор не знает размер потока, поэтому буфер растёт и копируется.
+        // SizedCollectors берёт размер из spliterator() (SIZED) и выделяет память один раз,
+        // а под parallel() каждая задача пишет в общий массив по своему индексу.
+        List<Integer> list = SizedCollectors.toList( Stream.of( 1, 2, 3, 4, 5 ).parallel().map( x -> x * 10 ) );
+        println( list );                                          // [10, 20, 30, 40, 50]
+
+        // Те же коллекции без упаковки в Integer / Long
+        LongArrayDeque longs = SizedCollectors.toLongArrayDeque( LongStream.rangeClosed( 1, 5 ) );
+        longs.addFirst( 0 );
+        println( longs );                                         // [0, 1, 2, 3, 4, 5]
+        IntLinkedHashSet ints = SizedCollectors.toIntLinkedHashSet( IntStream.of( 3, 1, 3, 2, 1 ) );
+        println( ints );                                          // [3, 1, 2]
     }
 
     public static void joing() {
@@ -283,6 +498,17 @@ Copy code
         s3 = Stream.of( "a", "b", "c", "d" )
                 .collect( Collectors.joining( " -> ", "[ ", " ]" ) );
         println( s3 );
+
+        // Joining.joining works like Collectors.joining, but reuses its buffers between calls.
+        // Joining.joinTo writes straight into a StringBuilder / CharBuffer / Writer without building a String,
+        // Joining.joinUtf8 writes UTF-8 bytes straight into an OutputStream.
+        s3 = Stream.of( "a", "b", "c", "d" )
+                .collect( Joining.joining( " -> ", "[ ", " ]" ) );
+        println( s3 );
+
+        StringBuilder line = new StringBuilder();
+        Joining.joinTo( Stream.of( "a", "b", "c", "d" ), line, ",", "", "\n" );
+        print( line ); // a,b,c,d
     }
 
     public static void sum_avg_var() {
@@ -298,6 +524,24 @@ Copy code
         Double average = Stream.of( "1", "2", "3", "4" )
                 .collect( Collectors.averagingInt( Integer::parseInt ) );
         println( average );
+
+        // double variance: there is no Collectors.varianceInt, StreamStatistics.summarizing computes it in one pass
+        double variance = Stream.of( "1", "2", "3", "4" )
+                .collect( StreamStatistics.summarizing( Integer::parseInt ) )
+                .getVariance();
+        println( variance ); // 1.25
+
+        // the same aggregates over records stored as columns: every step reads only the fields it needs
+        ColumnarBatch batch = ColumnarBatch.builder( 4 )
+                .ints( "age", new int[]{ 25, 31, 42, 37 } )
+                .doubles( "salary", new double[]{ 1000, 2000, 3000, 4000 } )
+                .doubles( "tax", new double[]{ 0.1, 0.2, 0.3, 0.2 } )
+                .build();
+        double net = batch.query()
+                .whereInt( "age", age -> age >= 30 )
+                .computeDouble( "net", "salary", "tax", (s, t) -> s * (1 - t) )
+                .sumDouble( "net" );
+        println( net ); // 6900.0
     }
 
     public static void counting() {
@@ -315,6 +559,21 @@ Copy code
                 .collect( Collectors.partitioningBy( s -> s.length() <= 2 ) );
         map1.entrySet().forEach( x -> print( x + " " ) );
     }
+
+    public static void partitioningBy_concurrent() {
+        // Under parallel() Collectors.partitioningBy builds a map in every fork and merges them at every join.
+        // ConcurrentCollectors are CONCURRENT + UNORDERED: all threads add to one shared map, nothing is merged.
+        // The order of the elements inside each list is not kept.
+        Map<Boolean, List<String>> map1 = Stream.of( "ab", "c", "def", "gh", "ijk", "l", "mnop" )
+                .parallel()
+                .collect( ConcurrentCollectors.partitioningBy( s -> s.length() <= 2 ) );
+        map1.entrySet().forEach( x -> print( x + " " ) );
+
+        Map<Integer, Long> byLength = Stream.of( "ab", "c", "def", "gh", "ijk", "l", "mnop" )
+                .parallel()
+                .collect( ConcurrentCollectors.groupingByCounting( String::length ) );
+        println( byLength ); // {1=2, 2=2, 3=2, 4=1}
+    }
     public static void println(Object string) {
         System.out.println(string);
     }
@@ -0,0 +1,686 @@
+package NEW.Collection.Stream;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Summary: ✔️ Numbers straight from the bytes of a CSV / text file: no String per line, no String per field ✔️
+ * <p>
+ * Files.lines( path ).map( line -> line.split( "," )[2] ).mapToInt( Integer::parseInt ) decodes every byte to a char
+ * and allocates a String for the line, an array and a String for every field. Here the file is mapped (windows of
+ * {@link MappedNumbers#WINDOW_BYTES}) and the field is parsed from the bytes where they lie:
+ * TextNumbers.csv( path ).skipLines( 1 ).ints( 2 )       -> IntStream of the third column, header skipped
+ * TextNumbers.csv( path ).delimiter( ';' ).doubles( 0 )  -> DoubleStream of the first column
+ * TextNumbers.csv( path ).toBatch( new TextNumbers.Columns().ints( "age", 1 ).doubles( "salary", 3 ) )
+ * -> ColumnarBatch with two columns, one pass over the file
+ * TextNumbers.of( buffer )                               -> the same over bytes already in memory
+ * <p>
+ * The spliterator splits its byte range in halves and moves the split point to the start of the next line,
+ * so parallel() parses separate parts of the file. Lines end with \n or \r\n, empty lines are skipped.
+ * Fields are plain ASCII numbers between delimiters, without quotes: a quoted field with a delimiter or a line break
+ * in it is not supported. Doubles with up to 15 significant digits and an exponent within ±22 (prices, measurements)
+ * are parsed exactly from the bytes, the others fall back to Double.parseDouble.
+ * <p>
+ * A stream over a file holds it open, close it (try-with-resources) when done.
+ */
+public final class TextNumbers {
+    /**
+     * Splits smaller than this are not worth a separate task.
+     */
+    static final int MIN_SPLIT_BYTES = 64 << 10;
+
+    /**
+     * Lines per block of toBatch().
+     */
+    static final int BLOCK_LINES = 4096;
+
+    private static final int CHARACTERISTICS = Spliterator.ORDERED | Spliterator.IMMUTABLE | Spliterator.NONNULL;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private final Path file;
+    private final ByteBuffer buffer;
+    private byte delimiter = ',';
+    private int skipLines;
+    private boolean parallel;
+
+    private TextNumbers(Path file, ByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+    }
+
+    public static TextNumbers csv(Path file) {
+        return new TextNumbers( file, null );
+    }
+
+    /**
+     * The bytes between position and limit of the buffer, which is not modified.
+     */
+    public static TextNumbers of(ByteBuffer buffer) {
+        return new TextNumbers( null, buffer.slice() );
+    }
+
+    public TextNumbers delimiter(char delimiter) {
+        if (delimiter > 127 || delimiter == '\n' || delimiter == '\r' || Character.isDigit( delimiter )
+                || delimiter == '-' || delimiter == '+' || delimiter == '.')
+            throw new IllegalArgumentException( "cannot split numbers on " + delimiter );
+        this.delimiter = (byte) delimiter;
+        return this;
+    }
+
+    /**
+     * Skips the first lines, e.g. skipLines( 1 ) for a header.
+     */
+    public TextNumbers skipLines(int lines) {
+        if (lines < 0)
+            throw new IllegalArgumentException( "lines < 0: " + lines );
+        this.skipLines = lines;
+        return this;
+    }
+
+    /**
+     * The streams start parallel, toBatch() parses the blocks in the common ForkJoinPool.
+     */
+    public TextNumbers parallel() {
+        this.parallel = true;
+        return this;
+    }
+
+    public IntStream ints(int column) {
+        requireColumn( column );
+        Source source = open();
+        Ints spliterator = new Ints( source, delimiter, column, start( source ), source.size );
+        return StreamSupport.intStream( spliterator, parallel ).onClose( source::close );
+    }
+
+    public LongStream longs(int column) {
+        requireColumn( column );
+        Source source = open();
+        Longs spliterator = new Longs( source, delimiter, column, start( source ), source.size );
+        return StreamSupport.longStream( spliterator, parallel ).onClose( source::close );
+    }
+
+    public DoubleStream doubles(int column) {
+        requireColumn( column );
+        Source source = open();
+        Doubles spliterator = new Doubles( source, delimiter, column, start( source ), source.size );
+        return StreamSupport.doubleStream( spliterator, parallel ).onClose( source::close );
+    }
+
+    /**
+     * Parses the columns in one pass, block by block, and joins the blocks in file order.
+     */
+    public ColumnarBatch toBatch(Columns columns) {
+        if (columns.names.isEmpty())
+            throw new IllegalArgumentException( "no columns" );
+        try (Source source = open()) {
+            Blocks spliterator = new Blocks( source, delimiter, columns, start( source ), source.size );
+            List<Block> blocks = StreamSupport.stream( spliterator, parallel ).collect( Collectors.toList() );
+            int size = 0;
+            for (Block block : blocks)
+                size = Math.addExact( size, block.size );
+            ColumnarBatch.Builder builder = ColumnarBatch.builder( size );
+            for (int c = 0; c < columns.names.size(); c++) {
+                String name = columns.names.get( c );
+                char type = columns.types.get( c );
+                Object values = type == 'i' ? new int[size] : type == 'l' ? new long[size] : new double[size];
+                int at = 0;
+                for (Block block : blocks) {
+                    System.arraycopy( block.values[c], 0, values, at, block.size );
+                    at += block.size;
+                }
+                if (type == 'i')
+                    builder.ints( name, (int[]) values );
+                else if (type == 'l')
+                    builder.longs( name, (long[]) values );
+                else
+                    builder.doubles( name, (double[]) values );
+            }
+            return builder.build();
+        }
+    }
+
+    /**
+     * The columns of toBatch(): a name and the index of the field in the line, from 0.
+     */
+    public static final class Columns {
+        private final List<String> names = new ArrayList<>();
+        private final List<Character> types = new ArrayList<>();
+        private final List<Integer> fields = new ArrayList<>();
+
+        public Columns ints(String name, int field) {
+            return add( name, 'i', field );
+        }
+
+        public Columns longs(String name, int field) {
+            return add( name, 'l', field );
+        }
+
+        public Columns doubles(String name, int field) {
+            return add( name, 'd', field );
+        }
+
+        private Columns add(String name, char type, int field) {
+            if (field < 0)
+                throw new IllegalArgumentException( "field < 0: " + field );
+            if (names.contains( name ))
+                throw new IllegalArgumentException( "duplicate column " + name );
+            names.add( name );
+            types.add( type );
+            fields.add( field );
+            return this;
+        }
+    }
+
+    private static void requireColumn(int column) {
+        if (column < 0)
+            throw new IllegalArgumentException( "column < 0: " + column );
+    }
+
+    private Source open() {
+        if (buffer != null)
+            return new Source( null, buffer, buffer.limit() );
+        try {
+            FileChannel channel = FileChannel.open( file, StandardOpenOption.READ );
+            try {
+                return new Source( channel, null, channel.size() );
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    private long start(Source source) {
+        long position = 0;
+        try {
+            for (int i = 0; i < skipLines && position < source.size; i++)
+                position = source.nextLineStart( position, source.size );
+            return position;
+        } catch (RuntimeException e) {
+            source.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The bytes of a file or a buffer, read through windows of at most {@link MappedNumbers#WINDOW_BYTES}.
+     */
+    private static final class Source implements AutoCloseable {
+        final FileChannel channel;
+        final ByteBuffer buffer;
+        final long size;
+
+        Source(FileChannel channel, ByteBuffer buffer, long size) {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.size = size;
+        }
+
+        /**
+         * The bytes [position, position + length): index 0 of the window is the byte at position.
+         */
+        ByteBuffer window(long position, int length) {
+            if (buffer != null)
+                return buffer.slice( (int) position, length );
+            try {
+                return channel.map( FileChannel.MapMode.READ_ONLY, position, length );
+            } catch (IOException e) {
+                throw new UncheckedIOException( e );
+            }
+        }
+
+        /**
+         * The position after the first \n at or after from, or end if there is none.
+         */
+        long nextLineStart(long from, long end) {
+            while (from < end) {
+                int length = (int) Math.min( end - from, MappedNumbers.PAGE_BYTES );
+                ByteBuffer window = window( from, length );
+                for (int i = 0; i < length; i++)
+                    if (window.get( i ) == '\n')
+                        return from + i + 1;
+                from += length;
+            }
+            return end;
+        }
+
+        @Override
+        public void close() {
+            if (channel == null)
+                return;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException( e );
+            }
+        }
+    }
+
+    /**
+     * Walks the lines that start in [position, end). end is the size of the source or the start of a line,
+     * so no line of the range goes past it.
+     */
+    private abstract static class LineSpliterator {
+        final Source source;
+        final byte delimiter;
+        long position;
+        final long end;
+        ByteBuffer window;
+        long windowStart;
+        int windowLength;   // 0 -> nothing mapped yet
+        int lineStart;      // the current line, [lineStart, lineEnd) of the window, without \r\n
+        int lineEnd;
+
+        LineSpliterator(Source source, byte delimiter, long position, long end) {
+            this.source = source;
+            this.delimiter = delimiter;
+            this.position = position;
+            this.end = end;
+        }
+
+        /**
+         * Moves to the next non-empty line. A line that does not fit in the rest of the window is read
+         * from a new window that starts with it.
+         */
+        final boolean nextLine() {
+            while (position < end) {
+                if (position < windowStart || position >= windowStart + windowLength)
+                    map();
+                int from = (int) (position - windowStart);
+                int newline = indexOfNewline( from );
+                if (newline < 0 && windowStart + windowLength < end) {
+                    map();
+                    from = 0;
+                    newline = indexOfNewline( 0 );
+                    if (newline < 0 && windowStart + windowLength < end)
+                        throw new IllegalStateException( "line at byte " + position + " is longer than "
+                                + MappedNumbers.WINDOW_BYTES + " bytes" );
+                }
+                int to = newline < 0 ? windowLength : newline;
+                position = windowStart + (newline < 0 ? windowLength : newline + 1);
+                if (to > from && window.get( to - 1 ) == '\r')
+                    to--;
+                if (to > from) {
+                    lineStart = from;
+                    lineEnd = to;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void map() {
+            windowLength = (int) Math.min( end - position, MappedNumbers.WINDOW_BYTES );
+            windowStart = position;
+            window = source.window( position, windowLength );
+        }
+
+        private int indexOfNewline(int from) {
+            ByteBuffer w = window;
+            for (int i = from, length = windowLength; i < length; i++)
+                if (w.get( i ) == '\n')
+                    return i;
+            return -1;
+        }
+
+        /**
+         * The start of the field that comes count fields after the one starting at from.
+         */
+        final int skipFields(int from, int count) {
+            ByteBuffer w = window;
+            for (int i = from; count > 0; i++) {
+                if (i >= lineEnd)
+                    throw new NumberFormatException( "missing field in line at byte " + (windowStart + lineStart)
+                            + ": \"" + text( lineStart, lineEnd ) + "\"" );
+                if (w.get( i ) == delimiter) {
+                    from = i + 1;
+                    count--;
+                }
+            }
+            return from;
+        }
+
+        final int fieldEnd(int from) {
+            ByteBuffer w = window;
+            int i = from;
+            while (i < lineEnd && w.get( i ) != delimiter)
+                i++;
+            return i;
+        }
+
+        final int parseInt(int from, int to) {
+            long value = parseLong( from, to );
+            if (value != (int) value)
+                throw error( from, to );
+            return (int) value;
+        }
+
+        /**
+         * Accumulates negatively, like Long.parseLong, so that Long.MIN_VALUE fits.
+         */
+        final long parseLong(int from, int to) {
+            ByteBuffer w = window;
+            int i = from;
+            boolean negative = false;
+            if (i < to && (w.get( i ) == '-' || w.get( i ) == '+'))
+                negative = w.get( i++ ) == '-';
+            if (i == to)
+                throw error( from, to );
+            long value = 0;
+            for (; i < to; i++) {
+                int digit = w.get( i ) - '0';
+                if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10)
+                    throw error( from, to );
+                value = value * 10 - digit;
+            }
+            if (!negative && value == Long.MIN_VALUE)
+                throw error( from, to );
+            return negative ? value : -value;
+        }
+
+        /**
+         * Up to 15 significant digits times 10^±22 is one correctly rounded multiplication or division,
+         * as both numbers are exact doubles. Anything else goes to Double.parseDouble.
+         */
+        final double parseDouble(int from, int to) {
+            ByteBuffer w = window;
+            int i = from;
+            boolean negative = false;
+            if (i < to && (w.get( i ) == '-' || w.get( i ) == '+'))
+                negative = w.get( i++ ) == '-';
+            long mantissa = 0;
+            int digits = 0, exponent = 0;
+            boolean any = false, point = false;
+            for (; i < to; i++) {
+                byte b = w.get( i );
+                if (b == '.' && !point) {
+                    point = true;
+                    continue;
+                }
+                int digit = b - '0';
+                if (digit < 0 || digit > 9)
+                    break;
+                any = true;
+                if (mantissa != 0 || digit != 0)
+                    digits++;
+                if (digits <= 18)
+                    mantissa = mantissa * 10 + digit;
+                else if (!point)
+                    exponent++;
+                if (point && digits <= 18)
+                    exponent--;
+            }
+            if (any && i < to && (w.get( i ) == 'e' || w.get( i ) == 'E')) {
+                int j = i + 1;
+                boolean negativeExponent = false;
+                if (j < to && (w.get( j ) == '-' || w.get( j ) == '+'))
+                    negativeExponent = w.get( j++ ) == '-';
+                int e = 0;
+                boolean anyExponent = false;
+                for (; j < to; j++) {
+                    int digit = w.get( j ) - '0';
+                    if (digit < 0 || digit > 9)
+                        break;
+                    anyExponent = true;
+                    e = Math.min( e * 10 + digit, 100_000 );
+                }
+                if (anyExponent) {
+                    exponent += negativeExponent ? -e : e;
+                    i = j;
+                }
+            }
+            if (!any || i != to || digits > 15 || exponent < -22 || exponent > 22)
+                return slowParseDouble( from, to );
+            double value = mantissa;
+            value = exponent < 0 ? value / POWERS_OF_TEN[-exponent] : value * POWERS_OF_TEN[exponent];
+            return negative ? -value : value;
+        }
+
+        private double slowParseDouble(int from, int to) {
+            try {
+                return Double.parseDouble( text( from, to ) );
+            } catch (NumberFormatException e) {
+                throw error( from, to );
+            }
+        }
+
+        private NumberFormatException error(int from, int to) {
+            return new NumberFormatException( "not a number at byte " + (windowStart + from) + ": \""
+                    + text( from, to ) + "\"" );
+        }
+
+        final String text(int from, int to) {
+            byte[] bytes = new byte[to - from];
+            window.get( from, bytes );
+            return new String( bytes, StandardCharsets.ISO_8859_1 );
+        }
+
+        /**
+         * The start of the first line after the middle of the range, or -1 if the range is too small to split.
+         */
+        final long splitPoint() {
+            long remaining = end - position;
+            if (remaining < MIN_SPLIT_BYTES)
+                return -1;
+            long mid = source.nextLineStart( position + remaining / 2, end );
+            return mid > position && mid < end ? mid : -1;
+        }
+
+        public final long estimateSize() {
+            return end - position;
+        }
+
+        public final int characteristics() {
+            return CHARACTERISTICS;
+        }
+    }
+
+    static final class Ints extends LineSpliterator implements Spliterator.OfInt {
+        private final int column;
+
+        Ints(Source source, byte delimiter, int column, long position, long end) {
+            super( source, delimiter, position, end );
+            this.column = column;
+        }
+
+        private int value() {
+            int from = skipFields( lineStart, column );
+            return parseInt( from, fieldEnd( from ) );
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (!nextLine())
+                return false;
+            action.accept( value() );
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            while (nextLine())
+                action.accept( value() );
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            long mid = splitPoint();
+            if (mid < 0)
+                return null;
+            Ints prefix = new Ints( source, delimiter, column, position, mid );
+            position = mid;
+            return prefix;
+        }
+    }
+
+    static final class Longs extends LineSpliterator implements Spliterator.OfLong {
+        private final int column;
+
+        Longs(Source source, byte delimiter, int column, long position, long end) {
+            super( source, delimiter, position, end );
+            this.column = column;
+        }
+
+        private long value() {
+            int from = skipFields( lineStart, column );
+            return parseLong( from, fieldEnd( from ) );
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (!nextLine())
+                return false;
+            action.accept( value() );
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            while (nextLine())
+                action.accept( value() );
+        }
+
+        @Override
+        public Spliterator.OfLong trySplit() {
+            long mid = splitPoint();
+            if (mid < 0)
+                return null;
+            Longs prefix = new Longs( source, delimiter, column, position, mid );
+            position = mid;
+            return prefix;
+        }
+    }
+
+    static final class Doubles extends LineSpliterator implements Spliterator.OfDouble {
+        private final int column;
+
+        Doubles(Source source, byte delimiter, int column, long position, long end) {
+            super( source, delimiter, position, end );
+            this.column = column;
+        }
+
+        private double value() {
+            int from = skipFields( lineStart, column );
+            return parseDouble( from, fieldEnd( from ) );
+        }
+
+        @Override
+        public boolean tryAdvance(DoubleConsumer action) {
+            if (!nextLine())
+                return false;
+            action.accept( value() );
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(DoubleConsumer action) {
+            while (nextLine())
+                action.accept( value() );
+        }
+
+        @Override
+        public Spliterator.OfDouble trySplit() {
+            long mid = splitPoint();
+            if (mid < 0)
+                return null;
+            Doubles prefix = new Doubles( source, delimiter, column, position, mid );
+            position = mid;
+            return prefix;
+        }
+    }
+
+    /**
+     * Up to {@link #BLOCK_LINES} parsed lines, one array per column.
+     */
+    private static final class Block {
+        final Object[] values;
+        int size;
+
+        Block(List<Character> types) {
+            values = new Object[types.size()];
+            for (int c = 0; c < values.length; c++) {
+                char type = types.get( c );
+                values[c] = type == 'i' ? new int[BLOCK_LINES] : type == 'l' ? new long[BLOCK_LINES]
+                        : new double[BLOCK_LINES];
+            }
+        }
+    }
+
+    /**
+     * The lines of the range as blocks. Every line is walked once: the columns are parsed in field order.
+     */
+    private static final class Blocks extends LineSpliterator implements Spliterator<Block> {
+        private final Columns columns;
+        private final int[] order;  // column indices sorted by field
+
+        Blocks(Source source, byte delimiter, Columns columns, long position, long end) {
+            super( source, delimiter, position, end );
+            this.columns = columns;
+            this.order = IntStream.range( 0, columns.names.size() ).boxed()
+                    .sorted( (a, b) -> Integer.compare( columns.fields.get( a ), columns.fields.get( b ) ) )
+                    .mapToInt( Integer::intValue ).toArray();
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Block> action) {
+            Block block = null;
+            while (block == null || block.size < BLOCK_LINES) {
+                if (!nextLine())
+                    break;
+                if (block == null)
+                    block = new Block( columns.types );
+                int from = lineStart, field = 0;
+                for (int c : order) {
+                    int target = columns.fields.get( c );
+                    from = skipFields( from, target - field );
+                    field = target;
+                    int to = fieldEnd( from );
+                    Object values = block.values[c];
+                    if (values instanceof int[])
+                        ((int[]) values)[block.size] = parseInt( from, to );
+                    else if (values instanceof long[])
+                        ((long[]) values)[block.size] = parseLong( from, to );
+                    else
+                        ((double[]) values)[block.size] = parseDouble( from, to );
+                }
+                block.size++;
+            }
+            if (block == null)
+                return false;
+            action.accept( block );
+            return true;
+        }
+
+        @Override
+        public Spliterator<Block> trySplit() {
+            long mid = splitPoint();
+            if (mid < 0)
+                return null;
+            Blocks prefix = new Blocks( source, delimiter, columns, position, mid );
+            position = mid;
+            return prefix;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package NEW.Collection.Stream;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Summary: ✔️ Summing a column of a CSV file: Files.lines() + split + parse vs {@link TextNumbers} ✔️
+ * <p>
+ * The file: id,age,department,salary,name, one line per row, written once per size into the temp directory
+ * (-Dbench.dir to change) and deleted at exit.
+ * loop            -> the usual way, and the baseline here: Files.lines( file ).skip( 1 ), split( "," ), then
+ * parseInt / parseDouble of one field.
+ * lines-par       -> the same with .parallel().
+ * text / text-par -> TextNumbers.csv( file ).skipLines( 1 ).ints( 1 ) / doubles( 3 ), sequential and parallel.
+ * batch           -> age and salary into a ColumnarBatch with toBatch(), then sumDouble( "salary" ) over the column.
+ */
+public class TextNumbersBenchmark {
+    public static void main(String[] args) throws IOException {
+        Bench bench = new Bench();
+        Path dir = Path.of( System.getProperty( "bench.dir", System.getProperty( "java.io.tmpdir" ) ) );
+        for (int n : Bench.sizes( "1e5,1e6,1e7" )) {
+            Path file = Files.createTempFile( dir, "rows", ".csv" );
+            file.toFile().deleteOnExit();
+            write( file, n );
+
+            bench.run( "sum-age", Bench.LOOP, n, () -> {
+                try (Stream<String> lines = Files.lines( file )) {
+                    return lines.skip( 1 ).mapToInt( line -> Integer.parseInt( line.split( "," )[1] ) ).sum();
+                } catch (IOException e) {
+                    throw new UncheckedIOException( e );
+                }
+            } );
+            bench.run( "sum-age", "lines-par", n, () -> {
+                try (Stream<String> lines = Files.lines( file )) {
+                    return lines.skip( 1 ).parallel().mapToInt( line -> Integer.parseInt( line.split( "," )[1] ) ).sum();
+                } catch (IOException e) {
+                    throw new UncheckedIOException( e );
+                }
+            } );
+            bench.run( "sum-age", "text", n, () -> {
+                try (IntStream ages = TextNumbers.csv( file ).skipLines( 1 ).ints( 1 )) {
+                    return ages.sum();
+                }
+            } );
+            bench.run( "sum-age", "text-par", n, () -> {
+                try (IntStream ages = TextNumbers.csv( file ).skipLines( 1 ).parallel().ints( 1 )) {
+                    return ages.sum();
+                }
+            } );
+
+            bench.run( "sum-salary", Bench.LOOP, n, () -> {
+                try (Stream<String> lines = Files.lines( file )) {
+                    return (long) lines.skip( 1 ).mapToDouble( line -> Double.parseDouble( line.split( "," )[3] ) ).sum();
+                } catch (IOException e) {
+                    throw new UncheckedIOException( e );
+                }
+            } );
+            bench.run( "sum-salary", "text", n, () -> {
+                try (DoubleStream salaries = TextNumbers.csv( file ).skipLines( 1 ).doubles( 3 )) {
+                    return (long) salaries.sum();
+                }
+            } );
+            bench.run( "sum-salary", "text-par", n, () -> {
+                try (DoubleStream salaries = TextNumbers.csv( file ).skipLines( 1 ).parallel().doubles( 3 )) {
+                    return (long) salaries.sum();
+                }
+            } );
+            bench.run( "sum-salary", "batch", n, () -> {
+                ColumnarBatch batch = TextNumbers.csv( file ).skipLines( 1 )
+                        .toBatch( new TextNumbers.Columns().ints( "age", 1 ).doubles( "salary", 3 ) );
+                return (long) batch.query().sumDouble( "salary" );
+            } );
+            Files.delete( file );
+        }
+    }
+
+    private static void write(Path file, int n) throws IOException {
+        SplittableRandom random = new SplittableRandom( 42 );
+        try (BufferedWriter out = Files.newBufferedWriter( file )) {
+            out.write( "id,age,department,salary,name\n" );
+            for (int i = 0; i < n; i++) {
+                out.write( i + "," + random.nextInt( 20, 65 ) + "," + random.nextInt( 10 ) + ","
+                        + random.nextInt( 100_000, 900_000 ) / 100.0 + ",employee-" + i + "\n" );
+            }
+        }
+    }
+}
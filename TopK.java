@@ -0,0 +1,390 @@
+package NEW.Collection.Stream;
+
+import java.util.*;
+import java.util.stream.*;
+
+/**
+ * Summary: ✔️ sorted().limit( k ) without sorting everything: a bounded heap of k elements ✔️
+ * <p>
+ * sorted() buffers and sorts all n elements before limit( k ) takes the first k: O(n log n) time, O(n) memory.
+ * Here a heap keeps only the k best elements seen so far; an element worse than the worst of them costs one
+ * comparison, so the time is O(n log k), usually close to O(n), and the memory is O(k).
+ * stream.collect( TopK.collector( 10, comparator ) ) -> stream.sorted( comparator ).limit( 10 ).toList()
+ * TopK.of( stream, 10, comparator )               -> the same as a lazy Stream, for more operations after it
+ * TopK.smallest( intStream, 10 )                  -> intStream.sorted().limit( 10 )
+ * TopK.largest( intStream, 10 )                   -> the 10 largest, largest first
+ * <p>
+ * Under parallel() every thread fills its own heap and the heaps are merged: k elements per split.
+ * Unlike sorted(), equal elements do not keep their encounter order.
+ */
+public final class TopK {
+    private static final int RESULT = Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED;
+
+    private TopK() {
+    }
+
+    /**
+     * The k smallest elements by the comparator, in order. Use comparator.reversed() for the k largest.
+     */
+    public static <T> Collector<T, ?, List<T>> collector(int k, Comparator<? super T> comparator) {
+        checkK( k );
+        Objects.requireNonNull( comparator );
+        return Collector.of(
+                () -> new ObjectHeap<T>( k, comparator ),
+                ObjectHeap::add,
+                ObjectHeap::merge,
+                ObjectHeap::toSortedList,
+                Collector.Characteristics.UNORDERED );
+    }
+
+    public static <T extends Comparable<? super T>> Collector<T, ?, List<T>> collector(int k) {
+        return collector( k, Comparator.naturalOrder() );
+    }
+
+    /**
+     * A lazy stream.sorted( comparator ).limit( k ): nothing is read from the stream before its terminal operation.
+     */
+    public static <T> Stream<T> of(Stream<T> stream, int k, Comparator<? super T> comparator) {
+        Collector<T, ?, List<T>> collector = collector( k, comparator );
+        return StreamSupport.stream( () -> stream.collect( collector ).spliterator(), RESULT, stream.isParallel() )
+                .onClose( stream::close );
+    }
+
+    /**
+     * The primitive versions are lazy too: the heap is filled by the terminal operation of the returned stream.
+     */
+    public static IntStream smallest(IntStream stream, int k) {
+        return ints( stream, k, false );
+    }
+
+    public static IntStream largest(IntStream stream, int k) {
+        return ints( stream, k, true );
+    }
+
+    public static LongStream smallest(LongStream stream, int k) {
+        return longs( stream, k, false );
+    }
+
+    public static LongStream largest(LongStream stream, int k) {
+        return longs( stream, k, true );
+    }
+
+    /**
+     * Ordered like DoubleStream.sorted(): by Double.compare, -0.0 before 0.0 and NaN after everything.
+     */
+    public static DoubleStream smallest(DoubleStream stream, int k) {
+        return doubles( stream, k, false );
+    }
+
+    public static DoubleStream largest(DoubleStream stream, int k) {
+        return doubles( stream, k, true );
+    }
+
+    private static IntStream ints(IntStream stream, int k, boolean largest) {
+        checkK( k );
+        return StreamSupport.intStream( () -> Spliterators.spliterator( stream.collect( () -> new IntHeap( k, largest ),
+                                IntHeap::add, IntHeap::merge ).toSortedArray(), Spliterator.ORDERED ),
+                        RESULT, stream.isParallel() )
+                .onClose( stream::close );
+    }
+
+    private static LongStream longs(LongStream stream, int k, boolean largest) {
+        checkK( k );
+        return StreamSupport.longStream( () -> Spliterators.spliterator( stream.collect( () -> new LongHeap( k, largest ),
+                                LongHeap::add, LongHeap::merge ).toSortedArray(), Spliterator.ORDERED ),
+                        RESULT, stream.isParallel() )
+                .onClose( stream::close );
+    }
+
+    private static DoubleStream doubles(DoubleStream stream, int k, boolean largest) {
+        checkK( k );
+        return StreamSupport.doubleStream( () -> Spliterators.spliterator( stream.collect( () -> new DoubleHeap( k, largest ),
+                                DoubleHeap::add, DoubleHeap::merge ).toSortedArray(), Spliterator.ORDERED ),
+                        RESULT, stream.isParallel() )
+                .onClose( stream::close );
+    }
+
+    private static void reverse(int[] a) {
+        for (int i = 0, j = a.length - 1; i < j; i++, j--) {
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
+    private static void reverse(long[] a) {
+        for (int i = 0, j = a.length - 1; i < j; i++, j--) {
+            long t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
+    private static void reverse(double[] a) {
+        for (int i = 0, j = a.length - 1; i < j; i++, j--) {
+            double t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
+    private static void checkK(int k) {
+        if (k < 0)
+            throw new IllegalArgumentException( "k < 0: " + k );
+    }
+
+    /**
+     * The k best elements as a binary heap with the worst of them at the root: a new element only has to beat
+     * the root. The heap array grows up to k, so a small stream with a big k does not allocate k slots.
+     */
+    private static final class ObjectHeap<T> {
+        private final int k;
+        private final Comparator<? super T> comparator;
+        private Object[] heap = new Object[0];
+        private int size;
+
+        ObjectHeap(int k, Comparator<? super T> comparator) {
+            this.k = k;
+            this.comparator = comparator;
+        }
+
+        void add(T t) {
+            if (size < k) {
+                if (size == heap.length)
+                    heap = Arrays.copyOf( heap, Math.min( k, Math.max( 16, size * 2 ) ) );
+                heap[size] = t;
+                siftUp( size++ );
+            } else if (k > 0 && comparator.compare( t, root() ) < 0) {
+                heap[0] = t;
+                siftDown( 0 );
+            }
+        }
+
+        ObjectHeap<T> merge(ObjectHeap<T> other) {
+            for (int i = 0; i < other.size; i++)
+                add( other.at( i ) );
+            return this;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<T> toSortedList() {
+            T[] result = (T[]) Arrays.copyOf( heap, size );
+            Arrays.sort( result, comparator );
+            return Arrays.asList( result );
+        }
+
+        @SuppressWarnings("unchecked")
+        private T at(int i) {
+            return (T) heap[i];
+        }
+
+        private T root() {
+            return at( 0 );
+        }
+
+        /**
+         * The worse of two elements goes up: the root is the worst.
+         */
+        private void siftUp(int i) {
+            T x = at( i );
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (comparator.compare( at( parent ), x ) >= 0)
+                    break;
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = x;
+        }
+
+        private void siftDown(int i) {
+            T x = at( i );
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && comparator.compare( at( child + 1 ), at( child ) ) > 0)
+                    child++;
+                if (comparator.compare( at( child ), x ) <= 0)
+                    break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = x;
+        }
+    }
+
+    /**
+     * The same heap over an int[]. worse( a, b ) is a > b for the smallest elements and a < b for the largest.
+     */
+    private static final class IntHeap {
+        private final int k;
+        private final boolean largest;
+        private int[] heap = new int[0];
+        private int size;
+
+        IntHeap(int k, boolean largest) {
+            this.k = k;
+            this.largest = largest;
+        }
+
+        private boolean worse(int a, int b) {
+            return largest ? a < b : a > b;
+        }
+
+        void add(int x) {
+            if (size < k) {
+                if (size == heap.length)
+                    heap = Arrays.copyOf( heap, Math.min( k, Math.max( 16, size * 2 ) ) );
+                int i = size++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (!worse( x, heap[parent] ))
+                        break;
+                    heap[i] = heap[parent];
+                    i = parent;
+                }
+                heap[i] = x;
+            } else if (k > 0 && worse( heap[0], x )) {
+                int i = 0, half = size >>> 1;
+                while (i < half) {
+                    int child = 2 * i + 1;
+                    if (child + 1 < size && worse( heap[child + 1], heap[child] ))
+                        child++;
+                    if (!worse( heap[child], x ))
+                        break;
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = x;
+            }
+        }
+
+        void merge(IntHeap other) {
+            for (int i = 0; i < other.size; i++)
+                add( other.heap[i] );
+        }
+
+        int[] toSortedArray() {
+            int[] result = Arrays.copyOf( heap, size );
+            Arrays.sort( result );
+            if (largest)
+                reverse( result );
+            return result;
+        }
+    }
+
+    private static final class LongHeap {
+        private final int k;
+        private final boolean largest;
+        private long[] heap = new long[0];
+        private int size;
+
+        LongHeap(int k, boolean largest) {
+            this.k = k;
+            this.largest = largest;
+        }
+
+        private boolean worse(long a, long b) {
+            return largest ? a < b : a > b;
+        }
+
+        void add(long x) {
+            if (size < k) {
+                if (size == heap.length)
+                    heap = Arrays.copyOf( heap, Math.min( k, Math.max( 16, size * 2 ) ) );
+                int i = size++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (!worse( x, heap[parent] ))
+                        break;
+                    heap[i] = heap[parent];
+                    i = parent;
+                }
+                heap[i] = x;
+            } else if (k > 0 && worse( heap[0], x )) {
+                int i = 0, half = size >>> 1;
+                while (i < half) {
+                    int child = 2 * i + 1;
+                    if (child + 1 < size && worse( heap[child + 1], heap[child] ))
+                        child++;
+                    if (!worse( heap[child], x ))
+                        break;
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = x;
+            }
+        }
+
+        void merge(LongHeap other) {
+            for (int i = 0; i < other.size; i++)
+                add( other.heap[i] );
+        }
+
+        long[] toSortedArray() {
+            long[] result = Arrays.copyOf( heap, size );
+            Arrays.sort( result );
+            if (largest)
+                reverse( result );
+            return result;
+        }
+    }
+
+    private static final class DoubleHeap {
+        private final int k;
+        private final boolean largest;
+        private double[] heap = new double[0];
+        private int size;
+
+        DoubleHeap(int k, boolean largest) {
+            this.k = k;
+            this.largest = largest;
+        }
+
+        private boolean worse(double a, double b) {
+            int cmp = Double.compare( a, b );
+            return largest ? cmp < 0 : cmp > 0;
+        }
+
+        void add(double x) {
+            if (size < k) {
+                if (size == heap.length)
+                    heap = Arrays.copyOf( heap, Math.min( k, Math.max( 16, size * 2 ) ) );
+                int i = size++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (!worse( x, heap[parent] ))
+                        break;
+                    heap[i] = heap[parent];
+                    i = parent;
+                }
+                heap[i] = x;
+            } else if (k > 0 && worse( heap[0], x )) {
+                int i = 0, half = size >>> 1;
+                while (i < half) {
+                    int child = 2 * i + 1;
+                    if (child + 1 < size && worse( heap[child + 1], heap[child] ))
+                        child++;
+                    if (!worse( heap[child], x ))
+                        break;
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = x;
+            }
+        }
+
+        void merge(DoubleHeap other) {
+            for (int i = 0; i < other.size; i++)
+                add( other.heap[i] );
+        }
+
+        double[] toSortedArray() {
+            double[] result = Arrays.copyOf( heap, size );
+            Arrays.sort( result );
+            if (largest)
+                reverse( result );
+            return result;
+        }
+    }
+}
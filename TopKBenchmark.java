@@ -0,0 +1,38 @@
+package NEW.Collection.Stream;
+
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Summary: ✔️ sorted().limit( k ) against {@link TopK}, sequential and parallel ✔️
+ * <p>
+ * The source is a SplittableRandom stream of n ints, so no input array has to fit in the heap:
+ * only sorted() buffers all n elements. k = -Dbench.k (100). Boxed Stream<Integer> runs up to n = 1e7,
+ * n = 1e8 boxed needs several GB for sorted().
+ */
+public class TopKBenchmark {
+    private static final int K = Integer.getInteger( "bench.k", 100 );
+
+    public static void main(String[] args) {
+        Bench bench = new Bench();
+        for (int n : Bench.sizes( "1e6,1e7,1e8" )) {
+            bench.run( "top-k-int", "sorted-limit", n, () -> new SplittableRandom( 42 ).ints( n )
+                    .sorted().limit( K ).asLongStream().sum() );
+            bench.run( "top-k-int", "topK", n, () -> TopK.smallest( new SplittableRandom( 42 ).ints( n ), K )
+                    .asLongStream().sum() );
+            bench.run( "top-k-int", "sorted-limit-par", n, () -> new SplittableRandom( 42 ).ints( n ).parallel()
+                    .sorted().limit( K ).asLongStream().sum() );
+            bench.run( "top-k-int", "topK-par", n, () -> TopK.smallest( new SplittableRandom( 42 ).ints( n ).parallel(), K )
+                    .asLongStream().sum() );
+            if (n > 10_000_000)
+                continue;
+            bench.run( "top-k-boxed", "sorted-limit", n, () -> new SplittableRandom( 42 ).ints( n ).boxed()
+                    .sorted( Comparator.reverseOrder() ).limit( K ).collect( Collectors.toList() ).size() );
+            bench.run( "top-k-boxed", "topK", n, () -> new SplittableRandom( 42 ).ints( n ).boxed()
+                    .collect( TopK.collector( K, Comparator.<Integer>reverseOrder() ) ).size() );
+            bench.run( "top-k-boxed", "topK-par", n, () -> new SplittableRandom( 42 ).ints( n ).boxed().parallel()
+                    .collect( TopK.collector( K, Comparator.<Integer>reverseOrder() ) ).size() );
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package NEW.Collection.Stream;
+
+import jdk.incubator.vector.*;
+
+import java.util.DoubleSummaryStatistics;
+import java.util.IntSummaryStatistics;
+import java.util.LongSummaryStatistics;
+
+/**
+ * The SIMD half of {@link PrimitiveReductions}: the same reductions with jdk.incubator.vector, one vector of the
+ * preferred width (8 ints on AVX2, 16 on AVX-512) per step, the tail that does not fill a vector in scalar code.
+ * Only loaded when the module is present, so nothing else in the package may refer to this class.
+ */
+final class VectorReductions {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+    private VectorReductions() {
+    }
+
+    static int sum(int[] a) {
+        IntVector acc = IntVector.zero( INTS );
+        int i = 0;
+        for (int bound = INTS.loopBound( a.length ); i < bound; i += INTS.length())
+            acc = acc.add( IntVector.fromArray( INTS, a, i ) );
+        int sum = acc.reduceLanes( VectorOperators.ADD );
+        for (; i < a.length; i++)
+            sum += a[i];
+        return sum;
+    }
+
+    static long sum(long[] a) {
+        LongVector acc = LongVector.zero( LONGS );
+        int i = 0;
+        for (int bound = LONGS.loopBound( a.length ); i < bound; i += LONGS.length())
+            acc = acc.add( LongVector.fromArray( LONGS, a, i ) );
+        long sum = acc.reduceLanes( VectorOperators.ADD );
+        for (; i < a.length; i++)
+            sum += a[i];
+        return sum;
+    }
+
+    static double sum(double[] a) {
+        return kahan( a ).getSum();
+    }
+
+    static int min(int[] a) {
+        IntVector acc = IntVector.broadcast( INTS, Integer.MAX_VALUE );
+        int i = 0;
+        for (int bound = INTS.loopBound( a.length ); i < bound; i += INTS.length())
+            acc = acc.min( IntVector.fromArray( INTS, a, i ) );
+        int min = acc.reduceLanes( VectorOperators.MIN );
+        for (; i < a.length; i++)
+            min = Math.min( min, a[i] );
+        return min;
+    }
+
+    static int max(int[] a) {
+        IntVector acc = IntVector.broadcast( INTS, Integer.MIN_VALUE );
+        int i = 0;
+        for (int bound = INTS.loopBound( a.length ); i < bound; i += INTS.length())
+            acc = acc.max( IntVector.fromArray( INTS, a, i ) );
+        int max = acc.reduceLanes( VectorOperators.MAX );
+        for (; i < a.length; i++)
+            max = Math.max( max, a[i] );
+        return max;
+    }
+
+    static long min(long[] a) {
+        LongVector acc = LongVector.broadcast( LONGS, Long.MAX_VALUE );
+        int i = 0;
+        for (int bound = LONGS.loopBound( a.length ); i < bound; i += LONGS.length())
+            acc = acc.min( LongVector.fromArray( LONGS, a, i ) );
+        long min = acc.reduceLanes( VectorOperators.MIN );
+        for (; i < a.length; i++)
+            min = Math.min( min, a[i] );
+        return min;
+    }
+
+    static long max(long[] a) {
+        LongVector acc = LongVector.broadcast( LONGS, Long.MIN_VALUE );
+        int i = 0;
+        for (int bound = LONGS.loopBound( a.length ); i < bound; i += LONGS.length())
+            acc = acc.max( LongVector.fromArray( LONGS, a, i ) );
+        long max = acc.reduceLanes( VectorOperators.MAX );
+        for (; i < a.length; i++)
+            max = Math.max( max, a[i] );
+        return max;
+    }
+
+    static double min(double[] a) {
+        DoubleVector acc = DoubleVector.broadcast( DOUBLES, Double.POSITIVE_INFINITY );
+        int i = 0;
+        for (int bound = DOUBLES.loopBound( a.length ); i < bound; i += DOUBLES.length())
+            acc = acc.min( DoubleVector.fromArray( DOUBLES, a, i ) );
+        double min = acc.reduceLanes( VectorOperators.MIN );
+        for (; i < a.length; i++)
+            min = Math.min( min, a[i] );
+        return min;
+    }
+
+    static double max(double[] a) {
+        DoubleVector acc = DoubleVector.broadcast( DOUBLES, Double.NEGATIVE_INFINITY );
+        int i = 0;
+        for (int bound = DOUBLES.loopBound( a.length ); i < bound; i += DOUBLES.length())
+            acc = acc.max( DoubleVector.fromArray( DOUBLES, a, i ) );
+        double max = acc.reduceLanes( VectorOperators.MAX );
+        for (; i < a.length; i++)
+            max = Math.max( max, a[i] );
+        return max;
+    }
+
+    /**
+     * The int sum of the statistics is a long: every vector of ints is widened into two vectors of longs.
+     */
+    static IntSummaryStatistics summaryStatistics(int[] a) {
+        VectorSpecies<Long> wide = LongVector.SPECIES_PREFERRED;
+        IntVector min = IntVector.broadcast( INTS, Integer.MAX_VALUE ), max = IntVector.broadcast( INTS, Integer.MIN_VALUE );
+        LongVector sum = LongVector.zero( wide );
+        int i = 0;
+        for (int bound = INTS.loopBound( a.length ); i < bound; i += INTS.length()) {
+            IntVector v = IntVector.fromArray( INTS, a, i );
+            min = min.min( v );
+            max = max.max( v );
+            for (int part = 0; part < INTS.length() / wide.length(); part++)
+                sum = sum.add( v.convertShape( VectorOperators.I2L, wide, part ) );
+        }
+        int lo = min.reduceLanes( VectorOperators.MIN ), hi = max.reduceLanes( VectorOperators.MAX );
+        long total = sum.reduceLanes( VectorOperators.ADD );
+        for (; i < a.length; i++) {
+            lo = Math.min( lo, a[i] );
+            hi = Math.max( hi, a[i] );
+            total += a[i];
+        }
+        return a.length == 0 ? new IntSummaryStatistics() : new IntSummaryStatistics( a.length, lo, hi, total );
+    }
+
+    static LongSummaryStatistics summaryStatistics(long[] a) {
+        LongVector min = LongVector.broadcast( LONGS, Long.MAX_VALUE ), max = LongVector.broadcast( LONGS, Long.MIN_VALUE );
+        LongVector sum = LongVector.zero( LONGS );
+        int i = 0;
+        for (int bound = LONGS.loopBound( a.length ); i < bound; i += LONGS.length()) {
+            LongVector v = LongVector.fromArray( LONGS, a, i );
+            min = min.min( v );
+            max = max.max( v );
+            sum = sum.add( v );
+        }
+        long lo = min.reduceLanes( VectorOperators.MIN ), hi = max.reduceLanes( VectorOperators.MAX );
+        long total = sum.reduceLanes( VectorOperators.ADD );
+        for (; i < a.length; i++) {
+            lo = Math.min( lo, a[i] );
+            hi = Math.max( hi, a[i] );
+            total += a[i];
+        }
+        return a.length == 0 ? new LongSummaryStatistics() : new LongSummaryStatistics( a.length, lo, hi, total );
+    }
+
+    static DoubleSummaryStatistics summaryStatistics(double[] a) {
+        return kahan( a );
+    }
+
+    /**
+     * Kahan summation in every lane, plus min and max. The lanes are combined with Kahan again at the end,
+     * so the error stays as small as with DoubleStream.sum, but the rounding is not the same.
+     */
+    private static DoubleSummaryStatistics kahan(double[] a) {
+        DoubleVector sum = DoubleVector.zero( DOUBLES ), compensation = DoubleVector.zero( DOUBLES );
+        DoubleVector plain = DoubleVector.zero( DOUBLES );
+        DoubleVector min = DoubleVector.broadcast( DOUBLES, Double.POSITIVE_INFINITY );
+        DoubleVector max = DoubleVector.broadcast( DOUBLES, Double.NEGATIVE_INFINITY );
+        int i = 0;
+        for (int bound = DOUBLES.loopBound( a.length ); i < bound; i += DOUBLES.length()) {
+            DoubleVector v = DoubleVector.fromArray( DOUBLES, a, i );
+            DoubleVector y = v.sub( compensation );
+            DoubleVector t = sum.add( y );
+            compensation = t.sub( sum ).sub( y );
+            sum = t;
+            plain = plain.add( v );
+            min = min.min( v );
+            max = max.max( v );
+        }
+        double[] sums = sum.toArray(), compensations = compensation.toArray();
+        double s = 0, c = 0, p = plain.reduceLanes( VectorOperators.ADD );
+        double lo = min.reduceLanes( VectorOperators.MIN ), hi = max.reduceLanes( VectorOperators.MAX );
+        for (int lane = 0; lane < sums.length; lane++) {
+            double y = sums[lane] - c;
+            double t = s + y;
+            c = (t - s) - y;
+            s = t;
+            y = -compensations[lane] - c;
+            t = s + y;
+            c = (t - s) - y;
+            s = t;
+        }
+        for (; i < a.length; i++) {
+            double y = a[i] - c;
+            double t = s + y;
+            c = (t - s) - y;
+            s = t;
+            p += a[i];
+            lo = Math.min( lo, a[i] );
+            hi = Math.max( hi, a[i] );
+        }
+        double total = s - c;
+        if (Double.isNaN( total ) && Double.isInfinite( p ))
+            total = p;
+        return a.length == 0 ? new DoubleSummaryStatistics() : new DoubleSummaryStatistics( a.length, lo, hi, total );
+    }
+
+    /**
+     * The comparison must be a constant for the JIT to emit a vector compare: each case passes its own constant
+     * to a helper that is inlined into the case.
+     */
+    static long count(int[] a, PrimitiveReductions.Compare op, int value) {
+        switch (op) {
+            case LT:
+                return count( a, VectorOperators.LT, op, value );
+            case LE:
+                return count( a, VectorOperators.LE, op, value );
+            case GT:
+                return count( a, VectorOperators.GT, op, value );
+            case GE:
+                return count( a, VectorOperators.GE, op, value );
+            case EQ:
+                return count( a, VectorOperators.EQ, op, value );
+            default:
+                return count( a, VectorOperators.NE, op, value );
+        }
+    }
+
+    static long count(long[] a, PrimitiveReductions.Compare op, long value) {
+        switch (op) {
+            case LT:
+                return count( a, VectorOperators.LT, op, value );
+            case LE:
+                return count( a, VectorOperators.LE, op, value );
+            case GT:
+                return count( a, VectorOperators.GT, op, value );
+            case GE:
+                return count( a, VectorOperators.GE, op, value );
+            case EQ:
+                return count( a, VectorOperators.EQ, op, value );
+            default:
+                return count( a, VectorOperators.NE, op, value );
+        }
+    }
+
+    static long count(double[] a, PrimitiveReductions.Compare op, double value) {
+        switch (op) {
+            case LT:
+                return count( a, VectorOperators.LT, op, value );
+            case LE:
+                return count( a, VectorOperators.LE, op, value );
+            case GT:
+                return count( a, VectorOperators.GT, op, value );
+            case GE:
+                return count( a, VectorOperators.GE, op, value );
+            case EQ:
+                return count( a, VectorOperators.EQ, op, value );
+            default:
+                return count( a, VectorOperators.NE, op, value );
+        }
+    }
+
+    private static long count(int[] a, VectorOperators.Comparison comparison, PrimitiveReductions.Compare op, int value) {
+        IntVector operand = IntVector.broadcast( INTS, value );
+        long count = 0;
+        int i = 0;
+        for (int bound = INTS.loopBound( a.length ); i < bound; i += INTS.length())
+            count += IntVector.fromArray( INTS, a, i ).compare( comparison, operand ).trueCount();
+        for (; i < a.length; i++)
+            if (op.test( Integer.compare( a[i], value ) ))
+                count++;
+        return count;
+    }
+
+    private static long count(long[] a, VectorOperators.Comparison comparison, PrimitiveReductions.Compare op, long value) {
+        LongVector operand = LongVector.broadcast( LONGS, value );
+        long count = 0;
+        int i = 0;
+        for (int bound = LONGS.loopBound( a.length ); i < bound; i += LONGS.length())
+            count += LongVector.fromArray( LONGS, a, i ).compare( comparison, operand ).trueCount();
+        for (; i < a.length; i++)
+            if (op.test( Long.compare( a[i], value ) ))
+                count++;
+        return count;
+    }
+
+    private static long count(double[] a, VectorOperators.Comparison comparison, PrimitiveReductions.Compare op, double value) {
+        DoubleVector operand = DoubleVector.broadcast( DOUBLES, value );
+        long count = 0;
+        int i = 0;
+        for (int bound = DOUBLES.loopBound( a.length ); i < bound; i += DOUBLES.length())
+            count += DoubleVector.fromArray( DOUBLES, a, i ).compare( comparison, operand ).trueCount();
+        for (; i < a.length; i++)
+            if (op.test( a[i], value ))
+                count++;
+        return count;
+    }
+}
@@ -0,0 +1,581 @@
+package NEW.Collection.Stream;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.DoubleStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Summary: ✔️ Tumbling and sliding windows over endless streams: count, sum, min, max, average, variance, top-k ✔️
+ * <p>
+ * generate() and iterate() never end, and limit() / takeWhile() only cut them. A live feed needs an aggregate
+ * per window that keeps coming:
+ * Windows.count( 1000 ).over( prices )                                 -> a Window per 1000 values (tumbling)
+ * Windows.count( 1000 ).every( 100 ).topK( 3 ).over( prices )          -> the last 1000 values, every 100 values
+ * Windows.time( 60_000 ).every( 1000 ).over( trades, Trade::time, Trade::price )
+ * -> the last minute, every second (in the unit of the timestamps, e.g. epoch millis)
+ * <p>
+ * A sliding window is cut into panes of gcd( size, slide ): a pane is aggregated as its values come, in O(1), and
+ * a window is the combination of its last size / pane panes. The panes are kept in two stacks (a queue that
+ * slides): new panes go on the back, with one running aggregate of the back; old panes leave from the front,
+ * which keeps the aggregate of every suffix. Moving the back to the front once in a while makes every slide O(1)
+ * amortized, and, unlike subtract-on-evict, also works for min, max and top-k, which cannot be subtracted,
+ * and does not drift for sums of doubles. Memory is O( size / pane ) aggregates, whatever the rate of the feed.
+ * <p>
+ * Count windows end at size, size + slide, ... and only full windows are emitted, except one last window with the
+ * tail of a finite stream. Time windows are aligned to multiples of the slide, a window is emitted when the first
+ * event at or after its end arrives (windows without events are skipped), and at the end of a finite stream the
+ * windows still open are emitted. Events must come in timestamp order: a late event is counted in the current pane.
+ * The windows are computed sequentially, in encounter order, and the result stream is lazy, so limit() on it
+ * stops an endless feed.
+ */
+public final class Windows {
+    /**
+     * More panes per window make the two stacks too big: the slide should divide the size.
+     */
+    static final int MAX_PANES = 1 << 20;
+
+    private final boolean time;
+    private final long size;
+    private long slide;
+    private int k;
+
+    private Windows(boolean time, long size) {
+        if (size <= 0)
+            throw new IllegalArgumentException( "window size must be positive: " + size );
+        this.time = time;
+        this.size = size;
+        this.slide = size;
+    }
+
+    /**
+     * Windows of size elements, tumbling until every() is called.
+     */
+    public static Windows count(long size) {
+        return new Windows( false, size );
+    }
+
+    /**
+     * Windows of size units of the timestamps, tumbling until every() is called.
+     */
+    public static Windows time(long size) {
+        return new Windows( true, size );
+    }
+
+    /**
+     * A sliding window: a new window every slide elements (or units of time).
+     */
+    public Windows every(long slide) {
+        if (slide <= 0 || slide > size)
+            throw new IllegalArgumentException( "slide must be in (0, " + size + "]: " + slide );
+        long pane = gcd( size, slide );
+        if (size / pane > MAX_PANES)
+            throw new IllegalArgumentException( "window of " + size / pane + " panes of " + pane
+                    + ": choose a slide that divides the size" );
+        this.slide = slide;
+        return this;
+    }
+
+    /**
+     * Also keep the k largest values of every window.
+     */
+    public Windows topK(int k) {
+        if (k < 0)
+            throw new IllegalArgumentException( "k < 0: " + k );
+        this.k = k;
+        return this;
+    }
+
+    public Stream<Window> over(DoubleStream values) {
+        requireCount();
+        Aggregator aggregator = new Aggregator( false, size, slide, k );
+        return StreamSupport.stream( new DoubleWindows( values.spliterator(), aggregator ), false )
+                .onClose( values::close );
+    }
+
+    public <T> Stream<Window> over(Stream<T> stream, ToDoubleFunction<? super T> value) {
+        requireCount();
+        Aggregator aggregator = new Aggregator( false, size, slide, k );
+        return StreamSupport.stream( new ObjectWindows<>( stream.spliterator(), t -> 0, value, aggregator ), false )
+                .onClose( stream::close );
+    }
+
+    public <T> Stream<Window> over(Stream<T> stream, ToLongFunction<? super T> timestamp,
+                                   ToDoubleFunction<? super T> value) {
+        if (!time)
+            throw new IllegalStateException( "count windows do not use timestamps: over( stream, value )" );
+        Aggregator aggregator = new Aggregator( true, size, slide, k );
+        return StreamSupport.stream( new ObjectWindows<>( stream.spliterator(), timestamp, value, aggregator ), false )
+                .onClose( stream::close );
+    }
+
+    private void requireCount() {
+        if (time)
+            throw new IllegalStateException( "time windows need a timestamp: over( stream, timestamp, value )" );
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * The aggregates of one window [start, end): element indices for count windows, timestamps for time windows.
+     */
+    public static final class Window {
+        private final long start;
+        private final long end;
+        private final long count;
+        private final double sum;
+        private final double min;
+        private final double max;
+        private final double mean;
+        private final double m2;
+        private final double[] top;
+
+        Window(long start, long end, long count, double sum, double min, double max, double mean, double m2,
+               double[] top) {
+            this.start = start;
+            this.end = end;
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+            this.m2 = m2;
+            this.top = top;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        public double getMin() {
+            return min;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public double getAverage() {
+            return count == 0 ? 0 : mean;
+        }
+
+        /**
+         * Population variance, as {@link StreamStatistics#getVariance()}.
+         */
+        public double getVariance() {
+            return count == 0 ? 0 : m2 / count;
+        }
+
+        /**
+         * The k largest values, largest first (fewer if the window has fewer values).
+         */
+        public double[] getTop() {
+            return top.clone();
+        }
+
+        @Override
+        public String toString() {
+            return String.format( "Window{[%d, %d), count=%d, sum=%f, min=%f, average=%f, max=%f%s}",
+                    start, end, count, sum, min, getAverage(), max, top.length == 0 ? "" : ", top=" + Arrays.toString( top ) );
+        }
+    }
+
+    /**
+     * Panes and the two stacks, as parallel arrays of aggregates so that a slide allocates nothing.
+     * Slots [0, capacity) are the panes of the ring, [capacity, 2 * capacity) the suffix aggregates of the front
+     * stack for the same ring slots, then the running aggregate of the back stack, the open pane and a result.
+     */
+    static final class Aggregator {
+        private final boolean time;
+        private final long size;
+        private final long slide;
+        private final long pane;
+        private final int panesPerWindow;
+        private final long offset;  // window ends satisfy (end - offset) % slide == 0
+        private final int k;
+
+        private final int capacity;
+        private final int back, open, result;
+        private final long[] count;
+        private final double[] sum, min, max, mean, m2;
+        private final double[] top;     // k values per slot: a min-heap for the open pane, sorted descending otherwise
+        private final int[] topSize;
+        private final double[] merged;
+
+        private int oldest;         // ring slot of the oldest pane
+        private int panes;          // panes in the ring
+        private int front;          // the oldest panes that have suffix aggregates
+        private long paneStart;
+        private boolean started;
+        private long seen;          // elements, for count windows
+        private long lastEnd = Long.MIN_VALUE;
+        Consumer<? super Window> emit;
+
+        Aggregator(boolean time, long size, long slide, int k) {
+            this.time = time;
+            this.size = size;
+            this.slide = slide;
+            this.pane = gcd( size, slide );
+            this.panesPerWindow = (int) (size / pane);
+            this.offset = time ? 0 : size % slide;
+            this.k = k;
+            this.capacity = panesPerWindow + 1;
+            int slots = 2 * capacity + 3;
+            this.back = 2 * capacity;
+            this.open = back + 1;
+            this.result = back + 2;
+            this.count = new long[slots];
+            this.sum = new double[slots];
+            this.min = new double[slots];
+            this.max = new double[slots];
+            this.mean = new double[slots];
+            this.m2 = new double[slots];
+            this.top = new double[slots * k];
+            this.topSize = new int[slots];
+            this.merged = new double[k];
+            for (int slot = 0; slot < slots; slot++)
+                clear( slot );
+        }
+
+        void accept(long timestamp, double value) {
+            if (time) {
+                if (!started) {
+                    paneStart = Math.floorDiv( timestamp, pane ) * pane;
+                    started = true;
+                }
+                while (timestamp >= paneStart + pane) {
+                    if (count[open] == 0 && windowCount() == 0) {
+                        reset( Math.floorDiv( timestamp, pane ) * pane );
+                        break;
+                    }
+                    closePane( paneStart + pane );
+                }
+            } else if (seen++ == paneStart + pane) {
+                closePane( paneStart + pane );
+            }
+            add( open, value );
+        }
+
+        /**
+         * The end of a finite stream: emits what is not reported yet.
+         */
+        void finish() {
+            if (time) {
+                if (!started)
+                    return;
+                while (count[open] > 0 || windowCount() > 0)
+                    closePane( paneStart + pane );
+            } else if (seen > lastEnd && seen > 0) {
+                long start = Math.max( 0, paneStart + pane - size );
+                if (count[open] > 0) {
+                    push( open );
+                    if (panes > panesPerWindow)
+                        evict();
+                }
+                emit( start, seen );
+            }
+        }
+
+        private void closePane(long end) {
+            push( open );
+            clear( open );
+            if (panes > panesPerWindow)
+                evict();
+            paneStart = end;
+            if ((end - offset) % slide == 0 && (time ? windowCount() > 0 : end >= size))
+                emit( end - size, end );
+        }
+
+        private long windowCount() {
+            if (front == 0)
+                return count[back];
+            return count[capacity + oldest] + count[back];
+        }
+
+        private void emit(long start, long end) {
+            int slot;
+            if (front == 0) {
+                slot = back;
+            } else if (front == panes) {
+                slot = capacity + oldest;
+            } else {
+                combine( result, capacity + oldest, back );
+                slot = result;
+            }
+            lastEnd = end;
+            double[] best = Arrays.copyOfRange( top, slot * k, slot * k + topSize[slot] );
+            emit.accept( new Window( start, end, count[slot], sum[slot], min[slot], max[slot], mean[slot], m2[slot],
+                    best ) );
+        }
+
+        private void reset(long start) {
+            panes = 0;
+            front = 0;
+            clear( back );
+            paneStart = start;
+        }
+
+        /**
+         * Pushes a copy of the open pane on the back stack.
+         */
+        private void push(int pane) {
+            sortTop( pane );
+            int slot = (oldest + panes) % capacity;
+            copy( slot, pane );
+            panes++;
+            combine( back, back, slot );
+        }
+
+        /**
+         * Pops the oldest pane from the front stack, first moving the back stack there if the front is empty.
+         */
+        private void evict() {
+            if (front == 0) {
+                int newest = (oldest + panes - 1) % capacity;
+                copy( capacity + newest, newest );
+                for (int i = panes - 2; i >= 0; i--) {
+                    int slot = (oldest + i) % capacity;
+                    combine( capacity + slot, slot, capacity + (slot + 1) % capacity );
+                }
+                front = panes;
+                clear( back );
+            }
+            oldest = (oldest + 1) % capacity;
+            panes--;
+            front--;
+        }
+
+        private void clear(int slot) {
+            count[slot] = 0;
+            sum[slot] = 0;
+            min[slot] = Double.POSITIVE_INFINITY;
+            max[slot] = Double.NEGATIVE_INFINITY;
+            mean[slot] = 0;
+            m2[slot] = 0;
+            topSize[slot] = 0;
+        }
+
+        private void copy(int to, int from) {
+            count[to] = count[from];
+            sum[to] = sum[from];
+            min[to] = min[from];
+            max[to] = max[from];
+            mean[to] = mean[from];
+            m2[to] = m2[from];
+            topSize[to] = topSize[from];
+            System.arraycopy( top, from * k, top, to * k, topSize[from] );
+        }
+
+        /**
+         * Welford's update of the open pane, and the value offered to its heap of the k largest.
+         */
+        private void add(int slot, double value) {
+            long n = ++count[slot];
+            sum[slot] += value;
+            if (value < min[slot])
+                min[slot] = value;
+            if (value > max[slot])
+                max[slot] = value;
+            double delta = value - mean[slot];
+            mean[slot] += delta / n;
+            m2[slot] += delta * (value - mean[slot]);
+            if (k > 0)
+                offer( slot, value );
+        }
+
+        /**
+         * to = a + b, Chan's formula for the variance; to may be a or b.
+         */
+        private void combine(int to, int a, int b) {
+            long na = count[a], nb = count[b], n = na + nb;
+            double delta = mean[b] - mean[a];
+            double combinedMean = n == 0 ? 0 : mean[a] + delta * nb / n;
+            double combinedM2 = n == 0 ? 0 : m2[a] + m2[b] + delta * delta * na / n * nb;
+            count[to] = n;
+            sum[to] = sum[a] + sum[b];
+            min[to] = Math.min( min[a], min[b] );
+            max[to] = Math.max( max[a], max[b] );
+            mean[to] = combinedMean;
+            m2[to] = combinedM2;
+            if (k > 0)
+                mergeTop( to, a, b );
+        }
+
+        private void mergeTop(int to, int a, int b) {
+            int i = a * k, iEnd = i + topSize[a], j = b * k, jEnd = j + topSize[b], m = 0;
+            while (m < k && (i < iEnd || j < jEnd))
+                merged[m++] = j >= jEnd || (i < iEnd && top[i] >= top[j]) ? top[i++] : top[j++];
+            System.arraycopy( merged, 0, top, to * k, m );
+            topSize[to] = m;
+        }
+
+        private void offer(int slot, double value) {
+            int base = slot * k, n = topSize[slot];
+            if (n < k) {
+                int i = n;
+                while (i > 0 && top[base + (i - 1) / 2] > value) {
+                    top[base + i] = top[base + (i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                top[base + i] = value;
+                topSize[slot] = n + 1;
+            } else if (value > top[base]) {
+                siftDown( base, n, value );
+            }
+        }
+
+        private void siftDown(int base, int n, double value) {
+            int i = 0;
+            while (2 * i + 1 < n) {
+                int child = 2 * i + 1;
+                if (child + 1 < n && top[base + child + 1] < top[base + child])
+                    child++;
+                if (top[base + child] >= value)
+                    break;
+                top[base + i] = top[base + child];
+                i = child;
+            }
+            top[base + i] = value;
+        }
+
+        /**
+         * Turns the min-heap of the open pane into a descending array, as the closed panes keep it.
+         */
+        private void sortTop(int slot) {
+            int base = slot * k, n = topSize[slot];
+            for (int end = n - 1; end > 0; end--) {
+                double smallest = top[base];
+                siftDown( base, end, top[base + end] );
+                top[base + end] = smallest;
+            }
+        }
+    }
+
+    /**
+     * Pulls values from the source until the aggregator emits a window.
+     */
+    private abstract static class WindowSpliterator implements Spliterator<Window> {
+        final Aggregator aggregator;
+        private final ArrayDeque<Window> ready = new ArrayDeque<>();
+        private final Consumer<Window> enqueue = ready::add;
+        private boolean finished;
+
+        WindowSpliterator(Aggregator aggregator) {
+            this.aggregator = aggregator;
+        }
+
+        abstract boolean pull();
+
+        abstract void pullAll();
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Window> action) {
+            aggregator.emit = enqueue;
+            while (ready.isEmpty()) {
+                if (finished)
+                    return false;
+                if (!pull()) {
+                    finished = true;
+                    aggregator.finish();
+                }
+            }
+            action.accept( ready.poll() );
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Window> action) {
+            while (!ready.isEmpty())
+                action.accept( ready.poll() );
+            if (finished)
+                return;
+            aggregator.emit = action;
+            pullAll();
+            finished = true;
+            aggregator.finish();
+        }
+
+        @Override
+        public Spliterator<Window> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.NONNULL;
+        }
+    }
+
+    private static final class DoubleWindows extends WindowSpliterator {
+        private final Spliterator.OfDouble source;
+        private final DoubleConsumer sink;
+
+        DoubleWindows(Spliterator.OfDouble source, Aggregator aggregator) {
+            super( aggregator );
+            this.source = source;
+            this.sink = value -> aggregator.accept( 0, value );
+        }
+
+        @Override
+        boolean pull() {
+            return source.tryAdvance( sink );
+        }
+
+        @Override
+        void pullAll() {
+            source.forEachRemaining( sink );
+        }
+    }
+
+    private static final class ObjectWindows<T> extends WindowSpliterator {
+        private final Spliterator<T> source;
+        private final Consumer<T> sink;
+
+        ObjectWindows(Spliterator<T> source, ToLongFunction<? super T> timestamp, ToDoubleFunction<? super T> value,
+                      Aggregator aggregator) {
+            super( aggregator );
+            this.source = source;
+            this.sink = t -> aggregator.accept( timestamp.applyAsLong( t ), value.applyAsDouble( t ) );
+        }
+
+        @Override
+        boolean pull() {
+            return source.tryAdvance( sink );
+        }
+
+        @Override
+        void pullAll() {
+            source.forEachRemaining( sink );
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package NEW.Collection.Stream;
+
+import java.util.SplittableRandom;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
+/**
+ * Summary: ✔️ Sliding windows over a feed of doubles: recomputing every window vs {@link Windows} ✔️
+ * <p>
+ * n events from a generate()-style source, windows of 1000 events that slide by 10 (100 windows per 1000 events),
+ * with count, sum, min, max, average, variance and the top 5 values per window.
+ * loop        -> a ring buffer of the last 1000 values, every window recomputed from it: O(size) per window.
+ * sliding     -> Windows.count( 1000 ).every( 10 ).topK( 5 ), two stacks of panes: O(1) amortized per event.
+ * tumbling    -> Windows.count( 1000 ).topK( 5 ), for comparison.
+ * time        -> Windows.time( 1000 ).every( 10 ).topK( 5 ) over timestamped events, 1 event per time unit.
+ * Events per second = 1e9 / ns/elem.
+ */
+public class WindowsBenchmark {
+    static final int SIZE = 1000;
+    static final int SLIDE = 10;
+    static final int K = 5;
+
+    public static void main(String[] args) {
+        Bench bench = new Bench();
+        for (int n : Bench.sizes( "1e5,1e6,1e7" )) {
+            bench.run( "windows", Bench.LOOP, n, () -> recompute( values( n ) ) );
+            bench.run( "windows", "sliding", n, () -> Windows.count( SIZE ).every( SLIDE ).topK( K )
+                    .over( values( n ) )
+                    .mapToLong( w -> (long) w.getSum() + (long) w.getTop()[0] )
+                    .sum() );
+            bench.run( "windows", "tumbling", n, () -> Windows.count( SIZE ).topK( K )
+                    .over( values( n ) )
+                    .mapToLong( w -> (long) w.getSum() + (long) w.getTop()[0] )
+                    .sum() );
+            bench.run( "windows", "time", n, () -> {
+                SplittableRandom random = new SplittableRandom( 42 );
+                return Windows.time( SIZE ).every( SLIDE ).topK( K )
+                        .over( IntStream.range( 0, n ).boxed(), i -> i, i -> random.nextDouble( 1000 ) )
+                        .mapToLong( w -> (long) w.getSum() + (long) w.getTop()[0] )
+                        .sum();
+            } );
+        }
+    }
+
+    private static DoubleStream values(int n) {
+        SplittableRandom random = new SplittableRandom( 42 );
+        return DoubleStream.generate( () -> random.nextDouble( 1000 ) ).limit( n );
+    }
+
+    /**
+     * What the windows cost without panes: every slide walks the whole window again.
+     */
+    private static long recompute(DoubleStream values) {
+        double[] ring = new double[SIZE];
+        double[] top = new double[K];
+        long[] seen = new long[1];
+        long[] result = new long[1];
+        values.forEachOrdered( value -> {
+            ring[(int) (seen[0] % SIZE)] = value;
+            long n = ++seen[0];
+            if (n < SIZE || (n - SIZE) % SLIDE != 0)
+                return;
+            double sum = 0, min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY, mean = 0, m2 = 0;
+            int topSize = 0;
+            for (int i = 0; i < SIZE; i++) {
+                double x = ring[i];
+                sum += x;
+                min = Math.min( min, x );
+                max = Math.max( max, x );
+                double delta = x - mean;
+                mean += delta / (i + 1);
+                m2 += delta * (x - mean);
+                if (topSize < K || x > top[topSize - 1]) {
+                    int j = topSize < K ? topSize++ : K - 1;
+                    while (j > 0 && top[j - 1] < x) {
+                        top[j] = top[j - 1];
+                        j--;
+                    }
+                    top[j] = x;
+                }
+            }
+            result[0] += (long) sum + (long) top[0] + (long) (min + max + m2 * 0);
+        } );
+        return result[0];
+    }
+}